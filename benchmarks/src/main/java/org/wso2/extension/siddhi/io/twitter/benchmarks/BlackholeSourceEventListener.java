@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.extension.siddhi.io.twitter.benchmarks;
+
+import io.siddhi.core.stream.input.source.SourceEventListener;
+import io.siddhi.query.api.definition.StreamDefinition;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Consumes the events emitted by the source, so that the cost of Siddhi itself is not measured.
+ */
+public class BlackholeSourceEventListener implements SourceEventListener {
+    private final StreamDefinition streamDefinition;
+    private final Blackhole blackhole;
+
+    public BlackholeSourceEventListener(StreamDefinition streamDefinition, Blackhole blackhole) {
+        this.streamDefinition = streamDefinition;
+        this.blackhole = blackhole;
+    }
+
+    @Override
+    public StreamDefinition getStreamDefinition() {
+        return streamDefinition;
+    }
+
+    @Override
+    public void onEvent(Object event, String[] transportProperties) {
+        blackhole.consume(event);
+        blackhole.consume(transportProperties);
+    }
+
+    @Override
+    public void onEvent(Object event, String[] transportProperties, String[] transportSyncProperties) {
+        onEvent(event, transportProperties);
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.extension.siddhi.io.twitter.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.wso2.extension.siddhi.io.twitter.util.StatusMapper;
+import org.wso2.extension.siddhi.io.twitter.util.TweetJsonDecoder;
+import org.wso2.extension.siddhi.io.twitter.util.Util;
+import twitter4j.Status;
+import twitter4j.TwitterException;
+import twitter4j.TwitterObjectFactory;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the conversion of a single tweet into the event passed to the mapper.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StatusMapperBenchmark {
+    @Param({TweetFixtures.OUTPUT_MODE_KEYVALUE, TweetFixtures.OUTPUT_MODE_KEYVALUE_ALL,
+            TweetFixtures.OUTPUT_MODE_PASS_THROUGH})
+    public String outputMode;
+    private TweetFixtures tweetFixtures;
+    private StatusMapper statusMapper;
+    private TweetJsonDecoder decoder;
+    private int index;
+
+    @Setup
+    public void setup() {
+        tweetFixtures = new TweetFixtures(1024, 42);
+        statusMapper = TweetFixtures.createStatusMapper(outputMode);
+        decoder = new TweetJsonDecoder(statusMapper.getRequiredAttributes());
+    }
+
+    /**
+     * The conversion used before the extracted attributes were limited to the ones referenced by the mapping.
+     */
+    @Benchmark
+    public Map<String, Object> createMap() {
+        return Util.createMap(nextStatus());
+    }
+
+    @Benchmark
+    public Object createEvent() {
+        return statusMapper.createEvent(nextStatus());
+    }
+
+    /**
+     * Parses the JSON into a status and converts it, as done when reading the stream through twitter4j.
+     */
+    @Benchmark
+    public Object parseAndCreateEvent() throws TwitterException {
+        return statusMapper.createEvent(TwitterObjectFactory.createStatus(tweetFixtures.getJson(nextIndex())));
+    }
+
+    /**
+     * Decodes the JSON and converts it, as done by the lightweight stream reader.
+     */
+    @Benchmark
+    public Object decodeAndCreateEvent() {
+        byte[] json = tweetFixtures.getJsonBytes(nextIndex());
+        decoder.decode(json, 0, json.length);
+        return statusMapper.createEvent(decoder.getFields());
+    }
+
+    private Status nextStatus() {
+        return tweetFixtures.getStatus(nextIndex());
+    }
+
+    private int nextIndex() {
+        index = (index + 1) & (tweetFixtures.size() - 1);
+        return index;
+    }
+}
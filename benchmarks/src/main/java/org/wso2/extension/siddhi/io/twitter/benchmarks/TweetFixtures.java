@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.extension.siddhi.io.twitter.benchmarks;
+
+import io.siddhi.query.api.annotation.Annotation;
+import io.siddhi.query.api.definition.Attribute;
+import io.siddhi.query.api.definition.StreamDefinition;
+import org.wso2.extension.siddhi.io.twitter.util.StatusMapper;
+import org.wso2.extension.siddhi.io.twitter.util.TweetAttribute;
+import org.wso2.extension.siddhi.io.twitter.util.Util;
+import twitter4j.Status;
+import twitter4j.TwitterException;
+import twitter4j.TwitterObjectFactory;
+
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumSet;
+import java.util.Random;
+
+/**
+ * Synthetic tweets shaped like the ones received from the streaming API, and the stream definitions of the output
+ * modes being measured.
+ */
+public class TweetFixtures {
+    public static final String OUTPUT_MODE_KEYVALUE = "keyvalue";
+    public static final String OUTPUT_MODE_KEYVALUE_ALL = "keyvalue-all";
+    public static final String OUTPUT_MODE_PASS_THROUGH = "passThrough";
+    public static final String OUTPUT_MODE_RAW_JSON = "raw-json";
+    private static final String[] WORDS = {"siddhi", "stream", "processing", "event", "query", "window", "join",
+            "pattern", "sequence", "aggregation", "table", "trigger", "partition", "source", "sink", "mapper"};
+    private static final String[] LANGUAGES = {"en", "es", "fr", "de", "ja", "pt"};
+    private static final long FIRST_TWEET_ID = 1050118621198921728L;
+    // statuses are only registered in the JSON store when read through twitter4j's HTTP client
+    private static final Method REGISTER_JSON_OBJECT;
+    static {
+        try {
+            REGISTER_JSON_OBJECT = TwitterObjectFactory.class.getDeclaredMethod("registerJSONObject", Object.class,
+                    Object.class);
+            REGISTER_JSON_OBJECT.setAccessible(true);
+        } catch (NoSuchMethodException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final String[] json;
+    private final byte[][] jsonBytes;
+    private final Status[] statuses;
+
+    /**
+     * Creates the given number of tweets. The raw JSON of the statuses is registered in twitter4j's JSON store, which
+     * only makes it available on the thread which created the fixtures.
+     *
+     * @param count - number of tweets
+     * @param seed  - seed of the generated content
+     */
+    public TweetFixtures(int count, long seed) {
+        Random random = new Random(seed);
+        json = new String[count];
+        jsonBytes = new byte[count][];
+        statuses = new Status[count];
+        for (int i = 0; i < count; i++) {
+            json[i] = createTweet(random, FIRST_TWEET_ID + i);
+            jsonBytes[i] = json[i].getBytes(StandardCharsets.UTF_8);
+            try {
+                statuses[i] = TwitterObjectFactory.createStatus(json[i]);
+                REGISTER_JSON_OBJECT.invoke(null, statuses[i], json[i]);
+            } catch (TwitterException | ReflectiveOperationException e) {
+                throw new IllegalStateException("Failed to create tweet fixture: " + json[i], e);
+            }
+        }
+    }
+
+    public int size() {
+        return statuses.length;
+    }
+
+    public Status getStatus(int index) {
+        return statuses[index];
+    }
+
+    public String getJson(int index) {
+        return json[index];
+    }
+
+    public byte[] getJsonBytes(int index) {
+        return jsonBytes[index];
+    }
+
+    /**
+     * Creates the mapper used by the source for the given output mode.
+     *
+     * @param outputMode - one of the output modes of this class
+     * @return mapper for the output mode
+     */
+    public static StatusMapper createStatusMapper(String outputMode) {
+        switch (outputMode) {
+            case OUTPUT_MODE_KEYVALUE:
+                return Util.createStatusMapper(createStreamDefinition("keyvalue"), null);
+            case OUTPUT_MODE_KEYVALUE_ALL:
+                // every attribute is extracted, as done before the attributes were limited to the mapping
+                return new StatusMapper(EnumSet.allOf(TweetAttribute.class), null);
+            case OUTPUT_MODE_PASS_THROUGH:
+                return Util.createStatusMapper(createStreamDefinition("passThrough"), null);
+            case OUTPUT_MODE_RAW_JSON:
+                return StatusMapper.createRawJsonMapper();
+            default:
+                throw new IllegalArgumentException("Unknown output mode: " + outputMode);
+        }
+    }
+
+    /**
+     * Creates a stream reading the attributes commonly used by Siddhi apps.
+     *
+     * @param mapType - type of the mapper, or null to create a stream without a twitter source annotation
+     * @return stream definition
+     */
+    public static StreamDefinition createStreamDefinition(String mapType) {
+        StreamDefinition streamDefinition = StreamDefinition.id("inputStream")
+                .attribute("tweetId", Attribute.Type.LONG)
+                .attribute("createdAt", Attribute.Type.LONG)
+                .attribute("text", Attribute.Type.STRING)
+                .attribute("user_screenName", Attribute.Type.STRING)
+                .attribute("hashtags", Attribute.Type.OBJECT)
+                .attribute("retweetCount", Attribute.Type.INT)
+                .attribute("language", Attribute.Type.STRING);
+        if (mapType != null) {
+            streamDefinition.annotation(Annotation.annotation("source").element("type", "twitter")
+                    .annotation(Annotation.annotation("map").element("type", mapType)));
+        }
+        return streamDefinition;
+    }
+
+    private static String createTweet(Random random, long id) {
+        String hashtag = WORDS[random.nextInt(WORDS.length)];
+        String mention = "user" + random.nextInt(1000);
+        StringBuilder text = new StringBuilder("@").append(mention);
+        while (text.length() < 100) {
+            text.append(' ').append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        text.append(" #").append(hashtag).append(" https://t.co/").append(Long.toString(id, 36));
+        long userId = 1000000L + random.nextInt(100000);
+        StringBuilder tweet = new StringBuilder(2048)
+                .append("{\"created_at\":\"Wed Oct 10 20:19:").append(10 + random.nextInt(50))
+                .append(" +0000 2018\",\"id\":").append(id)
+                .append(",\"id_str\":\"").append(id)
+                .append("\",\"text\":\"").append(text)
+                .append("\",\"source\":\"<a href=\\\"http://twitter.com/download/android\\\" " +
+                        "rel=\\\"nofollow\\\">Twitter for Android</a>\",\"truncated\":false," +
+                        "\"in_reply_to_status_id\":null,\"in_reply_to_user_id\":null," +
+                        "\"user\":{\"id\":").append(userId)
+                .append(",\"id_str\":\"").append(userId)
+                .append("\",\"name\":\"User ").append(userId)
+                .append("\",\"screen_name\":\"user").append(userId)
+                .append("\",\"location\":\"Colombo, Sri Lanka\",\"description\":\"Stream processing enthusiast\"," +
+                        "\"followers_count\":").append(random.nextInt(10000))
+                .append(",\"friends_count\":").append(random.nextInt(1000))
+                .append(",\"created_at\":\"Mon Mar 02 08:15:30 +0000 2015\",\"lang\":null," +
+                        "\"profile_image_url_https\":\"https://pbs.twimg.com/profile_images/1/a_normal.jpg\"}," +
+                        "\"geo\":null,\"coordinates\":");
+        if (random.nextInt(10) == 0) {
+            tweet.append("{\"type\":\"Point\",\"coordinates\":[79.86").append(random.nextInt(10))
+                    .append(",6.92").append(random.nextInt(10)).append("]}");
+        } else {
+            tweet.append("null");
+        }
+        tweet.append(",\"place\":null,\"is_quote_status\":false,\"quote_count\":0,\"reply_count\":0," +
+                "\"retweet_count\":").append(random.nextInt(100))
+                .append(",\"favorite_count\":").append(random.nextInt(500))
+                .append(",\"entities\":{\"hashtags\":[{\"text\":\"").append(hashtag)
+                .append("\",\"indices\":[0,1]}],\"urls\":[{\"url\":\"https://t.co/").append(Long.toString(id, 36))
+                .append("\",\"expanded_url\":\"https://siddhi.io\",\"display_url\":\"siddhi.io\"," +
+                        "\"indices\":[0,1]}],\"user_mentions\":[{\"screen_name\":\"").append(mention)
+                .append("\",\"name\":\"").append(mention).append("\",\"id\":").append(random.nextInt(100000))
+                .append(",\"indices\":[0,1]}],\"symbols\":[]},\"favorited\":false,\"retweeted\":false," +
+                        "\"filter_level\":\"low\",\"lang\":\"").append(LANGUAGES[random.nextInt(LANGUAGES.length)])
+                .append("\",\"timestamp_ms\":\"1539202764").append(100 + random.nextInt(900)).append("\"}");
+        return tweet.toString();
+    }
+}
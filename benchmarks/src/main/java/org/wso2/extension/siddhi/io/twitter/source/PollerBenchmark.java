@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.extension.siddhi.io.twitter.source;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.wso2.extension.siddhi.io.twitter.benchmarks.BlackholeSourceEventListener;
+import org.wso2.extension.siddhi.io.twitter.benchmarks.TweetFixtures;
+import twitter4j.Query;
+import twitter4j.QueryResult;
+import twitter4j.RateLimitStatus;
+import twitter4j.Status;
+import twitter4j.Twitter;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link TwitterPoller#run} over a page of search results, served by an in-memory stub of the search API.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PollerBenchmark {
+    private static final int PAGE_SIZE = 100;
+    @Param({TweetFixtures.OUTPUT_MODE_KEYVALUE, TweetFixtures.OUTPUT_MODE_KEYVALUE_ALL,
+            TweetFixtures.OUTPUT_MODE_PASS_THROUGH, TweetFixtures.OUTPUT_MODE_RAW_JSON})
+    public String outputMode;
+    private TwitterPoller twitterPoller;
+
+    @Setup
+    public void setup(Blackhole blackhole) {
+        TweetFixtures tweetFixtures = new TweetFixtures(PAGE_SIZE, 42);
+        List<Status> page = new ArrayList<>(PAGE_SIZE);
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            page.add(tweetFixtures.getStatus(i));
+        }
+        QueryResult queryResult = createQueryResult(page);
+        Twitter twitter = (Twitter) Proxy.newProxyInstance(Twitter.class.getClassLoader(),
+                new Class[]{Twitter.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("search")) {
+                        return queryResult;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+        TwitterSourceMetrics metrics = new TwitterSourceMetrics(null, "benchmark");
+        TwitterCredentialPool credentialPool = new TwitterCredentialPool(metrics);
+        credentialPool.add("benchmark", twitter);
+        twitterPoller = new TwitterPoller(credentialPool, new Query("siddhi"), 0,
+                new BlackholeSourceEventListener(TweetFixtures.createStreamDefinition(null), blackhole),
+                TweetFixtures.createStatusMapper(outputMode), null, null, null, metrics);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PAGE_SIZE)
+    public void run() {
+        twitterPoller.run();
+    }
+
+    private static QueryResult createQueryResult(List<Status> page) {
+        RateLimitStatus rateLimitStatus = (RateLimitStatus) Proxy.newProxyInstance(
+                RateLimitStatus.class.getClassLoader(), new Class[]{RateLimitStatus.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("getRemaining") || method.getName().equals("getLimit")) {
+                        return Integer.MAX_VALUE;
+                    }
+                    return 0;
+                });
+        return (QueryResult) Proxy.newProxyInstance(QueryResult.class.getClassLoader(),
+                new Class[]{QueryResult.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getTweets":
+                            return page;
+                        case "getRateLimitStatus":
+                            return rateLimitStatus;
+                        case "nextQuery":
+                            return null;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+}
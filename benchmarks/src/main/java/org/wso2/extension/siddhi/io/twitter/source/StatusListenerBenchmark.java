@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.extension.siddhi.io.twitter.source;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.wso2.extension.siddhi.io.twitter.benchmarks.BlackholeSourceEventListener;
+import org.wso2.extension.siddhi.io.twitter.benchmarks.TweetFixtures;
+import org.wso2.extension.siddhi.io.twitter.util.StatusMapper;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link TwitterStatusListener#onStatus}, which maps and emits each tweet received from the stream on the
+ * twitter4j dispatch thread.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StatusListenerBenchmark {
+    private static final int BATCH_SIZE = 64;
+    @Param({TweetFixtures.OUTPUT_MODE_KEYVALUE, TweetFixtures.OUTPUT_MODE_KEYVALUE_ALL,
+            TweetFixtures.OUTPUT_MODE_PASS_THROUGH, TweetFixtures.OUTPUT_MODE_RAW_JSON})
+    public String outputMode;
+    private TweetFixtures tweetFixtures;
+    private TwitterStatusListener twitterStatusListener;
+    private TwitterStatusListener batchingStatusListener;
+    private int index;
+
+    @Setup
+    public void setup(Blackhole blackhole) {
+        // the raw JSON of the fixtures is kept by twitter4j for the thread creating them, i.e. the benchmark thread
+        tweetFixtures = new TweetFixtures(1024, 42);
+        StatusMapper statusMapper = TweetFixtures.createStatusMapper(outputMode);
+        BlackholeSourceEventListener sourceEventListener = new BlackholeSourceEventListener(
+                TweetFixtures.createStreamDefinition(null), blackhole);
+        twitterStatusListener = new TwitterStatusListener(sourceEventListener, statusMapper, 0, 1,
+                new OverloadPolicy(OverloadPolicy.Type.BLOCK, 1, 1), null, null, null, null, null,
+                new TwitterSourceMetrics(null, "benchmark"));
+        if (statusMapper.isPositional()) {
+            // batches are flushed when full, hence the linger task is not needed
+            TwitterSourceMetrics metrics = new TwitterSourceMetrics(null, "benchmark");
+            EventBatcher eventBatcher = new EventBatcher(sourceEventListener, BATCH_SIZE, Long.MAX_VALUE, metrics);
+            batchingStatusListener = new TwitterStatusListener(sourceEventListener, statusMapper, 0, 1,
+                    new OverloadPolicy(OverloadPolicy.Type.BLOCK, 1, 1), eventBatcher, null, null, null, null,
+                    metrics);
+        }
+    }
+
+    @Benchmark
+    public void onStatus() {
+        twitterStatusListener.onStatus(tweetFixtures.getStatus(nextIndex()));
+    }
+
+    /**
+     * Emits the tweets in batches, only measured for the passThrough mapper which accepts event arrays.
+     */
+    @Benchmark
+    public void onStatusBatched() {
+        if (batchingStatusListener != null) {
+            batchingStatusListener.onStatus(tweetFixtures.getStatus(nextIndex()));
+        }
+    }
+
+    private int nextIndex() {
+        index = (index + 1) & (tweetFixtures.size() - 1);
+        return index;
+    }
+}
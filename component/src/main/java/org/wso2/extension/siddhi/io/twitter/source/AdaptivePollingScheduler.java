@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.extension.siddhi.io.twitter.source;
+
+import org.apache.log4j.Logger;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Schedules the polls of a query one at a time, choosing the delay until the next poll from the last one. The
+ * interval is shortened when a poll needed more than one page and lengthened when it found few tweets, aiming at
+ * half a page per poll, and it is kept long enough for the remaining rate limit to last until the window is reset.
+ * A poll stopped on the rate limit is carried on as soon as a credential can send a request, and a poll stopped
+ * on a pause once the source is resumed, so that no thread of the executor waits for either.
+ */
+public class AdaptivePollingScheduler implements Runnable {
+    private static final Logger log = Logger.getLogger(AdaptivePollingScheduler.class);
+    private static final double TARGET_PAGE_FILL = 0.5;
+    private static final double MIN_FACTOR = 0.5;
+    private static final double MAX_FACTOR = 2;
+    private final TwitterPoller twitterPoller;
+    private final TwitterCredentialPool credentialPool;
+    private final ScheduledExecutorService scheduledExecutorService;
+    private final TwitterSourceMetrics metrics;
+    private final int pageSize;
+    private final int queryCount;
+    private final long minIntervalMillis;
+    private final long maxIntervalMillis;
+    private long intervalMillis;
+    private volatile boolean stopped;
+    private boolean held;
+    private long pollStartTime;
+    private ScheduledFuture<?> scheduledFuture;
+
+    /**
+     * Creates a scheduler starting at the given interval.
+     *
+     * @param twitterPoller            - polls the query
+     * @param credentialPool           - credentials the searches of the poller are spread over
+     * @param scheduledExecutorService - runs the polls
+     * @param metrics                  - collects the chosen interval
+     * @param pageSize                 - number of tweets searched per page
+     * @param queryCount               - number of queries sharing the rate limit of the credentials
+     * @param intervalMillis           - interval until the first adjustment
+     * @param minIntervalMillis        - shortest interval between the start of two polls
+     * @param maxIntervalMillis        - longest interval between the start of two polls
+     */
+    AdaptivePollingScheduler(TwitterPoller twitterPoller, TwitterCredentialPool credentialPool,
+                             ScheduledExecutorService scheduledExecutorService, TwitterSourceMetrics metrics,
+                             int pageSize, int queryCount, long intervalMillis, long minIntervalMillis,
+                             long maxIntervalMillis) {
+        this.twitterPoller = twitterPoller;
+        this.credentialPool = credentialPool;
+        this.scheduledExecutorService = scheduledExecutorService;
+        this.metrics = metrics;
+        this.pageSize = pageSize;
+        this.queryCount = queryCount;
+        this.minIntervalMillis = minIntervalMillis;
+        this.maxIntervalMillis = maxIntervalMillis;
+        this.intervalMillis = clamp(intervalMillis);
+    }
+
+    /**
+     * Runs the first poll right away.
+     */
+    public synchronized void start() {
+        metrics.pollingInterval(intervalMillis);
+        scheduledFuture = scheduledExecutorService.schedule(this, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Cancels the next poll, interrupting the current one if it is running.
+     */
+    public synchronized void stop() {
+        stopped = true;
+        if (scheduledFuture != null) {
+            scheduledFuture.cancel(true);
+        }
+    }
+
+    /**
+     * Carries on the poll which was stopped on a pause.
+     */
+    public synchronized void resume() {
+        if (held && !stopped) {
+            held = false;
+            scheduledFuture = scheduledExecutorService.schedule(this, 0, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public void run() {
+        if (!twitterPoller.isPollInProgress()) {
+            pollStartTime = System.currentTimeMillis();
+        }
+        try {
+            twitterPoller.run();
+        } catch (RuntimeException e) {
+            // a failed poll must not stop the polls to come, as a fixed rate schedule would
+            log.error("Failed to poll tweets: " + e.getMessage(), e);
+        }
+        synchronized (this) {
+            if (stopped) {
+                return;
+            }
+            long delay;
+            if (twitterPoller.isPaused()) {
+                held = true;
+                return;
+            } else if (twitterPoller.isRateLimited()) {
+                delay = credentialPool.getMillisUntilAvailable();
+            } else if (twitterPoller.isFailed()) {
+                delay = intervalMillis;
+            } else if (twitterPoller.isPollInProgress()) {
+                // stopped on a pause, but resumed before the poll could be held
+                delay = 0;
+            } else {
+                intervalMillis = getNextInterval();
+                metrics.pollingInterval(intervalMillis);
+                if (log.isDebugEnabled()) {
+                    log.debug("Polled " + twitterPoller.getPollTweetCount() + " tweets in " +
+                            twitterPoller.getPollPageCount() + " pages, next poll in " + intervalMillis + " ms.");
+                }
+                delay = Math.max(0, pollStartTime + intervalMillis - System.currentTimeMillis());
+            }
+            scheduledFuture = scheduledExecutorService.schedule(this, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    private long getNextInterval() {
+        int pageCount = twitterPoller.getPollPageCount();
+        double factor;
+        if (pageCount > 1) {
+            factor = MIN_FACTOR;
+        } else {
+            double pageFill = twitterPoller.getPollTweetCount() / (double) pageSize;
+            factor = (pageFill == 0) ? MAX_FACTOR :
+                    Math.min(MAX_FACTOR, Math.max(MIN_FACTOR, TARGET_PAGE_FILL / pageFill));
+        }
+        long nextIntervalMillis = (long) (intervalMillis * factor);
+        int remaining = credentialPool.getRemainingRequests();
+        if (remaining != Integer.MAX_VALUE) {
+            // spreads the remaining requests evenly over the queries until the window is reset
+            long budgetIntervalMillis = credentialPool.getMillisUntilReset() * Math.max(1, pageCount) *
+                    queryCount / Math.max(1, remaining);
+            nextIntervalMillis = Math.max(nextIntervalMillis, budgetIntervalMillis);
+        }
+        return clamp(nextIntervalMillis);
+    }
+
+    private long clamp(long millis) {
+        return Math.min(maxIntervalMillis, Math.max(minIntervalMillis, millis));
+    }
+}
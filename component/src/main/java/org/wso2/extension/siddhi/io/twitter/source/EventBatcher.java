@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.extension.siddhi.io.twitter.source;
+
+import io.siddhi.core.event.Event;
+import io.siddhi.core.stream.input.source.SourceEventListener;
+import org.apache.log4j.Logger;
+
+import java.util.Arrays;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects positional events and emits them to Siddhi as event arrays, either when the batch is full or when
+ * the oldest event of the batch has waited for the linger time.
+ */
+public class EventBatcher {
+    private static final Logger log = Logger.getLogger(EventBatcher.class);
+    private final SourceEventListener sourceEventListener;
+    private final int batchSize;
+    private final long lingerMillis;
+    private final TwitterSourceMetrics metrics;
+    private volatile boolean paused;
+    private Event[] events;
+    private int count;
+    private long firstEventTime;
+    // counts the emitted batches, so that a linger timeout of a batch already emitted is ignored
+    private long batchNumber;
+    private ScheduledExecutorService scheduledExecutorService;
+    private ScheduledFuture<?> lingerFuture;
+
+    /**
+     * Creates a batcher, which needs to be started for batches to be emitted after the linger time.
+     *
+     * @param sourceEventListener - listens events
+     * @param batchSize           - maximum number of events emitted at once
+     * @param lingerMillis        - maximum time in milliseconds an event waits for its batch to fill
+     * @param metrics             - collects the runtime metrics of the source
+     */
+    EventBatcher(SourceEventListener sourceEventListener, int batchSize, long lingerMillis,
+                 TwitterSourceMetrics metrics) {
+        this.sourceEventListener = sourceEventListener;
+        this.batchSize = batchSize;
+        this.lingerMillis = lingerMillis;
+        this.metrics = metrics;
+        this.events = new Event[batchSize];
+    }
+
+    public synchronized void start(ScheduledExecutorService scheduledExecutorService) {
+        this.scheduledExecutorService = scheduledExecutorService;
+        if (count > 0) {
+            scheduleLinger();
+        }
+    }
+
+    public synchronized void add(Object[] data) {
+        long currentTime = System.currentTimeMillis();
+        if (count == 0) {
+            firstEventTime = currentTime;
+            scheduleLinger();
+        }
+        events[count++] = new Event(currentTime, data);
+        if (count == batchSize) {
+            flush();
+        }
+    }
+
+    /**
+     * Emits the events collected so far. If they fail to be emitted, they are dropped and counted as shed, as
+     * Siddhi may have processed part of the batch.
+     */
+    public synchronized void flush() {
+        if (count == 0) {
+            return;
+        }
+        Event[] batch = (count == batchSize) ? events : Arrays.copyOf(events, count);
+        events = new Event[batchSize];
+        count = 0;
+        batchNumber++;
+        if (lingerFuture != null) {
+            lingerFuture.cancel(false);
+            lingerFuture = null;
+        }
+        try {
+            sourceEventListener.onEvent(batch, null);
+        } catch (RuntimeException e) {
+            metrics.shed(batch.length);
+            log.error("Dropped the batch of " + batch.length + " tweets, as it failed to be emitted.", e);
+            throw e;
+        }
+    }
+
+    /**
+     * Stops emitting batches on linger timeouts. Batches are still emitted when they are full, hence the caller
+     * needs to stop adding events while the source is paused.
+     */
+    public void pause() {
+        paused = true;
+    }
+
+    public synchronized void resume() {
+        paused = false;
+        if (count > 0) {
+            scheduleLinger();
+        }
+    }
+
+    /**
+     * Emits the events collected so far, unless the source is paused, and stops emitting batches on linger
+     * timeouts.
+     */
+    public synchronized void shutdown() {
+        if (!paused) {
+            try {
+                flush();
+            } catch (RuntimeException e) {
+                // logged by flush
+            }
+        }
+        if (lingerFuture != null) {
+            lingerFuture.cancel(false);
+            lingerFuture = null;
+        }
+        scheduledExecutorService = null;
+    }
+
+    /**
+     * Schedules the current batch to be emitted once its first event has waited for the linger time.
+     */
+    private void scheduleLinger() {
+        if (scheduledExecutorService == null) {
+            return;
+        }
+        long lingeringBatchNumber = batchNumber;
+        long delayMillis = Math.max(0, lingerMillis - (System.currentTimeMillis() - firstEventTime));
+        lingerFuture = scheduledExecutorService.schedule(() -> flushIfLingered(lingeringBatchNumber), delayMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void flushIfLingered(long lingeringBatchNumber) {
+        if (lingeringBatchNumber != batchNumber || paused) {
+            return;
+        }
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            // logged by flush, and not passed on to the scheduler
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.extension.siddhi.io.twitter.source;
+
+import org.wso2.extension.siddhi.io.twitter.util.TwitterConstants;
+
+/**
+ * Tells what a worker buffer does with the tweets dispatched while it is overloaded. A buffer becomes overloaded
+ * when it fills up to the high watermark, and stays so until it is drained down to the low watermark, so that the
+ * policy does not flap around a single threshold.
+ */
+public class OverloadPolicy {
+    private final Type type;
+    private final double highWatermark;
+    private final double lowWatermark;
+
+    /**
+     * Creates a policy.
+     *
+     * @param type          - action taken on the dispatched tweets while overloaded
+     * @param highWatermark - fraction of the buffer filled when it becomes overloaded
+     * @param lowWatermark  - fraction of the buffer filled when it stops being overloaded
+     */
+    OverloadPolicy(Type type, double highWatermark, double lowWatermark) {
+        this.type = type;
+        this.highWatermark = highWatermark;
+        this.lowWatermark = lowWatermark;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Returns the number of buffered tweets at which a buffer becomes overloaded.
+     *
+     * @param bufferSize - capacity of the buffer
+     * @return high watermark in tweets, at least 1
+     */
+    int getHighWatermark(int bufferSize) {
+        return Math.max(1, (int) Math.ceil(highWatermark * bufferSize));
+    }
+
+    /**
+     * Returns the number of buffered tweets at which a buffer stops being overloaded.
+     *
+     * @param bufferSize - capacity of the buffer
+     * @return low watermark in tweets
+     */
+    int getLowWatermark(int bufferSize) {
+        return Math.min(getHighWatermark(bufferSize), (int) Math.floor(lowWatermark * bufferSize));
+    }
+
+    /**
+     * Action taken on the tweets dispatched to an overloaded buffer.
+     */
+    public enum Type {
+        // waits for room in the buffer, which stops reading the stream
+        BLOCK(TwitterConstants.OVERLOAD_POLICY_BLOCK),
+        // drops the dispatched tweet
+        DROP_NEWEST(TwitterConstants.OVERLOAD_POLICY_DROP_NEWEST),
+        // drops the tweet buffered for the longest time to make room for the dispatched one
+        DROP_OLDEST(TwitterConstants.OVERLOAD_POLICY_DROP_OLDEST),
+        // keeps the dispatched tweet with a probability falling from 1 at the low watermark to 0 when full
+        SAMPLE(TwitterConstants.OVERLOAD_POLICY_SAMPLE);
+
+        private final String name;
+
+        Type(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Finds the type of the given name, ignoring its case.
+         *
+         * @param name - name of the type, as given in the overload.policy parameter
+         * @return the type, or null if there is none of the given name
+         */
+        public static Type of(String name) {
+            for (Type type : values()) {
+                if (type.name.equalsIgnoreCase(name)) {
+                    return type;
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,316 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.extension.siddhi.io.twitter.source;
+
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Holds the tweets received while the source is paused in a log of memory-mapped segment files, so that the
+ * thread reading the stream keeps reading rather than waiting for the resume, which would get the connection cut
+ * as a slow consumer. On resume, the log is drained in order on a separate thread, and the tweets received in the
+ * meantime are appended to it until it is empty, after which they are emitted directly again.
+ * <p>
+ * The segments are created on the first pause and deleted once drained. When the log reaches its size limit, the
+ * reading thread waits for a segment to be drained, as it would without the log.
+ */
+public class SpillBuffer {
+    private static final Logger log = Logger.getLogger(SpillBuffer.class);
+    private static final int MAX_SEGMENT_SIZE = 8 * 1024 * 1024;
+    private static final int LENGTH_SIZE = Integer.BYTES;
+    private final Path parentDirectory;
+    private final String name;
+    private final int segmentSize;
+    private final int maxSegmentCount;
+    private final ExecutorService drainExecutor;
+    private final TwitterSourceMetrics metrics;
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+    private RecordHandler recordHandler;
+    private Path directory;
+    private int createdSegmentCount;
+    private volatile boolean spilling;
+    private boolean paused;
+    private boolean draining;
+    private boolean running = true;
+    private boolean full;
+
+    /**
+     * Creates an empty buffer.
+     *
+     * @param parentDirectory - directory under which the segment files are created
+     * @param name            - name of the buffer, which prefixes the directory of its segments
+     * @param maxBytes        - largest size of the segment files
+     * @param drainExecutor   - runs the drain of the log on resume
+     * @param metrics         - collects the runtime metrics of the source
+     */
+    SpillBuffer(Path parentDirectory, String name, long maxBytes, ExecutorService drainExecutor,
+                TwitterSourceMetrics metrics) {
+        this.parentDirectory = parentDirectory;
+        this.name = name;
+        this.segmentSize = (int) Math.min(MAX_SEGMENT_SIZE, maxBytes);
+        this.maxSegmentCount = (int) Math.max(1, maxBytes / segmentSize);
+        this.drainExecutor = drainExecutor;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Sets the handler emitting the drained tweets, which is given by the reader of the stream.
+     *
+     * @param recordHandler - emits a drained tweet
+     */
+    void setRecordHandler(RecordHandler recordHandler) {
+        this.recordHandler = recordHandler;
+    }
+
+    /**
+     * Tells whether tweets are being appended to the log, which lets the caller skip preparing a tweet for it.
+     *
+     * @return true if the source is paused or the log is being drained
+     */
+    public boolean isSpilling() {
+        return spilling;
+    }
+
+    /**
+     * Appends a tweet to the log if the source is paused or the log is not yet drained, waiting for a segment to be
+     * drained when the log is full.
+     *
+     * @param data   - buffer holding the tweet
+     * @param offset - offset of the tweet in the buffer
+     * @param length - length of the tweet in bytes
+     * @return true if the tweet was taken by the log, false if it should be emitted by the caller
+     */
+    public synchronized boolean offer(byte[] data, int offset, int length) {
+        if (!spilling) {
+            return false;
+        }
+        if (LENGTH_SIZE + length > segmentSize) {
+            metrics.error();
+            log.error("Dropped a tweet of " + length + " bytes received while '" + name + "' was paused, as it " +
+                    "does not fit in a segment of the spill log.");
+            return true;
+        }
+        try {
+            while (running && spilling && !hasRoom(length)) {
+                if (!full) {
+                    full = true;
+                    log.warn("The spill log of '" + name + "' is full, hence the stream is not read until it is " +
+                            "drained. Twitter may disconnect the stream if it stays full.");
+                }
+                wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return true;
+        }
+        if (!running) {
+            return true;
+        }
+        if (!spilling) {
+            return false;
+        }
+        try {
+            append(data, offset, length);
+            metrics.spilled();
+        } catch (IOException e) {
+            metrics.error();
+            log.error("Dropped a tweet received while '" + name + "' was paused, as it could not be written to " +
+                    "the spill log: " + e.getMessage());
+        }
+        return true;
+    }
+
+    public synchronized void pause() {
+        paused = true;
+        spilling = true;
+    }
+
+    /**
+     * Starts draining the log, unless it is already being drained.
+     */
+    public synchronized void resume() {
+        paused = false;
+        notifyAll();
+        if (spilling && !draining && running) {
+            draining = true;
+            try {
+                drainExecutor.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                draining = false;
+                log.debug("Did not drain the spill log of '" + name + "' as the source is shut down.");
+            }
+        }
+    }
+
+    /**
+     * Stops draining the log and deletes its segments.
+     */
+    public synchronized void shutdown() {
+        running = false;
+        notifyAll();
+        while (!segments.isEmpty()) {
+            close(segments.pollFirst());
+        }
+        if (directory != null) {
+            try {
+                Files.deleteIfExists(directory);
+            } catch (IOException e) {
+                log.debug("Failed to delete the spill log directory " + directory + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Emits the tweets of the log in order until it is empty, or until the source is paused again.
+     */
+    private void drain() {
+        while (true) {
+            byte[] record;
+            synchronized (this) {
+                if (paused || !running) {
+                    draining = false;
+                    return;
+                }
+                record = poll();
+                if (record == null) {
+                    // the tweets received from now on are emitted by the reading thread
+                    spilling = false;
+                    draining = false;
+                    full = false;
+                    notifyAll();
+                    return;
+                }
+            }
+            try {
+                recordHandler.handle(record);
+            } catch (RuntimeException e) {
+                metrics.error();
+                log.error("Failed to emit a tweet drained from the spill log of '" + name + "': " +
+                        e.getMessage(), e);
+            }
+        }
+    }
+
+    private boolean hasRoom(int length) {
+        Segment last = segments.peekLast();
+        return (last != null && last.getRoom() >= LENGTH_SIZE + length) || segments.size() < maxSegmentCount;
+    }
+
+    private void append(byte[] data, int offset, int length) throws IOException {
+        Segment last = segments.peekLast();
+        if (last == null || last.getRoom() < LENGTH_SIZE + length) {
+            last = createSegment();
+            segments.addLast(last);
+        }
+        last.buffer.putInt(last.writePosition, length);
+        ByteBuffer view = last.buffer.duplicate();
+        view.position(last.writePosition + LENGTH_SIZE);
+        view.put(data, offset, length);
+        last.writePosition += LENGTH_SIZE + length;
+    }
+
+    private byte[] poll() {
+        Segment first = segments.peekFirst();
+        while (first != null && first.readPosition == first.writePosition) {
+            if (first == segments.peekLast()) {
+                // the last segment is reused for the next pause
+                first.readPosition = 0;
+                first.writePosition = 0;
+                return null;
+            }
+            close(segments.pollFirst());
+            notifyAll();
+            first = segments.peekFirst();
+        }
+        if (first == null) {
+            return null;
+        }
+        int length = first.buffer.getInt(first.readPosition);
+        byte[] record = new byte[length];
+        ByteBuffer view = first.buffer.duplicate();
+        view.position(first.readPosition + LENGTH_SIZE);
+        view.get(record);
+        first.readPosition += LENGTH_SIZE + length;
+        return record;
+    }
+
+    private Segment createSegment() throws IOException {
+        if (directory == null) {
+            Files.createDirectories(parentDirectory);
+            directory = Files.createTempDirectory(parentDirectory, name + "-spill-");
+        }
+        Path file = directory.resolve("segment-" + (++createdSegmentCount) + ".log");
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            return new Segment(file, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize));
+        } catch (IOException e) {
+            channel.close();
+            Files.deleteIfExists(file);
+            throw e;
+        }
+    }
+
+    private void close(Segment segment) {
+        try {
+            // the mapping itself is released once the buffer is garbage collected
+            segment.channel.close();
+            Files.deleteIfExists(segment.file);
+        } catch (IOException e) {
+            log.debug("Failed to delete the spill log segment " + segment.file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Emits a tweet drained from the log.
+     */
+    interface RecordHandler {
+        void handle(byte[] record);
+    }
+
+    /**
+     * Segment file of the log, holding tweets each preceded by its length.
+     */
+    private static class Segment {
+        private final Path file;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private int writePosition;
+        private int readPosition;
+
+        private Segment(Path file, FileChannel channel, MappedByteBuffer buffer) {
+            this.file = file;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        private int getRoom() {
+            return buffer.capacity() - writePosition;
+        }
+    }
+}
@@ -0,0 +1,296 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.extension.siddhi.io.twitter.source;
+
+import io.siddhi.core.stream.input.source.SourceEventListener;
+import org.apache.log4j.Logger;
+import org.wso2.extension.siddhi.io.twitter.util.StatusMapper;
+import org.wso2.extension.siddhi.io.twitter.util.TweetFilter;
+import org.wso2.extension.siddhi.io.twitter.util.TweetIdDeduplicator;
+import twitter4j.Query;
+import twitter4j.QueryResult;
+import twitter4j.Status;
+import twitter4j.TwitterException;
+import twitter4j.TwitterObjectFactory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Searches the tweets missed while a stream connection was down. The newest tweet received before a reconnect
+ * and the first tweet received after it bound the gap, which is searched for the track keywords of the stream.
+ * The tweets found are emitted oldest first, in small chunks so that a long outage does not flood the stream.
+ */
+public class StreamGapBackfiller {
+    private static final Logger log = Logger.getLogger(StreamGapBackfiller.class);
+    private static final int PAGE_SIZE = 100;
+    private static final int EMIT_CHUNK_SIZE = 50;
+    private static final long EMIT_CHUNK_INTERVAL_MILLIS = 100;
+    private final TwitterCredentialPool credentialPool;
+    private final List<String> queries;
+    private final Set<String> languages;
+    private final int limit;
+    private final ExecutorService executorService;
+    private final SourceEventListener sourceEventListener;
+    private final StatusMapper statusMapper;
+    private final EventBatcher eventBatcher;
+    private final TweetFilter tweetFilter;
+    private final TweetIdDeduplicator deduplicator;
+    private final TwitterSourceMetrics metrics;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition condition = lock.newCondition();
+    private volatile boolean paused;
+    private volatile boolean running = true;
+    private volatile long lastSeenId;
+    // newest tweet received before the last reconnect, or 0 if no gap is waiting for its end
+    private volatile long gapStartId;
+
+    /**
+     * Creates a backfiller of the gaps of a stream connection.
+     *
+     * @param credentialPool      - clients the searches are spread over
+     * @param queries             - search queries matching the track keywords of the stream
+     * @param languages           - languages of the stream, or an empty set to accept any language
+     * @param limit               - maximum number of tweets searched for a gap
+     * @param executorService     - runs the searches, off the thread reading the stream
+     * @param sourceEventListener - listens events
+     * @param statusMapper        - converts tweets into events
+     * @param eventBatcher        - batches positional events, or null to emit each event on its own
+     * @param tweetFilter         - drops tweets which are not of interest, or null to emit every tweet
+     * @param deduplicator        - drops tweets which were already received, or null to emit every tweet
+     * @param metrics             - collects the runtime metrics of the source
+     */
+    StreamGapBackfiller(TwitterCredentialPool credentialPool, List<String> queries, Set<String> languages,
+                        int limit, ExecutorService executorService, SourceEventListener sourceEventListener,
+                        StatusMapper statusMapper, EventBatcher eventBatcher, TweetFilter tweetFilter,
+                        TweetIdDeduplicator deduplicator, TwitterSourceMetrics metrics) {
+        this.credentialPool = credentialPool;
+        this.queries = queries;
+        this.languages = languages;
+        this.limit = limit;
+        this.executorService = executorService;
+        this.sourceEventListener = sourceEventListener;
+        this.statusMapper = statusMapper;
+        this.eventBatcher = eventBatcher;
+        this.tweetFilter = tweetFilter;
+        this.deduplicator = deduplicator;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Records that the stream connection was opened, which starts a gap if tweets were received before.
+     */
+    public void connected() {
+        if (lastSeenId > 0) {
+            gapStartId = lastSeenId;
+        }
+    }
+
+    /**
+     * Records a tweet received on the stream, which ends the gap if it is the first one after a reconnect.
+     *
+     * @param tweetId - ID of the received tweet
+     */
+    public void received(long tweetId) {
+        long startId = gapStartId;
+        if (startId > 0) {
+            gapStartId = 0;
+            if (tweetId > startId + 1) {
+                submit(startId, tweetId);
+            }
+        }
+        if (tweetId > lastSeenId) {
+            lastSeenId = tweetId;
+        }
+    }
+
+    public void shutdown() {
+        running = false;
+        resume();
+    }
+
+    public void pause() {
+        paused = true;
+    }
+
+    public void resume() {
+        paused = false;
+        try {
+            lock.lock();
+            condition.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void submit(long sinceId, long untilId) {
+        try {
+            executorService.execute(() -> backfill(sinceId, untilId));
+        } catch (RejectedExecutionException e) {
+            log.debug("Dropped the backfill of the gap after tweet " + sinceId + " as the source is shut down.");
+        }
+    }
+
+    /**
+     * Searches and emits the tweets newer than the first ID and older than the second.
+     */
+    void backfill(long sinceId, long untilId) {
+        List<Status> tweets = new ArrayList<>();
+        // raw JSON of the tweets by ID, taken as each page is read since the next search replaces it
+        Map<Long, String> rawJson = statusMapper.isRawJson() ? new HashMap<>() : null;
+        boolean complete = true;
+        search:
+        for (String queryString : queries) {
+            Query query = new Query(queryString).count(PAGE_SIZE).sinceId(sinceId).maxId(untilId - 1)
+                    .resultType(Query.ResultType.recent);
+            while (query != null && running) {
+                if (tweets.size() >= limit) {
+                    complete = false;
+                    break search;
+                }
+                TwitterCredentialPool.Client client = credentialPool.acquire();
+                if (client == null) {
+                    complete = false;
+                    break search;
+                }
+                try {
+                    QueryResult result = client.getTwitter().search(query);
+                    credentialPool.update(client, result.getRateLimitStatus());
+                    boolean reachedGapStart = false;
+                    for (Status status : result.getTweets()) {
+                        // the next page query is not bounded by the since ID of the first one
+                        if (status.getId() <= sinceId) {
+                            reachedGapStart = true;
+                        } else if (languages.isEmpty() || languages.contains(status.getLang())) {
+                            tweets.add(status);
+                            if (rawJson != null) {
+                                rawJson.put(status.getId(), TwitterObjectFactory.getRawJSON(status));
+                            }
+                        }
+                    }
+                    query = reachedGapStart ? null : result.nextQuery();
+                } catch (TwitterException e) {
+                    metrics.error();
+                    credentialPool.update(client, e);
+                    log.error("Failed to search the tweets missed after tweet " + sinceId + ": " + e.getMessage());
+                    if (!e.exceededRateLimitation()) {
+                        complete = false;
+                        break search;
+                    }
+                }
+            }
+        }
+        if (!complete) {
+            log.warn("Searched " + tweets.size() + " of the tweets missed between tweets " + sinceId + " and " +
+                    untilId + ", hence more of them may be lost, as the search was stopped on the rate limit, a " +
+                    "failure or the limit of " + limit + " tweets.");
+        } else if (log.isDebugEnabled()) {
+            log.debug("Searched " + tweets.size() + " tweets missed between tweets " + sinceId + " and " +
+                    untilId + ".");
+        }
+        tweets.sort(Comparator.comparingLong(Status::getId));
+        emit(tweets, rawJson);
+    }
+
+    private void emit(List<Status> tweets, Map<Long, String> rawJson) {
+        long previousId = 0;
+        int chunkCount = 0;
+        for (Status tweet : tweets) {
+            if (!running) {
+                return;
+            }
+            // a tweet matching the keywords of several queries is found by each of them
+            if (tweet.getId() == previousId) {
+                continue;
+            }
+            previousId = tweet.getId();
+            waitIfPaused();
+            metrics.received();
+            String geoRegion = (tweetFilter == null) ? null : tweetFilter.filter(tweet);
+            if (tweetFilter != null && geoRegion == null) {
+                metrics.filtered();
+                continue;
+            }
+            if (deduplicator != null && deduplicator.isDuplicate(tweet.getId())) {
+                metrics.duplicate();
+                continue;
+            }
+            long mappingStart = metrics.startMapping();
+            if (eventBatcher != null) {
+                Object[] data = statusMapper.createObjectArray(tweet, geoRegion);
+                metrics.endMapping(mappingStart);
+                eventBatcher.add(data);
+            } else {
+                Object event = (rawJson != null) ? rawJson.get(tweet.getId()) :
+                        statusMapper.createEvent(tweet, geoRegion);
+                String[] transportProperties = statusMapper.getTransportProperties(tweet, geoRegion);
+                metrics.endMapping(mappingStart);
+                if (event == null) {
+                    metrics.error();
+                    log.error("Dropped tweet " + tweet.getId() + " as its raw JSON is not available.");
+                    continue;
+                }
+                sourceEventListener.onEvent(event, transportProperties);
+            }
+            metrics.emitted();
+            metrics.backfilled();
+            if (++chunkCount == EMIT_CHUNK_SIZE) {
+                chunkCount = 0;
+                if (eventBatcher != null) {
+                    eventBatcher.flush();
+                }
+                sleep(EMIT_CHUNK_INTERVAL_MILLIS);
+            }
+        }
+        if (eventBatcher != null) {
+            eventBatcher.flush();
+        }
+    }
+
+    private void waitIfPaused() {
+        if (paused) { //spurious wakeup condition is deliberately traded off for performance
+            lock.lock();
+            try {
+                while (paused) {
+                    condition.await();
+                }
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.extension.siddhi.io.twitter.source;
+
+import org.wso2.extension.siddhi.io.twitter.util.TwitterConstants;
+import twitter4j.GeoLocation;
+import twitter4j.Place;
+import twitter4j.Status;
+import twitter4j.URLEntity;
+import twitter4j.UserMentionEntity;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * The streaming filter of a source sharing a connection through the {@link TwitterStreamMultiplexer}, which picks
+ * the Tweets of the source among those received for all the sources. A Tweet matches when it contains all the words
+ * of one of the track phrases, is related to one of the followed users or is located in one of the location boxes,
+ * and is in one of the languages, if any are given, as done by the filter endpoint. A source given none of track,
+ * follow or location shares the sample stream, of which it receives every Tweet.
+ */
+public class StreamSubscription {
+    private final String trackParam;
+    private final long[] follow;
+    private final double[][] locations;
+    // words of each track phrase, lower cased
+    private final List<String[]> phrases = new ArrayList<>();
+    private final Set<Long> followSet = new HashSet<>();
+    private final Set<String> languages = new HashSet<>();
+    private final TwitterStatusListener listener;
+
+    /**
+     * Creates the subscription of a source.
+     *
+     * @param trackParam    - comma separated track phrases, or an empty string
+     * @param follow        - IDs of the followed users, or null
+     * @param locations     - south-west and north-east corners of the location boxes, as [longitude, latitude], or
+     *                      null
+     * @param languageParam - comma separated languages, or an empty string for any language
+     * @param listener      - listener of the source, to which the matching Tweets are passed
+     */
+    public StreamSubscription(String trackParam, long[] follow, double[][] locations, String languageParam,
+                              TwitterStatusListener listener) {
+        this.trackParam = trackParam;
+        this.follow = follow;
+        this.locations = locations;
+        this.listener = listener;
+        for (String phrase : trackParam.split(TwitterConstants.DELIMITER)) {
+            List<String> words = new ArrayList<>();
+            addWords(phrase, words);
+            if (!words.isEmpty()) {
+                phrases.add(words.toArray(new String[0]));
+            }
+        }
+        if (follow != null) {
+            for (long userId : follow) {
+                followSet.add(userId);
+            }
+        }
+        for (String language : languageParam.split(TwitterConstants.DELIMITER)) {
+            if (!language.trim().isEmpty()) {
+                languages.add(language.trim());
+            }
+        }
+    }
+
+    /**
+     * Tells whether the Tweet is one of those the source would receive on a connection of its own.
+     *
+     * @param status - received status
+     * @param words  - words of the status, as given by {@link #getWords(Status)}, or null if no subscription tracks
+     *               any phrase
+     * @return true if the status matches the filter of the source
+     */
+    public boolean matches(Status status, Set<String> words) {
+        if (isSample()) {
+            return true;
+        }
+        if (!languages.isEmpty() && !languages.contains(status.getLang())) {
+            return false;
+        }
+        return matchesTrack(words) || matchesFollow(status) || matchesLocations(status);
+    }
+
+    /**
+     * Returns the lower cased words of the text, mentions and URLs of a Tweet, in which the track phrases are
+     * looked up.
+     *
+     * @param status - received status
+     * @return words of the status
+     */
+    public static Set<String> getWords(Status status) {
+        List<String> words = new ArrayList<>();
+        addWords(status.getText(), words);
+        UserMentionEntity[] mentions = status.getUserMentionEntities();
+        if (mentions != null) {
+            for (UserMentionEntity mention : mentions) {
+                addWords(mention.getScreenName(), words);
+            }
+        }
+        URLEntity[] urls = status.getURLEntities();
+        if (urls != null) {
+            for (URLEntity url : urls) {
+                addWords(url.getExpandedURL(), words);
+            }
+        }
+        return new HashSet<>(words);
+    }
+
+    public boolean isSample() {
+        return phrases.isEmpty() && followSet.isEmpty() && locations == null;
+    }
+
+    public boolean hasTrack() {
+        return !phrases.isEmpty();
+    }
+
+    public String getTrackParam() {
+        return trackParam;
+    }
+
+    public long[] getFollow() {
+        return follow;
+    }
+
+    public double[][] getLocations() {
+        return locations;
+    }
+
+    /**
+     * Returns the languages the Tweets of the source are restricted to.
+     *
+     * @return languages, or an empty set for any language
+     */
+    public Set<String> getLanguages() {
+        return Collections.unmodifiableSet(languages);
+    }
+
+    public TwitterStatusListener getListener() {
+        return listener;
+    }
+
+    private boolean matchesTrack(Set<String> words) {
+        if (words == null) {
+            return false;
+        }
+        for (String[] phrase : phrases) {
+            boolean found = true;
+            for (String word : phrase) {
+                if (!words.contains(word)) {
+                    found = false;
+                    break;
+                }
+            }
+            if (found) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Tells whether the Tweet is posted by, replies to or retweets one of the followed users.
+     */
+    private boolean matchesFollow(Status status) {
+        if (followSet.isEmpty()) {
+            return false;
+        }
+        return (status.getUser() != null && followSet.contains(status.getUser().getId())) ||
+                followSet.contains(status.getInReplyToUserId()) ||
+                (status.getRetweetedStatus() != null && status.getRetweetedStatus().getUser() != null &&
+                        followSet.contains(status.getRetweetedStatus().getUser().getId()));
+    }
+
+    /**
+     * Tells whether the exact location of the Tweet is in one of the boxes, or else whether the bounding box of its
+     * place overlaps one of them.
+     */
+    private boolean matchesLocations(Status status) {
+        if (locations == null) {
+            return false;
+        }
+        GeoLocation geoLocation = status.getGeoLocation();
+        Place place = status.getPlace();
+        if (geoLocation == null && (place == null || place.getBoundingBoxCoordinates() == null)) {
+            return false;
+        }
+        double west;
+        double south;
+        double east;
+        double north;
+        if (geoLocation != null) {
+            west = geoLocation.getLongitude();
+            east = west;
+            south = geoLocation.getLatitude();
+            north = south;
+        } else {
+            west = Double.MAX_VALUE;
+            south = Double.MAX_VALUE;
+            east = -Double.MAX_VALUE;
+            north = -Double.MAX_VALUE;
+            for (GeoLocation[] ring : place.getBoundingBoxCoordinates()) {
+                for (GeoLocation point : ring) {
+                    west = Math.min(west, point.getLongitude());
+                    east = Math.max(east, point.getLongitude());
+                    south = Math.min(south, point.getLatitude());
+                    north = Math.max(north, point.getLatitude());
+                }
+            }
+        }
+        for (int i = 0; i + 1 < locations.length; i += 2) {
+            if (west <= locations[i + 1][0] && east >= locations[i][0] &&
+                    south <= locations[i + 1][1] && north >= locations[i][1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Splits a text into lower cased words, which are made of letters, digits and underscores, so that hashtags
+     * and mentions give the word they are made of.
+     */
+    private static void addWords(String text, List<String> words) {
+        if (text == null) {
+            return;
+        }
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean isWordChar = i < text.length() &&
+                    (Character.isLetterOrDigit(text.charAt(i)) || text.charAt(i) == '_');
+            if (isWordChar && start == -1) {
+                start = i;
+            } else if (!isWordChar && start != -1) {
+                words.add(text.substring(start, i).toLowerCase(Locale.ENGLISH));
+                start = -1;
+            }
+        }
+    }
+}
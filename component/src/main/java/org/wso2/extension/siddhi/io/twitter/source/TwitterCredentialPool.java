@@ -0,0 +1,239 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.extension.siddhi.io.twitter.source;
+
+import twitter4j.RateLimitStatus;
+import twitter4j.Twitter;
+import twitter4j.TwitterException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Spreads the search requests over the clients of several credentials, each of which has its own rate limit
+ * window. The client with the most requests remaining is handed out, and clients which have used up their window
+ * are skipped until it is reset.
+ * <p>
+ * The requests of each client are paced by a token bucket, which is refilled at the rate spreading the requests
+ * remaining in the window evenly until it is reset. Hence a busy query uses up the window gradually rather than
+ * at once, and callers are told how long to wait for a token instead of waiting for it.
+ */
+public class TwitterCredentialPool {
+    private static final String SEARCH_ENDPOINT = "/search/tweets";
+    // length of the rate limit window, assumed when a rejected request does not tell when it is reset
+    private static final long RATE_LIMIT_WINDOW_MILLIS = 15 * 60 * 1000;
+    // requests a client can send in a burst, e.g., for the pages of a poll
+    private static final int BUCKET_CAPACITY = 10;
+    private final List<Client> clients = new ArrayList<>();
+    private final TwitterSourceMetrics metrics;
+    private int nextIndex;
+
+    /**
+     * Creates an empty pool.
+     *
+     * @param metrics - collects the rate limits of the clients
+     */
+    TwitterCredentialPool(TwitterSourceMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Adds the client of a set of credentials.
+     *
+     * @param name    - name of the credentials which can be logged
+     * @param twitter - client authenticated with the credentials
+     */
+    synchronized void add(String name, Twitter twitter) {
+        clients.add(new Client(name, twitter));
+    }
+
+    /**
+     * Hands out the client with the most requests remaining in its window among those having a token, taking the
+     * clients in turn when they are equal.
+     *
+     * @return a client which can send a request, or null if none of them has a token
+     */
+    synchronized Client acquire() {
+        long now = System.currentTimeMillis();
+        Client selected = null;
+        int selectedIndex = 0;
+        for (int i = 0; i < clients.size(); i++) {
+            int index = (nextIndex + i) % clients.size();
+            Client client = clients.get(index);
+            if (client.getMillisUntilToken(now) == 0 &&
+                    (selected == null || client.getRemaining(now) > selected.getRemaining(now))) {
+                selected = client;
+                selectedIndex = index;
+            }
+        }
+        if (selected != null) {
+            nextIndex = (selectedIndex + 1) % clients.size();
+            selected.tokens--;
+            if (selected.remaining > 0) {
+                // accounts for the request until its response tells the actual remaining count
+                selected.remaining--;
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * Records the rate limit returned with the response of a client.
+     *
+     * @param client          - client which sent the request
+     * @param rateLimitStatus - rate limit of the response, or null if it was not given
+     */
+    synchronized void update(Client client, RateLimitStatus rateLimitStatus) {
+        if (rateLimitStatus == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        client.refill(now);
+        client.remaining = rateLimitStatus.getRemaining();
+        client.resetTime = rateLimitStatus.getResetTimeInSeconds() * 1000L;
+        client.tokensPerMilli = client.remaining / (double) Math.max(1, client.resetTime - now);
+        client.tokens = Math.max(0, Math.min(client.tokens, client.remaining));
+        metrics.rateLimit(getEndpointName(client), rateLimitStatus.getRemaining(),
+                rateLimitStatus.getResetTimeInSeconds());
+    }
+
+    /**
+     * Records a failed request of a client, which is skipped until its window is reset if it was rate limited.
+     *
+     * @param client    - client which sent the request
+     * @param exception - failure of the request
+     */
+    synchronized void update(Client client, TwitterException exception) {
+        update(client, exception.getRateLimitStatus());
+        if (exception.exceededRateLimitation()) {
+            long now = System.currentTimeMillis();
+            client.remaining = 0;
+            client.tokens = 0;
+            if (client.resetTime <= now) {
+                client.resetTime = now + RATE_LIMIT_WINDOW_MILLIS;
+            }
+        }
+    }
+
+    /**
+     * Returns the time until the first client can send a request again.
+     *
+     * @return milliseconds until a client gets a token, or 0 if a client can send a request now
+     */
+    synchronized long getMillisUntilAvailable() {
+        long now = System.currentTimeMillis();
+        long millis = Long.MAX_VALUE;
+        for (Client client : clients) {
+            millis = Math.min(millis, client.getMillisUntilToken(now));
+        }
+        return millis;
+    }
+
+    /**
+     * Returns the number of requests the clients can send until their windows are reset.
+     *
+     * @return total of the remaining requests, or Integer.MAX_VALUE if the window of a client is not known
+     */
+    synchronized int getRemainingRequests() {
+        long now = System.currentTimeMillis();
+        long remaining = 0;
+        for (Client client : clients) {
+            remaining += client.getRemaining(now);
+        }
+        return (int) Math.min(Integer.MAX_VALUE, remaining);
+    }
+
+    /**
+     * Returns the time until the last of the known windows is reset.
+     *
+     * @return milliseconds until the windows are reset, or 0 if none of them is known
+     */
+    synchronized long getMillisUntilReset() {
+        long now = System.currentTimeMillis();
+        long resetTime = now;
+        for (Client client : clients) {
+            if (client.getRemaining(now) != Integer.MAX_VALUE) {
+                resetTime = Math.max(resetTime, client.resetTime);
+            }
+        }
+        return resetTime - now;
+    }
+
+    int size() {
+        return clients.size();
+    }
+
+    private String getEndpointName(Client client) {
+        return (clients.size() == 1) ? SEARCH_ENDPOINT : SEARCH_ENDPOINT + "@" + client.name;
+    }
+
+    /**
+     * Client of a set of credentials, with the rate limit last returned to it and its token bucket.
+     */
+    static class Client {
+        private final String name;
+        private final Twitter twitter;
+        // negative until the first response tells the rate limit
+        private int remaining = -1;
+        private long resetTime;
+        private double tokens = BUCKET_CAPACITY;
+        private double tokensPerMilli;
+        private long refillTime;
+
+        private Client(String name, Twitter twitter) {
+            this.name = name;
+            this.twitter = twitter;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        Twitter getTwitter() {
+            return twitter;
+        }
+
+        private int getRemaining(long now) {
+            return (remaining < 0 || resetTime <= now) ? Integer.MAX_VALUE : remaining;
+        }
+
+        private void refill(long now) {
+            if (remaining >= 0 && resetTime <= now) {
+                // a new window starts with a full bucket
+                remaining = -1;
+                tokens = BUCKET_CAPACITY;
+            } else if (remaining >= 0) {
+                tokens = Math.min(Math.min(BUCKET_CAPACITY, remaining),
+                        tokens + (now - refillTime) * tokensPerMilli);
+            }
+            refillTime = now;
+        }
+
+        private long getMillisUntilToken(long now) {
+            refill(now);
+            // requests are not paced until a response tells the rate limit
+            if (tokens >= 1 || remaining < 0) {
+                return 0;
+            }
+            if (remaining == 0 || tokensPerMilli == 0) {
+                return resetTime - now;
+            }
+            return Math.min(resetTime - now, (long) Math.ceil((1 - tokens) / tokensPerMilli));
+        }
+    }
+}
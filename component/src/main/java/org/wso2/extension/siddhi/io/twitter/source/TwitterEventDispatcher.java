@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.extension.siddhi.io.twitter.source;
+
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.Consumer;
+
+/**
+ * Hands tweets off from the twitter4j dispatch thread to a pool of workers which map and emit them.
+ * Each worker has its own bounded buffer and tweets are routed by a key such as the user id, so tweets with the
+ * same key are emitted in the order they were received. When a buffer fills up faster than its worker emits, the
+ * {@link OverloadPolicy} tells whether dispatching waits for room or sheds tweets to keep reading the stream.
+ * Tweets can be dispatched from more than one thread, as the overload state of each buffer is updated atomically.
+ *
+ * @param <T> type of the dispatched tweets
+ */
+public class TwitterEventDispatcher<T> {
+    private static final Logger log = Logger.getLogger(TwitterEventDispatcher.class);
+    private final List<BlockingQueue<T>> buffers;
+    // 1 while the buffer of the worker at the same index is overloaded
+    private final AtomicIntegerArray overloaded;
+    private final Consumer<T> emitter;
+    private final String name;
+    private final OverloadPolicy overloadPolicy;
+    private final int bufferSize;
+    private final int highWatermark;
+    private final int lowWatermark;
+    private final TwitterSourceMetrics metrics;
+    private ExecutorService executorService;
+    private volatile boolean running;
+
+    /**
+     * Creates a dispatcher, which needs to be started before tweets are dispatched.
+     *
+     * @param name           - name used for the worker threads
+     * @param workerCount    - number of workers mapping and emitting tweets
+     * @param bufferSize     - number of tweets each worker can buffer
+     * @param overloadPolicy - what is done with the tweets dispatched to an overloaded buffer
+     * @param emitter        - maps and emits a tweet, called on the worker threads
+     * @param metrics        - collects the shed tweets
+     */
+    TwitterEventDispatcher(String name, int workerCount, int bufferSize, OverloadPolicy overloadPolicy,
+                           Consumer<T> emitter, TwitterSourceMetrics metrics) {
+        this.name = name;
+        this.emitter = emitter;
+        this.overloadPolicy = overloadPolicy;
+        this.bufferSize = bufferSize;
+        this.highWatermark = overloadPolicy.getHighWatermark(bufferSize);
+        this.lowWatermark = overloadPolicy.getLowWatermark(bufferSize);
+        this.metrics = metrics;
+        this.overloaded = new AtomicIntegerArray(workerCount);
+        this.buffers = new ArrayList<>(workerCount);
+        for (int i = 0; i < workerCount; i++) {
+            buffers.add(new ArrayBlockingQueue<>(bufferSize));
+        }
+    }
+
+    public void start() {
+        AtomicInteger threadCount = new AtomicInteger();
+        running = true;
+        executorService = Executors.newFixedThreadPool(buffers.size(), runnable -> {
+            Thread thread = new Thread(runnable, name + "-worker-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (BlockingQueue<T> buffer : buffers) {
+            executorService.execute(() -> consume(buffer));
+        }
+    }
+
+    /**
+     * Buffers the tweet for the worker assigned to its key. While that worker's buffer is overloaded, the tweet
+     * is handled by the overload policy, which blocks until there is room or sheds a tweet.
+     *
+     * @param key   - key routing the tweet, such as its user id
+     * @param tweet - tweet to be dispatched
+     */
+    public void dispatch(long key, T tweet) {
+        int index = (Long.hashCode(key) & Integer.MAX_VALUE) % buffers.size();
+        BlockingQueue<T> buffer = buffers.get(index);
+        int size = buffer.size();
+        if (size >= highWatermark && overloaded.compareAndSet(index, 0, 1)) {
+            metrics.overloaded();
+            if (log.isDebugEnabled()) {
+                log.debug("Buffer of " + name + "-worker-" + (index + 1) + " is overloaded with " + size +
+                        " tweets, applying the " + overloadPolicy.getType() + " policy.");
+            }
+        } else if (size <= lowWatermark) {
+            overloaded.compareAndSet(index, 1, 0);
+        }
+        if (overloaded.get(index) == 1) {
+            switch (overloadPolicy.getType()) {
+                case DROP_NEWEST:
+                    metrics.shed();
+                    return;
+                case DROP_OLDEST:
+                    if (buffer.poll() != null) {
+                        metrics.shed();
+                    }
+                    break;
+                case SAMPLE:
+                    double keepProbability = (bufferSize - size) / (double) Math.max(1, bufferSize - lowWatermark);
+                    if (ThreadLocalRandom.current().nextDouble() >= keepProbability) {
+                        metrics.shed();
+                        return;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        if (overloadPolicy.getType() != OverloadPolicy.Type.BLOCK) {
+            // the worker may not have taken a tweet since the buffer was found overloaded
+            if (!buffer.offer(tweet)) {
+                metrics.shed();
+            }
+            return;
+        }
+        try {
+            buffer.put(tweet);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("Thread was interrupted while dispatching a tweet with key " + key, e);
+        }
+    }
+
+    /**
+     * Returns the number of tweets waiting in the buffers of all workers.
+     *
+     * @return number of buffered tweets
+     */
+    public int getBufferedCount() {
+        int count = 0;
+        for (BlockingQueue<T> buffer : buffers) {
+            count += buffer.size();
+        }
+        return count;
+    }
+
+    public void shutdown() {
+        running = false;
+        if (executorService != null) {
+            executorService.shutdownNow();
+        }
+    }
+
+    private void consume(BlockingQueue<T> buffer) {
+        while (running) {
+            try {
+                emitter.accept(buffer.take());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("Failed to emit tweet in " + Thread.currentThread().getName(), e);
+            }
+        }
+    }
+}
@@ -19,107 +19,281 @@ package org.wso2.extension.siddhi.io.twitter.source;
 
 import io.siddhi.core.stream.input.source.SourceEventListener;
 import org.apache.log4j.Logger;
-import org.wso2.extension.siddhi.io.twitter.util.Util;
+import org.wso2.extension.siddhi.io.twitter.util.StatusMapper;
+import org.wso2.extension.siddhi.io.twitter.util.TweetFilter;
+import org.wso2.extension.siddhi.io.twitter.util.TweetIdDeduplicator;
 import twitter4j.Query;
 import twitter4j.QueryResult;
 import twitter4j.Status;
-import twitter4j.Twitter;
 import twitter4j.TwitterException;
+import twitter4j.TwitterObjectFactory;
 
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.ReentrantLock;
 
 /**
- * This class is for polling tweets continuously.
+ * This class is for polling tweets continuously. A poll never blocks the thread running it: it stops when every
+ * credential has used up its rate limit or when the source is paused, and the next run carries on from where it
+ * stopped.
  */
 public class TwitterPoller implements Runnable {
     private static final Logger log = Logger.getLogger(TwitterPoller.class);
-    private boolean paused;
-    private boolean isKilled = false;
-    private ReentrantLock lock = new ReentrantLock();
-    private Condition condition = lock.newCondition();
-    private Twitter twitter;
+    private volatile boolean paused;
+    private volatile boolean isKilled = false;
+    private TwitterCredentialPool credentialPool;
     private Query query;
-    private QueryResult result;
+    private int maxPagesPerRun;
+    // page of the current poll to be searched next, or null if the poll searched its last page
+    private Query pageQuery;
+    private List<Status> pendingTweets;
+    // raw JSON of the pending tweets, taken when the page is searched as twitter4j only keeps that of the latest
+    // response of each thread, or null if the tweets are not emitted as raw JSON
+    private List<String> pendingJson;
+    private int pendingIndex;
     private SourceEventListener sourceEventListener;
-    long tweetId = -1;
+    private StatusMapper statusMapper;
+    private EventBatcher eventBatcher;
+    private TweetFilter tweetFilter;
+    private TweetIdDeduplicator deduplicator;
+    private TwitterSourceMetrics metrics;
+    private volatile long tweetId;
+    // oldest tweet emitted by the current poll, from which the poll is carried on when restored
+    private volatile long oldestTweetId = Long.MAX_VALUE;
+    private int pollTweetCount;
+    private int pollPageCount;
+    private boolean rateLimited;
+    private boolean failed;
 
     /**
      * Handles polling in a different thread.
      *
-     * @param twitter             - twitter instance
+     * @param credentialPool      - clients of the credentials the searches are spread over
      * @param query               - specifies a query
+     * @param maxPagesPerRun      - number of pages after which a run stops to let other queries run, or 0 to
+     *                              search every page of a poll in one run
      * @param sourceEventListener - listens events
+     * @param statusMapper        - converts tweets into events
+     * @param eventBatcher        - batches positional events, or null to emit each event on its own
+     * @param tweetFilter         - drops tweets which are not of interest, or null to emit every tweet
+     * @param deduplicator        - drops tweets which were already received, or null to emit every tweet
+     * @param metrics             - collects the runtime metrics of the source
      */
-    TwitterPoller(Twitter twitter, Query query, SourceEventListener sourceEventListener) {
-        this.twitter = twitter;
+    TwitterPoller(TwitterCredentialPool credentialPool, Query query, int maxPagesPerRun,
+                  SourceEventListener sourceEventListener, StatusMapper statusMapper, EventBatcher eventBatcher,
+                  TweetFilter tweetFilter, TweetIdDeduplicator deduplicator, TwitterSourceMetrics metrics) {
+        this.credentialPool = credentialPool;
         this.query = query;
+        this.maxPagesPerRun = maxPagesPerRun;
         this.sourceEventListener = sourceEventListener;
+        this.statusMapper = statusMapper;
+        this.eventBatcher = eventBatcher;
+        this.tweetFilter = tweetFilter;
+        this.deduplicator = deduplicator;
+        this.metrics = metrics;
+        this.tweetId = query.getSinceId();
     }
 
+    /**
+     * Searches the pages of tweets newer than the last poll, or carries on with the poll which was stopped.
+     */
     @Override
     public void run() {
-        Map<String, Object> event;
-        boolean isLatestId = true;
-        do {
+        int runPageCount = 0;
+        long pollStart = System.currentTimeMillis();
+        rateLimited = false;
+        failed = false;
+        if (pageQuery == null && pendingTweets == null) {
+            pageQuery = query;
+            pollTweetCount = 0;
+            pollPageCount = 0;
+        }
+        while (!isKilled) {
+            if (pendingTweets != null && !emitPendingTweets()) {
+                break;
+            }
+            if (pageQuery == null) {
+                query.setSinceId(tweetId);
+                query.setMaxId(-1);
+                oldestTweetId = Long.MAX_VALUE;
+                break;
+            }
+            if (paused || (maxPagesPerRun > 0 && runPageCount == maxPagesPerRun)) {
+                break;
+            }
+            TwitterCredentialPool.Client client = credentialPool.acquire();
+            if (client == null) {
+                if (log.isDebugEnabled()) {
+                    log.debug("The search rate limit of all credentials is used up, hence polling is stopped " +
+                            "for " + credentialPool.getMillisUntilAvailable() + " ms.");
+                }
+                rateLimited = true;
+                break;
+            }
             try {
-                if (isKilled) {
-                    Thread.currentThread().interrupt();
+                QueryResult result = client.getTwitter().search(pageQuery);
+                credentialPool.update(client, result.getRateLimitStatus());
+                pendingTweets = result.getTweets();
+                pendingJson = statusMapper.isRawJson() ? getRawJson(pendingTweets) : null;
+                pendingIndex = 0;
+                pollTweetCount += pendingTweets.size();
+                pollPageCount++;
+                runPageCount++;
+                // the next page is requested as given by the response, which ignores any other field set on it
+                pageQuery = result.nextQuery();
+            } catch (TwitterException te) {
+                metrics.error();
+                credentialPool.update(client, te);
+                log.error("Failed to search tweets with the credentials of " + client.getName() + ": " +
+                        te.getMessage());
+                if (!te.exceededRateLimitation()) {
+                    // the page is searched again by the next poll, rather than by the next credentials
+                    failed = true;
+                    break;
                 }
-                result = twitter.search(query);
-                List<Status> tweets = result.getTweets();
-                for (Status tweet : tweets) {
-                    event = Util.createMap(tweet);
-                    if (isLatestId) {
-                        tweetId = tweet.getId();
-                        isLatestId = false;
-                    }
-                    if (paused) { //spurious wakeup condition is deliberately traded off for performance
-                        lock.lock();
-                        try {
-                            while (paused) {
-                                condition.await();
-                            }
-                        } catch (InterruptedException ie) {
-                            Thread.currentThread().interrupt();
-                        } finally {
-                            lock.unlock();
-                        }
-                    }
-                    sourceEventListener.onEvent(event, null);
+            }
+        }
+        metrics.polled(System.currentTimeMillis() - pollStart);
+    }
+
+    /**
+     * Emits the rest of the searched page, stopping if the source is paused.
+     *
+     * @return true if every tweet of the page was emitted
+     */
+    private boolean emitPendingTweets() {
+        Object event;
+        try {
+            while (pendingIndex < pendingTweets.size()) {
+                if (paused) {
+                    return false;
+                }
+                String json = (pendingJson != null) ? pendingJson.get(pendingIndex) : null;
+                Status tweet = pendingTweets.get(pendingIndex++);
+                // pages are returned newest first, and a poll may stop and carry on between pages
+                tweetId = Math.max(tweetId, tweet.getId());
+                oldestTweetId = Math.min(oldestTweetId, tweet.getId());
+                metrics.received();
+                String geoRegion = (tweetFilter == null) ? null : tweetFilter.filter(tweet);
+                if (tweetFilter != null && geoRegion == null) {
+                    metrics.filtered();
+                    continue;
+                }
+                if (deduplicator != null && deduplicator.isDuplicate(tweet.getId())) {
+                    metrics.duplicate();
+                    continue;
                 }
-                if (result.nextQuery() != null) {
-                    query = result.nextQuery();
+                long mappingStart = metrics.startMapping();
+                if (eventBatcher != null) {
+                    Object[] data = statusMapper.createObjectArray(tweet, geoRegion);
+                    metrics.endMapping(mappingStart);
+                    eventBatcher.add(data);
+                    metrics.emitted();
                 } else {
-                    query.setSinceId(tweetId);
-                    query.setMaxId(-1);
+                    event = statusMapper.isRawJson() ? json : statusMapper.createEvent(tweet, geoRegion);
+                    String[] transportProperties = statusMapper.getTransportProperties(tweet, geoRegion);
+                    metrics.endMapping(mappingStart);
+                    if (event != null) {
+                        sourceEventListener.onEvent(event, transportProperties);
+                        metrics.emitted();
+                    } else {
+                        metrics.error();
+                        log.error("Dropped tweet " + tweet.getId() + " as its raw JSON is not available.");
+                    }
                 }
-                checkRateLimit(result);
-            } catch (TwitterException te) {
-                log.error("Failed to search tweets: " + te.getMessage());
             }
-        } while (result.nextQuery() != null);
+            pendingTweets = null;
+            pendingJson = null;
+            return true;
+        } finally {
+            if (eventBatcher != null) {
+                eventBatcher.flush();
+            }
+        }
+    }
+
+    /**
+     * Takes the raw JSON of the tweets of a page, which needs to be done on the thread which searched it, before
+     * any other request is sent.
+     */
+    private static List<String> getRawJson(List<Status> tweets) {
+        List<String> json = new ArrayList<>(tweets.size());
+        for (Status tweet : tweets) {
+            json.add(TwitterObjectFactory.getRawJSON(tweet));
+        }
+        return json;
     }
 
     /**
-     * Checks the number of the remaining requests within window and wait
-     * until window will be reset.
+     * Returns the position of the query, which is persisted with the state of the source.
      *
-     * @param result - Results of the specified Query.
+     * @return since_id of the query, max_id from which the current poll is carried on or -1, and the newest
+     * tweet ID emitted
      */
-    private void checkRateLimit(QueryResult result) {
-        if (result.getRateLimitStatus().getRemaining() <= 0) {
-            try {
-                Thread.sleep(result.getRateLimitStatus().getSecondsUntilReset());
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                log.error("Thread was interrupted during wait : " + e);
-            }
+    long[] getCursor() {
+        long oldestId = oldestTweetId;
+        return new long[]{query.getSinceId(), (oldestId == Long.MAX_VALUE) ? -1 : oldestId - 1, tweetId};
+    }
+
+    /**
+     * Restores the position of the query before it is polled, carrying on the poll which was in progress.
+     *
+     * @param cursor - value returned by {@link #getCursor()}
+     */
+    void restoreCursor(long[] cursor) {
+        query.setSinceId(cursor[0]);
+        tweetId = cursor[2];
+        if (cursor[1] > 0) {
+            query.setMaxId(cursor[1]);
+            pageQuery = query;
+            oldestTweetId = cursor[1] + 1;
         }
     }
 
+    /**
+     * Returns the number of tweets searched by the current poll, over the runs it took.
+     *
+     * @return number of tweets of the searched pages
+     */
+    int getPollTweetCount() {
+        return pollTweetCount;
+    }
+
+    int getPollPageCount() {
+        return pollPageCount;
+    }
+
+    /**
+     * Tells whether the last run stopped as every credential had used up its rate limit, with pages of the poll
+     * left to be searched.
+     *
+     * @return true if the poll needs to be carried on once a credential can send a request
+     */
+    boolean isRateLimited() {
+        return rateLimited;
+    }
+
+    /**
+     * Tells whether the last run stopped on a failed search, which is retried by the next poll.
+     *
+     * @return true if the search failed for a reason other than the rate limit
+     */
+    boolean isFailed() {
+        return failed;
+    }
+
+    /**
+     * Tells whether the last run stopped before the poll was complete.
+     *
+     * @return true if pages or tweets of the poll are left
+     */
+    boolean isPollInProgress() {
+        return pageQuery != null || pendingTweets != null;
+    }
+
+    boolean isPaused() {
+        return paused;
+    }
+
     public void pause() {
         paused = true;
     }
@@ -130,11 +304,5 @@ public class TwitterPoller implements Runnable {
 
     public void resume() {
         paused = false;
-        try {
-            lock.lock();
-            condition.signalAll();
-        } finally {
-            lock.unlock();
-        }
     }
 }
@@ -0,0 +1,350 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.extension.siddhi.io.twitter.source;
+
+import io.siddhi.core.stream.input.source.SourceEventListener;
+import org.apache.log4j.Logger;
+import org.wso2.extension.siddhi.io.twitter.util.StatusMapper;
+import org.wso2.extension.siddhi.io.twitter.util.TweetAttribute;
+import org.wso2.extension.siddhi.io.twitter.util.TweetFields;
+import org.wso2.extension.siddhi.io.twitter.util.TweetFilter;
+import org.wso2.extension.siddhi.io.twitter.util.TweetIdDeduplicator;
+import org.wso2.extension.siddhi.io.twitter.util.TweetJsonDecoder;
+import org.wso2.extension.siddhi.io.twitter.util.Util;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Set;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Replays tweets recorded as newline delimited JSON, as received from the streaming API. Plain files are memory
+ * mapped, while gzip compressed files are read through a large buffer. Tweets are emitted either as fast as
+ * possible or paced by the creation time encoded in their IDs, scaled by the replay speed.
+ */
+public class TwitterReplayer implements Runnable {
+    private static final Logger log = Logger.getLogger(TwitterReplayer.class);
+    private static final long MAPPED_WINDOW_SIZE = 64L * 1024 * 1024;
+    private static final int COMPRESSED_BUFFER_SIZE = 1024 * 1024;
+    private static final int INITIAL_LINE_SIZE = 64 * 1024;
+    private final Path file;
+    private final double speed;
+    private final SourceEventListener sourceEventListener;
+    private final StatusMapper statusMapper;
+    private final EventBatcher eventBatcher;
+    private final TweetFilter tweetFilter;
+    private final TweetIdDeduplicator deduplicator;
+    private final TwitterSourceMetrics metrics;
+    private final TweetJsonDecoder decoder;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition condition = lock.newCondition();
+    private byte[] line = new byte[INITIAL_LINE_SIZE];
+    private long firstTweetTime = -1;
+    private long firstEmitTime;
+    private volatile long offset;
+    private volatile boolean paused;
+    private volatile boolean running = true;
+
+    /**
+     * Creates a replayer of a recorded file.
+     *
+     * @param file                - file holding one tweet JSON per line, optionally gzip compressed
+     * @param speed               - replay speed relative to the time the tweets were created, or 0 to replay
+     *                              as fast as possible
+     * @param offset              - offset of the line to start from, in bytes of the uncompressed content
+     * @param sourceEventListener - listens events
+     * @param statusMapper        - converts the decoded tweets into events
+     * @param eventBatcher        - batches positional events, or null to emit each event on its own
+     * @param tweetFilter         - drops tweets which are not of interest, or null to emit every tweet
+     * @param deduplicator        - drops tweets which were already received, or null to emit every tweet
+     * @param metrics             - collects the runtime metrics of the source
+     */
+    TwitterReplayer(Path file, double speed, long offset, SourceEventListener sourceEventListener,
+                    StatusMapper statusMapper, EventBatcher eventBatcher, TweetFilter tweetFilter,
+                    TweetIdDeduplicator deduplicator, TwitterSourceMetrics metrics) {
+        this.file = file;
+        this.speed = speed;
+        this.offset = offset;
+        this.sourceEventListener = sourceEventListener;
+        this.statusMapper = statusMapper;
+        this.eventBatcher = eventBatcher;
+        this.tweetFilter = tweetFilter;
+        this.deduplicator = deduplicator;
+        this.metrics = metrics;
+        Set<TweetAttribute> decodedAttributes = statusMapper.getRequiredAttributes();
+        if (tweetFilter != null) {
+            decodedAttributes.addAll(tweetFilter.getRequiredAttributes());
+        }
+        this.decoder = new TweetJsonDecoder(decodedAttributes);
+    }
+
+    @Override
+    public void run() {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (isCompressed(channel)) {
+                try (InputStream inputStream = new GZIPInputStream(new FileInputStream(file.toFile()),
+                        COMPRESSED_BUFFER_SIZE)) {
+                    replayCompressed(inputStream);
+                }
+            } else {
+                replayMapped(channel);
+            }
+            if (running) {
+                log.info("Finished replaying tweets from " + file);
+            }
+        } catch (IOException e) {
+            log.error("Failed to replay tweets from " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Returns the offset of the next line to be replayed, in bytes of the uncompressed content.
+     *
+     * @return replay offset
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    public void shutdown() {
+        running = false;
+        resume();
+    }
+
+    public void pause() {
+        paused = true;
+    }
+
+    public void resume() {
+        paused = false;
+        try {
+            lock.lock();
+            condition.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reads the file through windows mapped into memory, remapping from the start of the current line when a line
+     * crosses the end of a window.
+     */
+    private void replayMapped(FileChannel channel) throws IOException {
+        long size = channel.size();
+        while (running && offset < size) {
+            long windowStart = offset;
+            long windowSize = Math.min(MAPPED_WINDOW_SIZE, size - windowStart);
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, windowSize);
+            int lineStart = 0;
+            for (int i = 0; running && i < windowSize; i++) {
+                if (window.get(i) == '\n') {
+                    if (!handleLine(window, lineStart, i - lineStart, windowStart + i + 1)) {
+                        return;
+                    }
+                    lineStart = i + 1;
+                }
+            }
+            if (windowStart + windowSize == size && lineStart < windowSize && running) {
+                // the last line need not be terminated by a new line
+                handleLine(window, lineStart, (int) windowSize - lineStart, size);
+            } else if (lineStart == 0 && running) {
+                throw new IOException("Line at offset " + windowStart + " is longer than " + MAPPED_WINDOW_SIZE +
+                        " bytes.");
+            }
+        }
+    }
+
+    private boolean handleLine(ByteBuffer window, int start, int length, long nextOffset) {
+        if (length > line.length) {
+            line = new byte[Math.max(length, line.length * 2)];
+        }
+        window.position(start);
+        window.get(line, 0, length);
+        if (!handleLine(line, 0, length)) {
+            return false;
+        }
+        offset = nextOffset;
+        return true;
+    }
+
+    private void replayCompressed(InputStream inputStream) throws IOException {
+        long skipped = 0;
+        while (skipped < offset) {
+            long count = inputStream.skip(offset - skipped);
+            if (count <= 0) {
+                return;
+            }
+            skipped += count;
+        }
+        byte[] buffer = new byte[COMPRESSED_BUFFER_SIZE];
+        int start = 0;
+        int end = 0;
+        while (running) {
+            int newLine = -1;
+            for (int i = start; i < end; i++) {
+                if (buffer[i] == '\n') {
+                    newLine = i;
+                    break;
+                }
+            }
+            if (newLine >= 0) {
+                if (!handleLine(buffer, start, newLine - start)) {
+                    return;
+                }
+                offset += newLine + 1 - start;
+                start = newLine + 1;
+                continue;
+            }
+            if (start > 0) {
+                System.arraycopy(buffer, start, buffer, 0, end - start);
+                end -= start;
+                start = 0;
+            } else if (end == buffer.length) {
+                byte[] expanded = new byte[buffer.length * 2];
+                System.arraycopy(buffer, 0, expanded, 0, end);
+                buffer = expanded;
+            }
+            int read = inputStream.read(buffer, end, buffer.length - end);
+            if (read < 0) {
+                if (end > start && handleLine(buffer, start, end - start)) {
+                    offset += end - start;
+                }
+                return;
+            }
+            end += read;
+        }
+    }
+
+    /**
+     * Decodes and emits a line when it is due.
+     *
+     * @return false if the replay was stopped before the line was handled, so that it is replayed from that line
+     */
+    private boolean handleLine(byte[] buffer, int start, int length) {
+        if (length > 0 && buffer[start + length - 1] == '\r') {
+            length--;
+        }
+        if (length == 0) {
+            return true;
+        }
+        TweetJsonDecoder.MessageType messageType;
+        try {
+            messageType = decoder.decode(buffer, start, length);
+        } catch (IllegalArgumentException e) {
+            metrics.error();
+            log.error("Skipped a line at offset " + offset + " of " + file + " that could not be decoded: " +
+                    e.getMessage());
+            return true;
+        }
+        if (messageType == TweetJsonDecoder.MessageType.STATUS) {
+            metrics.received();
+            long tweetId = decoder.getFields().getId();
+            if (tweetFilter != null && !tweetFilter.accept(decoder.getFields())) {
+                metrics.filtered();
+                return true;
+            }
+            // waits before the tweet is remembered by the deduplicator, as it is not emitted if the replay is stopped
+            if (!awaitReplayTime(tweetId)) {
+                return false;
+            }
+            if (deduplicator != null && deduplicator.isDuplicate(tweetId)) {
+                metrics.duplicate();
+                return true;
+            }
+            emit(buffer, start, length);
+        }
+        return true;
+    }
+
+    /**
+     * Waits until the tweet is due, based on the time elapsed since the first tweet was replayed.
+     *
+     * @return false if the replay was stopped while waiting
+     */
+    private boolean awaitReplayTime(long tweetId) {
+        if (paused) { //spurious wakeup condition is deliberately traded off for performance
+            lock.lock();
+            try {
+                while (paused) {
+                    condition.await();
+                }
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                running = false;
+            } finally {
+                lock.unlock();
+            }
+            // the time spent paused is not replayed
+            firstTweetTime = -1;
+        }
+        if (speed <= 0 || !running) {
+            return running;
+        }
+        long tweetTime = Util.getTweetIdTime(tweetId);
+        if (firstTweetTime < 0) {
+            firstTweetTime = tweetTime;
+            firstEmitTime = System.currentTimeMillis();
+            return true;
+        }
+        long delay = firstEmitTime + (long) ((tweetTime - firstTweetTime) / speed) - System.currentTimeMillis();
+        if (delay > 0) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            }
+        }
+        return running;
+    }
+
+    private void emit(byte[] buffer, int start, int length) {
+        TweetFields fields = decoder.getFields();
+        long mappingStart = metrics.startMapping();
+        if (statusMapper.isRawJson()) {
+            String json = new String(buffer, start, length, StandardCharsets.UTF_8);
+            metrics.endMapping(mappingStart);
+            sourceEventListener.onEvent(json, null);
+        } else if (eventBatcher != null) {
+            Object[] data = statusMapper.createObjectArray(fields);
+            metrics.endMapping(mappingStart);
+            eventBatcher.add(data);
+        } else {
+            Object event = statusMapper.createEvent(fields);
+            String[] transportProperties = statusMapper.getTransportProperties(fields);
+            metrics.endMapping(mappingStart);
+            sourceEventListener.onEvent(event, transportProperties);
+        }
+        metrics.emitted();
+    }
+
+    private static boolean isCompressed(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(2);
+        channel.read(header, 0);
+        return header.position() == 2 && (header.get(0) & 0xff) == 0x1f && (header.get(1) & 0xff) == 0x8b;
+    }
+}
@@ -30,25 +30,47 @@ import io.siddhi.core.util.config.ConfigReader;
 import io.siddhi.core.util.snapshot.state.State;
 import io.siddhi.core.util.snapshot.state.StateFactory;
 import io.siddhi.core.util.transport.OptionHolder;
+import io.siddhi.query.api.annotation.Annotation;
 import io.siddhi.query.api.exception.SiddhiAppValidationException;
 import org.apache.log4j.Logger;
+import org.wso2.extension.siddhi.io.twitter.util.GeoRegionIndex;
+import org.wso2.extension.siddhi.io.twitter.util.KeywordMatcher;
 import org.wso2.extension.siddhi.io.twitter.util.QueryBuilder;
+import org.wso2.extension.siddhi.io.twitter.util.StatusMapper;
+import org.wso2.extension.siddhi.io.twitter.util.StringInternCache;
+import org.wso2.extension.siddhi.io.twitter.util.TweetFilter;
+import org.wso2.extension.siddhi.io.twitter.util.TweetIdBloomFilter;
+import org.wso2.extension.siddhi.io.twitter.util.TweetIdDeduplicator;
+import org.wso2.extension.siddhi.io.twitter.util.TweetIdHashSet;
+import org.wso2.extension.siddhi.io.twitter.util.TweetSampler;
+import org.wso2.extension.siddhi.io.twitter.util.TwitterCredentials;
 import org.wso2.extension.siddhi.io.twitter.util.TwitterConstants;
 import org.wso2.extension.siddhi.io.twitter.util.Util;
 import twitter4j.FilterQuery;
+import twitter4j.HttpParameter;
 import twitter4j.Query;
-import twitter4j.Twitter;
 import twitter4j.TwitterFactory;
 import twitter4j.TwitterStream;
 import twitter4j.TwitterStreamFactory;
+import twitter4j.conf.Configuration;
 import twitter4j.conf.ConfigurationBuilder;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Twitter Source Implementation
@@ -59,10 +81,11 @@ import java.util.concurrent.TimeUnit;
         description = "The Twitter source receives events from a Twitter app. The events are received " +
                 "in the form of key-value mappings. \n\n" +
                 "The following are key values of the map of a tweet and their descriptions:\n\t" +
-                "1.  createdAt: The UTC time at which the Tweet was created.\n\t" +
+                "1.  createdAt: The time at which the Tweet was created, in epoch milliseconds.\n\t" +
                 "2.  tweetId: The integer representation for the unique identifier of the Tweet.\n\t" +
                 "3.  text: The actual UTF-8 text of the status update.\n\t" +
-                "4.  user.createdAt: The UTC date and time at which the user account was created on Twitter.\n\t" +
+                "4.  user.createdAt: The time at which the user account was created on Twitter, in epoch " +
+                "milliseconds.\n\t" +
                 "5.  user.id: The integer representation for the unique identifier of the user who posted the " +
                 "Tweet.\n\t" +
                 "6.  user.screenName: The screen name with which the user identifies himself/herself.\n\t" +
@@ -70,10 +93,11 @@ import java.util.concurrent.TimeUnit;
                 "8.  user.mail: The `mail.id` of the user.\n\t" +
                 "9.  user.location: The location in which the current user account profile is saved. This " +
                 "parameter can have a null value.\n\t" +
-                "10. hashtags: The hashtags that have been parsed out of the Tweet.\n\t" +
-                "11. userMentions: The other Twitter users who are mentioned in the text of the Tweet.\n\t" +
-                "12. mediaUrls: The media elements uploaded with the Tweet.\n\t" +
-                "13. urls: The URLs included in the text of a Tweet.\n\t" +
+                "10. hashtags: The hashtags that have been parsed out of the Tweet, as a string array.\n\t" +
+                "11. userMentions: The other Twitter users who are mentioned in the text of the Tweet, as a string " +
+                "array.\n\t" +
+                "12. mediaUrls: The media elements uploaded with the Tweet, as a string array.\n\t" +
+                "13. urls: The URLs included in the text of a Tweet, as a string array.\n\t" +
                 "14. language: The language in which the Tweet is posted.\n\t" +
                 "15. source: the utility used to post the Tweet as an HTML-formatted string.\n\t" +
                 "16. isRetweet: This indicates whether the Tweet is a Retweet or not.\n\t" +
@@ -81,7 +105,8 @@ import java.util.concurrent.TimeUnit;
                 "18. favouriteCount: This indicates the number of times the Tweet has been liked by Twitter users." +
                 " The value for this field can be null.\n\t" +
                 "19. geoLocation: The geographic location from which the Tweet was posted by the user or client " +
-                "application. The value for this field can be null.\n\t" +
+                "application, as a double array of its latitude and longitude. The value for this field can be " +
+                "null.\n\t" +
                 "20. quotedStatusId: This field appears only when the Tweet is a quote Tweet. It displays " +
                 "the integer value Tweet ID of the quoted Tweet.\n\t" +
                 "21. in.reply.to.status.id: If the Tweet is a reply to another Tweet, this field displays the " +
@@ -94,7 +119,21 @@ import java.util.concurrent.TimeUnit;
                 "is located.\n\t" +
                 "26. place.country: The name of the country in which the place is located.\n\t" +
                 "27. track.words: The keywords given by the user to track.\n\t" +
-                "28. polling.query: The query provided by the user.\n\t",
+                "28. polling.query: The query provided by the user.\n\t" +
+                "29. geoRegion: The ID of the region of `geo.filter.file` in which the Tweet is located.\n\t" +
+                "30. latitude: The latitude of the `geoLocation`, as a double.\n\t" +
+                "31. longitude: The longitude of the `geoLocation`, as a double.\n\t" +
+                "32. geohash: The geohash of the `geoLocation`, of 12 characters.\n\t\n" +
+                "With `attribute.format` set to `legacy`, `createdAt` is given as a date string, `user.createdAt` " +
+                "as a `java.util.Date`, `geoLocation` as a `<latitude>,<longitude>` string and the entities as " +
+                "comma separated strings.\n\n" +
+                "When the `keyvalue` mapper is used, only the keys referred to in its `@attributes` (or the stream " +
+                "attribute names when no `@attributes` are given) and the requested transport properties are " +
+                "extracted from each tweet.\n\n" +
+                "When the `passThrough` mapper is used (or no mapper is given), each tweet is emitted as an event " +
+                "whose attributes are taken by name, in the order of the stream definition, with their native types. " +
+                "As stream attribute names cannot contain dots, keys such as `user.screenName` are given as " +
+                "`user_screenName`.",
         parameters = {
                 @Parameter(
                         name = "consumer.key",
@@ -118,7 +157,10 @@ import java.util.concurrent.TimeUnit;
                         description = "The mode in which the Twitter application is run. Possible values are as " +
                                 "follows: \n" +
                                 "`streaming`: This retrieves real time tweets. \n2" +
-                                "`polling`: This retrieves historical tweets that were posted within one week.",
+                                "`polling`: This retrieves historical tweets that were posted within one week. \n" +
+                                "`replay`: This replays tweets recorded in a local file, without connecting to " +
+                                "Twitter. The consumer key, consumer secret, access token and access token secret " +
+                                "are not required in this mode.",
                         type = {DataType.STRING}),
                 @Parameter(
                         name = "filter.level",
@@ -159,7 +201,9 @@ import java.util.concurrent.TimeUnit;
                         name = "query",
                         description = "This filters Tweets that match the specified UTF-8, URL-encoded search" +
                                 " query with a maximum of 500 characters including operators. \n e.g., " +
-                                "'@NASA' - mentioning Twitter account 'NASA'.",
+                                "'@NASA' - mentioning Twitter account 'NASA'. Several queries can be given, " +
+                                "separated by `;`, each of which is polled on its own schedule from its own " +
+                                "position.",
                         optional = true,
                         defaultValue = "null",
                         type = {DataType.STRING}),
@@ -213,12 +257,338 @@ import java.util.concurrent.TimeUnit;
                         optional = true,
                         defaultValue = "null",
                         type = {DataType.STRING}),
+                @Parameter(
+                        name = "worker.count",
+                        description = "In streaming mode, this specifies the number of workers that map and emit " +
+                                "the received Tweets, so that the connection keeps reading while events are " +
+                                "processed. Tweets are routed to workers by user ID, hence the Tweets of a user are " +
+                                "emitted in the order they were received. When this is `0`, Tweets are emitted on " +
+                                "the thread reading the stream.",
+                        optional = true,
+                        defaultValue = "0",
+                        type = {DataType.INT}),
+                @Parameter(
+                        name = "worker.buffer.size",
+                        description = "In streaming mode, this specifies the number of Tweets each worker can " +
+                                "buffer. What happens when the buffer of the worker assigned to a Tweet is full is " +
+                                "set by `overload.policy`.",
+                        optional = true,
+                        defaultValue = "1024",
+                        type = {DataType.INT}),
+                @Parameter(
+                        name = "overload.policy",
+                        description = "In streaming mode, this specifies what is done with a Tweet dispatched to an " +
+                                "overloaded worker buffer, i.e., one which filled up to `overload.high.watermark` " +
+                                "and has not yet been drained down to `overload.low.watermark`. Possible values " +
+                                "are as follows: \n" +
+                                "`block`: Reading the stream waits while the buffer is full. \n" +
+                                "`drop-newest`: The dispatched Tweet is dropped. \n" +
+                                "`drop-oldest`: The Tweet buffered for the longest time is dropped to make room " +
+                                "for the dispatched one. \n" +
+                                "`sample`: The dispatched Tweet is kept with a probability falling from 1 at the " +
+                                "low watermark to 0 when the buffer is full. \n" +
+                                "The dropped Tweets are counted by the `ShedCount` metric. Policies other than " +
+                                "`block` need `worker.count`.",
+                        optional = true,
+                        defaultValue = "block",
+                        type = {DataType.STRING}),
+                @Parameter(
+                        name = "overload.high.watermark",
+                        description = "In streaming mode, this specifies the fraction of a worker buffer which is " +
+                                "filled when the buffer becomes overloaded.",
+                        optional = true,
+                        defaultValue = "0.9",
+                        type = {DataType.DOUBLE}),
+                @Parameter(
+                        name = "overload.low.watermark",
+                        description = "In streaming mode, this specifies the fraction of a worker buffer which is " +
+                                "filled when an overloaded buffer stops being overloaded.",
+                        optional = true,
+                        defaultValue = "0.5",
+                        type = {DataType.DOUBLE}),
+                @Parameter(
+                        name = "stream.reader",
+                        description = "In streaming mode, this specifies how the stream is read. Possible values " +
+                                "are as follows: \n" +
+                                "`twitter4j`: Each Tweet is parsed into a twitter4j status before it is mapped. \n" +
+                                "`lightweight`: The stream is read as length delimited messages and only the " +
+                                "attributes used by the mapping are decoded from each Tweet, without building " +
+                                "intermediate objects. This cannot be used with `worker.count`.",
+                        optional = true,
+                        defaultValue = "twitter4j",
+                        type = {DataType.STRING}),
+                @Parameter(
+                        name = "stream.base.url",
+                        description = "In streaming mode, this specifies the base URL of the streaming API, e.g., " +
+                                "to connect to a local stand-in of Twitter for testing.",
+                        optional = true,
+                        defaultValue = "https://stream.twitter.com/1.1/",
+                        type = {DataType.STRING}),
+                @Parameter(
+                        name = "stream.shard.count",
+                        description = "In streaming mode, this specifies the number of connections the filter is " +
+                                "split across. The track keywords, follow IDs and location boxes are dealt in turn " +
+                                "to the connections, whose Tweets are merged and deduplicated. When this is `0`, " +
+                                "just enough connections are opened to stay within the limits of 400 keywords, " +
+                                "5000 follow IDs and 25 location boxes per connection.",
+                        optional = true,
+                        defaultValue = "0",
+                        type = {DataType.INT}),
+                @Parameter(
+                        name = "stream.sharing",
+                        description = "In streaming mode, this specifies whether the connection is shared with the " +
+                                "other sources of the JVM which use the same credentials, `stream.base.url` and " +
+                                "`filter.level`. Their filters are merged into as few connections as the limits " +
+                                "allow, and each source receives the Tweets matching its own `track`, `follow`, " +
+                                "`location` and `language`, which are matched on the words of the Tweet, hence " +
+                                "approximately as done by Twitter. Changes to the merged filter are applied a " +
+                                "second after the sources are started or stopped. This can only be used with the " +
+                                "`twitter4j` reader, and `stream.shard.count` is not used. As the Tweets of all " +
+                                "the sources are read on the same connection, each source needs either " +
+                                "`stream.spill.max.mb` or `worker.count` to hold its Tweets while it is paused " +
+                                "or slow, rather than holding up the other sources.",
+                        optional = true,
+                        defaultValue = "false",
+                        type = {DataType.BOOL}),
+                @Parameter(
+                        name = "stream.backfill",
+                        description = "In streaming mode, this specifies whether the Tweets missed while a " +
+                                "connection was down are searched once it is reconnected. The gap between the last " +
+                                "Tweet received before the reconnect and the first one received after it is " +
+                                "searched for the `track` keywords, and the Tweets found are emitted oldest first, " +
+                                "a few at a time. The searches use the rate limit of the credentials, and Tweets " +
+                                "matching only `follow` or `location` cannot be searched.",
+                        optional = true,
+                        defaultValue = "false",
+                        type = {DataType.BOOL}),
+                @Parameter(
+                        name = "stream.backfill.limit",
+                        description = "In streaming mode, this specifies the largest number of Tweets searched for " +
+                                "each gap when `stream.backfill` is enabled.",
+                        optional = true,
+                        defaultValue = "1000",
+                        type = {DataType.INT}),
+                @Parameter(
+                        name = "stream.spill.max.mb",
+                        description = "In streaming mode, this specifies the largest size in megabytes of the log " +
+                                "holding the Tweets received while the source is paused, so that the stream keeps " +
+                                "being read rather than being disconnected by Twitter as a slow consumer. The log " +
+                                "is made of memory-mapped files, which are drained in order once the source is " +
+                                "resumed. When the log is full, the stream is not read until it is drained. When " +
+                                "this is `0`, the stream is not read while the source is paused.",
+                        optional = true,
+                        defaultValue = "64",
+                        type = {DataType.INT}),
+                @Parameter(
+                        name = "stream.spill.dir",
+                        description = "In streaming mode, this specifies the directory in which the log of the " +
+                                "Tweets received while the source is paused is created.",
+                        optional = true,
+                        defaultValue = "The temporary directory of the JVM",
+                        type = {DataType.STRING}),
+                @Parameter(
+                        name = "keyword.filter",
+                        description = "In streaming mode, this specifies a comma separated list of keywords and " +
+                                "phrases, of which a Tweet needs to contain at least one in its text or hashtags. " +
+                                "The other Tweets are dropped before they are mapped, which keeps the sample " +
+                                "stream, or a stream filtered by `follow` or `location`, cheap to consume when " +
+                                "only a few of its Tweets are of interest. Keywords are matched as whole words " +
+                                "ignoring case, and thousands of them can be given, as they are all searched " +
+                                "for in a single pass over a Tweet.",
+                        optional = true,
+                        defaultValue = "null",
+                        type = {DataType.STRING}),
+                @Parameter(
+                        name = "keyword.filter.file",
+                        description = "In streaming mode, this specifies a file listing further keywords and " +
+                                "phrases of `keyword.filter`, one per line.",
+                        optional = true,
+                        defaultValue = "null",
+                        type = {DataType.STRING}),
+                @Parameter(
+                        name = "geo.filter.file",
+                        description = "In streaming mode, this specifies a file listing regions, such as store " +
+                                "catchments, of which a Tweet needs to be located in one. The other Tweets are " +
+                                "dropped before they are mapped. Each line gives a region as " +
+                                "`<region id>,<longitude>,<latitude>,<longitude>,<latitude>,...`, with the vertices " +
+                                "of a polygon, or the opposite corners of a box. A Tweet is located by its exact " +
+                                "coordinates, or else by the centre of the bounding box of its place. The regions " +
+                                "are held in a spatial index, so that the cost of each Tweet does not grow with " +
+                                "their number. The ID of the region of a Tweet is emitted as `geoRegion`, and " +
+                                "when a Tweet is in several regions, the first one listed is emitted.",
+                        optional = true,
+                        defaultValue = "null",
+                        type = {DataType.STRING}),
+                @Parameter(
+                        name = "additional.credentials",
+                        description = "Further credentials, given as a comma separated list of " +
+                                "`consumerKey:consumerSecret:accessToken:accessTokenSecret`. In streaming mode, " +
+                                "they are used for the connections after the first. Twitter allows one standing " +
+                                "connection per account, hence the credentials are reused in turn only when there " +
+                                "are fewer of them than connections. In polling mode, the searches are spread " +
+                                "over all the credentials by the requests remaining in their rate limit windows, " +
+                                "and the credentials which have used up their window are skipped until it is " +
+                                "reset.",
+                        optional = true,
+                        defaultValue = "none",
+                        type = {DataType.STRING}),
+                @Parameter(
+                        name = "rest.base.url",
+                        description = "This specifies the base URL of the REST API used to search Tweets, in " +
+                                "polling mode or to backfill the gaps of the stream when `stream.backfill` is " +
+                                "enabled, e.g., to connect to a local stand-in of Twitter for testing.",
+                        optional = true,
+                        defaultValue = "https://api.twitter.com/1.1/",
+                        type = {DataType.STRING}),
                 @Parameter(
                         name = "polling.interval",
                         description = "This specifies a time interval (in seconds) to poll the Tweets periodically.",
                         optional = true,
                         defaultValue = "3600",
                         type = {DataType.LONG}),
+                @Parameter(
+                        name = "polling.interval.min",
+                        description = "This specifies the shortest interval (in seconds) to which the polling " +
+                                "interval is adapted. Starting from `polling.interval`, the interval is shortened " +
+                                "when a poll needs more than one page and lengthened when it finds few Tweets, " +
+                                "while leaving enough of the rate limit to last until the window is reset. The " +
+                                "interval is fixed when this and `polling.interval.max` are not given. When only " +
+                                "`polling.interval.max` is given, this defaults to the smaller of it and " +
+                                "`polling.interval`.",
+                        optional = true,
+                        defaultValue = "polling.interval",
+                        type = {DataType.LONG}),
+                @Parameter(
+                        name = "polling.interval.max",
+                        description = "This specifies the longest interval (in seconds) to which the polling " +
+                                "interval is adapted. When only `polling.interval.min` is given, this defaults to " +
+                                "the larger of it and `polling.interval`.",
+                        optional = true,
+                        defaultValue = "polling.interval",
+                        type = {DataType.LONG}),
+                @Parameter(
+                        name = "polling.worker.count",
+                        description = "When several queries are given, this specifies the number of threads " +
+                                "polling them concurrently. The queries take turns on the threads page by page, " +
+                                "so that a busy query does not hold up the others.",
+                        optional = true,
+                        defaultValue = "4",
+                        type = {DataType.INT}),
+                @Parameter(
+                        name = "replay.file",
+                        description = "In replay mode, this specifies the path of the file to be replayed. The " +
+                                "file holds the JSON of one Tweet per line, as received from the streaming API, and " +
+                                "can be gzip compressed. The offset of the next Tweet to be replayed is persisted " +
+                                "with the state of the Siddhi app, so that a restored app continues from there.",
+                        optional = true,
+                        defaultValue = "null",
+                        type = {DataType.STRING}),
+                @Parameter(
+                        name = "replay.speed",
+                        description = "In replay mode, this specifies how fast Tweets are replayed. Possible values " +
+                                "are as follows: \n" +
+                                "`max`: Tweets are replayed as fast as they can be read. \n" +
+                                "`real-time`: Tweets are replayed with the same intervals they were created with. \n" +
+                                "A number, e.g., `10`: Tweets are replayed the given number of times faster than " +
+                                "they were created.",
+                        optional = true,
+                        defaultValue = "max",
+                        type = {DataType.STRING}),
+                @Parameter(
+                        name = "payload.format",
+                        description = "The format in which Tweets are passed to the mapper. Possible values are as " +
+                                "follows: \n" +
+                                "`map`: Tweets are converted into key-value maps, or into events for the " +
+                                "`passThrough` mapper. \n" +
+                                "`raw-json`: The JSON of each Tweet, as received from Twitter, is passed to the " +
+                                "mapper as a string without any conversion, e.g., to be used with the `json` mapper.",
+                        optional = true,
+                        defaultValue = "map",
+                        type = {DataType.STRING}),
+                @Parameter(
+                        name = "batch.size",
+                        description = "This specifies the maximum number of Tweets passed to the stream at once " +
+                                "as an event array. Batches are emitted when they are full, when the linger time " +
+                                "elapses, at the end of each polled page, or when the source is disconnected. " +
+                                "This can only be used with the `passThrough` mapper. When this is `1`, each " +
+                                "Tweet is passed on its own.",
+                        optional = true,
+                        defaultValue = "1",
+                        type = {DataType.INT}),
+                @Parameter(
+                        name = "batch.linger.ms",
+                        description = "This specifies the time (in milliseconds) a Tweet waits for its batch to " +
+                                "fill before the batch is passed to the stream.",
+                        optional = true,
+                        defaultValue = "100",
+                        type = {DataType.LONG}),
+                @Parameter(
+                        name = "dedup.cache.size",
+                        description = "This specifies the number of recently received Tweet IDs remembered to " +
+                                "drop Tweets received again, e.g., across polled pages or after a reconnect. The " +
+                                "remembered IDs are persisted with the state of the Siddhi app. When this is `0`, " +
+                                "Tweets are not deduplicated.",
+                        optional = true,
+                        defaultValue = "0",
+                        type = {DataType.INT}),
+                @Parameter(
+                        name = "dedup.cache.type",
+                        description = "The structure remembering the Tweet IDs. Possible values are as follows: \n" +
+                                "`hash`: An exact set taking up to 40 bytes per ID. \n" +
+                                "`bloom`: A pair of Bloom filters taking up to 10 bytes per ID, for large caches. " +
+                                "About one in ten thousand new Tweets is wrongly dropped as a duplicate.",
+                        optional = true,
+                        defaultValue = "hash",
+                        type = {DataType.STRING}),
+                @Parameter(
+                        name = "dedup.horizon.ms",
+                        description = "This specifies the time (in milliseconds) after which a Tweet ID is " +
+                                "forgotten, relative to the creation time of the newest Tweet received. When " +
+                                "this is `0`, IDs are only forgotten when the cache is full.",
+                        optional = true,
+                        defaultValue = "0",
+                        type = {DataType.LONG}),
+                @Parameter(
+                        name = "sample.rate",
+                        description = "This specifies the fraction of the Tweets to be kept, from `0` to `1`. The " +
+                                "other Tweets are dropped before they are mapped. Tweets are chosen by a hash of " +
+                                "their IDs which is the same on every node, hence sources sampling at the same " +
+                                "rate keep the same Tweets, and the Tweets kept at a rate are also kept at any " +
+                                "higher rate.",
+                        optional = true,
+                        defaultValue = "1",
+                        type = {DataType.DOUBLE}),
+                @Parameter(
+                        name = "sample.key",
+                        description = "This specifies the ID the Tweets are sampled by. When this is `tweet`, each " +
+                                "Tweet is sampled on its own. When this is `user`, all the Tweets of a user are " +
+                                "either kept or dropped.",
+                        optional = true,
+                        defaultValue = "tweet",
+                        type = {DataType.STRING}),
+                @Parameter(
+                        name = "intern.cache.size",
+                        description = "This specifies the number of values held in the cache through which the " +
+                                "events share the values repeated across Tweets, i.e., the `user.screenName`, " +
+                                "`user.name`, `user.location`, `language`, `source` and `place.*` attributes, so " +
+                                "that the events kept in long windows take less memory. A value is replaced in " +
+                                "the cache by another one of the same hash, hence a larger cache keeps more of the " +
+                                "values of a high number of users. When this is `0`, each event holds its own " +
+                                "values.",
+                        optional = true,
+                        defaultValue = "4096",
+                        type = {DataType.INT}),
+                @Parameter(
+                        name = "attribute.format",
+                        description = "This specifies the format of the attributes of the events. When this is " +
+                                "`typed`, times are given in epoch milliseconds, `geoLocation` as a double array " +
+                                "and the entities as string arrays, which queries can use without parsing them. " +
+                                "When this is `legacy`, they are given as strings, as in the earlier releases. " +
+                                "With the `passThrough` and `keyvalue` mappers, these attributes are given in the " +
+                                "`legacy` format whenever they are mapped onto string attributes of the stream.",
+                        optional = true,
+                        defaultValue = "typed",
+                        type = {DataType.STRING}),
         },
         examples = {
                 @Example(
@@ -227,7 +597,7 @@ import java.util.concurrent.TimeUnit;
                                 "access.token.secret='accessTokenSecret', mode= 'streaming', " +
                                 "@map(type='keyvalue', @attributes(createdAt = 'createdAt', id = 'tweetId'," +
                                 " text= 'text',hashtags = 'hashtags'))) \n" +
-                                "define stream inputStream(createdAt String, id long, text String, hashtags string);",
+                                "define stream inputStream(createdAt long, id long, text String, hashtags object);",
                         description = "In this example, the twitter source starts listening to a random " +
                                 "sample of public statuses and passes the events to the `rcvEvents` stream."
                 ),
@@ -238,7 +608,7 @@ import java.util.concurrent.TimeUnit;
                                 ", track = 'Amazon,Google,Apple', language = 'en', @map(type='keyvalue', " +
                                 "@attributes(createdAt = 'createdAt', id = 'tweetId', text= 'text'," +
                                 "hashtags = 'hashtags'))) \n" +
-                                "define stream inputStream(createdAt String, id long, text String, hashtags string);",
+                                "define stream inputStream(createdAt long, id long, text String, hashtags object);",
                         description = "In this example, the twitter source starts listening to Tweets in English " +
                                 "that include the keywords `Amazon`, `google`, or `apple`. Then these Tweets are" +
                                 " passed to the `rcvEvents` stream."
@@ -252,7 +622,7 @@ import java.util.concurrent.TimeUnit;
                                 "location = '51.280430:-0.563160,51.683979:0.278970', @map(type='keyvalue', " +
                                 "@attributes(createdAt = 'createdAt', id = 'tweetId', text= 'text'," +
                                 "hashtags = 'hashtags'))) \n" +
-                                "define stream inputStream(createdAt String, id long, text String, hashtags string);",
+                                "define stream inputStream(createdAt long, id long, text String, hashtags object);",
                         description = "In this example, the twitter source starts listening to Tweets in English " +
                                 "that either include the keywords `Amazon`, `google`, `apple`, tweeted by the " +
                                 "specified followers, or tweeted from the given location based on the filter.level." +
@@ -264,7 +634,7 @@ import java.util.concurrent.TimeUnit;
                                 "access.token.secret='accessTokenSecret', mode= 'polling'" +
                                 ", query = 'happy hour', @map(type='keyvalue', @attributes(createdAt = 'createdAt'," +
                                 " id = 'tweetId', text= 'text', hashtags = 'hashtags'))) \n" +
-                                "define stream inputStream(createdAt String, id long, text String, hashtags string);",
+                                "define stream inputStream(createdAt long, id long, text String, hashtags object);",
                         description = "In this example, the twitter source starts polling Tweets that contain the" +
                                 " exact phrase `happy hour`. Then these Tweets are passed to the `rcvEvents` stream."
                 ),
@@ -275,7 +645,7 @@ import java.util.concurrent.TimeUnit;
                                 ", query = '#Amazon', since.id = '973439483906420736', @map(type='keyvalue', " +
                                 "@attributes(createdAt = 'createdAt', id = 'tweetId', text= 'text'," +
                                 "hashtags = 'hashtags'))) \n" +
-                                "define stream inputStream(createdAt String, id long, text String, hashtags string);",
+                                "define stream inputStream(createdAt long, id long, text String, hashtags object);",
                         description = "In this example, the twitter source starts polling tweets that contain the" +
                                 " `#Amazon` hashtag and have a Tweet Id that is greater than `since.id`. Then these" +
                                 " Tweets are passed to the `rcvEvents` stream."
@@ -289,25 +659,80 @@ import java.util.concurrent.TimeUnit;
                                 "since.id = 24012619984051000, max.id = 250126199840518145, until = 2018-03-10," +
                                 " @map(type='keyvalue', @attributes(createdAt = 'createdAt', id = 'tweetId', " +
                                 "text= 'text', hashtags = 'hashtags'))) \n" +
-                                "define stream inputStream(createdAt String, id long, text String, hashtags string);",
+                                "define stream inputStream(createdAt long, id long, text String, hashtags object);",
                         description = "In this example, the twitter source starts polling the recent Tweets in " +
                                 "English that mention `NASA`, and have Tweet IDs that are greater than the " +
                                 "`since.id` and less than the `max.id`. Then these events are passed to the " +
                                 "`rcvEvents` stream."
+                ),
+                @Example(
+                        syntax = "@source(type='twitter', consumer.key='consumer.key'," +
+                                "consumer.secret='consumerSecret', access.token='accessToken'," +
+                                "access.token.secret='accessTokenSecret', mode= 'streaming'" +
+                                ", track = 'Amazon,Google,Apple', @map(type='passThrough')) \n" +
+                                "define stream inputStream(tweetId long, text String, user_screenName string, " +
+                                "retweetCount int);",
+                        description = "In this example, the twitter source listens to Tweets that include the " +
+                                "keywords `Amazon`, `google`, or `apple` and writes the `tweetId`, `text`, " +
+                                "`user.screenName` and `retweetCount` values of each Tweet directly into the events " +
+                                "of the `inputStream` stream, without building an intermediate key-value map."
+                ),
+                @Example(
+                        syntax = "@source(type='twitter', consumer.key='consumer.key'," +
+                                "consumer.secret='consumerSecret', access.token='accessToken'," +
+                                "access.token.secret='accessTokenSecret', mode= 'streaming'" +
+                                ", track = 'Amazon', payload.format = 'raw-json', @map(type='json', " +
+                                "enclosing.element='$', @attributes(id = 'id', text = 'text', " +
+                                "lang = 'lang'))) \n" +
+                                "define stream inputStream(id long, text String, lang string);",
+                        description = "In this example, the twitter source passes the JSON of each Tweet that " +
+                                "includes the keyword `Amazon` to the `json` mapper as received from Twitter."
+                ),
+                @Example(
+                        syntax = "@source(type='twitter', mode= 'replay', replay.file = '/data/tweets.jsonl.gz', " +
+                                "replay.speed = '60', @map(type='passThrough')) \n" +
+                                "define stream inputStream(tweetId long, text String, user_screenName string);",
+                        description = "In this example, the twitter source replays the Tweets recorded in " +
+                                "`/data/tweets.jsonl.gz` sixty times faster than they were created, e.g., to " +
+                                "test a Siddhi app against captured traffic."
                 )
         }
 )
 
 public class TwitterSource extends Source<TwitterSource.TwitterSourceExtensionState> {
     private static final Logger log = Logger.getLogger(TwitterSource.class);
-    private TwitterPoller twitterPoller;
-    private TwitterStatusListener twitterStatusListener;
+    private static final int SHARD_DEDUP_CACHE_SIZE = 100000;
+    private static final int DEFAULT_POLLING_WORKER_COUNT = 4;
+    private final List<TwitterPoller> twitterPollers = new ArrayList<>();
+    private final List<AdaptivePollingScheduler> pollingSchedulers = new ArrayList<>();
+    private final List<TwitterStatusListener> twitterStatusListeners = new ArrayList<>();
     private SourceEventListener sourceEventListener;
-    private TwitterStream twitterStream;
+    private StatusMapper statusMapper;
+    private final List<TwitterStream> twitterStreams = new ArrayList<>();
+    private final List<TwitterStreamReader> twitterStreamReaders = new ArrayList<>();
+    private final List<StreamGapBackfiller> backfillers = new ArrayList<>();
+    private TwitterReplayer twitterReplayer;
+    private ExecutorService readerExecutor;
     private String consumerKey;
     private String consumerSecret;
     private String accessToken;
     private String accessSecret;
+    private String additionalCredentialsParam;
+    private List<TwitterCredentials> credentialsList;
+    private int shardCount;
+    private boolean streamSharing;
+    private StreamSubscription streamSubscription;
+    private boolean backfill;
+    private int backfillLimit;
+    private ExecutorService backfillExecutor;
+    private TwitterCredentialPool backfillPool;
+    private long spillMaxMb;
+    private String spillDir;
+    private ExecutorService spillExecutor;
+    private String keywordFilterParam;
+    private String keywordFilterFile;
+    private String geoFilterFile;
+    private TweetFilter tweetFilter;
     private String mode;
     private String followParam;
     private String locationParam;
@@ -324,6 +749,34 @@ public class TwitterSource extends Source<TwitterSource.TwitterSourceExtensionSt
     private String since;
     private String resultType;
     private long pollingInterval;
+    private long minPollingInterval;
+    private long maxPollingInterval;
+    private int workerCount;
+    private int workerBufferSize;
+    private String overloadPolicyParam;
+    private double overloadHighWatermark;
+    private double overloadLowWatermark;
+    private OverloadPolicy overloadPolicy;
+    private int batchSize;
+    private long batchLingerMillis;
+    private EventBatcher eventBatcher;
+    private TwitterSourceMetrics metrics;
+    private int dedupCacheSize;
+    private String dedupCacheType;
+    private long dedupHorizonMillis;
+    private TweetIdDeduplicator deduplicator;
+    private double sampleRate;
+    private String sampleKey;
+    private int internCacheSize;
+    private String attributeFormat;
+    private String payloadFormat;
+    private String streamReader;
+    private String streamBaseUrl;
+    private String restBaseUrl;
+    private String replayFile;
+    private String replaySpeedParam;
+    private double replaySpeed;
+    private long replayOffset;
     private long[] follow;
     private double[][] locations;
     private double latitude;
@@ -332,7 +785,10 @@ public class TwitterSource extends Source<TwitterSource.TwitterSourceExtensionSt
     private String unitName;
     private Set<String> staticOptionsKeys;
     private ScheduledExecutorService scheduledExecutorService;
-    private ScheduledFuture scheduledFuture;
+    private ScheduledExecutorService pollingExecutor;
+    private int pollingWorkerCount;
+    private List<String> queries;
+    private Map<String, long[]> pollingCursors = new HashMap<>();
 
 
     @Override
@@ -358,11 +814,22 @@ public class TwitterSource extends Source<TwitterSource.TwitterSourceExtensionSt
                                                           ConfigReader configReader,
                                                           SiddhiAppContext siddhiAppContext) {
         this.sourceEventListener = sourceEventListener;
-        consumerKey = optionHolder.validateAndGetStaticValue(TwitterConstants.CONSUMER_KEY);
-        consumerSecret = optionHolder.validateAndGetStaticValue(TwitterConstants.CONSUMER_SECRET);
-        accessToken = optionHolder.validateAndGetStaticValue(TwitterConstants.ACCESS_TOKEN);
-        accessSecret = optionHolder.validateAndGetStaticValue(TwitterConstants.ACCESS_SECRET);
         mode = optionHolder.validateAndGetStaticValue(TwitterConstants.MODE);
+        if (mode.equalsIgnoreCase(TwitterConstants.MODE_REPLAY)) {
+            consumerKey = optionHolder.validateAndGetStaticValue(TwitterConstants.CONSUMER_KEY,
+                    TwitterConstants.EMPTY_STRING);
+            consumerSecret = optionHolder.validateAndGetStaticValue(TwitterConstants.CONSUMER_SECRET,
+                    TwitterConstants.EMPTY_STRING);
+            accessToken = optionHolder.validateAndGetStaticValue(TwitterConstants.ACCESS_TOKEN,
+                    TwitterConstants.EMPTY_STRING);
+            accessSecret = optionHolder.validateAndGetStaticValue(TwitterConstants.ACCESS_SECRET,
+                    TwitterConstants.EMPTY_STRING);
+        } else {
+            consumerKey = optionHolder.validateAndGetStaticValue(TwitterConstants.CONSUMER_KEY);
+            consumerSecret = optionHolder.validateAndGetStaticValue(TwitterConstants.CONSUMER_SECRET);
+            accessToken = optionHolder.validateAndGetStaticValue(TwitterConstants.ACCESS_TOKEN);
+            accessSecret = optionHolder.validateAndGetStaticValue(TwitterConstants.ACCESS_SECRET);
+        }
         locationParam = optionHolder.validateAndGetStaticValue(TwitterConstants.STREAMING_FILTER_LOCATIONS,
                 TwitterConstants.EMPTY_STRING);
         followParam = optionHolder.validateAndGetStaticValue(TwitterConstants.STREAMING_FILTER_FOLLOW,
@@ -375,6 +842,8 @@ public class TwitterSource extends Source<TwitterSource.TwitterSourceExtensionSt
                 "none");
         queryParam = optionHolder.validateAndGetStaticValue(TwitterConstants.POLLING_SEARCH_QUERY,
                 TwitterConstants.EMPTY_STRING);
+        pollingWorkerCount = Integer.parseInt(optionHolder.validateAndGetStaticValue(
+                TwitterConstants.POLLING_WORKER_COUNT, String.valueOf(DEFAULT_POLLING_WORKER_COUNT)));
         count = Integer.parseInt(optionHolder.validateAndGetStaticValue(
                 TwitterConstants.POLLING_SEARCH_COUNT, "-1"));
         geocode = optionHolder.validateAndGetStaticValue(TwitterConstants.POLLING_SEARCH_GEOCODE,
@@ -393,9 +862,116 @@ public class TwitterSource extends Source<TwitterSource.TwitterSourceExtensionSt
                 "mixed");
         pollingInterval = Long.parseLong(optionHolder.validateAndGetStaticValue
                 (TwitterConstants.POLLING_INTERVAL, "3600"));
+        // when only one bound is given, the other one is derived so that it does not conflict with it
+        boolean minPollingIntervalGiven = optionHolder.isOptionExists(TwitterConstants.POLLING_INTERVAL_MIN);
+        boolean maxPollingIntervalGiven = optionHolder.isOptionExists(TwitterConstants.POLLING_INTERVAL_MAX);
+        maxPollingInterval = maxPollingIntervalGiven ? Long.parseLong(optionHolder.validateAndGetStaticValue(
+                TwitterConstants.POLLING_INTERVAL_MAX)) : pollingInterval;
+        minPollingInterval = minPollingIntervalGiven ? Long.parseLong(optionHolder.validateAndGetStaticValue(
+                TwitterConstants.POLLING_INTERVAL_MIN)) : Math.min(pollingInterval, maxPollingInterval);
+        if (!maxPollingIntervalGiven) {
+            maxPollingInterval = Math.max(pollingInterval, minPollingInterval);
+        }
+        workerCount = Integer.parseInt(optionHolder.validateAndGetStaticValue(
+                TwitterConstants.STREAMING_WORKER_COUNT, "0"));
+        workerBufferSize = Integer.parseInt(optionHolder.validateAndGetStaticValue(
+                TwitterConstants.STREAMING_WORKER_BUFFER_SIZE, "1024"));
+        overloadPolicyParam = optionHolder.validateAndGetStaticValue(TwitterConstants.OVERLOAD_POLICY,
+                TwitterConstants.OVERLOAD_POLICY_BLOCK);
+        overloadHighWatermark = Double.parseDouble(optionHolder.validateAndGetStaticValue(
+                TwitterConstants.OVERLOAD_HIGH_WATERMARK, "0.9"));
+        overloadLowWatermark = Double.parseDouble(optionHolder.validateAndGetStaticValue(
+                TwitterConstants.OVERLOAD_LOW_WATERMARK, "0.5"));
+        batchSize = Integer.parseInt(optionHolder.validateAndGetStaticValue(TwitterConstants.BATCH_SIZE, "1"));
+        batchLingerMillis = Long.parseLong(optionHolder.validateAndGetStaticValue(
+                TwitterConstants.BATCH_LINGER_MS, "100"));
+        dedupCacheSize = Integer.parseInt(optionHolder.validateAndGetStaticValue(
+                TwitterConstants.DEDUP_CACHE_SIZE, "0"));
+        dedupCacheType = optionHolder.validateAndGetStaticValue(TwitterConstants.DEDUP_CACHE_TYPE,
+                TwitterConstants.DEDUP_CACHE_TYPE_HASH);
+        dedupHorizonMillis = Long.parseLong(optionHolder.validateAndGetStaticValue(
+                TwitterConstants.DEDUP_HORIZON_MS, "0"));
+        sampleRate = Double.parseDouble(optionHolder.validateAndGetStaticValue(TwitterConstants.SAMPLE_RATE, "1"));
+        sampleKey = optionHolder.validateAndGetStaticValue(TwitterConstants.SAMPLE_KEY,
+                TwitterConstants.SAMPLE_KEY_TWEET);
+        internCacheSize = Integer.parseInt(optionHolder.validateAndGetStaticValue(
+                TwitterConstants.INTERN_CACHE_SIZE, "4096"));
+        attributeFormat = optionHolder.validateAndGetStaticValue(TwitterConstants.ATTRIBUTE_FORMAT,
+                TwitterConstants.ATTRIBUTE_FORMAT_TYPED);
+        payloadFormat = optionHolder.validateAndGetStaticValue(TwitterConstants.PAYLOAD_FORMAT,
+                TwitterConstants.PAYLOAD_FORMAT_MAP);
+        streamReader = optionHolder.validateAndGetStaticValue(TwitterConstants.STREAMING_READER,
+                TwitterConstants.STREAMING_READER_TWITTER4J);
+        shardCount = Integer.parseInt(optionHolder.validateAndGetStaticValue(
+                TwitterConstants.STREAMING_SHARD_COUNT, "0"));
+        streamSharing = Boolean.parseBoolean(optionHolder.validateAndGetStaticValue(
+                TwitterConstants.STREAMING_SHARING, "false"));
+        backfill = Boolean.parseBoolean(optionHolder.validateAndGetStaticValue(
+                TwitterConstants.STREAMING_BACKFILL, "false"));
+        backfillLimit = Integer.parseInt(optionHolder.validateAndGetStaticValue(
+                TwitterConstants.STREAMING_BACKFILL_LIMIT, "1000"));
+        spillMaxMb = Long.parseLong(optionHolder.validateAndGetStaticValue(
+                TwitterConstants.STREAMING_SPILL_MAX_MB, "64"));
+        spillDir = optionHolder.validateAndGetStaticValue(TwitterConstants.STREAMING_SPILL_DIR,
+                System.getProperty("java.io.tmpdir"));
+        keywordFilterParam = optionHolder.validateAndGetStaticValue(TwitterConstants.KEYWORD_FILTER,
+                TwitterConstants.EMPTY_STRING);
+        keywordFilterFile = optionHolder.validateAndGetStaticValue(TwitterConstants.KEYWORD_FILTER_FILE,
+                TwitterConstants.EMPTY_STRING);
+        geoFilterFile = optionHolder.validateAndGetStaticValue(TwitterConstants.GEO_FILTER_FILE,
+                TwitterConstants.EMPTY_STRING);
+        additionalCredentialsParam = optionHolder.validateAndGetStaticValue(
+                TwitterConstants.ADDITIONAL_CREDENTIALS, TwitterConstants.EMPTY_STRING);
+        streamBaseUrl = optionHolder.validateAndGetStaticValue(TwitterConstants.STREAMING_BASE_URL,
+                TwitterConstants.EMPTY_STRING);
+        restBaseUrl = optionHolder.validateAndGetStaticValue(TwitterConstants.POLLING_BASE_URL,
+                TwitterConstants.EMPTY_STRING);
+        replayFile = optionHolder.validateAndGetStaticValue(TwitterConstants.REPLAY_FILE,
+                TwitterConstants.EMPTY_STRING);
+        replaySpeedParam = optionHolder.validateAndGetStaticValue(TwitterConstants.REPLAY_SPEED,
+                TwitterConstants.REPLAY_SPEED_MAX);
         staticOptionsKeys = optionHolder.getStaticOptionsKeys();
+        Annotation sourceAnnotation = Util.getSourceAnnotation(sourceEventListener.getStreamDefinition(), optionHolder);
         scheduledExecutorService = siddhiAppContext.getScheduledExecutorService();
         validateParameter();
+        if (payloadFormat.equalsIgnoreCase(TwitterConstants.PAYLOAD_FORMAT_RAW_JSON)) {
+            if (requestedTransportPropertyNames != null && requestedTransportPropertyNames.length > 0) {
+                throw new SiddhiAppValidationException("Transport properties cannot be requested when " +
+                        TwitterConstants.PAYLOAD_FORMAT + " is '" + TwitterConstants.PAYLOAD_FORMAT_RAW_JSON + "'.");
+            }
+            statusMapper = StatusMapper.createRawJsonMapper();
+        } else {
+            statusMapper = Util.createStatusMapper(sourceEventListener.getStreamDefinition(), sourceAnnotation,
+                    requestedTransportPropertyNames,
+                    attributeFormat.equalsIgnoreCase(TwitterConstants.ATTRIBUTE_FORMAT_LEGACY));
+            statusMapper.setQueryParams(
+                    mode.equalsIgnoreCase(TwitterConstants.MODE_STREAMING) ? trackParam : TwitterConstants.EMPTY_STRING,
+                    mode.equalsIgnoreCase(TwitterConstants.MODE_POLLING) ? queryParam : TwitterConstants.EMPTY_STRING);
+        }
+        if (batchSize > 1 && !statusMapper.isPositional()) {
+            throw new SiddhiAppValidationException("batch.size can only be used with the 'passThrough' mapper, " +
+                    "but found '" + Util.getMapType(sourceAnnotation) + "'.");
+        }
+        if (dedupCacheSize > 0) {
+            try {
+                deduplicator = dedupCacheType.equalsIgnoreCase(TwitterConstants.DEDUP_CACHE_TYPE_BLOOM) ?
+                        new TweetIdBloomFilter(dedupCacheSize, dedupHorizonMillis) :
+                        new TweetIdHashSet(dedupCacheSize, dedupHorizonMillis);
+            } catch (IllegalArgumentException e) {
+                throw new SiddhiAppValidationException("Invalid dedup.cache.size: " + e.getMessage(), e);
+            }
+        } else if (shardCount > 1) {
+            // a Tweet matching the filters of several connections is received on each of them
+            deduplicator = new TweetIdHashSet(SHARD_DEDUP_CACHE_SIZE, 0);
+        }
+        tweetFilter = createTweetFilter();
+        metrics = new TwitterSourceMetrics(siddhiAppContext, sourceEventListener.getStreamDefinition().getId());
+        if (internCacheSize > 0 && !statusMapper.isRawJson()) {
+            StringInternCache internCache = new StringInternCache(internCacheSize);
+            statusMapper.setInternCache(internCache);
+            metrics.setInternCache(internCache);
+        }
+        metrics.register();
         return () -> new TwitterSourceExtensionState();
     }
 
@@ -407,7 +983,7 @@ public class TwitterSource extends Source<TwitterSource.TwitterSourceExtensionSt
      */
     @Override
     public Class[] getOutputEventClasses() {
-        return new Class[]{Map.class};
+        return new Class[]{Map.class, Object[].class, String.class};
     }
 
     /**
@@ -421,36 +997,93 @@ public class TwitterSource extends Source<TwitterSource.TwitterSourceExtensionSt
     public void connect(ConnectionCallback connectionCallback, TwitterSourceExtensionState twitterSourceExtensionState)
             throws ConnectionUnavailableException {
         Query query;
-        FilterQuery filterQuery;
-        Twitter twitter;
         try {
-            ConfigurationBuilder configurationBuilder = new ConfigurationBuilder();
-            configurationBuilder.setOAuthConsumerKey(consumerKey)
-                    .setOAuthConsumerSecret(consumerSecret)
-                    .setOAuthAccessToken(accessToken)
-                    .setOAuthAccessTokenSecret(accessSecret)
-                    .setJSONStoreEnabled(true);
-            if (mode.equalsIgnoreCase(TwitterConstants.MODE_STREAMING)) {
-                twitterStream = (new TwitterStreamFactory(configurationBuilder.build())).getInstance();
-                filterQuery = QueryBuilder.createFilterQuery(languageParam, trackParam, follow, filterLevel,
-                        locations);
-                twitterStatusListener = new TwitterStatusListener(sourceEventListener);
-                twitterStream.addListener(twitterStatusListener);
-                if (staticOptionsKeys.size() == TwitterConstants.MANDATORY_PARAM_SIZE) {
-                    twitterStream.sample();
-                } else {
-                    twitterStream.filter(filterQuery);
+            if (batchSize > 1) {
+                eventBatcher = new EventBatcher(sourceEventListener, batchSize, batchLingerMillis, metrics);
+                eventBatcher.start(scheduledExecutorService);
+            }
+            if (mode.equalsIgnoreCase(TwitterConstants.MODE_REPLAY)) {
+                twitterReplayer = new TwitterReplayer(Paths.get(replayFile), replaySpeed, replayOffset,
+                        sourceEventListener, statusMapper, eventBatcher, tweetFilter, deduplicator, metrics);
+                executeOnOwnThreads(Collections.singletonList(twitterReplayer), "replayer");
+            } else if (mode.equalsIgnoreCase(TwitterConstants.MODE_STREAMING) &&
+                    streamReader.equalsIgnoreCase(TwitterConstants.STREAMING_READER_LIGHTWEIGHT)) {
+                List<HttpParameter[]> parameterSets = isSampleStream() ?
+                        Collections.singletonList(null) : QueryBuilder.createFilterParameterSets(languageParam,
+                        trackParam, follow, filterLevel, locations, shardCount);
+                for (int i = 0; i < parameterSets.size(); i++) {
+                    TwitterSourceMetrics shardMetrics = getShardMetrics(i);
+                    twitterStreamReaders.add(new TwitterStreamReader(createConfiguration(getShardCredentials(i)),
+                            parameterSets.get(i), sourceEventListener, statusMapper, eventBatcher, tweetFilter,
+                            deduplicator, createBackfiller(shardMetrics), createSpillBuffer(i, shardMetrics),
+                            shardMetrics));
+                }
+                executeOnOwnThreads(twitterStreamReaders, "stream-reader");
+            } else if (mode.equalsIgnoreCase(TwitterConstants.MODE_STREAMING) && streamSharing) {
+                TwitterStatusListener twitterStatusListener = new TwitterStatusListener(sourceEventListener,
+                        statusMapper, workerCount, workerBufferSize, overloadPolicy, eventBatcher, tweetFilter,
+                        deduplicator, createBackfiller(metrics), createSpillBuffer(0, metrics), metrics);
+                twitterStatusListeners.add(twitterStatusListener);
+                streamSubscription = new StreamSubscription(trackParam, follow, locations, languageParam,
+                        twitterStatusListener);
+                TwitterStreamMultiplexer.subscribe(consumerKey + ":" + accessToken + "@" + streamBaseUrl + "/" +
+                        filterLevel, createConfiguration(credentialsList.get(0)), filterLevel, streamSubscription);
+            } else if (mode.equalsIgnoreCase(TwitterConstants.MODE_STREAMING)) {
+                List<FilterQuery> filterQueries = isSampleStream() ? Collections.singletonList(null) :
+                        QueryBuilder.createFilterQueries(languageParam, trackParam, follow, filterLevel, locations,
+                                shardCount);
+                for (int i = 0; i < filterQueries.size(); i++) {
+                    TwitterStream twitterStream = (new TwitterStreamFactory(
+                            createConfiguration(getShardCredentials(i)))).getInstance();
+                    TwitterSourceMetrics shardMetrics = getShardMetrics(i);
+                    TwitterStatusListener twitterStatusListener = new TwitterStatusListener(sourceEventListener,
+                            statusMapper, workerCount, workerBufferSize, overloadPolicy, eventBatcher,
+                            tweetFilter, deduplicator, createBackfiller(shardMetrics),
+                            createSpillBuffer(i, shardMetrics), shardMetrics);
+                    twitterStream.addListener(twitterStatusListener);
+                    twitterStream.addConnectionLifeCycleListener(twitterStatusListener);
+                    twitterStreams.add(twitterStream);
+                    twitterStatusListeners.add(twitterStatusListener);
+                    if (filterQueries.get(i) == null) {
+                        twitterStream.sample();
+                    } else {
+                        twitterStream.filter(filterQueries.get(i));
+                    }
                 }
             } else if (mode.equalsIgnoreCase(TwitterConstants.MODE_POLLING)) {
-                twitter = (new TwitterFactory(configurationBuilder.build())).getInstance();
-                query = QueryBuilder.createQuery(queryParam, count, searchLang, sinceId, maxId, until, since,
-                        resultType, geocode, latitude, longitude, radius, unitName);
-                twitterPoller = new TwitterPoller(twitter, query, sourceEventListener);
-                scheduledFuture = scheduledExecutorService.scheduleAtFixedRate(
-                        twitterPoller, 0, pollingInterval,
-                        TimeUnit.SECONDS);
+                TwitterCredentialPool credentialPool = createCredentialPool();
+                ScheduledExecutorService executorService = scheduledExecutorService;
+                if (queries.size() > 1) {
+                    executorService = createPollingExecutor(Math.min(pollingWorkerCount, queries.size()));
+                }
+                for (int i = 0; i < queries.size(); i++) {
+                    String queryString = queries.get(i);
+                    query = QueryBuilder.createQuery(queryString, count, searchLang, sinceId, maxId, until, since,
+                            resultType, geocode, latitude, longitude, radius, unitName);
+                    TwitterSourceMetrics queryMetrics = (queries.size() > 1) ?
+                            metrics.createQueryMetrics(String.valueOf(i + 1)) : metrics;
+                    // with several queries, each run searches one page so that the queries take turns
+                    TwitterPoller twitterPoller = new TwitterPoller(credentialPool, query,
+                            (queries.size() > 1) ? 1 : 0, sourceEventListener, statusMapper.forQuery(queryString),
+                            eventBatcher, tweetFilter, deduplicator, queryMetrics);
+                    if (pollingCursors.containsKey(queryString)) {
+                        twitterPoller.restoreCursor(pollingCursors.get(queryString));
+                    }
+                    twitterPollers.add(twitterPoller);
+                    pollingSchedulers.add(new AdaptivePollingScheduler(twitterPoller, credentialPool,
+                            executorService, queryMetrics,
+                            (count > 0) ? count : TwitterConstants.POLLING_SEARCH_DEFAULT_COUNT, queries.size(),
+                            TimeUnit.SECONDS.toMillis(pollingInterval),
+                            TimeUnit.SECONDS.toMillis(minPollingInterval),
+                            TimeUnit.SECONDS.toMillis(maxPollingInterval)));
+                }
+                for (AdaptivePollingScheduler pollingScheduler : pollingSchedulers) {
+                    pollingScheduler.start();
+                }
             }
         } catch (Exception e) {
+            // the connection is retried by Siddhi, which would otherwise keep what was opened before the failure
+            closeConnections();
             throw new ConnectionUnavailableException(
                     "Error in connecting with the Twitter API : " + e.getMessage(), e);
         }
@@ -461,12 +1094,7 @@ public class TwitterSource extends Source<TwitterSource.TwitterSourceExtensionSt
      */
     @Override
     public void disconnect() {
-        if (twitterStream != null) {
-            twitterStream.clearListeners();
-            if (log.isDebugEnabled()) {
-                log.debug("The status listener has been cleared!");
-            }
-        }
+        closeConnections();
     }
 
     /**
@@ -474,16 +1102,95 @@ public class TwitterSource extends Source<TwitterSource.TwitterSourceExtensionSt
      */
     @Override
     public void destroy() {
-        if (twitterStream != null) {
+        closeConnections();
+        if (metrics != null) {
+            metrics.unregister();
+        }
+    }
+
+    /**
+     * Stops and drops everything started by {@link #connect}, keeping the position of the pollers and of the
+     * replayer so that a later connect carries on from it.
+     */
+    private void closeConnections() {
+        unsubscribe();
+        for (TwitterStream twitterStream : twitterStreams) {
+            twitterStream.clearListeners();
             twitterStream.shutdown();
             if (log.isDebugEnabled()) {
                 log.debug("The twitter stream has been shutdown !");
             }
         }
-        if (mode.equalsIgnoreCase(TwitterConstants.MODE_POLLING)) {
-            scheduledFuture.cancel(true);
+        twitterStreams.clear();
+        for (TwitterStatusListener twitterStatusListener : twitterStatusListeners) {
+            twitterStatusListener.shutdown();
+        }
+        twitterStatusListeners.clear();
+        for (TwitterStreamReader twitterStreamReader : twitterStreamReaders) {
+            twitterStreamReader.shutdown();
+        }
+        twitterStreamReaders.clear();
+        if (twitterReplayer != null) {
+            twitterReplayer.shutdown();
+        }
+        if (readerExecutor != null) {
+            readerExecutor.shutdownNow();
+            awaitTermination(readerExecutor);
+            readerExecutor = null;
+        }
+        if (twitterReplayer != null) {
+            // read once the replay thread is stopped, as it moves the offset on until then
+            replayOffset = twitterReplayer.getOffset();
+            twitterReplayer = null;
+        }
+        for (StreamGapBackfiller backfiller : backfillers) {
+            backfiller.shutdown();
+        }
+        backfillers.clear();
+        if (backfillExecutor != null) {
+            backfillExecutor.shutdownNow();
+            backfillExecutor = null;
+            backfillPool = null;
+        }
+        if (spillExecutor != null) {
+            spillExecutor.shutdownNow();
+            spillExecutor = null;
+        }
+        for (AdaptivePollingScheduler pollingScheduler : pollingSchedulers) {
+            pollingScheduler.stop();
+        }
+        pollingSchedulers.clear();
+        if (!twitterPollers.isEmpty()) {
+            pollingCursors = getPollingCursors();
+        }
+        for (TwitterPoller twitterPoller : twitterPollers) {
             twitterPoller.kill();
         }
+        twitterPollers.clear();
+        if (pollingExecutor != null) {
+            pollingExecutor.shutdownNow();
+            pollingExecutor = null;
+        }
+        if (eventBatcher != null) {
+            // emits the events still held, once the readers and pollers adding them are stopped
+            eventBatcher.shutdown();
+            eventBatcher = null;
+        }
+        if (metrics != null) {
+            // the metrics of the connections or queries are created again by the next connect
+            metrics.removeChildren();
+        }
+    }
+
+    private Map<String, long[]> getPollingCursors() {
+        if (twitterPollers.isEmpty()) {
+            return pollingCursors;
+        }
+        Map<String, long[]> cursors = new HashMap<>();
+        for (int i = 0; i < twitterPollers.size(); i++) {
+            cursors.put(queries.get(i), twitterPollers.get(i).getCursor());
+        }
+        return cursors;
     }
 
     /**
@@ -491,9 +1198,22 @@ public class TwitterSource extends Source<TwitterSource.TwitterSourceExtensionSt
      */
     @Override
     public void pause() {
-        if (mode.equalsIgnoreCase(TwitterConstants.MODE_STREAMING)) {
+        if (eventBatcher != null) {
+            eventBatcher.pause();
+        }
+        if (twitterReplayer != null) {
+            twitterReplayer.pause();
+        }
+        for (TwitterStreamReader twitterStreamReader : twitterStreamReaders) {
+            twitterStreamReader.pause();
+        }
+        for (TwitterStatusListener twitterStatusListener : twitterStatusListeners) {
             twitterStatusListener.pause();
-        } else {
+        }
+        for (StreamGapBackfiller backfiller : backfillers) {
+            backfiller.pause();
+        }
+        for (TwitterPoller twitterPoller : twitterPollers) {
             twitterPoller.pause();
         }
     }
@@ -503,11 +1223,27 @@ public class TwitterSource extends Source<TwitterSource.TwitterSourceExtensionSt
      */
     @Override
     public void resume() {
-        if (mode.equalsIgnoreCase(TwitterConstants.MODE_STREAMING)) {
+        if (eventBatcher != null) {
+            eventBatcher.resume();
+        }
+        if (twitterReplayer != null) {
+            twitterReplayer.resume();
+        }
+        for (TwitterStreamReader twitterStreamReader : twitterStreamReaders) {
+            twitterStreamReader.resume();
+        }
+        for (TwitterStatusListener twitterStatusListener : twitterStatusListeners) {
             twitterStatusListener.resume();
-        } else {
+        }
+        for (StreamGapBackfiller backfiller : backfillers) {
+            backfiller.resume();
+        }
+        for (TwitterPoller twitterPoller : twitterPollers) {
             twitterPoller.resume();
         }
+        for (AdaptivePollingScheduler pollingScheduler : pollingSchedulers) {
+            pollingScheduler.resume();
+        }
     }
 
     class TwitterSourceExtensionState extends State {
@@ -526,7 +1262,17 @@ public class TwitterSource extends Source<TwitterSource.TwitterSourceExtensionSt
         @Override
         public Map<String, Object> snapshot() {
             Map<String, Object> currentState = new HashMap<>();
-            currentState.put(TwitterConstants.POLLING_SEARCH_SINCEID, twitterPoller.tweetId);
+            Map<String, long[]> cursors = getPollingCursors();
+            if (!cursors.isEmpty()) {
+                currentState.put(TwitterConstants.POLLING_SEARCH_CURSORS, new HashMap<>(cursors));
+            }
+            if (mode.equalsIgnoreCase(TwitterConstants.MODE_REPLAY)) {
+                currentState.put(TwitterConstants.REPLAY_OFFSET,
+                        (twitterReplayer != null) ? twitterReplayer.getOffset() : replayOffset);
+            }
+            if (deduplicator != null) {
+                currentState.put(TwitterConstants.DEDUP_CACHE, deduplicator.snapshot());
+            }
             return currentState;
         }
 
@@ -538,9 +1284,241 @@ public class TwitterSource extends Source<TwitterSource.TwitterSourceExtensionSt
          *            This map will have the  same keys that is created upon calling currentState() method.
          */
         @Override
+        @SuppressWarnings("unchecked")
         public void restore(Map<String, Object> map) {
-            sinceId = Long.parseLong(map.get(TwitterConstants.POLLING_SEARCH_SINCEID).toString());
+            if (map.containsKey(TwitterConstants.POLLING_SEARCH_SINCEID)) {
+                sinceId = Long.parseLong(map.get(TwitterConstants.POLLING_SEARCH_SINCEID).toString());
+            }
+            if (map.containsKey(TwitterConstants.POLLING_SEARCH_CURSORS)) {
+                pollingCursors = (Map<String, long[]>) map.get(TwitterConstants.POLLING_SEARCH_CURSORS);
+            }
+            if (map.containsKey(TwitterConstants.REPLAY_OFFSET)) {
+                replayOffset = Long.parseLong(map.get(TwitterConstants.REPLAY_OFFSET).toString());
+            }
+            if (deduplicator != null && map.containsKey(TwitterConstants.DEDUP_CACHE)) {
+                deduplicator.restore(map.get(TwitterConstants.DEDUP_CACHE));
+            }
+        }
+    }
+
+    /**
+     * Waits for the interrupted readers to stop, so that their positions are no longer moved on.
+     */
+    private void awaitTermination(ExecutorService executorService) {
+        try {
+            if (!executorService.awaitTermination(TwitterConstants.READER_TERMINATION_TIMEOUT_MILLIS,
+                    TimeUnit.MILLISECONDS)) {
+                log.warn("Readers of " + sourceEventListener.getStreamDefinition().getId() + " did not stop within " +
+                        TwitterConstants.READER_TERMINATION_TIMEOUT_MILLIS + " ms.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Runs each reader on a dedicated daemon thread, as it blocks while reading its input.
+     */
+    private void executeOnOwnThreads(List<? extends Runnable> readers, String name) {
+        String threadName = sourceEventListener.getStreamDefinition().getId() + "-" + name;
+        AtomicInteger threadCount = new AtomicInteger();
+        readerExecutor = Executors.newFixedThreadPool(readers.size(), runnable -> {
+            Thread thread = new Thread(runnable, (readers.size() == 1) ? threadName :
+                    threadName + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (Runnable reader : readers) {
+            readerExecutor.execute(reader);
+        }
+    }
+
+    /**
+     * Creates the threads polling several queries, rather than taking up the threads shared by the Siddhi app.
+     */
+    private ScheduledExecutorService createPollingExecutor(int threadCount) {
+        String threadName = sourceEventListener.getStreamDefinition().getId() + "-poller-";
+        AtomicInteger threadCounter = new AtomicInteger();
+        pollingExecutor = Executors.newScheduledThreadPool(threadCount, runnable -> {
+            Thread thread = new Thread(runnable, threadName + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        return pollingExecutor;
+    }
+
+    /**
+     * Creates the search clients of all the credentials.
+     */
+    private TwitterCredentialPool createCredentialPool() {
+        TwitterCredentialPool credentialPool = new TwitterCredentialPool(metrics);
+        for (TwitterCredentials credentials : credentialsList) {
+            credentialPool.add(credentials.getName(),
+                    (new TwitterFactory(createConfiguration(credentials))).getInstance());
+        }
+        return credentialPool;
+    }
+
+    /**
+     * Creates the backfiller of a stream connection, whose searches share the credentials and a single thread
+     * with those of the other connections, or returns null if the gaps are not backfilled.
+     */
+    private StreamGapBackfiller createBackfiller(TwitterSourceMetrics shardMetrics) {
+        if (!backfill || trackParam.isEmpty()) {
+            return null;
+        }
+        if (backfillExecutor == null) {
+            String threadName = sourceEventListener.getStreamDefinition().getId() + "-backfill";
+            backfillExecutor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, threadName);
+                thread.setDaemon(true);
+                return thread;
+            });
+            backfillPool = createCredentialPool();
+        }
+        Set<String> languages = new HashSet<>();
+        for (String language : languageParam.split(TwitterConstants.DELIMITER)) {
+            if (!language.trim().isEmpty()) {
+                languages.add(language.trim());
+            }
+        }
+        StreamGapBackfiller backfiller = new StreamGapBackfiller(backfillPool,
+                QueryBuilder.createBackfillQueries(trackParam), languages, backfillLimit, backfillExecutor,
+                sourceEventListener, statusMapper, eventBatcher, tweetFilter, deduplicator, shardMetrics);
+        backfillers.add(backfiller);
+        return backfiller;
+    }
+
+    /**
+     * Creates the filter of the received tweets. Keywords and regions are only given in streaming mode.
+     *
+     * @return the filter, or null if every tweet is kept
+     */
+    private TweetFilter createTweetFilter() {
+        TweetSampler sampler = (sampleRate < 1) ? new TweetSampler(sampleRate,
+                sampleKey.equalsIgnoreCase(TwitterConstants.SAMPLE_KEY_USER)) : null;
+        KeywordMatcher keywordMatcher = createKeywordMatcher();
+        GeoRegionIndex geoRegionIndex = null;
+        if (!geoFilterFile.isEmpty()) {
+            try {
+                geoRegionIndex = GeoRegionIndex.parse(Files.readAllLines(Paths.get(geoFilterFile),
+                        StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                throw new SiddhiAppValidationException("Failed to read the geo.filter.file '" + geoFilterFile +
+                        "': " + e.getMessage(), e);
+            } catch (IllegalArgumentException e) {
+                throw new SiddhiAppValidationException("Invalid geo.filter.file '" + geoFilterFile + "': " +
+                        e.getMessage(), e);
+            }
+            statusMapper.setGeoRegionIndex(geoRegionIndex);
+            if (log.isDebugEnabled()) {
+                log.debug("Indexed " + geoRegionIndex.getRegionCount() + " filter regions.");
+            }
+        }
+        return (sampler == null && keywordMatcher == null && geoRegionIndex == null) ? null :
+                new TweetFilter(sampler, keywordMatcher, geoRegionIndex);
+    }
+
+    /**
+     * Compiles the keywords of the keyword.filter and keyword.filter.file parameters.
+     *
+     * @return the matcher, or null if no keyword is given
+     */
+    private KeywordMatcher createKeywordMatcher() {
+        List<String> keywords = new ArrayList<>();
+        for (String keyword : keywordFilterParam.split(TwitterConstants.DELIMITER)) {
+            if (!keyword.trim().isEmpty()) {
+                keywords.add(keyword.trim());
+            }
+        }
+        if (!keywordFilterFile.isEmpty()) {
+            try {
+                for (String keyword : Files.readAllLines(Paths.get(keywordFilterFile), StandardCharsets.UTF_8)) {
+                    if (!keyword.trim().isEmpty()) {
+                        keywords.add(keyword.trim());
+                    }
+                }
+            } catch (IOException e) {
+                throw new SiddhiAppValidationException("Failed to read the keyword.filter.file '" +
+                        keywordFilterFile + "': " + e.getMessage(), e);
+            }
+        }
+        if (keywords.isEmpty()) {
+            return null;
+        }
+        KeywordMatcher matcher = new KeywordMatcher(keywords);
+        if (log.isDebugEnabled()) {
+            log.debug("Compiled " + keywords.size() + " filter keywords into " + matcher.getStateCount() +
+                    " states.");
+        }
+        return matcher;
+    }
+
+    /**
+     * Creates the log of the tweets received by a stream connection while the source is paused, or returns null if
+     * the connection waits for the resume instead.
+     */
+    private SpillBuffer createSpillBuffer(int shard, TwitterSourceMetrics shardMetrics) {
+        if (spillMaxMb == 0) {
+            return null;
+        }
+        String streamId = sourceEventListener.getStreamDefinition().getId();
+        if (spillExecutor == null) {
+            AtomicInteger threadCount = new AtomicInteger();
+            spillExecutor = Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, streamId + "-spill-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return new SpillBuffer(Paths.get(spillDir), (shardCount > 1) ? streamId + "-" + (shard + 1) : streamId,
+                spillMaxMb * 1024 * 1024, spillExecutor, shardMetrics);
+    }
+
+    /**
+     * Creates the twitter4j configuration of a stream connection or of the search client.
+     */
+    private Configuration createConfiguration(TwitterCredentials credentials) {
+        ConfigurationBuilder configurationBuilder = credentials.applyTo(new ConfigurationBuilder())
+                .setJSONStoreEnabled(true);
+        if (!streamBaseUrl.isEmpty()) {
+            configurationBuilder.setStreamBaseURL(streamBaseUrl);
+        }
+        if (!restBaseUrl.isEmpty()) {
+            configurationBuilder.setRestBaseURL(restBaseUrl);
         }
+        return configurationBuilder.build();
+    }
+
+    /**
+     * Removes the source from the connection it shares with the other sources, if it does.
+     */
+    private void unsubscribe() {
+        if (streamSubscription != null) {
+            TwitterStreamMultiplexer.unsubscribe(streamSubscription);
+            streamSubscription = null;
+        }
+    }
+
+    private TwitterCredentials getShardCredentials(int shard) {
+        return credentialsList.get(shard % credentialsList.size());
+    }
+
+    private TwitterSourceMetrics getShardMetrics(int shard) {
+        return (shardCount > 1) ? metrics.createShardMetrics(String.valueOf(shard + 1)) : metrics;
+    }
+
+    /**
+     * Checks whether none of the filter parameters are given, in which case a random sample of all public
+     * statuses is streamed.
+     */
+    private boolean isSampleStream() {
+        for (String staticOptionKey : staticOptionsKeys) {
+            if (TwitterConstants.STREAMING_FILTER_PARAM.contains(staticOptionKey)) {
+                return false;
+            }
+        }
+        return true;
     }
 
     /**
@@ -552,25 +1530,53 @@ public class TwitterSource extends Source<TwitterSource.TwitterSourceExtensionSt
         if (mode.equalsIgnoreCase(TwitterConstants.MODE_STREAMING)) {
             for (String staticOptionKey : staticOptionsKeys) {
                 if (!TwitterConstants.STREAMING_PARAM.contains(staticOptionKey) &&
+                        !TwitterConstants.COMMON_PARAM.contains(staticOptionKey) &&
                         !TwitterConstants.MANDATORY_PARAM.contains(staticOptionKey)) {
                     throw new SiddhiAppValidationException(staticOptionKey + " is not valid for the " + mode + " " +
                             TwitterConstants.MODE);
                 }
             }
         } else if (mode.equalsIgnoreCase(TwitterConstants.MODE_POLLING)) {
-            if (queryParam.isEmpty()) {
+            queries = new ArrayList<>();
+            for (String queryString : queryParam.split(TwitterConstants.POLLING_QUERY_DELIMITER)) {
+                if (!queryString.trim().isEmpty()) {
+                    queries.add(queryString.trim());
+                }
+            }
+            if (queries.isEmpty()) {
                 throw new SiddhiAppValidationException("For polling mode, query should be given.");
             }
+            if (pollingWorkerCount <= 0) {
+                throw new SiddhiAppValidationException("polling.worker.count should be greater than zero. But " +
+                        "found '" + pollingWorkerCount + "'.");
+            }
             for (String staticOptionkey : staticOptionsKeys) {
                 if (!TwitterConstants.POLLING_PARAM.contains(staticOptionkey) &&
+                        !TwitterConstants.COMMON_PARAM.contains(staticOptionkey) &&
                         !TwitterConstants.MANDATORY_PARAM.contains(staticOptionkey)) {
                     throw new SiddhiAppValidationException(staticOptionkey + " is not valid for the " + mode + " " +
                             TwitterConstants.MODE);
                 }
             }
+        } else if (mode.equalsIgnoreCase(TwitterConstants.MODE_REPLAY)) {
+            if (replayFile.isEmpty()) {
+                throw new SiddhiAppValidationException("For replay mode, replay.file should be given.");
+            }
+            if (!Files.isReadable(Paths.get(replayFile))) {
+                throw new SiddhiAppValidationException("replay.file '" + replayFile + "' cannot be read.");
+            }
+            for (String staticOptionKey : staticOptionsKeys) {
+                if (!TwitterConstants.REPLAY_PARAM.contains(staticOptionKey) &&
+                        !TwitterConstants.COMMON_PARAM.contains(staticOptionKey) &&
+                        !TwitterConstants.MANDATORY_PARAM.contains(staticOptionKey)) {
+                    throw new SiddhiAppValidationException(staticOptionKey + " is not valid for the " + mode + " " +
+                            TwitterConstants.MODE);
+                }
+            }
+            replaySpeed = parseReplaySpeed(replaySpeedParam);
         } else {
-            throw new SiddhiAppValidationException("There are only two possible values for mode :" +
-                    " streaming or polling. But found '" + mode + "'.");
+            throw new SiddhiAppValidationException("There are only three possible values for mode :" +
+                    " streaming, polling or replay. But found '" + mode + "'.");
         }
         if (!followParam.isEmpty()) {
             follow = Util.followParam(followParam);
@@ -580,6 +1586,14 @@ public class TwitterSource extends Source<TwitterSource.TwitterSourceExtensionSt
             locations = Util.locationParam(locationParam);
         }
 
+        if (!streamBaseUrl.isEmpty()) {
+            streamBaseUrl = Util.toBaseUrl(streamBaseUrl);
+        }
+
+        if (!restBaseUrl.isEmpty()) {
+            restBaseUrl = Util.toBaseUrl(restBaseUrl);
+        }
+
         if (!geocode.isEmpty()) {
             Query.Unit unit = null;
             String[] parts = geocode.split(TwitterConstants.DELIMITER);
@@ -607,14 +1621,195 @@ public class TwitterSource extends Source<TwitterSource.TwitterSourceExtensionSt
             unitName = unit.name();
         }
 
+        if (workerCount < 0 || workerBufferSize <= 0) {
+            throw new SiddhiAppValidationException("worker.count should not be negative and worker.buffer.size " +
+                    "should be greater than zero. But found '" + workerCount + "' and '" + workerBufferSize + "'.");
+        }
+
+        OverloadPolicy.Type overloadPolicyType = OverloadPolicy.Type.of(overloadPolicyParam);
+        if (overloadPolicyType == null) {
+            throw new SiddhiAppValidationException("There are only four possible values for overload.policy : " +
+                    "block, drop-newest, drop-oldest or sample. But found '" + overloadPolicyParam + "'.");
+        }
+
+        if (overloadPolicyType != OverloadPolicy.Type.BLOCK && workerCount == 0) {
+            throw new SiddhiAppValidationException("overload.policy '" + overloadPolicyParam + "' needs " +
+                    "worker.count, as Tweets are only buffered for the workers.");
+        }
+
+        if (overloadLowWatermark < 0 || overloadLowWatermark > overloadHighWatermark ||
+                overloadHighWatermark > 1) {
+            throw new SiddhiAppValidationException("overload.low.watermark and overload.high.watermark should be " +
+                    "fractions of the buffer, the low one not greater than the high one. But found '" +
+                    overloadLowWatermark + "' and '" + overloadHighWatermark + "'.");
+        }
+        overloadPolicy = new OverloadPolicy(overloadPolicyType, overloadHighWatermark, overloadLowWatermark);
+
+        if (!streamReader.equalsIgnoreCase(TwitterConstants.STREAMING_READER_TWITTER4J) &&
+                !streamReader.equalsIgnoreCase(TwitterConstants.STREAMING_READER_LIGHTWEIGHT)) {
+            throw new SiddhiAppValidationException("There are only two possible values for stream.reader : " +
+                    "twitter4j or lightweight. But found '" + streamReader + "'.");
+        }
+
+        if (streamReader.equalsIgnoreCase(TwitterConstants.STREAMING_READER_LIGHTWEIGHT) && streamSharing) {
+            throw new SiddhiAppValidationException("stream.sharing cannot be used when stream.reader is " +
+                    "'lightweight'.");
+        }
+
+        if (streamSharing && spillMaxMb == 0 && workerCount == 0) {
+            throw new SiddhiAppValidationException("stream.sharing needs stream.spill.max.mb or worker.count to be " +
+                    "greater than 0, so that a paused source does not stop the connection shared with the other " +
+                    "sources.");
+        }
+
+        if (streamReader.equalsIgnoreCase(TwitterConstants.STREAMING_READER_LIGHTWEIGHT) && workerCount > 0) {
+            throw new SiddhiAppValidationException("worker.count cannot be used when stream.reader is " +
+                    "'lightweight'.");
+        }
+
+        credentialsList = new ArrayList<>();
+        credentialsList.add(new TwitterCredentials(consumerKey, consumerSecret, accessToken, accessSecret));
+        if (!additionalCredentialsParam.isEmpty()) {
+            credentialsList.addAll(TwitterCredentials.parseList(additionalCredentialsParam));
+        }
+
+        if (mode.equalsIgnoreCase(TwitterConstants.MODE_STREAMING)) {
+            validateShardCount();
+            if (backfill && trackParam.isEmpty()) {
+                log.warn("stream.backfill is enabled for stream '" + sourceEventListener.getStreamDefinition()
+                        .getId() + "', but only the Tweets of track keywords can be searched, hence the gaps of " +
+                        "the stream are not backfilled.");
+            }
+        } else {
+            shardCount = 1;
+        }
+
+        if (!payloadFormat.equalsIgnoreCase(TwitterConstants.PAYLOAD_FORMAT_MAP) &&
+                !payloadFormat.equalsIgnoreCase(TwitterConstants.PAYLOAD_FORMAT_RAW_JSON)) {
+            throw new SiddhiAppValidationException("There are only two possible values for payload.format : " +
+                    "map or raw-json. But found '" + payloadFormat + "'.");
+        }
+
+        if (!attributeFormat.equalsIgnoreCase(TwitterConstants.ATTRIBUTE_FORMAT_TYPED) &&
+                !attributeFormat.equalsIgnoreCase(TwitterConstants.ATTRIBUTE_FORMAT_LEGACY)) {
+            throw new SiddhiAppValidationException("There are only two possible values for attribute.format : " +
+                    "typed or legacy. But found '" + attributeFormat + "'.");
+        }
+
+        if (batchSize <= 0 || batchLingerMillis <= 0) {
+            throw new SiddhiAppValidationException("batch.size and batch.linger.ms should be greater than zero. " +
+                    "But found '" + batchSize + "' and '" + batchLingerMillis + "'.");
+        }
+
+        if (spillMaxMb < 0) {
+            throw new SiddhiAppValidationException("stream.spill.max.mb should not be negative. But found '" +
+                    spillMaxMb + "'.");
+        }
+
+        if (backfillLimit <= 0) {
+            throw new SiddhiAppValidationException("stream.backfill.limit should be greater than zero. But found '" +
+                    backfillLimit + "'.");
+        }
+
+        if (sampleRate < 0 || sampleRate > 1) {
+            throw new SiddhiAppValidationException("sample.rate should be from 0 to 1. But found '" + sampleRate +
+                    "'.");
+        }
+
+        if (!sampleKey.equalsIgnoreCase(TwitterConstants.SAMPLE_KEY_TWEET) &&
+                !sampleKey.equalsIgnoreCase(TwitterConstants.SAMPLE_KEY_USER)) {
+            throw new SiddhiAppValidationException("There are only two possible values for sample.key : tweet or " +
+                    "user. But found '" + sampleKey + "'.");
+        }
+
+        if (internCacheSize < 0) {
+            throw new SiddhiAppValidationException("intern.cache.size should not be negative. But found '" +
+                    internCacheSize + "'.");
+        }
+
+        if (dedupCacheSize < 0 || dedupHorizonMillis < 0) {
+            throw new SiddhiAppValidationException("dedup.cache.size and dedup.horizon.ms should not be negative. " +
+                    "But found '" + dedupCacheSize + "' and '" + dedupHorizonMillis + "'.");
+        }
+
+        if (!dedupCacheType.equalsIgnoreCase(TwitterConstants.DEDUP_CACHE_TYPE_HASH) &&
+                !dedupCacheType.equalsIgnoreCase(TwitterConstants.DEDUP_CACHE_TYPE_BLOOM)) {
+            throw new SiddhiAppValidationException("There are only two possible values for dedup.cache.type : " +
+                    "hash or bloom. But found '" + dedupCacheType + "'.");
+        }
+
         if (!TwitterConstants.FILTER_LEVELS.contains(filterLevel)) {
             throw new SiddhiAppValidationException("There are only three possible values for filter.level :" +
                     " low or medium or none. But found '" + filterLevel + "'.");
         }
 
+        if (pollingInterval <= 0) {
+            throw new SiddhiAppValidationException("polling.interval should be greater than zero. But found '" +
+                    pollingInterval + "'.");
+        }
+
+        if (minPollingInterval <= 0 || minPollingInterval > maxPollingInterval) {
+            throw new SiddhiAppValidationException("polling.interval.min should be greater than zero and not " +
+                    "greater than polling.interval.max. But found '" + minPollingInterval + "' and '" +
+                    maxPollingInterval + "'.");
+        }
+
         if (!TwitterConstants.RESULT_TYPES.contains(resultType1)) {
             throw new SiddhiAppValidationException("There are only three possible values for result.type :" +
                     " mixed or popular or recent. But found '" + resultType + "'.");
         }
     }
+
+    /**
+     * Checks the number of connections the filter is split across, or works it out from the per connection limits
+     * when it is not given.
+     */
+    private void validateShardCount() {
+        if (shardCount < 0) {
+            throw new SiddhiAppValidationException("stream.shard.count should not be negative. But found '" +
+                    shardCount + "'.");
+        }
+        if (isSampleStream()) {
+            if (shardCount > 1) {
+                throw new SiddhiAppValidationException("stream.shard.count cannot be greater than 1 when none of " +
+                        "track, follow or location is given, as the sample stream cannot be split.");
+            }
+            shardCount = 1;
+            return;
+        }
+        int requiredShardCount = QueryBuilder.getRequiredShardCount(trackParam, follow, locations);
+        int predicateCount = QueryBuilder.getPredicateCount(trackParam, follow, locations);
+        if (shardCount == 0) {
+            shardCount = requiredShardCount;
+        } else if (shardCount < requiredShardCount || shardCount > predicateCount) {
+            throw new SiddhiAppValidationException("stream.shard.count should be between " + requiredShardCount +
+                    " and " + predicateCount + " for the given track, follow and location. But found '" +
+                    shardCount + "'.");
+        }
+        if (shardCount > credentialsList.size()) {
+            log.warn("The filter of stream '" + sourceEventListener.getStreamDefinition().getId() + "' is split " +
+                    "across " + shardCount + " connections, but only " + credentialsList.size() + " credentials " +
+                    "are given. Twitter may disconnect connections sharing credentials.");
+        }
+    }
+
+    private static double parseReplaySpeed(String replaySpeedParam) {
+        if (replaySpeedParam.equalsIgnoreCase(TwitterConstants.REPLAY_SPEED_MAX)) {
+            return 0;
+        }
+        if (replaySpeedParam.equalsIgnoreCase(TwitterConstants.REPLAY_SPEED_REAL_TIME)) {
+            return 1;
+        }
+        double speed;
+        try {
+            speed = Double.parseDouble(replaySpeedParam);
+        } catch (NumberFormatException e) {
+            speed = -1;
+        }
+        if (speed <= 0) {
+            throw new SiddhiAppValidationException("replay.speed should be max, real-time or a number greater " +
+                    "than zero. But found '" + replaySpeedParam + "'.");
+        }
+        return speed;
+    }
 }
@@ -0,0 +1,600 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.extension.siddhi.io.twitter.source;
+
+import io.siddhi.core.config.SiddhiAppContext;
+import io.siddhi.core.util.SiddhiConstants;
+import io.siddhi.core.util.statistics.BufferedEventsTracker;
+import io.siddhi.core.util.statistics.EventBufferHolder;
+import io.siddhi.core.util.statistics.LatencyTracker;
+import io.siddhi.core.util.statistics.StatisticsTrackerFactory;
+import io.siddhi.core.util.statistics.ThroughputTracker;
+import io.siddhi.core.util.statistics.metrics.Level;
+import org.apache.log4j.Logger;
+import org.wso2.extension.siddhi.io.twitter.util.StringInternCache;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Collects the runtime metrics of a Twitter source. Every metric is exposed over JMX, while the throughput,
+ * mapping latency and buffered tweets are also reported to Siddhi's statistics manager when statistics are
+ * enabled for the Siddhi app. When the stream is split across connections, each connection has its own metrics,
+ * whose counters are also added to the metrics of the source and whose gauges are aggregated by it.
+ */
+public class TwitterSourceMetrics implements TwitterSourceMetricsMXBean {
+    private static final Logger log = Logger.getLogger(TwitterSourceMetrics.class);
+    private static final String JMX_DOMAIN = "org.wso2.extension.siddhi.io.twitter";
+    // mapping is timed on one in this many tweets, to keep the clock reads off the hot path
+    private static final int MAPPING_SAMPLE_MASK = 15;
+    private final SiddhiAppContext siddhiAppContext;
+    private final String streamId;
+    private final TwitterSourceMetrics parent;
+    private final String childKey;
+    private final List<TwitterSourceMetrics> children = new CopyOnWriteArrayList<>();
+    private final LongAdder receivedCount = new LongAdder();
+    private final LongAdder emittedCount = new LongAdder();
+    private final LongAdder duplicateCount = new LongAdder();
+    private final LongAdder backfilledCount = new LongAdder();
+    private final LongAdder spilledCount = new LongAdder();
+    private final LongAdder shedCount = new LongAdder();
+    private final LongAdder overloadCount = new LongAdder();
+    private final LongAdder filteredCount = new LongAdder();
+    private final AtomicLong mappingCount = new AtomicLong();
+    private final LongAdder mappingNanos = new LongAdder();
+    private final LongAdder stallWarningCount = new LongAdder();
+    private final LongAdder trackLimitationNoticeCount = new LongAdder();
+    private final LongAdder deletionNoticeCount = new LongAdder();
+    private final LongAdder errorCount = new LongAdder();
+    private final LongAdder connectionCount = new LongAdder();
+    private final LongAdder reconnectCount = new LongAdder();
+    private final AtomicInteger connectedCount = new AtomicInteger();
+    private final LongAdder pollCount = new LongAdder();
+    private final Map<String, Integer> rateLimitRemaining = new ConcurrentHashMap<>();
+    private final Map<String, Long> rateLimitReset = new ConcurrentHashMap<>();
+    private volatile IntSupplier bufferedCountSupplier;
+    private volatile StringInternCache internCache;
+    private volatile int stallWarningPercentFull;
+    private volatile long limitedStatusCount;
+    private volatile long lastPollDurationMillis;
+    private volatile long pollingIntervalMillis;
+    private volatile long lastReceivedTime;
+    private ThroughputTracker receivedTracker;
+    private ThroughputTracker emittedTracker;
+    private LatencyTracker mappingTracker;
+    private ObjectName objectName;
+
+    /**
+     * Creates the metrics of a source, along with the Siddhi trackers when the Siddhi app has a statistics
+     * manager.
+     *
+     * @param siddhiAppContext - context of the Siddhi app, or null to only collect the metrics for JMX
+     * @param streamId         - id of the stream the source is attached to
+     */
+    TwitterSourceMetrics(SiddhiAppContext siddhiAppContext, String streamId) {
+        this.siddhiAppContext = siddhiAppContext;
+        this.streamId = streamId;
+        this.parent = null;
+        this.childKey = null;
+        if (siddhiAppContext != null && siddhiAppContext.getStatisticsManager() != null) {
+            StatisticsTrackerFactory factory = siddhiAppContext.getSiddhiContext().getStatisticsConfiguration()
+                    .getFactory();
+            String metricName = siddhiAppContext.getSiddhiContext().getStatisticsConfiguration().getMetricPrefix() +
+                    SiddhiConstants.METRIC_DELIMITER + SiddhiConstants.METRIC_INFIX_SIDDHI_APPS +
+                    SiddhiConstants.METRIC_DELIMITER + siddhiAppContext.getName() +
+                    SiddhiConstants.METRIC_DELIMITER + SiddhiConstants.METRIC_INFIX_SIDDHI +
+                    SiddhiConstants.METRIC_DELIMITER + SiddhiConstants.METRIC_INFIX_SOURCES +
+                    SiddhiConstants.METRIC_DELIMITER + streamId + SiddhiConstants.METRIC_DELIMITER + "twitter";
+            receivedTracker = factory.createThroughputTracker(metricName + ".received.throughput",
+                    siddhiAppContext.getStatisticsManager());
+            emittedTracker = factory.createThroughputTracker(metricName + ".emitted.throughput",
+                    siddhiAppContext.getStatisticsManager());
+            mappingTracker = factory.createLatencyTracker(metricName + ".mapping.latency",
+                    siddhiAppContext.getStatisticsManager());
+            BufferedEventsTracker bufferedEventsTracker = factory.createBufferSizeTracker(
+                    siddhiAppContext.getStatisticsManager());
+            bufferedEventsTracker.registerEventBufferHolder(new EventBufferHolder() {
+                @Override
+                public long getBufferedEvents() {
+                    return getBufferedCount();
+                }
+
+                @Override
+                public boolean containsBufferedEvents() {
+                    return getBufferedCount() > 0;
+                }
+            }, metricName + ".buffered.size");
+            if (siddhiAppContext.getRootMetricsLevel() != Level.OFF) {
+                bufferedEventsTracker.enableEventBufferHolderMetrics();
+            }
+        }
+    }
+
+    private TwitterSourceMetrics(TwitterSourceMetrics parent, String childKey) {
+        this.siddhiAppContext = parent.siddhiAppContext;
+        this.streamId = parent.streamId;
+        this.parent = parent;
+        this.childKey = childKey;
+    }
+
+    /**
+     * Creates the metrics of one of the connections the stream is split across.
+     *
+     * @param shardName - name identifying the connection
+     * @return metrics of the connection, which are registered along with the metrics of the source
+     */
+    public TwitterSourceMetrics createShardMetrics(String shardName) {
+        return createChildMetrics("shard=" + ObjectName.quote(shardName));
+    }
+
+    /**
+     * Creates the metrics of one of the queries polled by the source.
+     *
+     * @param queryName - name identifying the query
+     * @return metrics of the query, which are registered along with the metrics of the source
+     */
+    public TwitterSourceMetrics createQueryMetrics(String queryName) {
+        return createChildMetrics("query=" + ObjectName.quote(queryName));
+    }
+
+    private TwitterSourceMetrics createChildMetrics(String childKey) {
+        TwitterSourceMetrics childMetrics = new TwitterSourceMetrics(this, childKey);
+        children.add(childMetrics);
+        if (objectName != null) {
+            childMetrics.register();
+        }
+        return childMetrics;
+    }
+
+    /**
+     * Unregisters and drops the metrics of the connections or queries, which are created again when the source is
+     * reconnected.
+     */
+    public void removeChildren() {
+        for (TwitterSourceMetrics childMetrics : children) {
+            childMetrics.unregister();
+        }
+        children.clear();
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server. A failure is logged, as the source works without them.
+     */
+    public void register() {
+        String appName = (siddhiAppContext == null) ? "" : siddhiAppContext.getName();
+        try {
+            objectName = new ObjectName(JMX_DOMAIN + ":type=TwitterSource,app=" + ObjectName.quote(appName) +
+                    ",stream=" + ObjectName.quote(streamId) +
+                    ((childKey == null) ? "" : "," + childKey));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        } catch (JMException e) {
+            objectName = null;
+            log.warn("Failed to register the metrics of the Twitter source of stream '" + streamId + "' in " +
+                    "Siddhi app '" + appName + "' with JMX: " + e.getMessage());
+        }
+    }
+
+    public void unregister() {
+        removeChildren();
+        if (objectName == null) {
+            return;
+        }
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (mBeanServer.isRegistered(objectName)) {
+                mBeanServer.unregisterMBean(objectName);
+            }
+        } catch (JMException e) {
+            log.debug("Failed to unregister the metrics of the Twitter source: " + e.getMessage());
+        }
+        objectName = null;
+    }
+
+    /**
+     * Sets the source of the number of tweets waiting to be mapped, such as the buffers of the worker pool.
+     *
+     * @param bufferedCountSupplier - returns the number of buffered tweets
+     */
+    public void setBufferedCountSupplier(IntSupplier bufferedCountSupplier) {
+        this.bufferedCountSupplier = bufferedCountSupplier;
+    }
+
+    /**
+     * Sets the cache sharing the repeated values of the mapped tweets, of which the hits are reported.
+     *
+     * @param internCache - cache of the source, or null if values are not shared
+     */
+    public void setInternCache(StringInternCache internCache) {
+        this.internCache = internCache;
+    }
+
+    public void received() {
+        receivedCount.increment();
+        lastReceivedTime = System.currentTimeMillis();
+        if (parent != null) {
+            parent.received();
+        } else if (isTracked(receivedTracker, Level.BASIC)) {
+            receivedTracker.eventIn();
+        }
+    }
+
+    public void emitted() {
+        emittedCount.increment();
+        if (parent != null) {
+            parent.emitted();
+        } else if (isTracked(emittedTracker, Level.BASIC)) {
+            emittedTracker.eventIn();
+        }
+    }
+
+    public void duplicate() {
+        duplicateCount.increment();
+        if (parent != null) {
+            parent.duplicate();
+        }
+    }
+
+    public void backfilled() {
+        backfilledCount.increment();
+        if (parent != null) {
+            parent.backfilled();
+        }
+    }
+
+    public void spilled() {
+        spilledCount.increment();
+        if (parent != null) {
+            parent.spilled();
+        }
+    }
+
+    public void shed() {
+        shedCount.increment();
+        if (parent != null) {
+            parent.shed();
+        }
+    }
+
+    public void shed(int count) {
+        shedCount.add(count);
+        if (parent != null) {
+            parent.shed(count);
+        }
+    }
+
+    public void overloaded() {
+        overloadCount.increment();
+        if (parent != null) {
+            parent.overloaded();
+        }
+    }
+
+    public void filtered() {
+        filteredCount.increment();
+        if (parent != null) {
+            parent.filtered();
+        }
+    }
+
+    /**
+     * Marks the start of mapping a tweet, if the tweet is sampled for timing.
+     *
+     * @return start time in nanoseconds, or 0 if the mapping is not timed
+     */
+    public long startMapping() {
+        if (parent != null) {
+            return parent.startMapping();
+        }
+        if ((mappingCount.incrementAndGet() & MAPPING_SAMPLE_MASK) != 0) {
+            return 0;
+        }
+        if (isTracked(mappingTracker, Level.DETAIL)) {
+            mappingTracker.markIn();
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * Marks the end of mapping a tweet.
+     *
+     * @param startNanos - value returned by {@link #startMapping()}
+     */
+    public void endMapping(long startNanos) {
+        if (parent != null) {
+            parent.endMapping(startNanos);
+            return;
+        }
+        if (startNanos == 0) {
+            return;
+        }
+        mappingNanos.add(System.nanoTime() - startNanos);
+        if (isTracked(mappingTracker, Level.DETAIL)) {
+            mappingTracker.markOut();
+        }
+    }
+
+    public void stallWarning(int percentFull) {
+        stallWarningCount.increment();
+        stallWarningPercentFull = percentFull;
+        if (parent != null) {
+            parent.stallWarningCount.increment();
+        }
+    }
+
+    /**
+     * Records a track limitation notice.
+     *
+     * @param numberOfLimitedStatuses - number of statuses not delivered since the connection was opened
+     */
+    public void trackLimitationNotice(long numberOfLimitedStatuses) {
+        trackLimitationNoticeCount.increment();
+        limitedStatusCount = numberOfLimitedStatuses;
+        if (parent != null) {
+            parent.trackLimitationNoticeCount.increment();
+        }
+    }
+
+    public void deletionNotice() {
+        deletionNoticeCount.increment();
+        if (parent != null) {
+            parent.deletionNotice();
+        }
+    }
+
+    public void error() {
+        errorCount.increment();
+        if (parent != null) {
+            parent.error();
+        }
+    }
+
+    /**
+     * Records that a stream connection was opened. Calls need to be paired with {@link #disconnected()}.
+     */
+    public void connected() {
+        recordConnection(connectionCount.sum() > 0);
+        stallWarningPercentFull = 0;
+        limitedStatusCount = 0;
+    }
+
+    public void disconnected() {
+        connectedCount.decrementAndGet();
+        if (parent != null) {
+            parent.disconnected();
+        }
+    }
+
+    private void recordConnection(boolean reconnect) {
+        connectionCount.increment();
+        if (reconnect) {
+            reconnectCount.increment();
+        }
+        connectedCount.incrementAndGet();
+        if (parent != null) {
+            parent.recordConnection(reconnect);
+        }
+    }
+
+    /**
+     * Records the rate limit status of a REST endpoint.
+     *
+     * @param endpoint         - endpoint the limit applies to, e.g. /search/tweets
+     * @param remaining        - number of requests left in the current window
+     * @param resetTimeSeconds - epoch seconds at which the window is reset
+     */
+    public void rateLimit(String endpoint, int remaining, long resetTimeSeconds) {
+        rateLimitRemaining.put(endpoint, remaining);
+        rateLimitReset.put(endpoint, resetTimeSeconds);
+        if (parent != null) {
+            parent.rateLimit(endpoint, remaining, resetTimeSeconds);
+        }
+    }
+
+    public void polled(long durationMillis) {
+        pollCount.increment();
+        lastPollDurationMillis = durationMillis;
+        if (parent != null) {
+            parent.polled(durationMillis);
+        }
+    }
+
+    public void pollingInterval(long intervalMillis) {
+        pollingIntervalMillis = intervalMillis;
+    }
+
+    @Override
+    public long getReceivedCount() {
+        return receivedCount.sum();
+    }
+
+    @Override
+    public long getEmittedCount() {
+        return emittedCount.sum();
+    }
+
+    @Override
+    public long getDuplicateCount() {
+        return duplicateCount.sum();
+    }
+
+    @Override
+    public long getBackfilledCount() {
+        return backfilledCount.sum();
+    }
+
+    @Override
+    public long getSpilledCount() {
+        return spilledCount.sum();
+    }
+
+    @Override
+    public long getShedCount() {
+        return shedCount.sum();
+    }
+
+    @Override
+    public long getOverloadCount() {
+        return overloadCount.sum();
+    }
+
+    @Override
+    public long getFilteredCount() {
+        return filteredCount.sum();
+    }
+
+    @Override
+    public long getInternHitCount() {
+        StringInternCache cache = internCache;
+        return (cache == null) ? 0 : cache.getHitCount();
+    }
+
+    @Override
+    public long getInternMissCount() {
+        StringInternCache cache = internCache;
+        return (cache == null) ? 0 : cache.getMissCount();
+    }
+
+    @Override
+    public double getInternHitRatio() {
+        long hitCount = getInternHitCount();
+        long lookupCount = hitCount + getInternMissCount();
+        return (lookupCount == 0) ? 0 : (double) hitCount / lookupCount;
+    }
+
+    @Override
+    public double getMeanMappingTimeMicros() {
+        long sampled = mappingCount.get() / (MAPPING_SAMPLE_MASK + 1);
+        return (sampled == 0) ? 0 : mappingNanos.sum() / 1000.0 / sampled;
+    }
+
+    @Override
+    public int getBufferedCount() {
+        IntSupplier supplier = bufferedCountSupplier;
+        int count = (supplier == null) ? 0 : supplier.getAsInt();
+        for (TwitterSourceMetrics childMetrics : children) {
+            count += childMetrics.getBufferedCount();
+        }
+        return count;
+    }
+
+    @Override
+    public int getStallWarningPercentFull() {
+        int percentFull = stallWarningPercentFull;
+        for (TwitterSourceMetrics childMetrics : children) {
+            percentFull = Math.max(percentFull, childMetrics.getStallWarningPercentFull());
+        }
+        return percentFull;
+    }
+
+    @Override
+    public long getStallWarningCount() {
+        return stallWarningCount.sum();
+    }
+
+    @Override
+    public long getLimitedStatusCount() {
+        long count = limitedStatusCount;
+        for (TwitterSourceMetrics childMetrics : children) {
+            count += childMetrics.getLimitedStatusCount();
+        }
+        return count;
+    }
+
+    @Override
+    public long getTrackLimitationNoticeCount() {
+        return trackLimitationNoticeCount.sum();
+    }
+
+    @Override
+    public long getDeletionNoticeCount() {
+        return deletionNoticeCount.sum();
+    }
+
+    @Override
+    public long getErrorCount() {
+        return errorCount.sum();
+    }
+
+    @Override
+    public long getConnectionCount() {
+        return connectionCount.sum();
+    }
+
+    @Override
+    public long getReconnectCount() {
+        return reconnectCount.sum();
+    }
+
+    @Override
+    public int getConnectedCount() {
+        return connectedCount.get();
+    }
+
+    @Override
+    public long getLastReceivedTime() {
+        return lastReceivedTime;
+    }
+
+    @Override
+    public Map<String, Integer> getRateLimitRemaining() {
+        return new TreeMap<>(rateLimitRemaining);
+    }
+
+    @Override
+    public Map<String, Long> getRateLimitReset() {
+        return new TreeMap<>(rateLimitReset);
+    }
+
+    @Override
+    public long getPollCount() {
+        return pollCount.sum();
+    }
+
+    @Override
+    public long getLastPollDurationMillis() {
+        return lastPollDurationMillis;
+    }
+
+    @Override
+    public long getPollingIntervalMillis() {
+        long intervalMillis = pollingIntervalMillis;
+        for (TwitterSourceMetrics childMetrics : children) {
+            long childIntervalMillis = childMetrics.getPollingIntervalMillis();
+            if (childIntervalMillis > 0) {
+                intervalMillis = (intervalMillis > 0) ? Math.min(intervalMillis, childIntervalMillis) :
+                        childIntervalMillis;
+            }
+        }
+        return intervalMillis;
+    }
+
+    private boolean isTracked(Object tracker, Level level) {
+        return tracker != null && level.compareTo(siddhiAppContext.getRootMetricsLevel()) <= 0;
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.extension.siddhi.io.twitter.source;
+
+import java.util.Map;
+
+/**
+ * Management interface exposing the runtime metrics of a Twitter source over JMX. Counters are totals since the
+ * source was created, hence rates are derived by the monitoring tool.
+ */
+public interface TwitterSourceMetricsMXBean {
+
+    long getReceivedCount();
+
+    long getEmittedCount();
+
+    long getDuplicateCount();
+
+    /**
+     * Returns the number of tweets dropped before mapping as they are not sampled, contain none of the filter keywords
+     * or are located in none of the filter regions.
+     *
+     * @return number of filtered tweets
+     */
+    long getFilteredCount();
+
+    /**
+     * Returns the number of tweets missed while a stream connection was down, which were emitted after searching
+     * them. These are included in the emitted count.
+     *
+     * @return number of backfilled tweets
+     */
+    long getBackfilledCount();
+
+    /**
+     * Returns the number of tweets written to the spill log while the source was paused, each of which is emitted
+     * once the source is resumed.
+     *
+     * @return number of spilled tweets
+     */
+    long getSpilledCount();
+
+    /**
+     * Returns the number of tweets dropped by the overload policy, as a worker buffer was overloaded.
+     *
+     * @return number of shed tweets
+     */
+    long getShedCount();
+
+    /**
+     * Returns the number of times a worker buffer filled up to the high watermark of the overload policy.
+     *
+     * @return number of overloads
+     */
+    long getOverloadCount();
+
+    /**
+     * Returns the number of values of the mapped tweets which were found in the cache of `intern.cache.size`,
+     * hence shared with the events holding an equal value.
+     *
+     * @return number of cache hits
+     */
+    long getInternHitCount();
+
+    long getInternMissCount();
+
+    /**
+     * Returns the fraction of the values of the mapped tweets which were found in the cache of `intern.cache.size`.
+     *
+     * @return hit ratio from 0 to 1
+     */
+    double getInternHitRatio();
+
+    /**
+     * Returns the average time taken to map a tweet into an event, over the sampled tweets.
+     *
+     * @return mapping time in microseconds
+     */
+    double getMeanMappingTimeMicros();
+
+    int getBufferedCount();
+
+    int getStallWarningPercentFull();
+
+    long getStallWarningCount();
+
+    long getLimitedStatusCount();
+
+    long getTrackLimitationNoticeCount();
+
+    long getDeletionNoticeCount();
+
+    long getErrorCount();
+
+    long getConnectionCount();
+
+    long getReconnectCount();
+
+    /**
+     * Returns the number of stream connections which are currently open.
+     *
+     * @return number of open connections
+     */
+    int getConnectedCount();
+
+    /**
+     * Returns the time at which the last tweet was received, which tells whether a connection is still alive.
+     *
+     * @return epoch milliseconds, or 0 if no tweet has been received
+     */
+    long getLastReceivedTime();
+
+    Map<String, Integer> getRateLimitRemaining();
+
+    /**
+     * Returns the time at which the rate limit window of each endpoint is reset.
+     *
+     * @return epoch seconds at which the rate limit is reset, by endpoint
+     */
+    Map<String, Long> getRateLimitReset();
+
+    long getPollCount();
+
+    long getLastPollDurationMillis();
+
+    /**
+     * Returns the interval chosen between the start of the last poll and the next one, or the shortest of the
+     * intervals of the queries when several are polled.
+     *
+     * @return polling interval in milliseconds
+     */
+    long getPollingIntervalMillis();
+}
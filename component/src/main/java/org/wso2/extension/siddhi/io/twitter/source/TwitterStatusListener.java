@@ -19,13 +19,18 @@ package org.wso2.extension.siddhi.io.twitter.source;
 
 import io.siddhi.core.stream.input.source.SourceEventListener;
 import org.apache.log4j.Logger;
-import org.wso2.extension.siddhi.io.twitter.util.Util;
+import org.wso2.extension.siddhi.io.twitter.util.StatusMapper;
+import org.wso2.extension.siddhi.io.twitter.util.TweetFilter;
+import org.wso2.extension.siddhi.io.twitter.util.TweetIdDeduplicator;
+import twitter4j.ConnectionLifeCycleListener;
 import twitter4j.StallWarning;
 import twitter4j.Status;
 import twitter4j.StatusDeletionNotice;
 import twitter4j.StatusListener;
+import twitter4j.TwitterException;
+import twitter4j.TwitterObjectFactory;
 
-import java.util.Map;
+import java.nio.charset.StandardCharsets;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -33,20 +38,132 @@ import java.util.concurrent.locks.ReentrantLock;
  * Listens Twitter status and pass the events to the stream.
  */
 
-public class TwitterStatusListener implements StatusListener {
+public class TwitterStatusListener implements StatusListener, ConnectionLifeCycleListener {
     private static final Logger log = Logger.getLogger(TwitterStatusListener.class);
     private SourceEventListener sourceEventListener;
-    private boolean paused;
+    private StatusMapper statusMapper;
+    private TwitterEventDispatcher<Object> dispatcher;
+    private EventBatcher eventBatcher;
+    private TweetFilter tweetFilter;
+    private TweetIdDeduplicator deduplicator;
+    private StreamGapBackfiller backfiller;
+    private SpillBuffer spillBuffer;
+    private TwitterSourceMetrics metrics;
+    private volatile boolean paused;
     private ReentrantLock lock = new ReentrantLock();
     private Condition condition = lock.newCondition();
 
-    TwitterStatusListener(SourceEventListener sourceEventListener) {
+    /**
+     * Creates a listener which maps and emits tweets either on the twitter4j dispatch thread, or on a pool of
+     * workers when a worker count is given.
+     *
+     * @param sourceEventListener - listens events
+     * @param statusMapper        - converts tweets into events
+     * @param workerCount         - number of workers mapping and emitting tweets, 0 to emit on the dispatch thread
+     * @param bufferSize          - number of tweets each worker can buffer
+     * @param overloadPolicy      - what is done with the tweets dispatched to an overloaded worker buffer
+     * @param eventBatcher        - batches positional events, or null to emit each event on its own
+     * @param tweetFilter         - drops tweets which are not of interest, or null to emit every tweet
+     * @param deduplicator        - drops tweets which were already received, or null to emit every tweet
+     * @param backfiller          - searches the tweets missed on a reconnect, or null to not search them
+     * @param spillBuffer         - holds the tweets received while paused, or null to wait for the resume
+     * @param metrics             - collects the runtime metrics of the source
+     */
+    TwitterStatusListener(SourceEventListener sourceEventListener, StatusMapper statusMapper, int workerCount,
+                          int bufferSize, OverloadPolicy overloadPolicy, EventBatcher eventBatcher,
+                          TweetFilter tweetFilter, TweetIdDeduplicator deduplicator,
+                          StreamGapBackfiller backfiller, SpillBuffer spillBuffer, TwitterSourceMetrics metrics) {
         this.sourceEventListener = sourceEventListener;
+        this.statusMapper = statusMapper;
+        this.eventBatcher = eventBatcher;
+        this.tweetFilter = tweetFilter;
+        this.deduplicator = deduplicator;
+        this.backfiller = backfiller;
+        this.spillBuffer = spillBuffer;
+        this.metrics = metrics;
+        if (spillBuffer != null) {
+            spillBuffer.setRecordHandler(this::emitSpilled);
+        }
+        if (workerCount > 0) {
+            dispatcher = new TwitterEventDispatcher<>(sourceEventListener.getStreamDefinition().getId(),
+                    workerCount, bufferSize, overloadPolicy, this::emit, metrics);
+            dispatcher.start();
+            metrics.setBufferedCountSupplier(dispatcher::getBufferedCount);
+        }
     }
 
     @Override
     public void onStatus(Status status) {
-        Map<String, Object> event;
+        metrics.received();
+        if (backfiller != null) {
+            backfiller.received(status.getId());
+        }
+        String geoRegion = (tweetFilter == null) ? null : tweetFilter.filter(status);
+        if (tweetFilter != null && geoRegion == null) {
+            metrics.filtered();
+            return;
+        }
+        if (deduplicator != null && deduplicator.isDuplicate(status.getId())) {
+            metrics.duplicate();
+            return;
+        }
+        if (spillBuffer != null && spillBuffer.isSpilling()) {
+            // the raw JSON of a status can only be read on the thread which received it
+            String json = TwitterObjectFactory.getRawJSON(status);
+            if (json != null) {
+                byte[] data = json.getBytes(StandardCharsets.UTF_8);
+                if (spillBuffer.offer(data, 0, data.length)) {
+                    return;
+                }
+            }
+        }
+        Object tweet = status;
+        if (statusMapper.isRawJson()) {
+            // the raw JSON of a status can only be read on the thread which received it
+            long mappingStart = metrics.startMapping();
+            tweet = statusMapper.createEvent(status);
+            metrics.endMapping(mappingStart);
+        }
+        if (tweet == null) {
+            log.debug("Dropped status " + status.getId() + " as its raw JSON is not available.");
+        } else {
+            dispatch(status, tweet, geoRegion);
+        }
+    }
+
+    /**
+     * Emits a tweet drained from the spill log, after parsing it back into a status.
+     */
+    private void emitSpilled(byte[] record) {
+        String json = new String(record, StandardCharsets.UTF_8);
+        Status status;
+        try {
+            status = TwitterObjectFactory.createStatus(json);
+        } catch (TwitterException e) {
+            metrics.error();
+            log.error("Dropped a spilled tweet that could not be parsed: " + e.getMessage());
+            return;
+        }
+        dispatch(status, statusMapper.isRawJson() ? json : status, null);
+    }
+
+    /**
+     * Emits the tweet, or hands it off to a worker. The region found by the filter is only handed to the mapper
+     * when the tweet is emitted on this thread, and is looked up again by the worker otherwise.
+     */
+    private void dispatch(Status status, Object tweet, String geoRegion) {
+        if (dispatcher != null) {
+            dispatcher.dispatch((status.getUser() == null) ? status.getId() : status.getUser().getId(), tweet);
+        } else {
+            emit(tweet, geoRegion);
+        }
+    }
+
+    private void emit(Object tweet) {
+        emit(tweet, null);
+    }
+
+    private void emit(Object tweet, String geoRegion) {
         if (paused) { //spurious wakeup condition is deliberately traded off for performance
             lock.lock();
             try {
@@ -59,17 +176,35 @@ public class TwitterStatusListener implements StatusListener {
                 lock.unlock();
             }
         }
-        event = Util.createMap(status);
-        sourceEventListener.onEvent(event, null);
+        if (!(tweet instanceof Status)) {
+            sourceEventListener.onEvent(tweet, null);
+            metrics.emitted();
+            return;
+        }
+        Status status = (Status) tweet;
+        long mappingStart = metrics.startMapping();
+        if (eventBatcher != null) {
+            Object[] data = statusMapper.createObjectArray(status, geoRegion);
+            metrics.endMapping(mappingStart);
+            eventBatcher.add(data);
+        } else {
+            Object event = statusMapper.createEvent(status, geoRegion);
+            String[] transportProperties = statusMapper.getTransportProperties(status, geoRegion);
+            metrics.endMapping(mappingStart);
+            sourceEventListener.onEvent(event, transportProperties);
+        }
+        metrics.emitted();
     }
 
     @Override
     public void onDeletionNotice(StatusDeletionNotice statusDeletionNotice) {
+        metrics.deletionNotice();
         log.debug("Got a status deletion notice id:" + statusDeletionNotice.getStatusId());
     }
 
     @Override
     public void onTrackLimitationNotice(int numberOfLimitedStatuses) {
+        metrics.trackLimitationNotice(numberOfLimitedStatuses);
         log.debug("Got track limitation notice: " + numberOfLimitedStatuses);
 
     }
@@ -82,16 +217,49 @@ public class TwitterStatusListener implements StatusListener {
 
     @Override
     public void onStallWarning(StallWarning warning) {
+        metrics.stallWarning(warning.getPercentFull());
         log.debug("Got stall warning:" + warning);
     }
 
     @Override
     public void onException(Exception ex) {
+        metrics.error();
         log.error("Twitter source threw an exception", ex);
     }
 
+    @Override
+    public void onConnect() {
+        metrics.connected();
+        if (backfiller != null) {
+            backfiller.connected();
+        }
+    }
+
+    @Override
+    public void onDisconnect() {
+        metrics.disconnected();
+        log.debug("Disconnected from the Twitter stream.");
+    }
+
+    @Override
+    public void onCleanUp() {
+        log.debug("The Twitter stream has been cleaned up.");
+    }
+
+    public void shutdown() {
+        if (spillBuffer != null) {
+            spillBuffer.shutdown();
+        }
+        if (dispatcher != null) {
+            dispatcher.shutdown();
+        }
+    }
+
     public void pause() {
         paused = true;
+        if (spillBuffer != null) {
+            spillBuffer.pause();
+        }
     }
 
     public void resume() {
@@ -102,5 +270,8 @@ public class TwitterStatusListener implements StatusListener {
         } finally {
             lock.unlock();
         }
+        if (spillBuffer != null) {
+            spillBuffer.resume();
+        }
     }
 }
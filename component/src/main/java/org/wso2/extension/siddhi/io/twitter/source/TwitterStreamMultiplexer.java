@@ -0,0 +1,329 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.extension.siddhi.io.twitter.source;
+
+import org.apache.log4j.Logger;
+import org.wso2.extension.siddhi.io.twitter.util.QueryBuilder;
+import org.wso2.extension.siddhi.io.twitter.util.TweetIdHashSet;
+import org.wso2.extension.siddhi.io.twitter.util.TwitterConstants;
+import twitter4j.ConnectionLifeCycleListener;
+import twitter4j.FilterQuery;
+import twitter4j.StallWarning;
+import twitter4j.Status;
+import twitter4j.StatusDeletionNotice;
+import twitter4j.StatusListener;
+import twitter4j.TwitterStream;
+import twitter4j.TwitterStreamFactory;
+import twitter4j.conf.Configuration;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shares the stream connections of a JVM among the Twitter sources using the same credentials, so that hundreds of
+ * sources do not each hold connections of their own. The filters of the sources are merged into the fewest
+ * connections which stay within the per connection limits, and each Tweet received is passed to the listeners of
+ * the sources whose own filter it matches, each of which keeps its own workers, deduplication, metrics and mapping.
+ * <p>
+ * Changing the filter reconnects the stream, which Twitter rate limits, hence the changes made while the sources of
+ * the apps are started or stopped together are applied with a single reconnect.
+ */
+public class TwitterStreamMultiplexer implements StatusListener, ConnectionLifeCycleListener {
+    private static final Logger log = Logger.getLogger(TwitterStreamMultiplexer.class);
+    private static final long REFILTER_DELAY_MILLIS = 1000;
+    private static final int DEDUP_CACHE_SIZE = 100000;
+    private static final Map<String, TwitterStreamMultiplexer> MULTIPLEXERS = new HashMap<>();
+    private static ScheduledExecutorService refilterExecutor;
+    private final String key;
+    private final Configuration configuration;
+    private final String filterLevel;
+    private final List<StreamSubscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final List<TwitterStream> twitterStreams = new ArrayList<>();
+    // a Tweet matching the filters of several connections is received on each of them
+    private final TweetIdHashSet deduplicator = new TweetIdHashSet(DEDUP_CACHE_SIZE, 0);
+    private volatile boolean tracking;
+    private volatile boolean sharded;
+    private String appliedFilter;
+    private ScheduledFuture<?> pendingRefilter;
+
+    TwitterStreamMultiplexer(String key, Configuration configuration, String filterLevel) {
+        this.key = key;
+        this.configuration = configuration;
+        this.filterLevel = filterLevel;
+    }
+
+    /**
+     * Adds the subscription of a source to the connections shared by the sources of the same key, opening them if
+     * it is the first one.
+     *
+     * @param key           - identifies the credentials, endpoint and filter level the connections are opened with
+     * @param configuration - configuration the connections are opened with
+     * @param filterLevel   - filter level of the connections
+     * @param subscription  - filter and listener of the source
+     */
+    public static synchronized void subscribe(String key, Configuration configuration, String filterLevel,
+                                              StreamSubscription subscription) {
+        // the sample stream cannot be given a filter, hence it is not shared with the filtered sources
+        String multiplexerKey = key + (subscription.isSample() ? "#sample" : "#filter");
+        TwitterStreamMultiplexer multiplexer = MULTIPLEXERS.get(multiplexerKey);
+        if (multiplexer == null) {
+            multiplexer = new TwitterStreamMultiplexer(multiplexerKey, configuration, filterLevel);
+            MULTIPLEXERS.put(multiplexerKey, multiplexer);
+        }
+        multiplexer.addSubscription(subscription);
+        multiplexer.scheduleRefilter();
+    }
+
+    /**
+     * Removes the subscription of a source, closing the connections when no source is left.
+     *
+     * @param subscription - subscription given to {@link #subscribe}
+     */
+    public static synchronized void unsubscribe(StreamSubscription subscription) {
+        for (TwitterStreamMultiplexer multiplexer : MULTIPLEXERS.values()) {
+            if (multiplexer.removeSubscription(subscription)) {
+                if (multiplexer.subscriptions.isEmpty()) {
+                    MULTIPLEXERS.remove(multiplexer.key);
+                    multiplexer.shutdown();
+                } else {
+                    multiplexer.scheduleRefilter();
+                }
+                return;
+            }
+        }
+    }
+
+    void addSubscription(StreamSubscription subscription) {
+        subscriptions.add(subscription);
+        tracking = tracking || subscription.hasTrack();
+    }
+
+    boolean removeSubscription(StreamSubscription subscription) {
+        if (!subscriptions.remove(subscription)) {
+            return false;
+        }
+        boolean hasTrack = false;
+        for (StreamSubscription remaining : subscriptions) {
+            hasTrack = hasTrack || remaining.hasTrack();
+        }
+        tracking = hasTrack;
+        return true;
+    }
+
+    private void scheduleRefilter() {
+        if (pendingRefilter != null && !pendingRefilter.isDone()) {
+            return;
+        }
+        if (refilterExecutor == null) {
+            refilterExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "twitter-stream-multiplexer");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        pendingRefilter = refilterExecutor.schedule(this::refilter, REFILTER_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Opens, reconnects or closes connections so that they carry the merged filter of the current subscriptions.
+     */
+    private void refilter() {
+        synchronized (TwitterStreamMultiplexer.class) {
+            if (subscriptions.isEmpty()) {
+                return;
+            }
+            List<FilterQuery> filterQueries = createFilterQueries(subscriptions, filterLevel);
+            String filter = describe(subscriptions);
+            if (filter.equals(appliedFilter)) {
+                return;
+            }
+            appliedFilter = filter;
+            while (twitterStreams.size() > filterQueries.size()) {
+                twitterStreams.remove(twitterStreams.size() - 1).shutdown();
+            }
+            for (int i = 0; i < filterQueries.size(); i++) {
+                TwitterStream twitterStream;
+                if (i < twitterStreams.size()) {
+                    twitterStream = twitterStreams.get(i);
+                } else {
+                    twitterStream = new TwitterStreamFactory(configuration).getInstance();
+                    twitterStream.addListener(this);
+                    twitterStream.addConnectionLifeCycleListener(this);
+                    twitterStreams.add(twitterStream);
+                }
+                if (filterQueries.get(i) == null) {
+                    twitterStream.sample();
+                } else {
+                    twitterStream.filter(filterQueries.get(i));
+                }
+            }
+            sharded = twitterStreams.size() > 1;
+            if (log.isDebugEnabled()) {
+                log.debug("The Twitter stream shared by " + subscriptions.size() + " sources is filtered on " +
+                        twitterStreams.size() + " connections.");
+            }
+        }
+    }
+
+    /**
+     * Merges the filters of the subscriptions, and splits the merged filter across just enough connections to stay
+     * within the per connection limits.
+     *
+     * @param subscriptions - subscriptions of the sources, which are either all of the sample stream or all filtered
+     * @param filterLevel   - filter level of the connections
+     * @return the filter query of each connection, or a single null for the sample stream
+     */
+    static List<FilterQuery> createFilterQueries(List<StreamSubscription> subscriptions, String filterLevel) {
+        if (subscriptions.get(0).isSample()) {
+            List<FilterQuery> filterQueries = new ArrayList<>(1);
+            filterQueries.add(null);
+            return filterQueries;
+        }
+        Set<String> track = new LinkedHashSet<>();
+        Set<Long> follow = new LinkedHashSet<>();
+        List<double[]> locations = new ArrayList<>();
+        Set<String> languages = new LinkedHashSet<>();
+        boolean isAnyLanguage = false;
+        for (StreamSubscription subscription : subscriptions) {
+            for (String phrase : subscription.getTrackParam().split(TwitterConstants.DELIMITER)) {
+                if (!phrase.trim().isEmpty()) {
+                    track.add(phrase.trim());
+                }
+            }
+            if (subscription.getFollow() != null) {
+                for (long userId : subscription.getFollow()) {
+                    follow.add(userId);
+                }
+            }
+            if (subscription.getLocations() != null) {
+                locations.addAll(Arrays.asList(subscription.getLocations()));
+            }
+            // the language restricts the whole connection, hence it is only given when every source restricts it
+            isAnyLanguage = isAnyLanguage || subscription.getLanguages().isEmpty();
+            languages.addAll(subscription.getLanguages());
+        }
+        String trackParam = String.join(TwitterConstants.DELIMITER, track);
+        long[] followArray = follow.isEmpty() ? null : follow.stream().mapToLong(Long::longValue).toArray();
+        double[][] locationArray = locations.isEmpty() ? null : locations.toArray(new double[0][]);
+        String languageParam = isAnyLanguage ? TwitterConstants.EMPTY_STRING :
+                String.join(TwitterConstants.DELIMITER, languages);
+        int shardCount = QueryBuilder.getRequiredShardCount(trackParam, followArray, locationArray);
+        return QueryBuilder.createFilterQueries(languageParam, trackParam, followArray, filterLevel, locationArray,
+                shardCount);
+    }
+
+    private static String describe(List<StreamSubscription> subscriptions) {
+        StringBuilder filter = new StringBuilder();
+        for (StreamSubscription subscription : subscriptions) {
+            filter.append(subscription.getTrackParam()).append('|')
+                    .append(Arrays.toString(subscription.getFollow())).append('|')
+                    .append(Arrays.deepToString(subscription.getLocations())).append('|')
+                    .append(subscription.getLanguages()).append(';');
+        }
+        return filter.toString();
+    }
+
+    private void shutdown() {
+        if (pendingRefilter != null) {
+            pendingRefilter.cancel(false);
+        }
+        for (TwitterStream twitterStream : twitterStreams) {
+            twitterStream.shutdown();
+        }
+        twitterStreams.clear();
+    }
+
+    @Override
+    public void onStatus(Status status) {
+        if (sharded && deduplicator.isDuplicate(status.getId())) {
+            return;
+        }
+        Set<String> words = tracking ? StreamSubscription.getWords(status) : null;
+        for (StreamSubscription subscription : subscriptions) {
+            if (subscription.matches(status, words)) {
+                subscription.getListener().onStatus(status);
+            }
+        }
+    }
+
+    @Override
+    public void onDeletionNotice(StatusDeletionNotice statusDeletionNotice) {
+        for (StreamSubscription subscription : subscriptions) {
+            subscription.getListener().onDeletionNotice(statusDeletionNotice);
+        }
+    }
+
+    @Override
+    public void onTrackLimitationNotice(int numberOfLimitedStatuses) {
+        for (StreamSubscription subscription : subscriptions) {
+            subscription.getListener().onTrackLimitationNotice(numberOfLimitedStatuses);
+        }
+    }
+
+    @Override
+    public void onScrubGeo(long userId, long upToStatusId) {
+        for (StreamSubscription subscription : subscriptions) {
+            subscription.getListener().onScrubGeo(userId, upToStatusId);
+        }
+    }
+
+    @Override
+    public void onStallWarning(StallWarning warning) {
+        for (StreamSubscription subscription : subscriptions) {
+            subscription.getListener().onStallWarning(warning);
+        }
+    }
+
+    @Override
+    public void onException(Exception ex) {
+        for (StreamSubscription subscription : subscriptions) {
+            subscription.getListener().onException(ex);
+        }
+    }
+
+    @Override
+    public void onConnect() {
+        for (StreamSubscription subscription : subscriptions) {
+            subscription.getListener().onConnect();
+        }
+    }
+
+    @Override
+    public void onDisconnect() {
+        for (StreamSubscription subscription : subscriptions) {
+            subscription.getListener().onDisconnect();
+        }
+    }
+
+    @Override
+    public void onCleanUp() {
+        for (StreamSubscription subscription : subscriptions) {
+            subscription.getListener().onCleanUp();
+        }
+    }
+}
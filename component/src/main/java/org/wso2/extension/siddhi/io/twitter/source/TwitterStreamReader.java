@@ -0,0 +1,420 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.extension.siddhi.io.twitter.source;
+
+import io.siddhi.core.stream.input.source.SourceEventListener;
+import org.apache.log4j.Logger;
+import org.wso2.extension.siddhi.io.twitter.util.StatusMapper;
+import org.wso2.extension.siddhi.io.twitter.util.TweetAttribute;
+import org.wso2.extension.siddhi.io.twitter.util.TweetFields;
+import org.wso2.extension.siddhi.io.twitter.util.TweetFilter;
+import org.wso2.extension.siddhi.io.twitter.util.TweetIdDeduplicator;
+import org.wso2.extension.siddhi.io.twitter.util.TweetJsonDecoder;
+import twitter4j.HttpClient;
+import twitter4j.HttpClientFactory;
+import twitter4j.HttpParameter;
+import twitter4j.HttpResponse;
+import twitter4j.TwitterException;
+import twitter4j.auth.Authorization;
+import twitter4j.auth.AuthorizationFactory;
+import twitter4j.conf.Configuration;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Reads the Twitter streaming API without building twitter4j statuses. The length delimited stream is framed
+ * in a reused buffer and each message is decoded by a {@link TweetJsonDecoder}, which only extracts the
+ * attributes needed by the mapping.
+ */
+public class TwitterStreamReader implements Runnable {
+    private static final Logger log = Logger.getLogger(TwitterStreamReader.class);
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+    // far larger than any tweet, so that a corrupt length does not grow the buffer without a bound
+    private static final int MAX_MESSAGE_SIZE = 1024 * 1024;
+    private static final long NETWORK_BACKOFF_STEP_MILLIS = 250;
+    private static final long NETWORK_BACKOFF_MAX_MILLIS = 16000;
+    private static final long HTTP_BACKOFF_MIN_MILLIS = 5000;
+    private static final long HTTP_BACKOFF_MAX_MILLIS = 320000;
+    private static final long RATE_LIMIT_BACKOFF_MIN_MILLIS = 60000;
+    private final Configuration configuration;
+    private final String url;
+    private final HttpParameter[] parameters;
+    private final boolean isSample;
+    private final SourceEventListener sourceEventListener;
+    private final StatusMapper statusMapper;
+    private final EventBatcher eventBatcher;
+    private final TweetFilter tweetFilter;
+    private final TweetIdDeduplicator deduplicator;
+    private final StreamGapBackfiller backfiller;
+    private final SpillBuffer spillBuffer;
+    private final TwitterSourceMetrics metrics;
+    private final TweetJsonDecoder decoder;
+    // decodes the spilled tweets on the thread draining them
+    private final TweetJsonDecoder spillDecoder;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition condition = lock.newCondition();
+    private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+    private ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+    private int start;
+    private int end;
+    private long backoffMillis;
+    private volatile boolean paused;
+    private volatile boolean running = true;
+    private volatile HttpResponse response;
+
+    /**
+     * Creates a reader of the sample or filter stream.
+     *
+     * @param configuration       - twitter4j configuration holding the credentials and the stream base URL
+     * @param parameters          - filter parameters, or null to read the sample stream
+     * @param sourceEventListener - listens events
+     * @param statusMapper        - converts the decoded tweets into events
+     * @param eventBatcher        - batches positional events, or null to emit each event on its own
+     * @param tweetFilter         - drops tweets which are not of interest, or null to emit every tweet
+     * @param deduplicator        - drops tweets which were already received, or null to emit every tweet
+     * @param backfiller          - searches the tweets missed on a reconnect, or null to not search them
+     * @param spillBuffer         - holds the tweets received while paused, or null to wait for the resume
+     * @param metrics             - collects the runtime metrics of the source
+     */
+    TwitterStreamReader(Configuration configuration, HttpParameter[] parameters,
+                        SourceEventListener sourceEventListener, StatusMapper statusMapper,
+                        EventBatcher eventBatcher, TweetFilter tweetFilter, TweetIdDeduplicator deduplicator,
+                        StreamGapBackfiller backfiller, SpillBuffer spillBuffer, TwitterSourceMetrics metrics) {
+        this.configuration = configuration;
+        this.isSample = (parameters == null);
+        this.url = configuration.getStreamBaseURL() + (isSample ? "statuses/sample.json" : "statuses/filter.json");
+        this.parameters = appendStreamParameters(parameters);
+        this.sourceEventListener = sourceEventListener;
+        this.statusMapper = statusMapper;
+        this.eventBatcher = eventBatcher;
+        this.tweetFilter = tweetFilter;
+        this.deduplicator = deduplicator;
+        this.backfiller = backfiller;
+        this.spillBuffer = spillBuffer;
+        this.metrics = metrics;
+        Set<TweetAttribute> decodedAttributes = EnumSet.noneOf(TweetAttribute.class);
+        decodedAttributes.addAll(statusMapper.getRequiredAttributes());
+        if (tweetFilter != null) {
+            decodedAttributes.addAll(tweetFilter.getRequiredAttributes());
+        }
+        this.decoder = new TweetJsonDecoder(decodedAttributes);
+        this.spillDecoder = new TweetJsonDecoder(decodedAttributes);
+        if (spillBuffer != null) {
+            spillBuffer.setRecordHandler(this::emitSpilled);
+        }
+    }
+
+    @Override
+    public void run() {
+        HttpClient httpClient = HttpClientFactory.getInstance(configuration.getHttpClientConfiguration());
+        Authorization authorization = AuthorizationFactory.getInstance(configuration);
+        while (running) {
+            boolean connected = false;
+            try {
+                response = isSample ? httpClient.get(url, parameters, authorization, null) :
+                        httpClient.post(url, parameters, authorization, null);
+                backoffMillis = 0;
+                metrics.connected();
+                connected = true;
+                if (backfiller != null) {
+                    backfiller.connected();
+                }
+                log.info("Connected to the Twitter stream at " + url);
+                readMessages(Channels.newChannel(response.asStream()));
+            } catch (TwitterException e) {
+                if (!running) {
+                    return;
+                }
+                metrics.error();
+                long minimum = (e.getStatusCode() == 420 || e.getStatusCode() == 429) ?
+                        RATE_LIMIT_BACKOFF_MIN_MILLIS : HTTP_BACKOFF_MIN_MILLIS;
+                backoffMillis = Math.min(Math.max(backoffMillis * 2, minimum), HTTP_BACKOFF_MAX_MILLIS);
+                log.error("Failed to connect to the Twitter stream, retrying in " + backoffMillis + " ms: " +
+                        e.getMessage());
+                sleep(backoffMillis);
+            } catch (IOException e) {
+                if (!running) {
+                    return;
+                }
+                metrics.error();
+                backoffMillis = Math.min(backoffMillis + NETWORK_BACKOFF_STEP_MILLIS, NETWORK_BACKOFF_MAX_MILLIS);
+                log.error("Twitter stream was disconnected, reconnecting in " + backoffMillis + " ms: " +
+                        e.getMessage());
+                sleep(backoffMillis);
+            } finally {
+                closeResponse();
+                if (connected) {
+                    metrics.disconnected();
+                }
+            }
+        }
+    }
+
+    public void shutdown() {
+        running = false;
+        closeResponse();
+        if (spillBuffer != null) {
+            spillBuffer.shutdown();
+        }
+    }
+
+    public void pause() {
+        paused = true;
+        if (spillBuffer != null) {
+            spillBuffer.pause();
+        }
+    }
+
+    public void resume() {
+        paused = false;
+        try {
+            lock.lock();
+            condition.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (spillBuffer != null) {
+            spillBuffer.resume();
+        }
+    }
+
+    /**
+     * Reads the messages of the stream, each of which is preceded by its length in bytes on a separate line.
+     * Blank lines are sent as keep-alive signals. A message larger than {@link #MAX_MESSAGE_SIZE} is dropped by
+     * failing the connection, as the stream cannot be framed again without reading it.
+     */
+    private void readMessages(ReadableByteChannel channel) throws IOException {
+        start = 0;
+        end = 0;
+        while (running) {
+            int lineEnd = indexOfNewLine();
+            if (lineEnd < 0) {
+                fill(channel);
+                continue;
+            }
+            int length = 0;
+            for (int i = start; i < lineEnd; i++) {
+                byte current = buffer[i];
+                if (current >= '0' && current <= '9') {
+                    length = length * 10 + (current - '0');
+                    if (length > MAX_MESSAGE_SIZE) {
+                        throw new IOException("Dropped a message larger than " + MAX_MESSAGE_SIZE + " bytes.");
+                    }
+                }
+            }
+            start = lineEnd + 1;
+            if (length == 0) {
+                continue;
+            }
+            while (end - start < length) {
+                fill(channel);
+            }
+            // the length includes the new line terminating each message
+            int messageLength = length;
+            while (messageLength > 0 && buffer[start + messageLength - 1] <= ' ') {
+                messageLength--;
+            }
+            if (messageLength > 0) {
+                handleMessage(start, messageLength);
+            }
+            start += length;
+        }
+    }
+
+    private int indexOfNewLine() {
+        for (int i = start; i < end; i++) {
+            if (buffer[i] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Reads more bytes from the channel, compacting the buffer or growing it up to {@link #MAX_MESSAGE_SIZE}
+     * when a message does not fit.
+     */
+    private void fill(ReadableByteChannel channel) throws IOException {
+        if (start > 0) {
+            System.arraycopy(buffer, start, buffer, 0, end - start);
+            end -= start;
+            start = 0;
+        }
+        if (end == buffer.length) {
+            if (buffer.length >= MAX_MESSAGE_SIZE) {
+                throw new IOException("Dropped a length line longer than " + MAX_MESSAGE_SIZE + " bytes.");
+            }
+            byte[] expanded = new byte[Math.min(buffer.length * 2, MAX_MESSAGE_SIZE)];
+            System.arraycopy(buffer, 0, expanded, 0, end);
+            buffer = expanded;
+            byteBuffer = ByteBuffer.wrap(buffer);
+        }
+        byteBuffer.limit(buffer.length).position(end);
+        int read = channel.read(byteBuffer);
+        if (read < 0) {
+            throw new IOException("Stream closed by Twitter.");
+        }
+        end += read;
+    }
+
+    private void handleMessage(int offset, int length) {
+        TweetJsonDecoder.MessageType messageType;
+        try {
+            messageType = decoder.decode(buffer, offset, length);
+        } catch (IllegalArgumentException e) {
+            metrics.error();
+            log.error("Dropped a message that could not be decoded: " + e.getMessage());
+            return;
+        } catch (RuntimeException e) {
+            metrics.error();
+            log.error("Dropped a message that failed to be decoded.", e);
+            return;
+        }
+        try {
+            handleMessage(messageType, offset, length);
+        } catch (RuntimeException e) {
+            // the stream is kept being read, as the twitter4j listener and the dispatcher workers do
+            metrics.error();
+            log.error("Dropped a message that failed to be handled.", e);
+        }
+    }
+
+    private void handleMessage(TweetJsonDecoder.MessageType messageType, int offset, int length) {
+        switch (messageType) {
+            case STATUS:
+                metrics.received();
+                if (backfiller != null) {
+                    backfiller.received(decoder.getFields().getId());
+                }
+                if (tweetFilter != null && !tweetFilter.accept(decoder.getFields())) {
+                    metrics.filtered();
+                } else if (deduplicator != null && deduplicator.isDuplicate(decoder.getFields().getId())) {
+                    metrics.duplicate();
+                } else if (spillBuffer == null || !spillBuffer.offer(buffer, offset, length)) {
+                    emit(decoder.getFields(), buffer, offset, length);
+                }
+                break;
+            case DELETE:
+                metrics.deletionNotice();
+                log.debug("Got a status deletion notice id:" + decoder.getNoticeValue());
+                break;
+            case LIMIT:
+                metrics.trackLimitationNotice(decoder.getNoticeValue());
+                log.debug("Got track limitation notice: " + decoder.getNoticeValue());
+                break;
+            case WARNING:
+                metrics.stallWarning((int) decoder.getNoticeValue());
+                log.debug("Got stall warning, percent full: " + decoder.getNoticeValue());
+                break;
+            case DISCONNECT:
+                log.warn("Twitter stream is being disconnected with code " + decoder.getNoticeValue());
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Emits a tweet drained from the spill log, after decoding it again.
+     */
+    private void emitSpilled(byte[] record) {
+        try {
+            spillDecoder.decode(record, 0, record.length);
+        } catch (IllegalArgumentException e) {
+            metrics.error();
+            log.error("Dropped a spilled message that could not be decoded: " + e.getMessage());
+            return;
+        }
+        try {
+            emit(spillDecoder.getFields(), record, 0, record.length);
+        } catch (RuntimeException e) {
+            metrics.error();
+            log.error("Dropped a spilled message that failed to be emitted.", e);
+        }
+    }
+
+    private void emit(TweetFields fields, byte[] message, int offset, int length) {
+        if (paused) { //spurious wakeup condition is deliberately traded off for performance
+            lock.lock();
+            try {
+                while (paused) {
+                    condition.await();
+                }
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            } finally {
+                lock.unlock();
+            }
+        }
+        long mappingStart = metrics.startMapping();
+        if (statusMapper.isRawJson()) {
+            String json = new String(message, offset, length, StandardCharsets.UTF_8);
+            metrics.endMapping(mappingStart);
+            sourceEventListener.onEvent(json, null);
+        } else if (eventBatcher != null) {
+            Object[] data = statusMapper.createObjectArray(fields);
+            metrics.endMapping(mappingStart);
+            eventBatcher.add(data);
+        } else {
+            Object event = statusMapper.createEvent(fields);
+            String[] transportProperties = statusMapper.getTransportProperties(fields);
+            metrics.endMapping(mappingStart);
+            sourceEventListener.onEvent(event, transportProperties);
+        }
+        metrics.emitted();
+    }
+
+    private void closeResponse() {
+        HttpResponse currentResponse = response;
+        if (currentResponse != null) {
+            try {
+                currentResponse.disconnect();
+            } catch (IOException e) {
+                log.debug("Failed to close the Twitter stream: " + e.getMessage());
+            }
+        }
+    }
+
+    private void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+
+    private static HttpParameter[] appendStreamParameters(HttpParameter[] parameters) {
+        int length = (parameters == null) ? 0 : parameters.length;
+        HttpParameter[] streamParameters = new HttpParameter[length + 2];
+        if (parameters != null) {
+            System.arraycopy(parameters, 0, streamParameters, 0, length);
+        }
+        streamParameters[length] = new HttpParameter("delimited", "length");
+        streamParameters[length + 1] = new HttpParameter("stall_warnings", true);
+        return streamParameters;
+    }
+}
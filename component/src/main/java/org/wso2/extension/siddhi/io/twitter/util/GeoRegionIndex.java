@@ -0,0 +1,285 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.extension.siddhi.io.twitter.util;
+
+import twitter4j.GeoLocation;
+import twitter4j.Place;
+import twitter4j.Status;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Finds the region containing the location of a tweet among a set of polygons, such as store catchments. The
+ * regions are indexed in a uniform grid laid over their extent, each cell of which lists the regions whose bounding
+ * box overlaps it, so that a lookup only tests the few regions around the location whatever the number of regions.
+ * <p>
+ * A tweet is located by its exact coordinates when it has them, or else by the centre of the bounding box of its
+ * place. Regions are not expected to cross the antimeridian.
+ */
+public class GeoRegionIndex {
+    private static final int CELLS_PER_REGION = 4;
+    private static final int MAX_CELL_COUNT = 1 << 20;
+    private final String[] regionIds;
+    // longitude and latitude of the vertices of all regions, one after the other
+    private final double[] vertices;
+    private final int[] vertexOffsets;
+    // west, south, east and north bounds of each region
+    private final double[] bounds;
+    private final double west;
+    private final double south;
+    private final double east;
+    private final double north;
+    private final int columns;
+    private final int rows;
+    private final double cellWidth;
+    private final double cellHeight;
+    // regions overlapping each cell, listed from cellOffsets[cell] to cellOffsets[cell + 1]
+    private final int[] cellOffsets;
+    private final int[] cellRegions;
+
+    private GeoRegionIndex(List<String> regionIds, List<double[]> polygons) {
+        int regionCount = regionIds.size();
+        this.regionIds = regionIds.toArray(new String[0]);
+        this.vertexOffsets = new int[regionCount + 1];
+        for (int i = 0; i < regionCount; i++) {
+            vertexOffsets[i + 1] = vertexOffsets[i] + polygons.get(i).length;
+        }
+        this.vertices = new double[vertexOffsets[regionCount]];
+        this.bounds = new double[regionCount * 4];
+        double minLongitude = Double.MAX_VALUE;
+        double minLatitude = Double.MAX_VALUE;
+        double maxLongitude = -Double.MAX_VALUE;
+        double maxLatitude = -Double.MAX_VALUE;
+        for (int i = 0; i < regionCount; i++) {
+            double[] polygon = polygons.get(i);
+            System.arraycopy(polygon, 0, vertices, vertexOffsets[i], polygon.length);
+            double regionWest = Double.MAX_VALUE;
+            double regionSouth = Double.MAX_VALUE;
+            double regionEast = -Double.MAX_VALUE;
+            double regionNorth = -Double.MAX_VALUE;
+            for (int j = 0; j < polygon.length; j += 2) {
+                regionWest = Math.min(regionWest, polygon[j]);
+                regionEast = Math.max(regionEast, polygon[j]);
+                regionSouth = Math.min(regionSouth, polygon[j + 1]);
+                regionNorth = Math.max(regionNorth, polygon[j + 1]);
+            }
+            bounds[i * 4] = regionWest;
+            bounds[i * 4 + 1] = regionSouth;
+            bounds[i * 4 + 2] = regionEast;
+            bounds[i * 4 + 3] = regionNorth;
+            minLongitude = Math.min(minLongitude, regionWest);
+            minLatitude = Math.min(minLatitude, regionSouth);
+            maxLongitude = Math.max(maxLongitude, regionEast);
+            maxLatitude = Math.max(maxLatitude, regionNorth);
+        }
+        this.west = minLongitude;
+        this.south = minLatitude;
+        this.east = maxLongitude;
+        this.north = maxLatitude;
+        double width = Math.max(maxLongitude - minLongitude, Double.MIN_NORMAL);
+        double height = Math.max(maxLatitude - minLatitude, Double.MIN_NORMAL);
+        int cellCount = (int) Math.min(MAX_CELL_COUNT, Math.max(1L, (long) regionCount * CELLS_PER_REGION));
+        this.columns = (int) Math.max(1, Math.min(cellCount, Math.round(Math.sqrt(cellCount * width / height))));
+        this.rows = Math.max(1, cellCount / columns);
+        this.cellWidth = width / columns;
+        this.cellHeight = height / rows;
+        this.cellOffsets = new int[columns * rows + 1];
+        // the regions are counted per cell first, so that the lists are laid out in a single array
+        for (int i = 0; i < regionCount; i++) {
+            for (int row = getRow(bounds[i * 4 + 1]); row <= getRow(bounds[i * 4 + 3]); row++) {
+                for (int column = getColumn(bounds[i * 4]); column <= getColumn(bounds[i * 4 + 2]); column++) {
+                    cellOffsets[row * columns + column + 1]++;
+                }
+            }
+        }
+        for (int cell = 0; cell < columns * rows; cell++) {
+            cellOffsets[cell + 1] += cellOffsets[cell];
+        }
+        this.cellRegions = new int[cellOffsets[columns * rows]];
+        int[] filled = new int[columns * rows];
+        for (int i = 0; i < regionCount; i++) {
+            for (int row = getRow(bounds[i * 4 + 1]); row <= getRow(bounds[i * 4 + 3]); row++) {
+                for (int column = getColumn(bounds[i * 4]); column <= getColumn(bounds[i * 4 + 2]); column++) {
+                    int cell = row * columns + column;
+                    cellRegions[cellOffsets[cell] + filled[cell]++] = i;
+                }
+            }
+        }
+    }
+
+    /**
+     * Parses regions given one per line as {@code <region id>,<longitude>,<latitude>,<longitude>,<latitude>,...},
+     * where the points are the vertices of a polygon. A region given by two points is the box having them as
+     * opposite corners. Blank lines and lines starting with {@code #} are ignored.
+     *
+     * @param lines - lines defining the regions
+     * @return index of the regions
+     * @throws IllegalArgumentException if a line does not define a valid region
+     */
+    public static GeoRegionIndex parse(List<String> lines) {
+        List<String> regionIds = new ArrayList<>();
+        List<double[]> polygons = new ArrayList<>();
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] parts = line.split(TwitterConstants.DELIMITER);
+            if (parts.length < 5 || parts.length % 2 == 0) {
+                throw new IllegalArgumentException("Line " + (i + 1) + " should give a region ID followed by " +
+                        "the longitude and latitude of two corners of a box or of three or more vertices of a " +
+                        "polygon, but found '" + line + "'.");
+            }
+            double[] polygon = new double[parts.length - 1];
+            for (int j = 1; j < parts.length; j++) {
+                try {
+                    polygon[j - 1] = Double.parseDouble(parts[j].trim());
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Line " + (i + 1) + " has an invalid coordinate '" +
+                            parts[j].trim() + "'.", e);
+                }
+                double limit = (j % 2 == 1) ? 180 : 90;
+                if (Math.abs(polygon[j - 1]) > limit) {
+                    throw new IllegalArgumentException("Line " + (i + 1) + " has a coordinate out of range '" +
+                            parts[j].trim() + "'.");
+                }
+            }
+            if (polygon.length == 4) {
+                polygon = new double[]{polygon[0], polygon[1], polygon[2], polygon[1], polygon[2], polygon[3],
+                        polygon[0], polygon[3]};
+            }
+            regionIds.add(parts[0].trim());
+            polygons.add(polygon);
+        }
+        if (regionIds.isEmpty()) {
+            throw new IllegalArgumentException("No region is given.");
+        }
+        return new GeoRegionIndex(regionIds, polygons);
+    }
+
+    /**
+     * Finds the region containing the location of the given tweet.
+     *
+     * @param status - received status
+     * @return ID of the first listed region containing the tweet, or null if there is none or the tweet has no
+     * location
+     */
+    public String findRegion(Status status) {
+        GeoLocation geoLocation = status.getGeoLocation();
+        if (geoLocation != null) {
+            return findRegion(geoLocation.getLatitude(), geoLocation.getLongitude());
+        }
+        Place place = status.getPlace();
+        if (place == null || place.getBoundingBoxCoordinates() == null) {
+            return null;
+        }
+        double minLatitude = Double.MAX_VALUE;
+        double minLongitude = Double.MAX_VALUE;
+        double maxLatitude = -Double.MAX_VALUE;
+        double maxLongitude = -Double.MAX_VALUE;
+        for (GeoLocation[] ring : place.getBoundingBoxCoordinates()) {
+            for (GeoLocation point : ring) {
+                minLatitude = Math.min(minLatitude, point.getLatitude());
+                maxLatitude = Math.max(maxLatitude, point.getLatitude());
+                minLongitude = Math.min(minLongitude, point.getLongitude());
+                maxLongitude = Math.max(maxLongitude, point.getLongitude());
+            }
+        }
+        if (minLatitude > maxLatitude) {
+            return null;
+        }
+        return findRegion((minLatitude + maxLatitude) / 2, (minLongitude + maxLongitude) / 2);
+    }
+
+    /**
+     * Finds the region containing the location of the given decoded tweet. The tweet needs to be decoded with the
+     * {@link TweetAttribute#GEO_REGION} attribute.
+     *
+     * @param fields - decoded tweet
+     * @return ID of the first listed region containing the tweet, or null if there is none or the tweet has no
+     * location
+     */
+    public String findRegion(TweetFields fields) {
+        if (fields.hasGeoLocation) {
+            return findRegion(fields.latitude, fields.longitude);
+        }
+        if (fields.hasPlaceLocation) {
+            return findRegion(fields.placeLatitude, fields.placeLongitude);
+        }
+        return null;
+    }
+
+    /**
+     * Finds the region containing the given point.
+     *
+     * @param latitude  - latitude of the point
+     * @param longitude - longitude of the point
+     * @return ID of the first listed region containing the point, or null if there is none
+     */
+    public String findRegion(double latitude, double longitude) {
+        if (longitude < west || latitude < south || longitude > east || latitude > north) {
+            return null;
+        }
+        int cell = getRow(latitude) * columns + getColumn(longitude);
+        for (int i = cellOffsets[cell]; i < cellOffsets[cell + 1]; i++) {
+            int region = cellRegions[i];
+            if (longitude >= bounds[region * 4] && latitude >= bounds[region * 4 + 1] &&
+                    longitude <= bounds[region * 4 + 2] && latitude <= bounds[region * 4 + 3] &&
+                    contains(region, latitude, longitude)) {
+                return regionIds[region];
+            }
+        }
+        return null;
+    }
+
+    public int getRegionCount() {
+        return regionIds.length;
+    }
+
+    /**
+     * Tells whether a polygon contains a point, by counting the edges crossed by a ray going east from the point.
+     */
+    private boolean contains(int region, double latitude, double longitude) {
+        boolean inside = false;
+        int start = vertexOffsets[region];
+        int end = vertexOffsets[region + 1];
+        for (int i = start, j = end - 2; i < end; j = i, i += 2) {
+            double longitudeI = vertices[i];
+            double latitudeI = vertices[i + 1];
+            double longitudeJ = vertices[j];
+            double latitudeJ = vertices[j + 1];
+            if ((latitudeI > latitude) != (latitudeJ > latitude) && longitude <
+                    (longitudeJ - longitudeI) * (latitude - latitudeI) / (latitudeJ - latitudeI) + longitudeI) {
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
+
+    /**
+     * Returns the column of the cell of a longitude within the extent, where the east edge belongs to the last one.
+     */
+    private int getColumn(double longitude) {
+        return Math.min(columns - 1, (int) ((longitude - west) / cellWidth));
+    }
+
+    private int getRow(double latitude) {
+        return Math.min(rows - 1, (int) ((latitude - south) / cellHeight));
+    }
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.extension.siddhi.io.twitter.util;
+
+import twitter4j.HashtagEntity;
+import twitter4j.Status;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Queue;
+
+/**
+ * Finds whether a tweet contains any of a set of keywords and phrases, in a single pass over its text whatever the
+ * number of keywords. The keywords are compiled into an Aho-Corasick automaton, whose transitions are kept in an
+ * open addressing table of primitives so that matching does not allocate.
+ * <p>
+ * Keywords are matched ignoring case and only as whole words, i.e., a keyword is not matched inside a longer word,
+ * and the words of a phrase are matched when separated by single whitespace characters.
+ */
+public class KeywordMatcher {
+    private static final int ROOT = 0;
+    private static final int NONE = -1;
+    private static final long EMPTY = -1;
+    // transitions keyed by the source state and the character, to the target state
+    private final long[] transitionKeys;
+    private final int[] transitionTargets;
+    private final int transitionMask;
+    // length of the keyword ending at the state, or 0 if none does
+    private final int[] keywordLengths;
+    // state reached on a mismatch, which is the longest proper suffix of the state's path in the trie
+    private int[] failures;
+    // nearest state on the failure chain at which a keyword ends, or NONE
+    private int[] outputs;
+    private int stateCount;
+
+    /**
+     * Compiles the given keywords. Blank keywords are ignored.
+     *
+     * @param keywords - keywords and phrases to be matched
+     */
+    public KeywordMatcher(Collection<String> keywords) {
+        int capacity = 1;
+        for (String keyword : keywords) {
+            capacity += keyword.length();
+        }
+        int tableSize = Integer.highestOneBit(Math.max(capacity, 8)) << 2;
+        transitionKeys = new long[tableSize];
+        Arrays.fill(transitionKeys, EMPTY);
+        transitionTargets = new int[tableSize];
+        transitionMask = tableSize - 1;
+        keywordLengths = new int[capacity];
+        stateCount = 1;
+        for (String keyword : keywords) {
+            addKeyword(normalize(keyword));
+        }
+        buildFailures();
+    }
+
+    /**
+     * Tells whether the text or the hashtags of a status contain any of the keywords.
+     *
+     * @param status - received status
+     * @return true if a keyword is found
+     */
+    public boolean matches(Status status) {
+        if (matches(status.getText())) {
+            return true;
+        }
+        HashtagEntity[] hashtags = status.getHashtagEntities();
+        if (hashtags != null) {
+            for (HashtagEntity hashtag : hashtags) {
+                if (matches(hashtag.getText())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Tells whether the text or the hashtags of a decoded tweet contain any of the keywords. The tweet needs to
+     * be decoded with its text and hashtags.
+     *
+     * @param fields - decoded tweet
+     * @return true if a keyword is found
+     */
+    public boolean matches(TweetFields fields) {
+        if (matches(fields.text)) {
+            return true;
+        }
+        for (String hashtag : fields.hashtags) {
+            if (matches(hashtag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Tells whether the text contains any of the keywords as whole words.
+     *
+     * @param text - text to be searched, or null
+     * @return true if a keyword is found
+     */
+    public boolean matches(CharSequence text) {
+        if (text == null) {
+            return false;
+        }
+        int state = ROOT;
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char current = fold(text.charAt(i));
+            int next = getTransition(state, current);
+            while (next == NONE && state != ROOT) {
+                state = failures[state];
+                next = getTransition(state, current);
+            }
+            state = (next == NONE) ? ROOT : next;
+            int output = (keywordLengths[state] > 0) ? state : outputs[state];
+            while (output != NONE) {
+                int start = i - keywordLengths[output] + 1;
+                if ((start == 0 || !isWordChar(text.charAt(start - 1))) &&
+                        (i == length - 1 || !isWordChar(text.charAt(i + 1)))) {
+                    return true;
+                }
+                output = outputs[output];
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the number of states of the automaton, which is at most one more than the total length of the
+     * keywords.
+     *
+     * @return number of states
+     */
+    public int getStateCount() {
+        return stateCount;
+    }
+
+    private void addKeyword(String keyword) {
+        if (keyword.isEmpty()) {
+            return;
+        }
+        int state = ROOT;
+        for (int i = 0; i < keyword.length(); i++) {
+            char current = keyword.charAt(i);
+            int next = getTransition(state, current);
+            if (next == NONE) {
+                next = stateCount++;
+                putTransition(state, current, next);
+            }
+            state = next;
+        }
+        keywordLengths[state] = keyword.length();
+    }
+
+    /**
+     * Links each state to its failure state and nearest output state, breadth first so that the links of the
+     * shorter paths are known.
+     */
+    private void buildFailures() {
+        failures = new int[stateCount];
+        outputs = new int[stateCount];
+        outputs[ROOT] = NONE;
+        // the children of each state are listed from the transition table, as the trie does not keep them
+        int[][] children = new int[stateCount][];
+        char[][] labels = new char[stateCount][];
+        int[] childCounts = new int[stateCount];
+        for (int i = 0; i < transitionKeys.length; i++) {
+            if (transitionKeys[i] != EMPTY) {
+                childCounts[(int) (transitionKeys[i] >>> 16)]++;
+            }
+        }
+        for (int state = 0; state < stateCount; state++) {
+            children[state] = new int[childCounts[state]];
+            labels[state] = new char[childCounts[state]];
+            childCounts[state] = 0;
+        }
+        for (int i = 0; i < transitionKeys.length; i++) {
+            if (transitionKeys[i] != EMPTY) {
+                int source = (int) (transitionKeys[i] >>> 16);
+                children[source][childCounts[source]] = transitionTargets[i];
+                labels[source][childCounts[source]++] = (char) transitionKeys[i];
+            }
+        }
+        Queue<Integer> queue = new ArrayDeque<>();
+        for (int child : children[ROOT]) {
+            failures[child] = ROOT;
+            outputs[child] = NONE;
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            for (int i = 0; i < children[state].length; i++) {
+                int child = children[state][i];
+                char label = labels[state][i];
+                int failure = failures[state];
+                int next = getTransition(failure, label);
+                while (next == NONE && failure != ROOT) {
+                    failure = failures[failure];
+                    next = getTransition(failure, label);
+                }
+                failures[child] = (next == NONE || next == child) ? ROOT : next;
+                int failureState = failures[child];
+                outputs[child] = (keywordLengths[failureState] > 0) ? failureState : outputs[failureState];
+                queue.add(child);
+            }
+        }
+    }
+
+    private int getTransition(int state, char label) {
+        long key = ((long) state << 16) | label;
+        int index = hash(key) & transitionMask;
+        while (transitionKeys[index] != EMPTY) {
+            if (transitionKeys[index] == key) {
+                return transitionTargets[index];
+            }
+            index = (index + 1) & transitionMask;
+        }
+        return NONE;
+    }
+
+    private void putTransition(int state, char label, int target) {
+        long key = ((long) state << 16) | label;
+        int index = hash(key) & transitionMask;
+        while (transitionKeys[index] != EMPTY) {
+            index = (index + 1) & transitionMask;
+        }
+        transitionKeys[index] = key;
+        transitionTargets[index] = target;
+    }
+
+    private static int hash(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    /**
+     * Lower cases a keyword and reduces the whitespace between its words to single spaces.
+     */
+    private static String normalize(String keyword) {
+        StringBuilder builder = new StringBuilder(keyword.length());
+        for (String word : keyword.trim().split("\\s+")) {
+            if (builder.length() > 0) {
+                builder.append(' ');
+            }
+            for (int i = 0; i < word.length(); i++) {
+                builder.append(fold(word.charAt(i)));
+            }
+        }
+        return builder.toString();
+    }
+
+    private static char fold(char character) {
+        return Character.isWhitespace(character) ? ' ' : Character.toLowerCase(character);
+    }
+
+    private static boolean isWordChar(char character) {
+        return Character.isLetterOrDigit(character) || character == '_';
+    }
+}
@@ -19,14 +19,17 @@ package org.wso2.extension.siddhi.io.twitter.util;
 
 import twitter4j.FilterQuery;
 import twitter4j.GeoLocation;
+import twitter4j.HttpParameter;
 import twitter4j.Query;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * It creates the query for polling or streaming mode.
  */
 public class QueryBuilder {
-    private static String keywords;
-    private static String queryParam;
+    private static final String SEARCH_OR = " OR ";
     private QueryBuilder() {
     }
 
@@ -34,7 +37,6 @@ public class QueryBuilder {
                               String since, String resultType, String geoCode, double latitude, double longitude,
                               double radius, String unitName) {
         Query query = new Query(q);
-        queryParam = q;
         if (count > 0) {
             query.count(count);
         }
@@ -62,7 +64,6 @@ public class QueryBuilder {
     public static FilterQuery createFilterQuery (String languageParam, String trackParam, long[] follow,
                                           String filterLevel, double[][] locations) {
         FilterQuery filterQuery = new FilterQuery();
-        keywords = trackParam;
         if (!trackParam.trim().isEmpty()) {
             filterQuery.track(trackParam.split(TwitterConstants.DELIMITER));
         }
@@ -85,11 +86,186 @@ public class QueryBuilder {
         return filterQuery;
     }
 
-    public static String getTrackParam() {
-        return keywords;
+    /**
+     * Creates the request parameters of the streaming filter endpoint, in the same way as
+     * {@link #createFilterQuery} creates the filter query used by twitter4j.
+     */
+    public static HttpParameter[] createFilterParameters(String languageParam, String trackParam, long[] follow,
+                                                         String filterLevel, double[][] locations) {
+        List<HttpParameter> parameters = new ArrayList<>();
+        if (!trackParam.trim().isEmpty()) {
+            parameters.add(new HttpParameter(TwitterConstants.STREAMING_FILTER_TRACK, trackParam));
+        }
+        if (!languageParam.trim().isEmpty()) {
+            parameters.add(new HttpParameter(TwitterConstants.STREAMING_FILTER_LANGUAGE, languageParam));
+        }
+        if (follow != null) {
+            StringBuilder followers = new StringBuilder();
+            for (long follower : follow) {
+                if (followers.length() > 0) {
+                    followers.append(TwitterConstants.DELIMITER);
+                }
+                followers.append(follower);
+            }
+            parameters.add(new HttpParameter(TwitterConstants.STREAMING_FILTER_FOLLOW, followers.toString()));
+        }
+        if (!filterLevel.trim().isEmpty()) {
+            parameters.add(new HttpParameter("filter_level", filterLevel));
+        }
+        if (locations != null) {
+            StringBuilder boundingBoxes = new StringBuilder();
+            for (double[] location : locations) {
+                for (double coordinate : location) {
+                    if (boundingBoxes.length() > 0) {
+                        boundingBoxes.append(TwitterConstants.DELIMITER);
+                    }
+                    boundingBoxes.append(coordinate);
+                }
+            }
+            parameters.add(new HttpParameter("locations", boundingBoxes.toString()));
+        }
+        return parameters.toArray(new HttpParameter[0]);
+    }
+
+    /**
+     * Splits the filter across the given number of stream connections, creating a filter query for each. Track
+     * keywords, follow IDs and location boxes are dealt in turn to the connections, so that every connection gets
+     * a similar share and at least one predicate when there are enough of them.
+     */
+    public static List<FilterQuery> createFilterQueries(String languageParam, String trackParam, long[] follow,
+                                                        String filterLevel, double[][] locations, int shardCount) {
+        List<FilterQuery> filterQueries = new ArrayList<>(shardCount);
+        for (FilterShard shard : splitFilter(trackParam, follow, locations, shardCount)) {
+            filterQueries.add(createFilterQuery(languageParam, shard.track.toString(), shard.getFollow(),
+                    filterLevel, shard.getLocations()));
+        }
+        return filterQueries;
+    }
+
+    /**
+     * Splits the filter across the given number of stream connections in the same way as
+     * {@link #createFilterQueries}, creating the request parameters of each connection.
+     */
+    public static List<HttpParameter[]> createFilterParameterSets(String languageParam, String trackParam,
+                                                                  long[] follow, String filterLevel,
+                                                                  double[][] locations, int shardCount) {
+        List<HttpParameter[]> parameterSets = new ArrayList<>(shardCount);
+        for (FilterShard shard : splitFilter(trackParam, follow, locations, shardCount)) {
+            parameterSets.add(createFilterParameters(languageParam, shard.track.toString(), shard.getFollow(),
+                    filterLevel, shard.getLocations()));
+        }
+        return parameterSets;
+    }
+
+    /**
+     * Returns the number of stream connections needed to stay within the per connection limits of the filter.
+     */
+    public static int getRequiredShardCount(String trackParam, long[] follow, double[][] locations) {
+        int trackCount = trackParam.trim().isEmpty() ? 0 : trackParam.split(TwitterConstants.DELIMITER).length;
+        int followCount = (follow == null) ? 0 : follow.length;
+        int locationCount = (locations == null) ? 0 : locations.length / 2;
+        return Math.max(1, Math.max(ceilDiv(trackCount, TwitterConstants.STREAMING_TRACK_LIMIT),
+                Math.max(ceilDiv(followCount, TwitterConstants.STREAMING_FOLLOW_LIMIT),
+                        ceilDiv(locationCount, TwitterConstants.STREAMING_LOCATIONS_LIMIT))));
+    }
+
+    /**
+     * Returns the total number of track keywords, follow IDs and location boxes, which bounds the number of
+     * stream connections the filter can be split across.
+     */
+    public static int getPredicateCount(String trackParam, long[] follow, double[][] locations) {
+        return (trackParam.trim().isEmpty() ? 0 : trackParam.split(TwitterConstants.DELIMITER).length) +
+                ((follow == null) ? 0 : follow.length) + ((locations == null) ? 0 : locations.length / 2);
+    }
+
+    private static List<FilterShard> splitFilter(String trackParam, long[] follow, double[][] locations,
+                                                 int shardCount) {
+        List<FilterShard> shards = new ArrayList<>(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            shards.add(new FilterShard());
+        }
+        int next = 0;
+        if (!trackParam.trim().isEmpty()) {
+            for (String keyword : trackParam.split(TwitterConstants.DELIMITER)) {
+                StringBuilder track = shards.get(next++ % shardCount).track;
+                if (track.length() > 0) {
+                    track.append(TwitterConstants.DELIMITER);
+                }
+                track.append(keyword.trim());
+            }
+        }
+        if (follow != null) {
+            for (long follower : follow) {
+                shards.get(next++ % shardCount).follow.add(follower);
+            }
+        }
+        if (locations != null) {
+            // each location box is given by its south-west and north-east corners
+            for (int i = 0; i + 1 < locations.length; i += 2) {
+                List<double[]> shardLocations = shards.get(next++ % shardCount).locations;
+                shardLocations.add(locations[i]);
+                shardLocations.add(locations[i + 1]);
+            }
+        }
+        return shards;
+    }
+
+    private static int ceilDiv(int dividend, int divisor) {
+        return (dividend + divisor - 1) / divisor;
+    }
+
+    /**
+     * Creates the search queries matching the tweets of the track keywords, which are used to search the tweets
+     * missed while a stream was disconnected. The keywords are joined with OR, and split across several queries to
+     * stay within the length limit of a search query.
+     */
+    public static List<String> createBackfillQueries(String trackParam) {
+        List<String> queries = new ArrayList<>();
+        StringBuilder query = new StringBuilder();
+        for (String keyword : trackParam.split(TwitterConstants.DELIMITER)) {
+            keyword = keyword.trim();
+            if (keyword.isEmpty()) {
+                continue;
+            }
+            // all the words of a keyword are required, which needs parentheses as OR takes precedence
+            String term = keyword.contains(" ") ? "(" + keyword + ")" : keyword;
+            if (query.length() > 0 &&
+                    query.length() + SEARCH_OR.length() + term.length() > TwitterConstants.SEARCH_QUERY_LIMIT) {
+                queries.add(query.toString());
+                query.setLength(0);
+            }
+            if (query.length() > 0) {
+                query.append(SEARCH_OR);
+            }
+            query.append(term);
+        }
+        if (query.length() > 0) {
+            queries.add(query.toString());
+        }
+        return queries;
     }
 
-    public static String getQueryParam() {
-        return queryParam;
+    /**
+     * Filter predicates assigned to one stream connection.
+     */
+    private static class FilterShard {
+        private final StringBuilder track = new StringBuilder();
+        private final List<Long> follow = new ArrayList<>();
+        private final List<double[]> locations = new ArrayList<>();
+
+        private long[] getFollow() {
+            if (follow.isEmpty()) {
+                return null;
+            }
+            long[] followArray = new long[follow.size()];
+            for (int i = 0; i < followArray.length; i++) {
+                followArray[i] = follow.get(i);
+            }
+            return followArray;
+        }
+
+        private double[][] getLocations() {
+            return locations.isEmpty() ? null : locations.toArray(new double[0][]);
+        }
     }
 }
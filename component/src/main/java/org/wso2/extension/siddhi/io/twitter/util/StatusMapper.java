@@ -0,0 +1,475 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.extension.siddhi.io.twitter.util;
+
+import io.siddhi.query.api.definition.Attribute;
+import io.siddhi.query.api.definition.StreamDefinition;
+import io.siddhi.query.api.exception.SiddhiAppValidationException;
+import twitter4j.Status;
+import twitter4j.TwitterObjectFactory;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Converts tweets into events, extracting only the attributes that were resolved when the source was initialized.
+ * Events are either created as key-value maps for the keyvalue mapper, as positional {@code Object[]}s in the
+ * order of the stream definition for the passThrough mapper, or as the raw JSON received from Twitter.
+ * <p>
+ * Attributes are emitted typed, with times as epoch milliseconds, the geolocation as a {@code double[]} and
+ * entities as {@code String[]}s, unless the legacy format is requested, in which they are given as strings.
+ */
+public class StatusMapper {
+    // attributes of which the values repeat across tweets, and are shared through the intern cache
+    private static final Set<TweetAttribute> INTERNED_ATTRIBUTES = Collections.unmodifiableSet(EnumSet.of(
+            TweetAttribute.USER_SCREEN_NAME, TweetAttribute.USER_NAME, TweetAttribute.USER_LOCATION,
+            TweetAttribute.LANGUAGE, TweetAttribute.SOURCE, TweetAttribute.PLACE_COUNTRY,
+            TweetAttribute.PLACE_COUNTRY_CODE, TweetAttribute.PLACE_NAME, TweetAttribute.PLACE_ID,
+            TweetAttribute.PLACE_FULLNAME));
+    private final TweetAttribute[] attributes;
+    private final Attribute.Type[] conversionTypes;
+    private final TweetAttribute[] transportAttributes;
+    private final boolean positional;
+    private final boolean rawJson;
+    // attributes emitted in their legacy format
+    private final Set<TweetAttribute> legacyAttributes;
+    private final int initialCapacity;
+    private GeoRegionIndex geoRegionIndex;
+    private StringInternCache internCache;
+    private String trackWords = TwitterConstants.NULL_STRING;
+    private String query = TwitterConstants.NULL_STRING;
+
+    /**
+     * Creates a mapper which extracts the given attributes into a key-value map.
+     *
+     * @param attributes             - attributes to be included in the event map
+     * @param transportPropertyNames - transport properties requested by the mapper, in the requested order
+     */
+    public StatusMapper(Collection<TweetAttribute> attributes, String[] transportPropertyNames) {
+        this(attributes, transportPropertyNames, false);
+    }
+
+    /**
+     * Creates a mapper which extracts the given attributes into a key-value map.
+     *
+     * @param attributes             - attributes to be included in the event map
+     * @param transportPropertyNames - transport properties requested by the mapper, in the requested order
+     * @param legacyFormat           - true to emit the attributes in their legacy string formats
+     */
+    public StatusMapper(Collection<TweetAttribute> attributes, String[] transportPropertyNames,
+                        boolean legacyFormat) {
+        this(attributes, transportPropertyNames, legacyFormat, Collections.emptySet());
+    }
+
+    /**
+     * Creates a mapper which extracts the given attributes into a key-value map, giving some of them in their
+     * legacy format whatever the requested format, such as those mapped onto string attributes of the stream.
+     *
+     * @param attributes             - attributes to be included in the event map
+     * @param transportPropertyNames - transport properties requested by the mapper, in the requested order
+     * @param legacyFormat           - true to emit the attributes in their legacy string formats
+     * @param legacyAttributes       - attributes to be emitted in their legacy format in any case
+     */
+    public StatusMapper(Collection<TweetAttribute> attributes, String[] transportPropertyNames,
+                        boolean legacyFormat, Collection<TweetAttribute> legacyAttributes) {
+        this.attributes = attributes.toArray(new TweetAttribute[0]);
+        this.conversionTypes = null;
+        this.transportAttributes = createTransportAttributes(transportPropertyNames);
+        this.positional = false;
+        this.rawJson = false;
+        this.legacyAttributes = legacyFormat ? EnumSet.allOf(TweetAttribute.class) :
+                (legacyAttributes.isEmpty() ? EnumSet.noneOf(TweetAttribute.class) : EnumSet.copyOf(legacyAttributes));
+        this.initialCapacity = (int) (this.attributes.length / 0.75f) + 1;
+    }
+
+    /**
+     * Creates a mapper which writes the attributes of the given stream straight into a positional event, converting
+     * values to the attribute types of the stream where they differ.
+     *
+     * @param streamDefinition       - definition of the stream the events are emitted to
+     * @param transportPropertyNames - transport properties requested by the mapper, in the requested order
+     */
+    public StatusMapper(StreamDefinition streamDefinition, String[] transportPropertyNames) {
+        this(streamDefinition, transportPropertyNames, false);
+    }
+
+    /**
+     * Creates a mapper which writes the attributes of the given stream straight into a positional event, converting
+     * values to the attribute types of the stream where they differ. Attributes declared as strings are given in
+     * their legacy format whatever the requested format.
+     *
+     * @param streamDefinition       - definition of the stream the events are emitted to
+     * @param transportPropertyNames - transport properties requested by the mapper, in the requested order
+     * @param legacyFormat           - true to emit the attributes in their legacy string formats
+     */
+    public StatusMapper(StreamDefinition streamDefinition, String[] transportPropertyNames, boolean legacyFormat) {
+        List<Attribute> streamAttributes = streamDefinition.getAttributeList();
+        this.attributes = new TweetAttribute[streamAttributes.size()];
+        this.conversionTypes = new Attribute.Type[streamAttributes.size()];
+        for (int i = 0; i < streamAttributes.size(); i++) {
+            Attribute streamAttribute = streamAttributes.get(i);
+            TweetAttribute attribute = TweetAttribute.fromAttributeName(streamAttribute.getName());
+            if (attribute == null) {
+                throw new SiddhiAppValidationException("Stream attribute '" + streamAttribute.getName() + "' of '" +
+                        streamDefinition.getId() + "' does not match any attribute of a tweet.");
+            }
+            Attribute.Type type = legacyFormat ? attribute.getLegacyType() : attribute.getType();
+            if (!isConvertible(attribute, type, streamAttribute.getType())) {
+                throw new SiddhiAppValidationException("Stream attribute '" + streamAttribute.getName() + "' of '" +
+                        streamDefinition.getId() + "' should be of type " + type + " but found " +
+                        streamAttribute.getType() + ".");
+            }
+            attributes[i] = attribute;
+            conversionTypes[i] = (type == streamAttribute.getType() ||
+                    streamAttribute.getType() == Attribute.Type.OBJECT) ? null : streamAttribute.getType();
+        }
+        this.transportAttributes = createTransportAttributes(transportPropertyNames);
+        this.positional = true;
+        this.rawJson = false;
+        this.legacyAttributes = legacyFormat ? EnumSet.allOf(TweetAttribute.class) :
+                EnumSet.noneOf(TweetAttribute.class);
+        this.initialCapacity = 0;
+    }
+
+    private StatusMapper() {
+        this.attributes = new TweetAttribute[0];
+        this.conversionTypes = null;
+        this.transportAttributes = null;
+        this.positional = false;
+        this.rawJson = true;
+        this.legacyAttributes = EnumSet.noneOf(TweetAttribute.class);
+        this.initialCapacity = 0;
+    }
+
+    private StatusMapper(StatusMapper mapper) {
+        this.attributes = mapper.attributes;
+        this.conversionTypes = mapper.conversionTypes;
+        this.transportAttributes = mapper.transportAttributes;
+        this.positional = mapper.positional;
+        this.rawJson = mapper.rawJson;
+        this.legacyAttributes = mapper.legacyAttributes;
+        this.initialCapacity = mapper.initialCapacity;
+        this.geoRegionIndex = mapper.geoRegionIndex;
+        this.internCache = mapper.internCache;
+        this.trackWords = mapper.trackWords;
+        this.query = mapper.query;
+    }
+
+    /**
+     * Creates a mapper which emits the raw JSON of each tweet, as stored by twitter4j when the JSON store is enabled.
+     *
+     * @return mapper creating JSON string events
+     */
+    public static StatusMapper createRawJsonMapper() {
+        return new StatusMapper();
+    }
+
+    /**
+     * Converts the given tweet into the event expected by the mapper.
+     *
+     * For raw JSON this needs to be called on the thread which received the tweet, as twitter4j only keeps the
+     * raw JSON of the latest statuses received by each thread.
+     *
+     * @param tweet - status received from Twitter
+     * @return a {@code Map}, an {@code Object[]} or a JSON {@code String} based on the mapping, or null if the raw
+     * JSON of the tweet is not available
+     */
+    public Object createEvent(Status tweet) {
+        return createEvent(tweet, null);
+    }
+
+    /**
+     * Converts the given tweet into the event expected by the mapper, as {@link #createEvent(Status)} does.
+     *
+     * @param tweet     - status received from Twitter
+     * @param geoRegion - region of the tweet as found by {@link TweetFilter#filter}, or null to look it up
+     * @return a {@code Map}, an {@code Object[]} or a JSON {@code String} based on the mapping, or null if the raw
+     * JSON of the tweet is not available
+     */
+    public Object createEvent(Status tweet, String geoRegion) {
+        if (rawJson) {
+            return TwitterObjectFactory.getRawJSON(tweet);
+        }
+        return positional ? createObjectArray(tweet, geoRegion) : createMap(tweet, geoRegion);
+    }
+
+    /**
+     * Converts the fields decoded from a tweet into the event expected by the mapper. This is not supported for raw
+     * JSON, which needs to be taken from the received message itself.
+     *
+     * @param fields - fields decoded from the tweet
+     * @return a {@code Map} or an {@code Object[]} based on the mapping
+     */
+    public Object createEvent(TweetFields fields) {
+        return positional ? createObjectArray(fields) : createMap(fields);
+    }
+
+    public Map<String, Object> createMap(Status tweet) {
+        return createMap(tweet, null);
+    }
+
+    public Map<String, Object> createMap(Status tweet, String geoRegion) {
+        return createMap(attribute -> extract(attribute, tweet, geoRegion));
+    }
+
+    public Map<String, Object> createMap(TweetFields fields) {
+        return createMap(attribute -> extract(attribute, fields));
+    }
+
+    public Object[] createObjectArray(Status tweet) {
+        return createObjectArray(tweet, null);
+    }
+
+    public Object[] createObjectArray(Status tweet, String geoRegion) {
+        return createObjectArray(attribute -> extract(attribute, tweet, geoRegion));
+    }
+
+    public Object[] createObjectArray(TweetFields fields) {
+        return createObjectArray(attribute -> extract(attribute, fields));
+    }
+
+    /**
+     * Returns the values of the requested transport properties for the given tweet.
+     *
+     * @param tweet - status received from Twitter
+     * @return transport property values in the requested order, or null if none were requested
+     */
+    public String[] getTransportProperties(Status tweet) {
+        return getTransportProperties(tweet, null);
+    }
+
+    /**
+     * Returns the values of the requested transport properties for the given tweet.
+     *
+     * @param tweet     - status received from Twitter
+     * @param geoRegion - region of the tweet as found by {@link TweetFilter#filter}, or null to look it up
+     * @return transport property values in the requested order, or null if none were requested
+     */
+    public String[] getTransportProperties(Status tweet, String geoRegion) {
+        return getTransportProperties(attribute -> extract(attribute, tweet, geoRegion));
+    }
+
+    /**
+     * Returns the values of the requested transport properties for the given decoded tweet.
+     *
+     * @param fields - fields decoded from the tweet
+     * @return transport property values in the requested order, or null if none were requested
+     */
+    public String[] getTransportProperties(TweetFields fields) {
+        return getTransportProperties(attribute -> extract(attribute, fields));
+    }
+
+    /**
+     * Sets the regions in which the {@link TweetAttribute#GEO_REGION} of the tweets is found.
+     *
+     * @param geoRegionIndex - index of the regions, or null to leave the attribute unset
+     */
+    public void setGeoRegionIndex(GeoRegionIndex geoRegionIndex) {
+        this.geoRegionIndex = geoRegionIndex;
+    }
+
+    /**
+     * Sets the cache through which the repeated values of the tweets are shared among the events.
+     *
+     * @param internCache - cache of the source, or null to give each event its own values
+     */
+    public void setInternCache(StringInternCache internCache) {
+        this.internCache = internCache;
+    }
+
+    /**
+     * Sets the {@link TweetAttribute#TRACK_WORDS} and {@link TweetAttribute#QUERY} of the tweets, which are those
+     * of the source of this mapper rather than of the tweets.
+     *
+     * @param trackWords - keywords tracked by the source, or an empty string if none
+     * @param query      - query polled by the source, or an empty string if none
+     */
+    public void setQueryParams(String trackWords, String query) {
+        this.trackWords = trackWords.isEmpty() ? TwitterConstants.NULL_STRING : trackWords;
+        this.query = query.isEmpty() ? TwitterConstants.NULL_STRING : query;
+    }
+
+    /**
+     * Creates a mapper which maps as this one does, but for the tweets found by one of the queries polled by the
+     * source, so that they can be told apart by their {@link TweetAttribute#QUERY}.
+     *
+     * @param query - query polled
+     * @return a mapper sharing the configuration and the caches of this one
+     */
+    public StatusMapper forQuery(String query) {
+        StatusMapper mapper = new StatusMapper(this);
+        mapper.query = query.isEmpty() ? TwitterConstants.NULL_STRING : query;
+        return mapper;
+    }
+
+    private Object extract(TweetAttribute attribute, Status tweet, String geoRegion) {
+        if (attribute == TweetAttribute.TRACK_WORDS || attribute == TweetAttribute.QUERY) {
+            return (attribute == TweetAttribute.TRACK_WORDS) ? trackWords : query;
+        }
+        if (attribute == TweetAttribute.GEO_REGION && geoRegionIndex != null) {
+            // an empty region is given by a filter which does not filter by region
+            String regionId = (geoRegion == null || geoRegion.isEmpty()) ? geoRegionIndex.findRegion(tweet) :
+                    geoRegion;
+            return (regionId == null) ? TwitterConstants.NULL_STRING : regionId;
+        }
+        return intern(attribute, format(attribute, attribute.extract(tweet)));
+    }
+
+    private Object extract(TweetAttribute attribute, TweetFields fields) {
+        if (attribute == TweetAttribute.TRACK_WORDS || attribute == TweetAttribute.QUERY) {
+            return (attribute == TweetAttribute.TRACK_WORDS) ? trackWords : query;
+        }
+        if (attribute == TweetAttribute.GEO_REGION && geoRegionIndex != null) {
+            String regionId = (fields.geoRegionIndex == geoRegionIndex) ? fields.geoRegion :
+                    geoRegionIndex.findRegion(fields);
+            return (regionId == null) ? TwitterConstants.NULL_STRING : regionId;
+        }
+        return intern(attribute, format(attribute, fields.get(attribute)));
+    }
+
+    private Object format(TweetAttribute attribute, Object value) {
+        return legacyAttributes.contains(attribute) ? attribute.toLegacyValue(value) : value;
+    }
+
+    private Object intern(TweetAttribute attribute, Object value) {
+        if (internCache != null && value instanceof String && INTERNED_ATTRIBUTES.contains(attribute)) {
+            return internCache.intern((String) value);
+        }
+        return value;
+    }
+
+    private Map<String, Object> createMap(Function<TweetAttribute, Object> values) {
+        Map<String, Object> status = new HashMap<>(initialCapacity);
+        for (TweetAttribute attribute : attributes) {
+            status.put(attribute.getKey(), values.apply(attribute));
+        }
+        return status;
+    }
+
+    private Object[] createObjectArray(Function<TweetAttribute, Object> values) {
+        Object[] data = new Object[attributes.length];
+        for (int i = 0; i < attributes.length; i++) {
+            Object value = values.apply(attributes[i]);
+            data[i] = (conversionTypes[i] == null) ? value : convert(attributes[i], value, conversionTypes[i]);
+        }
+        return data;
+    }
+
+    private String[] getTransportProperties(Function<TweetAttribute, Object> values) {
+        if (transportAttributes == null) {
+            return null;
+        }
+        String[] transportProperties = new String[transportAttributes.length];
+        for (int i = 0; i < transportAttributes.length; i++) {
+            transportProperties[i] = (transportAttributes[i] == null) ? TwitterConstants.NULL_STRING :
+                    toLegacyString(transportAttributes[i], values.apply(transportAttributes[i]));
+        }
+        return transportProperties;
+    }
+
+    public TweetAttribute[] getAttributes() {
+        return attributes;
+    }
+
+    /**
+     * Returns all attributes read by this mapper, including the ones requested as transport properties.
+     *
+     * @return attributes read from each tweet
+     */
+    public Set<TweetAttribute> getRequiredAttributes() {
+        Set<TweetAttribute> requiredAttributes = EnumSet.noneOf(TweetAttribute.class);
+        Collections.addAll(requiredAttributes, attributes);
+        if (transportAttributes != null) {
+            for (TweetAttribute transportAttribute : transportAttributes) {
+                if (transportAttribute != null) {
+                    requiredAttributes.add(transportAttribute);
+                }
+            }
+        }
+        return requiredAttributes;
+    }
+
+    public boolean isPositional() {
+        return positional;
+    }
+
+    public boolean isRawJson() {
+        return rawJson;
+    }
+
+    private static TweetAttribute[] createTransportAttributes(String[] transportPropertyNames) {
+        if (transportPropertyNames == null || transportPropertyNames.length == 0) {
+            return null;
+        }
+        TweetAttribute[] transportAttributes = new TweetAttribute[transportPropertyNames.length];
+        for (int i = 0; i < transportPropertyNames.length; i++) {
+            transportAttributes[i] = TweetAttribute.fromKey(transportPropertyNames[i]);
+        }
+        return transportAttributes;
+    }
+
+    private static boolean isConvertible(TweetAttribute attribute, Attribute.Type from, Attribute.Type to) {
+        if (from == to || to == Attribute.Type.STRING || to == Attribute.Type.OBJECT) {
+            return true;
+        }
+        switch (from) {
+            case INT:
+                return to == Attribute.Type.LONG || to == Attribute.Type.FLOAT || to == Attribute.Type.DOUBLE;
+            case LONG:
+                return to == Attribute.Type.DOUBLE;
+            case OBJECT:
+                // in the legacy format, user.createdAt is a date which can be emitted as epoch milliseconds
+                return to == Attribute.Type.LONG && attribute == TweetAttribute.USER_CREATED_AT;
+            default:
+                return false;
+        }
+    }
+
+    private String toLegacyString(TweetAttribute attribute, Object value) {
+        return String.valueOf(legacyAttributes.contains(attribute) ? value : attribute.toLegacyValue(value));
+    }
+
+    private Object convert(TweetAttribute attribute, Object value, Attribute.Type type) {
+        if (type == Attribute.Type.STRING) {
+            // times, geolocations and entities are emitted to string attributes in their legacy format
+            Object legacyValue = legacyAttributes.contains(attribute) ? value : attribute.toLegacyValue(value);
+            return (legacyValue == null) ? null : legacyValue.toString();
+        }
+        if (value == null) {
+            return null;
+        }
+        switch (type) {
+            case LONG:
+                return (value instanceof Date) ? ((Date) value).getTime() : ((Number) value).longValue();
+            case FLOAT:
+                return ((Number) value).floatValue();
+            case DOUBLE:
+                return ((Number) value).doubleValue();
+            default:
+                return value;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.extension.siddhi.io.twitter.util;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Shares a single instance among the equal values of the attributes which repeat across tweets, such as the
+ * screen names of active users, the clients the tweets are posted from or their places, so that the events held in
+ * long windows do not each keep a copy of them.
+ * <p>
+ * The cache is a fixed size table indexed by the hash of the values, in which a value replaces the one held in its
+ * slot on a miss. It is bounded without any bookkeeping of its entries, and is safe to be used by concurrent threads
+ * without locking, as strings are immutable and a lost update only costs a later miss.
+ */
+public class StringInternCache {
+    // longer values are seldom repeated, and are not worth comparing
+    private static final int MAX_LENGTH = 256;
+    private final String[] entries;
+    private final int mask;
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param capacity - number of values held, which is rounded up to a power of two
+     */
+    public StringInternCache(int capacity) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1) << 1);
+        this.entries = new String[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * Returns the cached instance equal to the given value, or caches the value if there is none.
+     *
+     * @param value - value to be shared, or null
+     * @return an instance equal to the value
+     */
+    public String intern(String value) {
+        if (value == null || value.length() > MAX_LENGTH) {
+            return value;
+        }
+        int hash = value.hashCode();
+        int index = (hash ^ (hash >>> 16)) & mask;
+        String entry = entries[index];
+        if (value.equals(entry)) {
+            hitCount.increment();
+            return entry;
+        }
+        entries[index] = value;
+        missCount.increment();
+        return value;
+    }
+
+    public int getCapacity() {
+        return entries.length;
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+}
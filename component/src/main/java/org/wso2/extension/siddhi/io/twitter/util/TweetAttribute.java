@@ -0,0 +1,401 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.extension.siddhi.io.twitter.util;
+
+import io.siddhi.query.api.definition.Attribute;
+import twitter4j.GeoLocation;
+import twitter4j.HashtagEntity;
+import twitter4j.MediaEntity;
+import twitter4j.Place;
+import twitter4j.Status;
+import twitter4j.URLEntity;
+import twitter4j.UserMentionEntity;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The attributes of a tweet that can be emitted by the source, each with the logic to extract its value.
+ */
+public enum TweetAttribute {
+    CREATED_AT(TwitterConstants.STATUS_CREATED_AT, Attribute.Type.LONG, Attribute.Type.STRING) {
+        @Override
+        public Object extract(Status tweet) {
+            return Util.getCreationTime(tweet.getId(), tweet.getCreatedAt());
+        }
+
+        @Override
+        public Object toLegacyValue(Object value) {
+            return (value == null) ? null : new Date((Long) value).toString();
+        }
+    },
+    TWEET_ID(TwitterConstants.STATUS_TWEET_ID, Attribute.Type.LONG) {
+        @Override
+        public Object extract(Status tweet) {
+            return tweet.getId();
+        }
+    },
+    TEXT(TwitterConstants.STATUS_TEXT, Attribute.Type.STRING) {
+        @Override
+        public Object extract(Status tweet) {
+            return tweet.getText();
+        }
+    },
+    USER_CREATED_AT(TwitterConstants.STATUS_USER_CREATEDAT, Attribute.Type.LONG, Attribute.Type.OBJECT) {
+        @Override
+        public Object extract(Status tweet) {
+            Date createdAt = tweet.getUser().getCreatedAt();
+            return (createdAt == null) ? null : createdAt.getTime();
+        }
+
+        @Override
+        public Object toLegacyValue(Object value) {
+            return (value == null) ? null : new Date((Long) value);
+        }
+    },
+    USER_SCREEN_NAME(TwitterConstants.STATUS_USER_SCREENNAME, Attribute.Type.STRING) {
+        @Override
+        public Object extract(Status tweet) {
+            return tweet.getUser().getScreenName();
+        }
+    },
+    USER_NAME(TwitterConstants.STATUS_USER_NAME, Attribute.Type.STRING) {
+        @Override
+        public Object extract(Status tweet) {
+            return tweet.getUser().getName();
+        }
+    },
+    USER_MAIL(TwitterConstants.STATUS_USER_MAIL, Attribute.Type.STRING) {
+        @Override
+        public Object extract(Status tweet) {
+            return tweet.getUser().getEmail();
+        }
+    },
+    USER_ID(TwitterConstants.STATUS_USER_ID, Attribute.Type.LONG) {
+        @Override
+        public Object extract(Status tweet) {
+            return tweet.getUser().getId();
+        }
+    },
+    USER_LOCATION(TwitterConstants.STATUS_USER_LOCATION, Attribute.Type.STRING) {
+        @Override
+        public Object extract(Status tweet) {
+            return tweet.getUser().getLocation();
+        }
+    },
+    HASHTAGS(TwitterConstants.STATUS_HASHTAGS, Attribute.Type.OBJECT, Attribute.Type.STRING) {
+        @Override
+        public Object extract(Status tweet) {
+            HashtagEntity[] entities = tweet.getHashtagEntities();
+            String[] values = new String[entities.length];
+            for (int i = 0; i < entities.length; i++) {
+                values[i] = entities[i].getText();
+            }
+            return values;
+        }
+
+        @Override
+        public Object toLegacyValue(Object value) {
+            return join((String[]) value);
+        }
+    },
+    USER_MENTIONS(TwitterConstants.STATUS_USERMENTIONS, Attribute.Type.OBJECT, Attribute.Type.STRING) {
+        @Override
+        public Object extract(Status tweet) {
+            UserMentionEntity[] entities = tweet.getUserMentionEntities();
+            String[] values = new String[entities.length];
+            for (int i = 0; i < entities.length; i++) {
+                values[i] = entities[i].getText();
+            }
+            return values;
+        }
+
+        @Override
+        public Object toLegacyValue(Object value) {
+            return join((String[]) value);
+        }
+    },
+    MEDIA_URLS(TwitterConstants.STATUS_MEDIAURLS, Attribute.Type.OBJECT, Attribute.Type.STRING) {
+        @Override
+        public Object extract(Status tweet) {
+            MediaEntity[] entities = tweet.getMediaEntities();
+            String[] values = new String[entities.length];
+            for (int i = 0; i < entities.length; i++) {
+                values[i] = entities[i].getMediaURL();
+            }
+            return values;
+        }
+
+        @Override
+        public Object toLegacyValue(Object value) {
+            return join((String[]) value);
+        }
+    },
+    URLS(TwitterConstants.STATUS_URLS, Attribute.Type.OBJECT, Attribute.Type.STRING) {
+        @Override
+        public Object extract(Status tweet) {
+            URLEntity[] entities = tweet.getURLEntities();
+            String[] values = new String[entities.length];
+            for (int i = 0; i < entities.length; i++) {
+                values[i] = entities[i].getURL();
+            }
+            return values;
+        }
+
+        @Override
+        public Object toLegacyValue(Object value) {
+            return join((String[]) value);
+        }
+    },
+    LANGUAGE(TwitterConstants.STATUS_LANGUAGE, Attribute.Type.STRING) {
+        @Override
+        public Object extract(Status tweet) {
+            return tweet.getLang();
+        }
+    },
+    SOURCE(TwitterConstants.STATUS_SOURCE, Attribute.Type.STRING) {
+        @Override
+        public Object extract(Status tweet) {
+            return tweet.getSource();
+        }
+    },
+    IS_RETWEET(TwitterConstants.STATUS_IS_RETWEET, Attribute.Type.BOOL) {
+        @Override
+        public Object extract(Status tweet) {
+            return tweet.isRetweet();
+        }
+    },
+    RETWEET_COUNT(TwitterConstants.STATUS_RETWEET_COUNT, Attribute.Type.INT) {
+        @Override
+        public Object extract(Status tweet) {
+            return tweet.getRetweetCount();
+        }
+    },
+    GEOLOCATION(TwitterConstants.STATUS_GEOLOCATION, Attribute.Type.OBJECT, Attribute.Type.STRING) {
+        @Override
+        public Object extract(Status tweet) {
+            GeoLocation geoLocation = tweet.getGeoLocation();
+            return (geoLocation == null) ? null :
+                    new double[]{geoLocation.getLatitude(), geoLocation.getLongitude()};
+        }
+
+        @Override
+        public Object toLegacyValue(Object value) {
+            if (value == null) {
+                return TwitterConstants.NULL_STRING;
+            }
+            double[] geoLocation = (double[]) value;
+            return geoLocation[0] + TwitterConstants.DELIMITER + geoLocation[1];
+        }
+    },
+    FAVOURITE_COUNT(TwitterConstants.STATUS_FAVOURITE_COUNT, Attribute.Type.INT) {
+        @Override
+        public Object extract(Status tweet) {
+            return tweet.getFavoriteCount();
+        }
+    },
+    QUOTED_STATUS_ID(TwitterConstants.STATUS_QUOTED_STATUS_ID, Attribute.Type.LONG) {
+        @Override
+        public Object extract(Status tweet) {
+            return tweet.getQuotedStatusId();
+        }
+    },
+    IN_REPLY_TO_STATUS_ID(TwitterConstants.STATUS_IN_REPLY_TO_STATUS_ID, Attribute.Type.LONG) {
+        @Override
+        public Object extract(Status tweet) {
+            return tweet.getInReplyToStatusId();
+        }
+    },
+    PLACE_COUNTRY(TwitterConstants.STATUS_PLACE_COUNTRY, Attribute.Type.STRING) {
+        @Override
+        public Object extract(Status tweet) {
+            Place place = tweet.getPlace();
+            return (place == null) ? TwitterConstants.NULL_STRING : place.getCountry();
+        }
+    },
+    PLACE_COUNTRY_CODE(TwitterConstants.STATUS_PLACE_COUNTRY_CODE, Attribute.Type.STRING) {
+        @Override
+        public Object extract(Status tweet) {
+            Place place = tweet.getPlace();
+            return (place == null) ? TwitterConstants.NULL_STRING : place.getCountryCode();
+        }
+    },
+    PLACE_NAME(TwitterConstants.STATUS_PLACE_NAME, Attribute.Type.STRING) {
+        @Override
+        public Object extract(Status tweet) {
+            Place place = tweet.getPlace();
+            return (place == null) ? TwitterConstants.NULL_STRING : place.getName();
+        }
+    },
+    PLACE_ID(TwitterConstants.STATUS_PLACE_ID, Attribute.Type.STRING) {
+        @Override
+        public Object extract(Status tweet) {
+            Place place = tweet.getPlace();
+            return (place == null) ? TwitterConstants.NULL_STRING : place.getId();
+        }
+    },
+    PLACE_FULLNAME(TwitterConstants.STATUS_PLACE_FULLNAME, Attribute.Type.STRING) {
+        @Override
+        public Object extract(Status tweet) {
+            Place place = tweet.getPlace();
+            return (place == null) ? TwitterConstants.NULL_STRING : place.getFullName();
+        }
+    },
+    TRACK_WORDS(TwitterConstants.TRACK_WORDS, Attribute.Type.STRING) {
+        // the keywords are given by the StatusMapper, which holds the configuration of its source
+        @Override
+        public Object extract(Status tweet) {
+            return TwitterConstants.NULL_STRING;
+        }
+    },
+    QUERY(TwitterConstants.QUERY, Attribute.Type.STRING) {
+        // the query is given by the StatusMapper, which holds the configuration of its source
+        @Override
+        public Object extract(Status tweet) {
+            return TwitterConstants.NULL_STRING;
+        }
+    },
+    GEO_REGION(TwitterConstants.STATUS_GEO_REGION, Attribute.Type.STRING) {
+        // the region is found by the StatusMapper, which holds the regions of the source
+        @Override
+        public Object extract(Status tweet) {
+            return TwitterConstants.NULL_STRING;
+        }
+    },
+    LATITUDE(TwitterConstants.STATUS_LATITUDE, Attribute.Type.DOUBLE) {
+        @Override
+        public Object extract(Status tweet) {
+            return (tweet.getGeoLocation() == null) ? null : tweet.getGeoLocation().getLatitude();
+        }
+    },
+    LONGITUDE(TwitterConstants.STATUS_LONGITUDE, Attribute.Type.DOUBLE) {
+        @Override
+        public Object extract(Status tweet) {
+            return (tweet.getGeoLocation() == null) ? null : tweet.getGeoLocation().getLongitude();
+        }
+    },
+    GEOHASH(TwitterConstants.STATUS_GEOHASH, Attribute.Type.STRING) {
+        @Override
+        public Object extract(Status tweet) {
+            GeoLocation geoLocation = tweet.getGeoLocation();
+            return (geoLocation == null) ? null :
+                    Util.encodeGeohash(geoLocation.getLatitude(), geoLocation.getLongitude());
+        }
+    };
+
+    private static final Map<String, TweetAttribute> ATTRIBUTES_BY_KEY = new HashMap<>();
+    private static final Map<String, TweetAttribute> ATTRIBUTES_BY_NAME = new HashMap<>();
+
+    static {
+        for (TweetAttribute attribute : values()) {
+            ATTRIBUTES_BY_KEY.put(attribute.key, attribute);
+            ATTRIBUTES_BY_NAME.put(attribute.key, attribute);
+            ATTRIBUTES_BY_NAME.put(attribute.key.replace('.', '_'), attribute);
+        }
+    }
+
+    private final String key;
+    private final Attribute.Type type;
+    private final Attribute.Type legacyType;
+
+    TweetAttribute(String key, Attribute.Type type) {
+        this(key, type, type);
+    }
+
+    TweetAttribute(String key, Attribute.Type type, Attribute.Type legacyType) {
+        this.key = key;
+        this.type = type;
+        this.legacyType = legacyType;
+    }
+
+    /**
+     * Extracts the value of this attribute from the given tweet.
+     *
+     * @param tweet - status received from Twitter
+     * @return value of the attribute
+     */
+    public abstract Object extract(Status tweet);
+
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Returns the Siddhi type of the value returned by {@link #extract(Status)}.
+     *
+     * @return type of the attribute value
+     */
+    public Attribute.Type getType() {
+        return type;
+    }
+
+    /**
+     * Returns the Siddhi type of the value returned by {@link #toLegacyValue(Object)}.
+     *
+     * @return type of the attribute value in the legacy format
+     */
+    public Attribute.Type getLegacyType() {
+        return legacyType;
+    }
+
+    /**
+     * Converts a value returned by {@link #extract(Status)} into the legacy format of the attribute, where times are
+     * formatted with {@link Date#toString()}, the geolocation is given as {@code "<latitude>,<longitude>"} and
+     * entities are joined with commas.
+     *
+     * @param value - value of the attribute
+     * @return value in the legacy format
+     */
+    public Object toLegacyValue(Object value) {
+        return value;
+    }
+
+    /**
+     * Returns the attribute identified by the given key.
+     *
+     * @param key - key of the attribute in the event map
+     * @return the matching attribute, or null if there is no attribute with that key
+     */
+    public static TweetAttribute fromKey(String key) {
+        return ATTRIBUTES_BY_KEY.get(key);
+    }
+
+    /**
+     * Returns the attribute matching the given stream attribute name. As stream attribute names cannot contain
+     * dots, the dots of a key can also be given as underscores, e.g. {@code user_screenName}.
+     *
+     * @param name - name of the stream attribute
+     * @return the matching attribute, or null if there is no attribute with that name
+     */
+    public static TweetAttribute fromAttributeName(String name) {
+        return ATTRIBUTES_BY_NAME.get(name);
+    }
+
+    private static String join(String[] values) {
+        if (values.length == 0) {
+            return TwitterConstants.NULL_STRING;
+        }
+        StringBuilder builder = new StringBuilder(values[0]);
+        for (int i = 1; i < values.length; i++) {
+            builder.append(TwitterConstants.DELIMITER).append(values[i]);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.extension.siddhi.io.twitter.util;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Holds the fields of a tweet decoded by {@link TweetJsonDecoder}. A single instance is reused for every tweet,
+ * hence the values need to be read before the next tweet is decoded.
+ */
+public class TweetFields {
+    Date createdAt;
+    long id;
+    String text;
+    Date userCreatedAt;
+    String userScreenName;
+    String userName;
+    String userMail;
+    long userId;
+    String userLocation;
+    final List<String> hashtags = new ArrayList<>();
+    final List<String> userMentions = new ArrayList<>();
+    final List<String> mediaUrls = new ArrayList<>();
+    final List<String> urls = new ArrayList<>();
+    String language;
+    String source;
+    boolean isRetweet;
+    int retweetCount;
+    int favouriteCount;
+    long quotedStatusId;
+    long inReplyToStatusId;
+    boolean hasPlace;
+    String placeCountry;
+    String placeCountryCode;
+    String placeName;
+    String placeId;
+    String placeFullName;
+    boolean hasGeoLocation;
+    double latitude;
+    double longitude;
+    // centre of the bounding box of the place
+    boolean hasPlaceLocation;
+    double placeLatitude;
+    double placeLongitude;
+    // region found by the filter in the given index, so that it is not looked up again to be mapped
+    GeoRegionIndex geoRegionIndex;
+    String geoRegion;
+
+    void reset() {
+        createdAt = null;
+        id = -1;
+        text = null;
+        userCreatedAt = null;
+        userScreenName = null;
+        userName = null;
+        userMail = null;
+        userId = -1;
+        userLocation = null;
+        hashtags.clear();
+        userMentions.clear();
+        mediaUrls.clear();
+        urls.clear();
+        language = null;
+        source = null;
+        isRetweet = false;
+        retweetCount = -1;
+        favouriteCount = -1;
+        quotedStatusId = -1;
+        inReplyToStatusId = -1;
+        hasPlace = false;
+        placeCountry = null;
+        placeCountryCode = null;
+        placeName = null;
+        placeId = null;
+        placeFullName = null;
+        hasGeoLocation = false;
+        latitude = 0;
+        longitude = 0;
+        hasPlaceLocation = false;
+        placeLatitude = 0;
+        placeLongitude = 0;
+        geoRegionIndex = null;
+        geoRegion = null;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public long getUserId() {
+        return userId;
+    }
+
+    /**
+     * Returns the value of the given attribute, in the same form as {@link TweetAttribute#extract} returns it for a
+     * twitter4j status.
+     *
+     * @param attribute - attribute to be read
+     * @return value of the attribute
+     */
+    public Object get(TweetAttribute attribute) {
+        switch (attribute) {
+            case CREATED_AT:
+                return Util.getCreationTime(id, createdAt);
+            case TWEET_ID:
+                return id;
+            case TEXT:
+                return text;
+            case USER_CREATED_AT:
+                return (userCreatedAt == null) ? null : userCreatedAt.getTime();
+            case USER_SCREEN_NAME:
+                return userScreenName;
+            case USER_NAME:
+                return userName;
+            case USER_MAIL:
+                return userMail;
+            case USER_ID:
+                return userId;
+            case USER_LOCATION:
+                return userLocation;
+            case HASHTAGS:
+                return toValue(hashtags);
+            case USER_MENTIONS:
+                return toValue(userMentions);
+            case MEDIA_URLS:
+                return toValue(mediaUrls);
+            case URLS:
+                return toValue(urls);
+            case LANGUAGE:
+                return language;
+            case SOURCE:
+                return source;
+            case IS_RETWEET:
+                return isRetweet;
+            case RETWEET_COUNT:
+                return retweetCount;
+            case GEOLOCATION:
+                return hasGeoLocation ? new double[]{latitude, longitude} : null;
+            case LATITUDE:
+                return hasGeoLocation ? latitude : null;
+            case LONGITUDE:
+                return hasGeoLocation ? longitude : null;
+            case GEOHASH:
+                return hasGeoLocation ? Util.encodeGeohash(latitude, longitude) : null;
+            case FAVOURITE_COUNT:
+                return favouriteCount;
+            case QUOTED_STATUS_ID:
+                return quotedStatusId;
+            case IN_REPLY_TO_STATUS_ID:
+                return inReplyToStatusId;
+            case PLACE_COUNTRY:
+                return hasPlace ? placeCountry : TwitterConstants.NULL_STRING;
+            case PLACE_COUNTRY_CODE:
+                return hasPlace ? placeCountryCode : TwitterConstants.NULL_STRING;
+            case PLACE_NAME:
+                return hasPlace ? placeName : TwitterConstants.NULL_STRING;
+            case PLACE_ID:
+                return hasPlace ? placeId : TwitterConstants.NULL_STRING;
+            case PLACE_FULLNAME:
+                return hasPlace ? placeFullName : TwitterConstants.NULL_STRING;
+            default:
+                // the remaining attributes are taken from the source configuration, not from the tweet
+                return attribute.extract(null);
+        }
+    }
+
+    private static String[] toValue(List<String> entities) {
+        return entities.toArray(new String[0]);
+    }
+}
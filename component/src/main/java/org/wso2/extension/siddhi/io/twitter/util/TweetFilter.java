@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.extension.siddhi.io.twitter.util;
+
+import twitter4j.Status;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Drops the received tweets which are not of interest before they are mapped. A tweet is kept when it is sampled,
+ * if a sample rate is given, contains one of the filter keywords, if any are given, and is located in one of the
+ * filter regions, if any are given.
+ */
+public class TweetFilter {
+    private final TweetSampler sampler;
+    private final KeywordMatcher keywordMatcher;
+    private final GeoRegionIndex geoRegionIndex;
+
+    /**
+     * Creates a filter.
+     *
+     * @param sampler        - sample of the tweets to be kept, or null to accept any tweet
+     * @param keywordMatcher - keywords of which a tweet needs to contain one, or null to accept any tweet
+     * @param geoRegionIndex - regions of which a tweet needs to be located in one, or null to accept any tweet
+     */
+    public TweetFilter(TweetSampler sampler, KeywordMatcher keywordMatcher, GeoRegionIndex geoRegionIndex) {
+        this.sampler = sampler;
+        this.keywordMatcher = keywordMatcher;
+        this.geoRegionIndex = geoRegionIndex;
+    }
+
+    /**
+     * Filters the given tweet, finding the region it is located in when the tweets are filtered by region, so that
+     * the region is not looked up again when the tweet is mapped.
+     *
+     * @param status - tweet to be filtered
+     * @return null if the tweet is dropped, otherwise its region, or an empty string when the tweets are not
+     * filtered by region
+     */
+    public String filter(Status status) {
+        if ((sampler != null && !sampler.isSampled(status)) ||
+                (keywordMatcher != null && !keywordMatcher.matches(status))) {
+            return null;
+        }
+        return (geoRegionIndex == null) ? TwitterConstants.EMPTY_STRING : geoRegionIndex.findRegion(status);
+    }
+
+    /**
+     * Filters the given decoded tweet. When the tweets are filtered by region, the region found is kept in the
+     * fields, so that it is not looked up again when the tweet is mapped.
+     *
+     * @param fields - fields decoded from the tweet
+     * @return true if the tweet is kept
+     */
+    public boolean accept(TweetFields fields) {
+        if ((sampler != null && !sampler.isSampled(fields)) ||
+                (keywordMatcher != null && !keywordMatcher.matches(fields))) {
+            return false;
+        }
+        if (geoRegionIndex == null) {
+            return true;
+        }
+        fields.geoRegionIndex = geoRegionIndex;
+        fields.geoRegion = geoRegionIndex.findRegion(fields);
+        return fields.geoRegion != null;
+    }
+
+    /**
+     * Returns the attributes a tweet needs to be decoded with for the filter to be applied.
+     *
+     * @return attributes read by the filter
+     */
+    public Set<TweetAttribute> getRequiredAttributes() {
+        Set<TweetAttribute> requiredAttributes = EnumSet.noneOf(TweetAttribute.class);
+        if (keywordMatcher != null) {
+            requiredAttributes.add(TweetAttribute.TEXT);
+            requiredAttributes.add(TweetAttribute.HASHTAGS);
+        }
+        if (geoRegionIndex != null) {
+            requiredAttributes.add(TweetAttribute.GEO_REGION);
+        }
+        return requiredAttributes;
+    }
+}
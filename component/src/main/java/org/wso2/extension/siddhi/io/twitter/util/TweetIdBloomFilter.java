@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.extension.siddhi.io.twitter.util;
+
+import org.apache.log4j.Logger;
+
+import java.util.Arrays;
+
+/**
+ * Approximate {@link TweetIdDeduplicator} for horizons too large to keep every ID, taking 2.5 to 5 bytes per
+ * remembered tweet. IDs are added to the current of two Bloom filters, and the previous filter is dropped when
+ * the current one is full or spans the horizon, so that at least the last capacity tweets are remembered.
+ * A new tweet is wrongly dropped as a duplicate with a probability of about one in ten thousand.
+ */
+public class TweetIdBloomFilter implements TweetIdDeduplicator {
+    private static final Logger log = Logger.getLogger(TweetIdBloomFilter.class);
+    private static final int HASH_COUNT = 13;
+    // bits per ID giving a false positive probability of 1e-4 with the above number of hashes
+    private static final double BITS_PER_ID = 19.2;
+    private static final long MAX_BIT_COUNT = 1L << 31;
+    private final int capacity;
+    private final long horizonMillis;
+    private final long bitMask;
+    private long[] current;
+    private long[] previous;
+    private int currentCount;
+    private long currentStartTime = Long.MAX_VALUE;
+
+    /**
+     * Creates a filter remembering at least the given number of tweets.
+     *
+     * @param capacity      - number of IDs each of the two filters holds before being rotated
+     * @param horizonMillis - time span of the tweets held by a filter before being rotated, or 0 to only rotate
+     *                        on the capacity
+     */
+    public TweetIdBloomFilter(int capacity, long horizonMillis) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity should be greater than zero, but found " + capacity + ".");
+        }
+        long bitCount = Long.highestOneBit((long) Math.ceil(capacity * BITS_PER_ID) - 1) << 1;
+        if (bitCount > MAX_BIT_COUNT) {
+            throw new IllegalArgumentException("Capacity " + capacity + " is too large for a Bloom filter.");
+        }
+        this.capacity = capacity;
+        this.horizonMillis = horizonMillis;
+        bitCount = Math.max(bitCount, Long.SIZE);
+        this.bitMask = bitCount - 1;
+        this.current = new long[(int) (bitCount >>> 6)];
+        this.previous = new long[current.length];
+    }
+
+    @Override
+    public synchronized boolean isDuplicate(long tweetId) {
+        long hash1 = mix(tweetId);
+        long hash2 = mix(hash1) | 1;
+        if (contains(current, hash1, hash2) || contains(previous, hash1, hash2)) {
+            return true;
+        }
+        long tweetTime = Util.getTweetIdTime(tweetId);
+        if (currentCount == capacity || (horizonMillis > 0 && tweetTime - currentStartTime > horizonMillis)) {
+            long[] dropped = previous;
+            previous = current;
+            Arrays.fill(dropped, 0);
+            current = dropped;
+            currentCount = 0;
+            currentStartTime = Long.MAX_VALUE;
+        }
+        for (int i = 0; i < HASH_COUNT; i++) {
+            long bit = (hash1 + i * hash2) & bitMask;
+            current[(int) (bit >>> 6)] |= 1L << bit;
+        }
+        currentCount++;
+        currentStartTime = Math.min(currentStartTime, tweetTime);
+        return false;
+    }
+
+    /**
+     * Returns the bits of both filters, followed by the number of IDs and the start time of the current one.
+     *
+     * @return array of the current bits, previous bits and counters
+     */
+    @Override
+    public synchronized Object snapshot() {
+        return new long[][]{current.clone(), previous.clone(), {currentCount, currentStartTime}};
+    }
+
+    @Override
+    public synchronized void restore(Object snapshot) {
+        if (!(snapshot instanceof long[][]) || ((long[][]) snapshot).length != 3) {
+            log.warn("Dropped the persisted tweet IDs, as they were remembered by a different dedup.cache.type.");
+            return;
+        }
+        long[][] state = (long[][]) snapshot;
+        if (state[0].length != current.length) {
+            log.warn("Dropped the persisted tweet IDs, as they were remembered with a different capacity.");
+            return;
+        }
+        current = state[0].clone();
+        previous = state[1].clone();
+        currentCount = (int) state[2][0];
+        currentStartTime = state[2][1];
+    }
+
+    private boolean contains(long[] bits, long hash1, long hash2) {
+        for (int i = 0; i < HASH_COUNT; i++) {
+            long bit = (hash1 + i * hash2) & bitMask;
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long mix(long value) {
+        long hash = (value ^ (value >>> 33)) * 0xFF51AFD7ED558CCDL;
+        hash = (hash ^ (hash >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return hash ^ (hash >>> 33);
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.extension.siddhi.io.twitter.util;
+
+/**
+ * Remembers the IDs of the recently emitted tweets, so that tweets received again after a page boundary or a
+ * reconnect are dropped. Implementations are bounded, hence only a recent horizon of tweets is deduplicated.
+ */
+public interface TweetIdDeduplicator {
+
+    /**
+     * Checks whether the tweet has been seen within the horizon, remembering it otherwise.
+     *
+     * @param tweetId - ID of the received tweet
+     * @return true if the tweet is a duplicate and needs to be dropped
+     */
+    boolean isDuplicate(long tweetId);
+
+    /**
+     * Returns the remembered IDs in a serializable form, to be persisted with the state of the source.
+     *
+     * @return state of the deduplicator
+     */
+    Object snapshot();
+
+    /**
+     * Restores the IDs remembered when the snapshot was taken.
+     *
+     * @param snapshot - value returned by {@link #snapshot()}
+     */
+    void restore(Object snapshot);
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.extension.siddhi.io.twitter.util;
+
+import org.apache.log4j.Logger;
+
+import java.util.Arrays;
+
+/**
+ * Exact {@link TweetIdDeduplicator} backed by an open addressing hash set of primitive longs. The IDs are also
+ * kept in insertion order in a ring, from which the oldest ID is evicted when the set is full, or when it was
+ * created longer than the horizon before the newest tweet seen.
+ */
+public class TweetIdHashSet implements TweetIdDeduplicator {
+    private static final Logger log = Logger.getLogger(TweetIdHashSet.class);
+    // tweet IDs are positive, hence zero marks an empty slot
+    private static final long EMPTY = 0;
+    private static final int MAX_CAPACITY = 1 << 28;
+    private final long[] table;
+    private final int mask;
+    private final long[] ring;
+    private final long horizonMillis;
+    private int head;
+    private int size;
+    private long newestTime = Long.MIN_VALUE;
+
+    /**
+     * Creates a set remembering up to the given number of tweets.
+     *
+     * @param capacity      - maximum number of IDs remembered
+     * @param horizonMillis - time after which an ID is forgotten, relative to the newest tweet, or 0 to only
+     *                        bound the set by its capacity
+     */
+    public TweetIdHashSet(int capacity, long horizonMillis) {
+        if (capacity <= 0 || capacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("Capacity should be between 1 and " + MAX_CAPACITY + ", but found " +
+                    capacity + ".");
+        }
+        // keeps the load factor at or below one half
+        int tableSize = Integer.highestOneBit(capacity) << 2;
+        this.table = new long[tableSize];
+        this.mask = tableSize - 1;
+        this.ring = new long[capacity];
+        this.horizonMillis = horizonMillis;
+    }
+
+    @Override
+    public synchronized boolean isDuplicate(long tweetId) {
+        if (tweetId <= 0) {
+            return false;
+        }
+        if (contains(tweetId)) {
+            return true;
+        }
+        if (horizonMillis > 0) {
+            newestTime = Math.max(newestTime, Util.getTweetIdTime(tweetId));
+            while (size > 0 && Util.getTweetIdTime(ring[head]) < newestTime - horizonMillis) {
+                evictOldest();
+            }
+        }
+        if (size == ring.length) {
+            evictOldest();
+        }
+        insert(tweetId);
+        ring[(head + size) % ring.length] = tweetId;
+        size++;
+        return false;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Returns the remembered IDs, oldest first.
+     *
+     * @return array of tweet IDs
+     */
+    @Override
+    public synchronized Object snapshot() {
+        long[] ids = new long[size];
+        for (int i = 0; i < size; i++) {
+            ids[i] = ring[(head + i) % ring.length];
+        }
+        return ids;
+    }
+
+    @Override
+    public synchronized void restore(Object snapshot) {
+        if (!(snapshot instanceof long[])) {
+            log.warn("Dropped the persisted tweet IDs, as they were remembered by a different dedup.cache.type.");
+            return;
+        }
+        Arrays.fill(table, EMPTY);
+        head = 0;
+        size = 0;
+        newestTime = Long.MIN_VALUE;
+        for (long tweetId : (long[]) snapshot) {
+            isDuplicate(tweetId);
+        }
+    }
+
+    private boolean contains(long tweetId) {
+        for (int index = hash(tweetId); ; index = (index + 1) & mask) {
+            long current = table[index];
+            if (current == tweetId) {
+                return true;
+            }
+            if (current == EMPTY) {
+                return false;
+            }
+        }
+    }
+
+    private void insert(long tweetId) {
+        int index = hash(tweetId);
+        while (table[index] != EMPTY) {
+            index = (index + 1) & mask;
+        }
+        table[index] = tweetId;
+    }
+
+    private void evictOldest() {
+        remove(ring[head]);
+        head = (head + 1) % ring.length;
+        size--;
+    }
+
+    /**
+     * Removes an ID by shifting back the following entries of its probe sequence, so that lookups never stop at
+     * a slot freed in the middle of a sequence.
+     */
+    private void remove(long tweetId) {
+        int gap = hash(tweetId);
+        while (table[gap] != tweetId) {
+            if (table[gap] == EMPTY) {
+                return;
+            }
+            gap = (gap + 1) & mask;
+        }
+        for (int index = (gap + 1) & mask; table[index] != EMPTY; index = (index + 1) & mask) {
+            int home = hash(table[index]);
+            if (((index - home) & mask) >= ((index - gap) & mask)) {
+                table[gap] = table[index];
+                gap = index;
+            }
+        }
+        table[gap] = EMPTY;
+    }
+
+    private int hash(long tweetId) {
+        // the low bits of tweet IDs hold the worker and sequence numbers, hence the bits are mixed first
+        long hash = tweetId * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+}
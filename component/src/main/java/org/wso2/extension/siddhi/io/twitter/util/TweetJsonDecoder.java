@@ -0,0 +1,640 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.extension.siddhi.io.twitter.util;
+
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Incremental decoder for the JSON messages of the Twitter streaming API. It walks the UTF-8 bytes of a message
+ * in place and only decodes the values of the requested attributes into a reused {@link TweetFields} holder,
+ * skipping everything else without allocating. The id of the tweet and of its user are always decoded.
+ * Instances are not thread safe.
+ */
+public class TweetJsonDecoder {
+    private static final byte[] KEY_CREATED_AT = bytes("created_at");
+    private static final byte[] KEY_ID = bytes("id");
+    private static final byte[] KEY_TEXT = bytes("text");
+    private static final byte[] KEY_USER = bytes("user");
+    private static final byte[] KEY_SCREEN_NAME = bytes("screen_name");
+    private static final byte[] KEY_NAME = bytes("name");
+    private static final byte[] KEY_EMAIL = bytes("email");
+    private static final byte[] KEY_LOCATION = bytes("location");
+    private static final byte[] KEY_ENTITIES = bytes("entities");
+    private static final byte[] KEY_HASHTAGS = bytes("hashtags");
+    private static final byte[] KEY_USER_MENTIONS = bytes("user_mentions");
+    private static final byte[] KEY_MEDIA = bytes("media");
+    private static final byte[] KEY_MEDIA_URL = bytes("media_url");
+    private static final byte[] KEY_URLS = bytes("urls");
+    private static final byte[] KEY_URL = bytes("url");
+    private static final byte[] KEY_LANG = bytes("lang");
+    private static final byte[] KEY_SOURCE = bytes("source");
+    private static final byte[] KEY_RETWEETED_STATUS = bytes("retweeted_status");
+    private static final byte[] KEY_RETWEET_COUNT = bytes("retweet_count");
+    private static final byte[] KEY_FAVORITE_COUNT = bytes("favorite_count");
+    private static final byte[] KEY_QUOTED_STATUS_ID = bytes("quoted_status_id");
+    private static final byte[] KEY_IN_REPLY_TO_STATUS_ID = bytes("in_reply_to_status_id");
+    private static final byte[] KEY_PLACE = bytes("place");
+    private static final byte[] KEY_COUNTRY = bytes("country");
+    private static final byte[] KEY_COUNTRY_CODE = bytes("country_code");
+    private static final byte[] KEY_FULL_NAME = bytes("full_name");
+    private static final byte[] KEY_BOUNDING_BOX = bytes("bounding_box");
+    private static final byte[] KEY_COORDINATES = bytes("coordinates");
+    private static final byte[] KEY_DELETE = bytes("delete");
+    private static final byte[] KEY_STATUS = bytes("status");
+    private static final byte[] KEY_LIMIT = bytes("limit");
+    private static final byte[] KEY_TRACK = bytes("track");
+    private static final byte[] KEY_WARNING = bytes("warning");
+    private static final byte[] KEY_PERCENT_FULL = bytes("percent_full");
+    private static final byte[] KEY_DISCONNECT = bytes("disconnect");
+    private static final byte[] KEY_CODE = bytes("code");
+
+    /**
+     * Types of the messages sent on the streaming API.
+     */
+    public enum MessageType {
+        STATUS, DELETE, LIMIT, WARNING, DISCONNECT, OTHER
+    }
+
+    private final boolean[] requested = new boolean[TweetAttribute.values().length];
+    private final TweetFields fields = new TweetFields();
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("EEE MMM dd HH:mm:ss Z yyyy", Locale.ENGLISH);
+    private char[] chars = new char[512];
+    private byte[] buffer;
+    private int position;
+    private int limit;
+    private int keyStart;
+    private int keyEnd;
+    private long noticeValue;
+    private int createdAtPosition;
+
+    /**
+     * Creates a decoder for the given attributes.
+     *
+     * @param attributes - attributes to be decoded from each tweet
+     */
+    public TweetJsonDecoder(Collection<TweetAttribute> attributes) {
+        for (TweetAttribute attribute : attributes) {
+            requested[attribute.ordinal()] = true;
+        }
+    }
+
+    /**
+     * Decodes a single message of the stream.
+     *
+     * @param buffer - buffer holding the message
+     * @param offset - offset of the message in the buffer
+     * @param length - length of the message in bytes
+     * @return the type of the message; for statuses the fields are available through {@link #getFields()}
+     * @throws IllegalArgumentException if the message is not valid JSON
+     */
+    public MessageType decode(byte[] buffer, int offset, int length) {
+        this.buffer = buffer;
+        this.position = offset;
+        this.limit = offset + length;
+        this.noticeValue = -1;
+        this.createdAtPosition = -1;
+        fields.reset();
+        MessageType messageType = MessageType.OTHER;
+        expect('{');
+        while (nextKey()) {
+            if (keyEquals(KEY_DELETE)) {
+                messageType = MessageType.DELETE;
+                noticeValue = readNestedLong(KEY_STATUS, KEY_ID);
+            } else if (keyEquals(KEY_LIMIT)) {
+                messageType = MessageType.LIMIT;
+                noticeValue = readNestedLong(KEY_TRACK, null);
+            } else if (keyEquals(KEY_WARNING)) {
+                messageType = MessageType.WARNING;
+                noticeValue = readNestedLong(KEY_PERCENT_FULL, null);
+            } else if (keyEquals(KEY_DISCONNECT)) {
+                messageType = MessageType.DISCONNECT;
+                noticeValue = readNestedLong(KEY_CODE, null);
+            } else if (decodeStatusField()) {
+                messageType = MessageType.STATUS;
+            }
+        }
+        if (createdAtPosition != -1 && !Util.isTimedTweetId(fields.id)) {
+            position = createdAtPosition;
+            fields.createdAt = readDate();
+        }
+        return messageType;
+    }
+
+    public TweetFields getFields() {
+        return fields;
+    }
+
+    /**
+     * Returns the value carried by the latest notice: the status id of a deletion, the number of undelivered
+     * statuses of a limit notice, the percentage full of a stall warning, or the code of a disconnect message.
+     *
+     * @return value of the notice, or -1 if there is none
+     */
+    public long getNoticeValue() {
+        return noticeValue;
+    }
+
+    private boolean decodeStatusField() {
+        if (keyEquals(KEY_ID)) {
+            fields.id = readLong();
+            return true;
+        } else if (keyEquals(KEY_CREATED_AT) && isRequested(TweetAttribute.CREATED_AT)) {
+            // the date is only parsed when it cannot be taken from the ID, which usually follows it
+            createdAtPosition = position;
+            skipValue();
+        } else if (keyEquals(KEY_TEXT) && isRequested(TweetAttribute.TEXT)) {
+            fields.text = readString();
+        } else if (keyEquals(KEY_USER)) {
+            decodeUser();
+        } else if (keyEquals(KEY_ENTITIES)) {
+            decodeEntities();
+        } else if (keyEquals(KEY_LANG) && isRequested(TweetAttribute.LANGUAGE)) {
+            fields.language = readString();
+        } else if (keyEquals(KEY_SOURCE) && isRequested(TweetAttribute.SOURCE)) {
+            fields.source = readString();
+        } else if (keyEquals(KEY_RETWEETED_STATUS)) {
+            fields.isRetweet = !isNull();
+            skipValue();
+        } else if (keyEquals(KEY_RETWEET_COUNT) && isRequested(TweetAttribute.RETWEET_COUNT)) {
+            fields.retweetCount = (int) readLong();
+        } else if (keyEquals(KEY_FAVORITE_COUNT) && isRequested(TweetAttribute.FAVOURITE_COUNT)) {
+            fields.favouriteCount = (int) readLong();
+        } else if (keyEquals(KEY_QUOTED_STATUS_ID) && isRequested(TweetAttribute.QUOTED_STATUS_ID)) {
+            fields.quotedStatusId = readLong();
+        } else if (keyEquals(KEY_IN_REPLY_TO_STATUS_ID) && isRequested(TweetAttribute.IN_REPLY_TO_STATUS_ID)) {
+            fields.inReplyToStatusId = readLong();
+        } else if (keyEquals(KEY_PLACE)) {
+            decodePlace();
+        } else if (keyEquals(KEY_COORDINATES) && (isRequested(TweetAttribute.GEOLOCATION) ||
+                isRequested(TweetAttribute.LATITUDE) || isRequested(TweetAttribute.LONGITUDE) ||
+                isRequested(TweetAttribute.GEOHASH) || isRequested(TweetAttribute.GEO_REGION))) {
+            decodeCoordinates();
+        } else {
+            skipValue();
+        }
+        return false;
+    }
+
+    private void decodeUser() {
+        if (skipIfNull()) {
+            return;
+        }
+        expect('{');
+        while (nextKey()) {
+            if (keyEquals(KEY_ID)) {
+                fields.userId = readLong();
+            } else if (keyEquals(KEY_SCREEN_NAME) && isRequested(TweetAttribute.USER_SCREEN_NAME)) {
+                fields.userScreenName = readString();
+            } else if (keyEquals(KEY_NAME) && isRequested(TweetAttribute.USER_NAME)) {
+                fields.userName = readString();
+            } else if (keyEquals(KEY_EMAIL) && isRequested(TweetAttribute.USER_MAIL)) {
+                fields.userMail = readString();
+            } else if (keyEquals(KEY_LOCATION) && isRequested(TweetAttribute.USER_LOCATION)) {
+                fields.userLocation = readString();
+            } else if (keyEquals(KEY_CREATED_AT) && isRequested(TweetAttribute.USER_CREATED_AT)) {
+                fields.userCreatedAt = readDate();
+            } else {
+                skipValue();
+            }
+        }
+    }
+
+    private void decodeEntities() {
+        if (skipIfNull()) {
+            return;
+        }
+        expect('{');
+        while (nextKey()) {
+            if (keyEquals(KEY_HASHTAGS) && isRequested(TweetAttribute.HASHTAGS)) {
+                decodeEntityArray(KEY_TEXT, fields.hashtags);
+            } else if (keyEquals(KEY_USER_MENTIONS) && isRequested(TweetAttribute.USER_MENTIONS)) {
+                decodeEntityArray(KEY_SCREEN_NAME, fields.userMentions);
+            } else if (keyEquals(KEY_MEDIA) && isRequested(TweetAttribute.MEDIA_URLS)) {
+                decodeEntityArray(KEY_MEDIA_URL, fields.mediaUrls);
+            } else if (keyEquals(KEY_URLS) && isRequested(TweetAttribute.URLS)) {
+                decodeEntityArray(KEY_URL, fields.urls);
+            } else {
+                skipValue();
+            }
+        }
+    }
+
+    private void decodeEntityArray(byte[] valueKey, List<String> values) {
+        if (skipIfNull()) {
+            return;
+        }
+        expect('[');
+        while (nextElement()) {
+            expect('{');
+            while (nextKey()) {
+                if (keyEquals(valueKey)) {
+                    values.add(readString());
+                } else {
+                    skipValue();
+                }
+            }
+        }
+    }
+
+    private void decodePlace() {
+        if (skipIfNull()) {
+            return;
+        }
+        fields.hasPlace = true;
+        expect('{');
+        while (nextKey()) {
+            if (keyEquals(KEY_COUNTRY) && isRequested(TweetAttribute.PLACE_COUNTRY)) {
+                fields.placeCountry = readString();
+            } else if (keyEquals(KEY_COUNTRY_CODE) && isRequested(TweetAttribute.PLACE_COUNTRY_CODE)) {
+                fields.placeCountryCode = readString();
+            } else if (keyEquals(KEY_NAME) && isRequested(TweetAttribute.PLACE_NAME)) {
+                fields.placeName = readString();
+            } else if (keyEquals(KEY_ID) && isRequested(TweetAttribute.PLACE_ID)) {
+                fields.placeId = readString();
+            } else if (keyEquals(KEY_FULL_NAME) && isRequested(TweetAttribute.PLACE_FULLNAME)) {
+                fields.placeFullName = readString();
+            } else if (keyEquals(KEY_BOUNDING_BOX) && isRequested(TweetAttribute.GEO_REGION)) {
+                decodeBoundingBox();
+            } else {
+                skipValue();
+            }
+        }
+    }
+
+    /**
+     * Decodes the centre of a GeoJSON polygon, of which the coordinates are given as rings of [longitude, latitude].
+     */
+    private void decodeBoundingBox() {
+        if (skipIfNull()) {
+            return;
+        }
+        expect('{');
+        while (nextKey()) {
+            if (keyEquals(KEY_COORDINATES) && !isNull()) {
+                double minLongitude = Double.MAX_VALUE;
+                double minLatitude = Double.MAX_VALUE;
+                double maxLongitude = -Double.MAX_VALUE;
+                double maxLatitude = -Double.MAX_VALUE;
+                expect('[');
+                while (nextElement()) {
+                    expect('[');
+                    while (nextElement()) {
+                        expect('[');
+                        nextElement();
+                        double longitude = readDouble();
+                        nextElement();
+                        double latitude = readDouble();
+                        while (nextElement()) {
+                            skipValue();
+                        }
+                        minLongitude = Math.min(minLongitude, longitude);
+                        maxLongitude = Math.max(maxLongitude, longitude);
+                        minLatitude = Math.min(minLatitude, latitude);
+                        maxLatitude = Math.max(maxLatitude, latitude);
+                    }
+                }
+                if (minLatitude <= maxLatitude) {
+                    fields.placeLongitude = (minLongitude + maxLongitude) / 2;
+                    fields.placeLatitude = (minLatitude + maxLatitude) / 2;
+                    fields.hasPlaceLocation = true;
+                }
+            } else {
+                skipValue();
+            }
+        }
+    }
+
+    /**
+     * Decodes a GeoJSON point, of which the coordinates are given as [longitude, latitude].
+     */
+    private void decodeCoordinates() {
+        if (skipIfNull()) {
+            return;
+        }
+        expect('{');
+        while (nextKey()) {
+            if (keyEquals(KEY_COORDINATES) && !isNull()) {
+                expect('[');
+                nextElement();
+                fields.longitude = readDouble();
+                nextElement();
+                fields.latitude = readDouble();
+                while (nextElement()) {
+                    skipValue();
+                }
+                fields.hasGeoLocation = true;
+            } else {
+                skipValue();
+            }
+        }
+    }
+
+    /**
+     * Reads a number within the object value of the current key, e.g. {@code {"status":{"id":1}}}.
+     */
+    private long readNestedLong(byte[] key, byte[] nestedKey) {
+        long value = -1;
+        if (skipIfNull()) {
+            return value;
+        }
+        expect('{');
+        while (nextKey()) {
+            if (keyEquals(key)) {
+                value = (nestedKey == null) ? readLong() : readNestedLong(nestedKey, null);
+            } else {
+                skipValue();
+            }
+        }
+        return value;
+    }
+
+    private boolean isRequested(TweetAttribute attribute) {
+        return requested[attribute.ordinal()];
+    }
+
+    /**
+     * Moves to the next key of the current object.
+     *
+     * @return false when the end of the object is reached
+     */
+    private boolean nextKey() {
+        skipWhitespace();
+        byte current = peek();
+        if (current == '}') {
+            position++;
+            return false;
+        }
+        if (current == ',') {
+            position++;
+            skipWhitespace();
+        }
+        expect('"');
+        keyStart = position;
+        keyEnd = skipStringContent();
+        skipWhitespace();
+        expect(':');
+        skipWhitespace();
+        return true;
+    }
+
+    /**
+     * Moves to the next element of the current array.
+     *
+     * @return false when the end of the array is reached
+     */
+    private boolean nextElement() {
+        skipWhitespace();
+        byte current = peek();
+        if (current == ']') {
+            position++;
+            return false;
+        }
+        if (current == ',') {
+            position++;
+            skipWhitespace();
+        }
+        return true;
+    }
+
+    private boolean keyEquals(byte[] key) {
+        if (keyEnd - keyStart != key.length) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (buffer[keyStart + i] != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isNull() {
+        return peek() == 'n';
+    }
+
+    private boolean skipIfNull() {
+        if (isNull()) {
+            position += 4;
+            return true;
+        }
+        return false;
+    }
+
+    private long readLong() {
+        if (skipIfNull()) {
+            return -1;
+        }
+        boolean negative = false;
+        if (peek() == '-') {
+            negative = true;
+            position++;
+        }
+        long value = 0;
+        while (position < limit && buffer[position] >= '0' && buffer[position] <= '9') {
+            value = value * 10 + (buffer[position++] - '0');
+        }
+        if (position < limit && (buffer[position] == '.' || buffer[position] == 'e' || buffer[position] == 'E')) {
+            skipValue();
+        }
+        return negative ? -value : value;
+    }
+
+    private double readDouble() {
+        int start = position;
+        skipValue();
+        return Double.parseDouble(new String(buffer, start, position - start, StandardCharsets.US_ASCII));
+    }
+
+    private Date readDate() {
+        String value = readString();
+        if (value == null) {
+            return null;
+        }
+        try {
+            return dateFormat.parse(value);
+        } catch (ParseException e) {
+            throw new IllegalArgumentException("Invalid date '" + value + "' in tweet: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Reads a string value, decoding UTF-8 and JSON escapes.
+     */
+    private String readString() {
+        if (skipIfNull()) {
+            return null;
+        }
+        expect('"');
+        int length = 0;
+        while (true) {
+            if (position >= limit) {
+                throw new IllegalArgumentException("Unterminated string in tweet.");
+            }
+            if (length + 2 > chars.length) {
+                char[] expanded = new char[chars.length * 2];
+                System.arraycopy(chars, 0, expanded, 0, length);
+                chars = expanded;
+            }
+            int current = buffer[position++] & 0xFF;
+            if (current == '"') {
+                return new String(chars, 0, length);
+            } else if (current == '\\') {
+                char escaped = (char) readStringByte();
+                switch (escaped) {
+                    case 'b':
+                        chars[length++] = '\b';
+                        break;
+                    case 'f':
+                        chars[length++] = '\f';
+                        break;
+                    case 'n':
+                        chars[length++] = '\n';
+                        break;
+                    case 'r':
+                        chars[length++] = '\r';
+                        break;
+                    case 't':
+                        chars[length++] = '\t';
+                        break;
+                    case 'u':
+                        int codeUnit = 0;
+                        for (int i = 0; i < 4; i++) {
+                            int digit = Character.digit(readStringByte(), 16);
+                            if (digit < 0) {
+                                throw new IllegalArgumentException("Invalid unicode escape in tweet.");
+                            }
+                            codeUnit = (codeUnit << 4) | digit;
+                        }
+                        chars[length++] = (char) codeUnit;
+                        break;
+                    default:
+                        chars[length++] = escaped;
+                }
+            } else if (current < 0x80) {
+                chars[length++] = (char) current;
+            } else if (current < 0xE0) {
+                chars[length++] = (char) (((current & 0x1F) << 6) | (readStringByte() & 0x3F));
+            } else if (current < 0xF0) {
+                chars[length++] = (char) (((current & 0x0F) << 12) | ((readStringByte() & 0x3F) << 6) |
+                        (readStringByte() & 0x3F));
+            } else {
+                int codePoint = ((current & 0x07) << 18) | ((readStringByte() & 0x3F) << 12) |
+                        ((readStringByte() & 0x3F) << 6) | (readStringByte() & 0x3F);
+                chars[length++] = Character.highSurrogate(codePoint);
+                chars[length++] = Character.lowSurrogate(codePoint);
+            }
+        }
+    }
+
+    /**
+     * Reads a byte within a string, such as an escaped character or a continuation byte of a UTF-8 character, which
+     * cannot be at the end of the message.
+     */
+    private byte readStringByte() {
+        if (position >= limit) {
+            throw new IllegalArgumentException("Unterminated string in tweet.");
+        }
+        return buffer[position++];
+    }
+
+    /**
+     * Skips the content of a string whose opening quote has been consumed.
+     *
+     * @return position of the closing quote
+     */
+    private int skipStringContent() {
+        while (position < limit) {
+            byte current = buffer[position++];
+            if (current == '\\') {
+                position++;
+            } else if (current == '"') {
+                return position - 1;
+            }
+        }
+        throw new IllegalArgumentException("Unterminated string in tweet.");
+    }
+
+    private void skipValue() {
+        byte current = peek();
+        if (current == '"') {
+            position++;
+            skipStringContent();
+        } else if (current == '{' || current == '[') {
+            int depth = 0;
+            while (position < limit) {
+                current = buffer[position++];
+                if (current == '"') {
+                    skipStringContent();
+                } else if (current == '{' || current == '[') {
+                    depth++;
+                } else if (current == '}' || current == ']') {
+                    if (--depth == 0) {
+                        return;
+                    }
+                }
+            }
+            throw new IllegalArgumentException("Unterminated object in tweet.");
+        } else {
+            while (position < limit) {
+                current = buffer[position];
+                if (current == ',' || current == '}' || current == ']' || current == ' ' || current == '\n' ||
+                        current == '\r' || current == '\t') {
+                    return;
+                }
+                position++;
+            }
+        }
+    }
+
+    private void skipWhitespace() {
+        while (position < limit) {
+            byte current = buffer[position];
+            if (current != ' ' && current != '\n' && current != '\r' && current != '\t') {
+                return;
+            }
+            position++;
+        }
+    }
+
+    private byte peek() {
+        if (position >= limit) {
+            throw new IllegalArgumentException("Unexpected end of tweet.");
+        }
+        return buffer[position];
+    }
+
+    private void expect(char expected) {
+        skipWhitespace();
+        if (peek() != expected) {
+            throw new IllegalArgumentException("Expected '" + expected + "' but found '" + (char) buffer[position] +
+                    "' at " + position + " in tweet.");
+        }
+        position++;
+    }
+
+    private static byte[] bytes(String key) {
+        return key.getBytes(StandardCharsets.US_ASCII);
+    }
+}
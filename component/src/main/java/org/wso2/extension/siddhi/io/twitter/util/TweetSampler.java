@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.extension.siddhi.io.twitter.util;
+
+import twitter4j.Status;
+
+/**
+ * Keeps a fixed fraction of the tweets, chosen by a hash of the tweet ID or of the user ID. The hash does not
+ * depend on the JVM nor on the order in which tweets are received, hence every source sampling at the same rate
+ * keeps the same tweets, and the tweets kept at a rate are also kept at any higher rate.
+ */
+public class TweetSampler {
+    // the top 53 bits of the hash are compared, which a double represents exactly
+    private static final int HASH_BITS = 53;
+    private final long threshold;
+    private final boolean byUser;
+
+    /**
+     * Creates a sampler.
+     *
+     * @param rate   - fraction of the tweets kept, from 0 to 1
+     * @param byUser - true to keep or drop all the tweets of a user together, false to sample each tweet
+     */
+    public TweetSampler(double rate, boolean byUser) {
+        this.threshold = (long) (rate * (1L << HASH_BITS));
+        this.byUser = byUser;
+    }
+
+    public boolean isSampled(Status status) {
+        return isSampled((byUser && status.getUser() != null) ? status.getUser().getId() : status.getId());
+    }
+
+    public boolean isSampled(TweetFields fields) {
+        return isSampled((byUser && fields.userId != -1) ? fields.userId : fields.id);
+    }
+
+    /**
+     * Tells whether the tweets of the given key are kept.
+     *
+     * @param key - tweet ID, or user ID when sampling by user
+     * @return true if the tweets are kept
+     */
+    public boolean isSampled(long key) {
+        return (hash(key) >>> (Long.SIZE - HASH_BITS)) < threshold;
+    }
+
+    /**
+     * Mixes the bits of a key with the finalizer of MurmurHash3, as tweet IDs are mostly made of a timestamp and
+     * user IDs are sequential.
+     */
+    static long hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+}
@@ -40,11 +40,39 @@ public class TwitterConstants {
     public static final String MODE = "mode";
     public static final String MODE_STREAMING = "STREAMING";
     public static final String MODE_POLLING = "POLLING";
+    public static final String MODE_REPLAY = "REPLAY";
     public static final String STREAMING_FILTER_FOLLOW = "follow";
     public static final String STREAMING_FILTER_TRACK = "track";
     public static final String STREAMING_FILTER_LOCATIONS = "location";
     public static final String STREAMING_FILTER_LANGUAGE = "language";
     public static final String STREAMING_FILTER_FILTER_LEVEL = "filter.level";
+    public static final String STREAMING_WORKER_COUNT = "worker.count";
+    public static final String STREAMING_WORKER_BUFFER_SIZE = "worker.buffer.size";
+    public static final String OVERLOAD_POLICY = "overload.policy";
+    public static final String OVERLOAD_HIGH_WATERMARK = "overload.high.watermark";
+    public static final String OVERLOAD_LOW_WATERMARK = "overload.low.watermark";
+    public static final String OVERLOAD_POLICY_BLOCK = "block";
+    public static final String OVERLOAD_POLICY_DROP_NEWEST = "drop-newest";
+    public static final String OVERLOAD_POLICY_DROP_OLDEST = "drop-oldest";
+    public static final String OVERLOAD_POLICY_SAMPLE = "sample";
+    public static final String STREAMING_READER = "stream.reader";
+    public static final String STREAMING_BASE_URL = "stream.base.url";
+    public static final String STREAMING_READER_TWITTER4J = "twitter4j";
+    public static final String STREAMING_READER_LIGHTWEIGHT = "lightweight";
+    public static final String STREAMING_SHARD_COUNT = "stream.shard.count";
+    public static final String STREAMING_SHARING = "stream.sharing";
+    public static final int STREAMING_TRACK_LIMIT = 400;
+    public static final int STREAMING_FOLLOW_LIMIT = 5000;
+    public static final int STREAMING_LOCATIONS_LIMIT = 25;
+    public static final String STREAMING_BACKFILL = "stream.backfill";
+    public static final String STREAMING_BACKFILL_LIMIT = "stream.backfill.limit";
+    public static final int SEARCH_QUERY_LIMIT = 500;
+    public static final String STREAMING_SPILL_MAX_MB = "stream.spill.max.mb";
+    public static final String STREAMING_SPILL_DIR = "stream.spill.dir";
+    public static final String KEYWORD_FILTER = "keyword.filter";
+    public static final String KEYWORD_FILTER_FILE = "keyword.filter.file";
+    public static final String GEO_FILTER_FILE = "geo.filter.file";
+    public static final String ADDITIONAL_CREDENTIALS = "additional.credentials";
     public static final String POLLING_SEARCH_COUNT = "count";
     public static final String POLLING_SEARCH_GEOCODE = "geocode";
     public static final String POLLING_SEARCH_QUERY = "query";
@@ -55,12 +83,53 @@ public class TwitterConstants {
     public static final String POLLING_SEARCH_UNTIL = "until";
     public static final String POLLING_SEARCH_SINCE = "since";
     public static final String POLLING_INTERVAL = "polling.interval";
+    public static final String POLLING_INTERVAL_MIN = "polling.interval.min";
+    public static final String POLLING_INTERVAL_MAX = "polling.interval.max";
+    public static final String POLLING_WORKER_COUNT = "polling.worker.count";
+    public static final String POLLING_SEARCH_CURSORS = "search.cursors";
+    public static final String POLLING_QUERY_DELIMITER = ";";
+    public static final int POLLING_SEARCH_DEFAULT_COUNT = 15;
+    public static final String POLLING_BASE_URL = "rest.base.url";
+    public static final String REPLAY_FILE = "replay.file";
+    public static final String REPLAY_SPEED = "replay.speed";
+    public static final String REPLAY_SPEED_MAX = "max";
+    public static final String REPLAY_SPEED_REAL_TIME = "real-time";
+    public static final String REPLAY_OFFSET = "replay.offset";
+    public static final long READER_TERMINATION_TIMEOUT_MILLIS = 5000;
+    public static final String BATCH_SIZE = "batch.size";
+    public static final String BATCH_LINGER_MS = "batch.linger.ms";
+    public static final String DEDUP_CACHE = "dedup.cache";
+    public static final String DEDUP_CACHE_SIZE = "dedup.cache.size";
+    public static final String DEDUP_CACHE_TYPE = "dedup.cache.type";
+    public static final String DEDUP_CACHE_TYPE_HASH = "hash";
+    public static final String DEDUP_CACHE_TYPE_BLOOM = "bloom";
+    public static final String DEDUP_HORIZON_MS = "dedup.horizon.ms";
+    public static final String SAMPLE_RATE = "sample.rate";
+    public static final String SAMPLE_KEY = "sample.key";
+    public static final String SAMPLE_KEY_TWEET = "tweet";
+    public static final String SAMPLE_KEY_USER = "user";
+    public static final String INTERN_CACHE_SIZE = "intern.cache.size";
+    public static final String ATTRIBUTE_FORMAT = "attribute.format";
+    public static final String ATTRIBUTE_FORMAT_TYPED = "typed";
+    public static final String ATTRIBUTE_FORMAT_LEGACY = "legacy";
+    public static final String PAYLOAD_FORMAT = "payload.format";
+    public static final String PAYLOAD_FORMAT_MAP = "map";
+    public static final String PAYLOAD_FORMAT_RAW_JSON = "raw-json";
     private static final String FILTER_LEVEL_NONE = "none";
     private static final String FILTER_LEVEL_MEDIUM = "medium";
     private static final String FILTER_LEVEL_LOW = "low";
     public static final String EMPTY_STRING = "";
     public static final String DELIMITER = ",";
     public static final String NULL_STRING = "null";
+    public static final String SOURCE_TYPE = "twitter";
+    public static final String SOURCE_ANNOTATION = "source";
+    public static final String MAP_ANNOTATION = "map";
+    public static final String ATTRIBUTES_ANNOTATION = "attributes";
+    public static final String ANNOTATION_TYPE = "type";
+    public static final String MAP_TYPE_KEYVALUE = "keyvalue";
+    public static final String MAP_TYPE_PASS_THROUGH = "passThrough";
+    public static final String TRANSPORT_PROPERTY_PREFIX = "trp:";
+    public static final String DEPLOYMENT_PROPERTY_PREFIX = "dep:";
 
     public static final String STATUS_CREATED_AT = "createdAt";
     public static final String STATUS_TWEET_ID = "tweetId";
@@ -90,8 +159,10 @@ public class TwitterConstants {
     public static final String STATUS_IN_REPLY_TO_STATUS_ID = "in.reply.to.status.id";
     public static final String TRACK_WORDS = "track.words";
     public static final String QUERY = "polling.query";
-
-    public static final int MANDATORY_PARAM_SIZE = 6;
+    public static final String STATUS_GEO_REGION = "geoRegion";
+    public static final String STATUS_LATITUDE = "latitude";
+    public static final String STATUS_LONGITUDE = "longitude";
+    public static final String STATUS_GEOHASH = "geohash";
 
     public static final List<String> MANDATORY_PARAM = Collections.unmodifiableList(Arrays.asList(
             TwitterConstants.CONSUMER_KEY,
@@ -100,13 +171,50 @@ public class TwitterConstants {
             TwitterConstants.ACCESS_SECRET,
             TwitterConstants.MODE, "type"));
 
-    public static final List<String> STREAMING_PARAM = Collections.unmodifiableList(Arrays.asList(
+    public static final List<String> COMMON_PARAM = Collections.unmodifiableList(Arrays.asList(
+            TwitterConstants.BATCH_SIZE,
+            TwitterConstants.BATCH_LINGER_MS,
+            TwitterConstants.DEDUP_CACHE_SIZE,
+            TwitterConstants.DEDUP_CACHE_TYPE,
+            TwitterConstants.DEDUP_HORIZON_MS,
+            TwitterConstants.SAMPLE_RATE,
+            TwitterConstants.SAMPLE_KEY,
+            TwitterConstants.INTERN_CACHE_SIZE,
+            TwitterConstants.ATTRIBUTE_FORMAT,
+            TwitterConstants.PAYLOAD_FORMAT));
+
+    public static final List<String> STREAMING_FILTER_PARAM = Collections.unmodifiableList(Arrays.asList(
             TwitterConstants.STREAMING_FILTER_TRACK,
             TwitterConstants.STREAMING_FILTER_FOLLOW,
             TwitterConstants.STREAMING_FILTER_FILTER_LEVEL,
             TwitterConstants.STREAMING_FILTER_LOCATIONS,
             TwitterConstants.STREAMING_FILTER_LANGUAGE));
 
+    public static final List<String> STREAMING_PARAM = Collections.unmodifiableList(Arrays.asList(
+            TwitterConstants.STREAMING_FILTER_TRACK,
+            TwitterConstants.STREAMING_FILTER_FOLLOW,
+            TwitterConstants.STREAMING_FILTER_FILTER_LEVEL,
+            TwitterConstants.STREAMING_FILTER_LOCATIONS,
+            TwitterConstants.STREAMING_FILTER_LANGUAGE,
+            TwitterConstants.STREAMING_WORKER_COUNT,
+            TwitterConstants.STREAMING_WORKER_BUFFER_SIZE,
+            TwitterConstants.OVERLOAD_POLICY,
+            TwitterConstants.OVERLOAD_HIGH_WATERMARK,
+            TwitterConstants.OVERLOAD_LOW_WATERMARK,
+            TwitterConstants.STREAMING_READER,
+            TwitterConstants.STREAMING_BASE_URL,
+            TwitterConstants.STREAMING_SHARD_COUNT,
+            TwitterConstants.STREAMING_SHARING,
+            TwitterConstants.STREAMING_BACKFILL,
+            TwitterConstants.STREAMING_BACKFILL_LIMIT,
+            TwitterConstants.POLLING_BASE_URL,
+            TwitterConstants.STREAMING_SPILL_MAX_MB,
+            TwitterConstants.STREAMING_SPILL_DIR,
+            TwitterConstants.KEYWORD_FILTER,
+            TwitterConstants.KEYWORD_FILTER_FILE,
+            TwitterConstants.GEO_FILTER_FILE,
+            TwitterConstants.ADDITIONAL_CREDENTIALS));
+
     public static final List<String> POLLING_PARAM = Collections.unmodifiableList(Arrays.asList(
             TwitterConstants.POLLING_SEARCH_COUNT,
             TwitterConstants.POLLING_SEARCH_QUERY,
@@ -117,7 +225,16 @@ public class TwitterConstants {
             TwitterConstants.POLLING_SEARCH_SINCE,
             TwitterConstants.POLLING_SEARCH_SINCEID,
             TwitterConstants.POLLING_SEARCH_UNTIL,
-            TwitterConstants.POLLING_INTERVAL));
+            TwitterConstants.POLLING_INTERVAL,
+            TwitterConstants.POLLING_INTERVAL_MIN,
+            TwitterConstants.POLLING_INTERVAL_MAX,
+            TwitterConstants.POLLING_WORKER_COUNT,
+            TwitterConstants.POLLING_BASE_URL,
+            TwitterConstants.ADDITIONAL_CREDENTIALS));
+
+    public static final List<String> REPLAY_PARAM = Collections.unmodifiableList(Arrays.asList(
+            TwitterConstants.REPLAY_FILE,
+            TwitterConstants.REPLAY_SPEED));
 
     public static final List<String> FILTER_LEVELS = Collections.unmodifiableList(Arrays.asList(
             TwitterConstants.FILTER_LEVEL_LOW,
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.extension.siddhi.io.twitter.util;
+
+import io.siddhi.query.api.exception.SiddhiAppValidationException;
+import twitter4j.conf.ConfigurationBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Holds the OAuth credentials of a Twitter app and user, which are used for a stream connection or for search
+ * requests.
+ */
+public class TwitterCredentials {
+    private static final String CREDENTIAL_DELIMITER = ":";
+    private final String consumerKey;
+    private final String consumerSecret;
+    private final String accessToken;
+    private final String accessSecret;
+
+    public TwitterCredentials(String consumerKey, String consumerSecret, String accessToken, String accessSecret) {
+        this.consumerKey = consumerKey;
+        this.consumerSecret = consumerSecret;
+        this.accessToken = accessToken;
+        this.accessSecret = accessSecret;
+    }
+
+    /**
+     * Parses a comma separated list of credentials, each given as
+     * consumerKey:consumerSecret:accessToken:accessTokenSecret.
+     *
+     * @param credentialsParam - value of the parameter listing the credentials
+     * @return list of credentials in the given order
+     */
+    public static List<TwitterCredentials> parseList(String credentialsParam) {
+        List<TwitterCredentials> credentialsList = new ArrayList<>();
+        for (String credentials : credentialsParam.split(TwitterConstants.DELIMITER)) {
+            String[] parts = credentials.trim().split(CREDENTIAL_DELIMITER);
+            if (parts.length != 4) {
+                throw new SiddhiAppValidationException("Each of the " + TwitterConstants.ADDITIONAL_CREDENTIALS +
+                        " should be given as consumerKey:consumerSecret:accessToken:accessTokenSecret, but found " +
+                        parts.length + " values in credentials " + (credentialsList.size() + 1) + ".");
+            }
+            credentialsList.add(new TwitterCredentials(parts[0].trim(), parts[1].trim(), parts[2].trim(),
+                    parts[3].trim()));
+        }
+        return credentialsList;
+    }
+
+    /**
+     * Sets the credentials on a twitter4j configuration.
+     *
+     * @param configurationBuilder - builder of the configuration
+     * @return the same builder
+     */
+    public ConfigurationBuilder applyTo(ConfigurationBuilder configurationBuilder) {
+        return configurationBuilder.setOAuthConsumerKey(consumerKey)
+                .setOAuthConsumerSecret(consumerSecret)
+                .setOAuthAccessToken(accessToken)
+                .setOAuthAccessTokenSecret(accessSecret);
+    }
+
+    /**
+     * Returns the part of the access token identifying the user, which can be logged unlike the secrets.
+     *
+     * @return user ID of the access token, or the consumer key's prefix for app-only credentials
+     */
+    public String getName() {
+        int index = accessToken.indexOf('-');
+        if (index > 0) {
+            return accessToken.substring(0, index);
+        }
+        return consumerKey.substring(0, Math.min(consumerKey.length(), 6)) + "...";
+    }
+}
@@ -18,16 +18,37 @@
 
 package org.wso2.extension.siddhi.io.twitter.util;
 
+import io.siddhi.core.util.transport.OptionHolder;
+import io.siddhi.query.api.annotation.Annotation;
+import io.siddhi.query.api.annotation.Element;
+import io.siddhi.query.api.definition.Attribute;
+import io.siddhi.query.api.definition.StreamDefinition;
 import io.siddhi.query.api.exception.SiddhiAppValidationException;
 import twitter4j.Status;
 
-import java.util.HashMap;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * This class contains util methods for the extensions.
  */
 public class Util {
+    private static final StatusMapper FULL_STATUS_MAPPER = new StatusMapper(EnumSet.allOf(TweetAttribute.class),
+            null);
+    // tweet IDs hold the milliseconds elapsed since this epoch in their upper bits
+    private static final long TWEET_ID_EPOCH = 1288834974657L;
+    private static final int TWEET_ID_TIMESTAMP_SHIFT = 22;
+    // IDs issued before November 2010 were sequential, and stayed far below this
+    private static final long MIN_TIMED_TWEET_ID = 1L << 40;
+    private static final char[] GEOHASH_DIGITS = "0123456789bcdefghjkmnpqrstuvwxyz".toCharArray();
+    private static final int GEOHASH_LENGTH = 12;
+
     private Util() {
     }
 
@@ -65,89 +86,330 @@ public class Util {
         return follow;
     }
 
+    /**
+     * Validates a base URL of the Twitter API, appending the trailing slash expected by twitter4j when missing.
+     *
+     * @param url - base URL given by the user
+     * @return base URL ending with a slash
+     */
+    public static String toBaseUrl(String url) {
+        try {
+            new URL(url);
+        } catch (MalformedURLException e) {
+            throw new SiddhiAppValidationException("Invalid base URL '" + url + "': " + e.getMessage(), e);
+        }
+        return url.endsWith("/") ? url : url + "/";
+    }
+
+    /**
+     * Returns the creation time encoded in a tweet ID. The result is meaningless for tweets created before
+     * November 2010, whose IDs are sequential.
+     *
+     * @param tweetId - ID of the tweet
+     * @return creation time in epoch milliseconds
+     */
+    public static long getTweetIdTime(long tweetId) {
+        return (tweetId >> TWEET_ID_TIMESTAMP_SHIFT) + TWEET_ID_EPOCH;
+    }
+
+    /**
+     * Returns the creation time of a tweet, decoded from its ID when the ID holds it, as that is exact to the
+     * millisecond and avoids parsing the creation date.
+     *
+     * @param tweetId   - ID of the tweet
+     * @param createdAt - creation date given with the tweet, or null
+     * @return creation time in epoch milliseconds, or null if it is not known
+     */
+    public static Long getCreationTime(long tweetId, Date createdAt) {
+        if (isTimedTweetId(tweetId)) {
+            return getTweetIdTime(tweetId);
+        }
+        return (createdAt == null) ? null : createdAt.getTime();
+    }
+
+    /**
+     * Tells whether the creation time of a tweet can be decoded from its ID.
+     *
+     * @param tweetId - ID of the tweet
+     * @return true if {@link #getTweetIdTime(long)} gives the creation time of the tweet
+     */
+    public static boolean isTimedTweetId(long tweetId) {
+        return tweetId >= MIN_TIMED_TWEET_ID;
+    }
+
+    /**
+     * Encodes a location as a geohash of 12 characters, which locates it within a few centimetres, and of which
+     * the prefixes give the enclosing cells.
+     *
+     * @param latitude  - latitude of the location
+     * @param longitude - longitude of the location
+     * @return geohash of the location
+     */
+    public static String encodeGeohash(double latitude, double longitude) {
+        char[] geohash = new char[GEOHASH_LENGTH];
+        double minLatitude = -90;
+        double maxLatitude = 90;
+        double minLongitude = -180;
+        double maxLongitude = 180;
+        // the bits alternately halve the longitude and latitude ranges, starting with the longitude
+        boolean isLongitude = true;
+        for (int i = 0; i < GEOHASH_LENGTH; i++) {
+            int digit = 0;
+            for (int bit = 0; bit < 5; bit++) {
+                digit <<= 1;
+                if (isLongitude) {
+                    double middle = (minLongitude + maxLongitude) / 2;
+                    if (longitude >= middle) {
+                        digit |= 1;
+                        minLongitude = middle;
+                    } else {
+                        maxLongitude = middle;
+                    }
+                } else {
+                    double middle = (minLatitude + maxLatitude) / 2;
+                    if (latitude >= middle) {
+                        digit |= 1;
+                        minLatitude = middle;
+                    } else {
+                        maxLatitude = middle;
+                    }
+                }
+                isLongitude = !isLongitude;
+            }
+            geohash[i] = GEOHASH_DIGITS[digit];
+        }
+        return new String(geohash);
+    }
+
     public static Map<String, Object> createMap(Status tweet) {
-        Map<String, Object> status = new HashMap<>();
-        String trackwords = (QueryBuilder.getTrackParam() != null && !QueryBuilder.getTrackParam().isEmpty()) ?
-                QueryBuilder.getTrackParam() : TwitterConstants.NULL_STRING;
-        String query = (QueryBuilder.getQueryParam() != null && !QueryBuilder.getQueryParam().isEmpty()) ?
-                QueryBuilder.getQueryParam() : TwitterConstants.NULL_STRING;
-        String geoLocation = (tweet.getGeoLocation() == null ?
-                TwitterConstants.NULL_STRING : (tweet.getGeoLocation().getLatitude()) + TwitterConstants.DELIMITER +
-                tweet.getGeoLocation().getLongitude());
-        StringBuilder hashtag = new StringBuilder();
-        StringBuilder userMention = new StringBuilder();
-        StringBuilder mediaUrl = new StringBuilder();
-        StringBuilder url = new StringBuilder();
-        String createdAt;
-        String hashtags;
-        String userMentions;
-        String mediaUrls;
-        String urls;
-        int i;
-        for (i = 0; i < tweet.getHashtagEntities().length; i++) {
-            hashtag.append(tweet.getHashtagEntities()[i].getText() + TwitterConstants.DELIMITER);
-        }
-        hashtags = hashtag.toString();
-        hashtags = (hashtags.equals(TwitterConstants.EMPTY_STRING) ?
-                TwitterConstants.NULL_STRING : hashtags.substring(0, hashtags.length() - 1));
-
-        for (i = 0; i < tweet.getUserMentionEntities().length; i++) {
-            userMention.append(tweet.getUserMentionEntities()[i].getText() + TwitterConstants.DELIMITER);
-        }
-        userMentions = userMention.toString();
-        userMentions = (userMentions.equals(TwitterConstants.EMPTY_STRING) ?
-                TwitterConstants.NULL_STRING : userMentions.substring(0,
-                userMentions.length() - 1));
-
-        for (i = 0; i < tweet.getMediaEntities().length; i++) {
-            mediaUrl.append(tweet.getMediaEntities()[i].getMediaURL() + TwitterConstants.DELIMITER);
-        }
-        mediaUrls = mediaUrl.toString();
-        mediaUrls = (mediaUrls.equals(TwitterConstants.EMPTY_STRING) ?
-                TwitterConstants.NULL_STRING : mediaUrls.substring(0,
-                mediaUrls.length() - 1));
-        for (i = 0; i < tweet.getURLEntities().length; i++) {
-            url.append(tweet.getURLEntities()[i].getURL() + TwitterConstants.DELIMITER);
-        }
-        urls = url.toString();
-        urls = (urls.equals(TwitterConstants.EMPTY_STRING) ?
-                TwitterConstants.NULL_STRING : urls.substring(0,
-                urls.length() - 1));
-        createdAt = tweet.getCreatedAt().toString();
-
-        status.put(TwitterConstants.STATUS_CREATED_AT, createdAt);
-        status.put(TwitterConstants.STATUS_TWEET_ID, tweet.getId());
-        status.put(TwitterConstants.STATUS_TEXT, tweet.getText());
-        status.put(TwitterConstants.STATUS_USER_CREATEDAT, tweet.getUser().getCreatedAt());
-        status.put(TwitterConstants.STATUS_USER_SCREENNAME, tweet.getUser().getScreenName());
-        status.put(TwitterConstants.STATUS_USER_NAME, tweet.getUser().getName());
-        status.put(TwitterConstants.STATUS_USER_MAIL, tweet.getUser().getEmail());
-        status.put(TwitterConstants.STATUS_USER_ID, tweet.getUser().getId());
-        status.put(TwitterConstants.STATUS_USER_LOCATION, tweet.getUser().getLocation());
-        status.put(TwitterConstants.STATUS_HASHTAGS, hashtags);
-        status.put(TwitterConstants.STATUS_USERMENTIONS, userMentions);
-        status.put(TwitterConstants.STATUS_MEDIAURLS, mediaUrls);
-        status.put(TwitterConstants.STATUS_URLS, urls);
-        status.put(TwitterConstants.STATUS_LANGUAGE, tweet.getLang());
-        status.put(TwitterConstants.STATUS_SOURCE, tweet.getSource());
-        status.put(TwitterConstants.STATUS_IS_RETWEET, tweet.isRetweet());
-        status.put(TwitterConstants.STATUS_RETWEET_COUNT, tweet.getRetweetCount());
-        status.put(TwitterConstants.STATUS_GEOLOCATION, geoLocation);
-        status.put(TwitterConstants.STATUS_FAVOURITE_COUNT, tweet.getFavoriteCount());
-        status.put(TwitterConstants.STATUS_QUOTED_STATUS_ID, tweet.getQuotedStatusId());
-        status.put(TwitterConstants.STATUS_IN_REPLY_TO_STATUS_ID, tweet.getInReplyToStatusId());
-        status.put(TwitterConstants.STATUS_PLACE_COUNTRY, (tweet.getPlace() == null) ?
-                TwitterConstants.NULL_STRING : tweet.getPlace().getCountry());
-        status.put(TwitterConstants.STATUS_PLACE_COUNTRY_CODE, (tweet.getPlace() == null) ?
-                TwitterConstants.NULL_STRING : tweet.getPlace().getCountryCode());
-        status.put(TwitterConstants.STATUS_PLACE_NAME, (tweet.getPlace() == null) ?
-                TwitterConstants.NULL_STRING : tweet.getPlace().getName());
-        status.put(TwitterConstants.STATUS_PLACE_ID, (tweet.getPlace() == null) ?
-                TwitterConstants.NULL_STRING : tweet.getPlace().getId());
-        status.put(TwitterConstants.STATUS_PLACE_FULLNAME, (tweet.getPlace() == null) ?
-                TwitterConstants.NULL_STRING : tweet.getPlace().getFullName());
-        status.put(TwitterConstants.TRACK_WORDS, trackwords);
-        status.put(TwitterConstants.QUERY, query);
-        return status;
+        return FULL_STATUS_MAPPER.createMap(tweet);
+    }
+
+    /**
+     * Finds the twitter source annotation of the given stream which holds the given options. A stream may have
+     * several twitter sources, each with its own mapping, so the mapping is read from the source being initialized.
+     *
+     * @param streamDefinition - definition of the stream the source is attached to
+     * @param optionHolder     - options the source is initialized with, or null to find the first twitter source
+     * @return the source annotation, or null if the stream has no twitter source annotation
+     */
+    public static Annotation getSourceAnnotation(StreamDefinition streamDefinition, OptionHolder optionHolder) {
+        Annotation firstSourceAnnotation = null;
+        for (Annotation sourceAnnotation : streamDefinition.getAnnotations()) {
+            if (!isTwitterSource(sourceAnnotation)) {
+                continue;
+            }
+            if (optionHolder == null || hasOptions(sourceAnnotation, optionHolder)) {
+                return sourceAnnotation;
+            }
+            if (firstSourceAnnotation == null) {
+                firstSourceAnnotation = sourceAnnotation;
+            }
+        }
+        return firstSourceAnnotation;
+    }
+
+    /**
+     * Finds the tweet attributes that are actually consumed by the mapping of the first twitter source of the
+     * given stream, so that only those need to be extracted from each tweet.
+     *
+     * @param streamDefinition                - definition of the stream the source is attached to
+     * @param requestedTransportPropertyNames - transport properties requested by the mapper
+     * @return the set of attributes to be extracted
+     */
+    public static Set<TweetAttribute> getRequestedAttributes(StreamDefinition streamDefinition,
+                                                             String[] requestedTransportPropertyNames) {
+        return getRequestedAttributes(streamDefinition, getSourceAnnotation(streamDefinition, null),
+                requestedTransportPropertyNames);
+    }
+
+    /**
+     * Finds the tweet attributes that are actually consumed by the mapping of the given source, so that only
+     * those need to be extracted from each tweet.
+     *
+     * @param streamDefinition                - definition of the stream the source is attached to
+     * @param sourceAnnotation                - annotation of the source, or null if it is not known
+     * @param requestedTransportPropertyNames - transport properties requested by the mapper
+     * @return the set of attributes to be extracted
+     */
+    public static Set<TweetAttribute> getRequestedAttributes(StreamDefinition streamDefinition,
+                                                             Annotation sourceAnnotation,
+                                                             String[] requestedTransportPropertyNames) {
+        Map<String, String> keyValueMappings = (sourceAnnotation == null) ? null :
+                getKeyValueMappings(sourceAnnotation, streamDefinition);
+        if (keyValueMappings == null) {
+            return EnumSet.allOf(TweetAttribute.class);
+        }
+        Set<TweetAttribute> requestedAttributes = EnumSet.noneOf(TweetAttribute.class);
+        for (String key : keyValueMappings.values()) {
+            if (!key.startsWith(TwitterConstants.TRANSPORT_PROPERTY_PREFIX)) {
+                addAttribute(requestedAttributes, key);
+            }
+        }
+        if (requestedTransportPropertyNames != null) {
+            for (String transportPropertyName : requestedTransportPropertyNames) {
+                addAttribute(requestedAttributes, transportPropertyName);
+            }
+        }
+        return requestedAttributes;
+    }
+
+    /**
+     * Finds the typed tweet attributes which the keyvalue mapping of the given source maps onto string attributes,
+     * as declared by the apps written for the legacy format, so that they are given in that format.
+     *
+     * @param streamDefinition - definition of the stream the source is attached to
+     * @param sourceAnnotation - annotation of the source, or null if it is not known
+     * @return the attributes to be given in their legacy format
+     */
+    public static Set<TweetAttribute> getLegacyAttributes(StreamDefinition streamDefinition,
+                                                          Annotation sourceAnnotation) {
+        Set<TweetAttribute> legacyAttributes = EnumSet.noneOf(TweetAttribute.class);
+        Map<String, String> keyValueMappings = (sourceAnnotation == null) ? null :
+                getKeyValueMappings(sourceAnnotation, streamDefinition);
+        if (keyValueMappings == null) {
+            return legacyAttributes;
+        }
+        for (Map.Entry<String, String> mapping : keyValueMappings.entrySet()) {
+            TweetAttribute attribute = TweetAttribute.fromKey(mapping.getValue().trim());
+            if (attribute != null && attribute.getType() != Attribute.Type.STRING &&
+                    streamDefinition.getAttributeType(mapping.getKey()) == Attribute.Type.STRING) {
+                legacyAttributes.add(attribute);
+            }
+        }
+        return legacyAttributes;
+    }
+
+    /**
+     * Creates the mapper which converts tweets into the events expected by the mapping of the first twitter source
+     * of the given stream.
+     *
+     * @param streamDefinition                - definition of the stream the source is attached to
+     * @param requestedTransportPropertyNames - transport properties requested by the mapper
+     * @return mapper creating positional events for the passThrough mapping, or key-value maps otherwise
+     */
+    public static StatusMapper createStatusMapper(StreamDefinition streamDefinition,
+                                                  String[] requestedTransportPropertyNames) {
+        return createStatusMapper(streamDefinition, getSourceAnnotation(streamDefinition, null),
+                requestedTransportPropertyNames, false);
+    }
+
+    /**
+     * Creates the mapper which converts tweets into the events expected by the mapping of the given source.
+     *
+     * @param streamDefinition                - definition of the stream the source is attached to
+     * @param sourceAnnotation                - annotation of the source, or null if it is not known
+     * @param requestedTransportPropertyNames - transport properties requested by the mapper
+     * @param legacyFormat                    - true to emit the attributes in their legacy string formats
+     * @return mapper creating positional events for the passThrough mapping, or key-value maps otherwise
+     */
+    public static StatusMapper createStatusMapper(StreamDefinition streamDefinition, Annotation sourceAnnotation,
+                                                  String[] requestedTransportPropertyNames, boolean legacyFormat) {
+        if (TwitterConstants.MAP_TYPE_PASS_THROUGH.equalsIgnoreCase(getMapType(sourceAnnotation))) {
+            return new StatusMapper(streamDefinition, requestedTransportPropertyNames, legacyFormat);
+        }
+        return new StatusMapper(getRequestedAttributes(streamDefinition, sourceAnnotation,
+                requestedTransportPropertyNames), requestedTransportPropertyNames, legacyFormat,
+                getLegacyAttributes(streamDefinition, sourceAnnotation));
+    }
+
+    /**
+     * Returns the type of the mapper used by the given source.
+     *
+     * @param sourceAnnotation - annotation of the source, or null if it is not known
+     * @return the mapper type, which is passThrough when no mapper is given
+     */
+    public static String getMapType(Annotation sourceAnnotation) {
+        Annotation mapAnnotation = (sourceAnnotation == null) ? null :
+                getNestedAnnotation(sourceAnnotation, TwitterConstants.MAP_ANNOTATION);
+        if (mapAnnotation == null || mapAnnotation.getElement(TwitterConstants.ANNOTATION_TYPE) == null) {
+            return TwitterConstants.MAP_TYPE_PASS_THROUGH;
+        }
+        return mapAnnotation.getElement(TwitterConstants.ANNOTATION_TYPE);
+    }
+
+    private static boolean isTwitterSource(Annotation annotation) {
+        return annotation.getName().equalsIgnoreCase(TwitterConstants.SOURCE_ANNOTATION) &&
+                TwitterConstants.SOURCE_TYPE.equalsIgnoreCase(annotation.getElement(TwitterConstants.ANNOTATION_TYPE));
+    }
+
+    /**
+     * Tells whether the options of the given source annotation are the static options of the option holder, which
+     * Siddhi creates from the elements of the annotation.
+     */
+    private static boolean hasOptions(Annotation sourceAnnotation, OptionHolder optionHolder) {
+        Set<String> staticOptionsKeys = optionHolder.getStaticOptionsKeys();
+        int optionCount = 0;
+        for (Element element : sourceAnnotation.getElements()) {
+            if (isDeploymentProperty(element.getKey())) {
+                continue;
+            }
+            if (!staticOptionsKeys.contains(element.getKey()) ||
+                    !element.getValue().equals(optionHolder.validateAndGetStaticValue(element.getKey()))) {
+                return false;
+            }
+            optionCount++;
+        }
+        for (String key : staticOptionsKeys) {
+            if (!isDeploymentProperty(key)) {
+                optionCount--;
+            }
+        }
+        return optionCount == 0;
+    }
+
+    private static boolean isDeploymentProperty(String key) {
+        return key == null || key.startsWith(TwitterConstants.DEPLOYMENT_PROPERTY_PREFIX);
+    }
+
+    /**
+     * Returns the tweet attribute keys read by the keyvalue mapping of a source, by the names of the stream
+     * attributes they are mapped onto, including the transport properties.
+     *
+     * @return the keys by stream attribute name, or null if the source is not mapped by the keyvalue mapper
+     */
+    private static Map<String, String> getKeyValueMappings(Annotation sourceAnnotation,
+                                                           StreamDefinition streamDefinition) {
+        Annotation mapAnnotation = getNestedAnnotation(sourceAnnotation, TwitterConstants.MAP_ANNOTATION);
+        if (mapAnnotation == null || !TwitterConstants.MAP_TYPE_KEYVALUE.equalsIgnoreCase(
+                mapAnnotation.getElement(TwitterConstants.ANNOTATION_TYPE))) {
+            return null;
+        }
+        Map<String, String> keyValueMappings = new LinkedHashMap<>();
+        String[] attributeNames = streamDefinition.getAttributeNameArray();
+        Annotation attributesAnnotation = getNestedAnnotation(mapAnnotation, TwitterConstants.ATTRIBUTES_ANNOTATION);
+        if (attributesAnnotation == null) {
+            for (String attributeName : attributeNames) {
+                keyValueMappings.put(attributeName, attributeName);
+            }
+            return keyValueMappings;
+        }
+        List<Element> elements = attributesAnnotation.getElements();
+        for (int i = 0; i < elements.size(); i++) {
+            Element element = elements.get(i);
+            // the keys may be given without the attribute names, in the order of the stream attributes
+            String attributeName = (element.getKey() != null) ? element.getKey() :
+                    ((i < attributeNames.length) ? attributeNames[i] : null);
+            if (attributeName != null) {
+                keyValueMappings.put(attributeName, element.getValue());
+            }
+        }
+        return keyValueMappings;
+    }
+
+    private static Annotation getNestedAnnotation(Annotation annotation, String name) {
+        for (Annotation nestedAnnotation : annotation.getAnnotations()) {
+            if (nestedAnnotation.getName().equalsIgnoreCase(name)) {
+                return nestedAnnotation;
+            }
+        }
+        return null;
+    }
+
+    private static void addAttribute(Set<TweetAttribute> attributes, String key) {
+        TweetAttribute attribute = TweetAttribute.fromKey(key.trim());
+        if (attribute != null) {
+            attributes.add(attribute);
+        }
     }
 }
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.extension.siddhi.io.twitter.source;
+
+import io.siddhi.core.stream.input.source.SourceEventListener;
+import io.siddhi.query.api.definition.StreamDefinition;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Collects the events emitted by the source, in place of the mapper.
+ */
+class CollectingSourceEventListener implements SourceEventListener {
+    private final StreamDefinition streamDefinition;
+    private final List<Object> events = new CopyOnWriteArrayList<>();
+
+    CollectingSourceEventListener(StreamDefinition streamDefinition) {
+        this.streamDefinition = streamDefinition;
+    }
+
+    List<Object> getEvents() {
+        return events;
+    }
+
+    void waitForEvents(int count, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (events.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Override
+    public StreamDefinition getStreamDefinition() {
+        return streamDefinition;
+    }
+
+    @Override
+    public void onEvent(Object event, String[] transportProperties) {
+        events.add(event);
+    }
+
+    @Override
+    public void onEvent(Object event, String[] transportProperties, String[] transportSyncProperties) {
+        onEvent(event, transportProperties);
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.extension.siddhi.io.twitter.source;
+
+import io.siddhi.core.event.Event;
+import io.siddhi.query.api.definition.Attribute;
+import io.siddhi.query.api.definition.StreamDefinition;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+public class EventBatcherTestCase {
+    private static final long TIMEOUT = 10000;
+    private static final StreamDefinition STREAM_DEFINITION = StreamDefinition.id("inputStream")
+            .attribute("tweetId", Attribute.Type.LONG);
+
+    @Test
+    public void testFullBatchesAreEmitted() {
+        CollectingSourceEventListener sourceEventListener = new CollectingSourceEventListener(STREAM_DEFINITION);
+        EventBatcher eventBatcher = new EventBatcher(sourceEventListener, 3, Long.MAX_VALUE,
+                new TwitterSourceMetrics(null, "inputStream"));
+        for (long i = 0; i < 7; i++) {
+            eventBatcher.add(new Object[]{i});
+        }
+        Assert.assertEquals(sourceEventListener.getEvents().size(), 2);
+        eventBatcher.flush();
+        List<Object> batches = sourceEventListener.getEvents();
+        Assert.assertEquals(batches.size(), 3);
+        Assert.assertEquals(((Event[]) batches.get(0)).length, 3);
+        Assert.assertEquals(((Event[]) batches.get(1))[0].getData(0), 3L);
+        Assert.assertEquals(((Event[]) batches.get(2)).length, 1);
+        Assert.assertEquals(((Event[]) batches.get(2))[0].getData(0), 6L);
+    }
+
+    @Test
+    public void testLingeringBatchIsEmitted() throws InterruptedException {
+        CollectingSourceEventListener sourceEventListener = new CollectingSourceEventListener(STREAM_DEFINITION);
+        EventBatcher eventBatcher = new EventBatcher(sourceEventListener, 100, 50,
+                new TwitterSourceMetrics(null, "inputStream"));
+        ScheduledExecutorService executorService = Executors.newSingleThreadScheduledExecutor();
+        eventBatcher.start(executorService);
+        try {
+            eventBatcher.add(new Object[]{1L});
+            eventBatcher.add(new Object[]{2L});
+            sourceEventListener.waitForEvents(1, TIMEOUT);
+        } finally {
+            eventBatcher.shutdown();
+            executorService.shutdownNow();
+        }
+        Assert.assertEquals(sourceEventListener.getEvents().size(), 1);
+        Assert.assertEquals(((Event[]) sourceEventListener.getEvents().get(0)).length, 2);
+    }
+
+    @Test
+    public void testLingerTimeIsCountedFromFirstEvent() throws InterruptedException {
+        CollectingSourceEventListener sourceEventListener = new CollectingSourceEventListener(STREAM_DEFINITION);
+        EventBatcher eventBatcher = new EventBatcher(sourceEventListener, 100, 300,
+                new TwitterSourceMetrics(null, "inputStream"));
+        ScheduledExecutorService executorService = Executors.newSingleThreadScheduledExecutor();
+        eventBatcher.start(executorService);
+        long waitedMillis;
+        try {
+            // the event does not wait for a timer started before it was added
+            Thread.sleep(30);
+            long addTime = System.currentTimeMillis();
+            eventBatcher.add(new Object[]{1L});
+            sourceEventListener.waitForEvents(1, TIMEOUT);
+            waitedMillis = System.currentTimeMillis() - addTime;
+        } finally {
+            eventBatcher.shutdown();
+            executorService.shutdownNow();
+        }
+        Assert.assertEquals(sourceEventListener.getEvents().size(), 1);
+        Assert.assertTrue(waitedMillis >= 290 && waitedMillis < 450, "Waited " + waitedMillis + " ms.");
+    }
+
+    @Test
+    public void testHeldEventsAreEmittedOnShutdown() {
+        CollectingSourceEventListener sourceEventListener = new CollectingSourceEventListener(STREAM_DEFINITION);
+        EventBatcher eventBatcher = new EventBatcher(sourceEventListener, 100, Long.MAX_VALUE,
+                new TwitterSourceMetrics(null, "inputStream"));
+        eventBatcher.add(new Object[]{1L});
+        eventBatcher.add(new Object[]{2L});
+        eventBatcher.shutdown();
+        Assert.assertEquals(sourceEventListener.getEvents().size(), 1);
+        Assert.assertEquals(((Event[]) sourceEventListener.getEvents().get(0)).length, 2);
+
+        // the events held while paused are not passed to the paused stream
+        eventBatcher = new EventBatcher(sourceEventListener, 100, Long.MAX_VALUE,
+                new TwitterSourceMetrics(null, "inputStream"));
+        eventBatcher.add(new Object[]{3L});
+        eventBatcher.pause();
+        eventBatcher.shutdown();
+        Assert.assertEquals(sourceEventListener.getEvents().size(), 1);
+    }
+
+    @Test
+    public void testFailedBatchIsCountedAsShed() {
+        TwitterSourceMetrics metrics = new TwitterSourceMetrics(null, "inputStream");
+        boolean[] failing = {true};
+        CollectingSourceEventListener sourceEventListener = new CollectingSourceEventListener(STREAM_DEFINITION) {
+            @Override
+            public void onEvent(Object event, String[] transportProperties) {
+                if (failing[0]) {
+                    throw new IllegalStateException("rejected");
+                }
+                super.onEvent(event, transportProperties);
+            }
+        };
+        EventBatcher eventBatcher = new EventBatcher(sourceEventListener, 3, Long.MAX_VALUE, metrics);
+        eventBatcher.add(new Object[]{1L});
+        eventBatcher.add(new Object[]{2L});
+        try {
+            eventBatcher.add(new Object[]{3L});
+            Assert.fail("The failure to emit the batch is not passed on.");
+        } catch (IllegalStateException e) {
+            Assert.assertEquals(e.getMessage(), "rejected");
+        }
+        Assert.assertEquals(metrics.getShedCount(), 3);
+
+        // the batch is dropped rather than emitted again along with the next events
+        failing[0] = false;
+        eventBatcher.add(new Object[]{4L});
+        eventBatcher.flush();
+        Assert.assertEquals(sourceEventListener.getEvents().size(), 1);
+        Assert.assertEquals(((Event[]) sourceEventListener.getEvents().get(0)).length, 1);
+    }
+}
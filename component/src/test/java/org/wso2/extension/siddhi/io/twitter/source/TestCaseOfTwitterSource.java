@@ -924,4 +924,49 @@ public class TestCaseOfTwitterSource {
         Assert.assertTrue(eventArrived.get());
         siddhiAppRuntime.shutdown();
     }
+
+    @Test(dependsOnMethods = "testTwitterPolling9")
+    public void testTwitterPollingTypedAttributes() throws InterruptedException {
+        LOG.info("----------------------------------------------------------------------------------");
+        LOG.info("TwitterPolling TestCase 10 - Test for typed createdAt and hashtags attributes.");
+        LOG.info("----------------------------------------------------------------------------------");
+        AtomicBoolean typed = new AtomicBoolean(true);
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String inStreamDefinition = "" +
+                "@app:name('TwitterPollingTyped')" +
+                "@source(type='twitter' , consumer.key='" + consumerKey + "'," +
+                "consumer.secret='" + consumerSecret + "'," +
+                "access.token ='" + accessToken + "'," +
+                "access.token.secret='" + accessTokenSecret + "', " +
+                "mode= 'polling', query = '@NASA', @map(type='keyvalue', @attributes(createdAt = 'createdAt', " +
+                "id = 'tweetId', text= 'text',hashtags = 'hashtags')))" +
+                "define stream inputStream(createdAt long, id long, text String, hashtags object);";
+        String query = ("@info(name = 'query1') " +
+                "from inputStream " +
+                "select *  " +
+                "insert into outputStream;");
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(inStreamDefinition +
+                query);
+
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override
+            public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(timeStamp, inEvents, removeEvents);
+                for (Event event : inEvents) {
+                    eventCount.getAndIncrement();
+                    LOG.info(eventCount + " . " + event);
+                    if (!(event.getData(0) instanceof Long) || !(event.getData(3) instanceof String[])) {
+                        typed.set(false);
+                    }
+                    eventArrived.set(true);
+                }
+            }
+        });
+
+        siddhiAppRuntime.start();
+        SiddhiTestHelper.waitForEvents(waitTime, 1, eventCount, timeout);
+        Assert.assertTrue(eventArrived.get());
+        Assert.assertTrue(typed.get());
+        siddhiAppRuntime.shutdown();
+    }
 }
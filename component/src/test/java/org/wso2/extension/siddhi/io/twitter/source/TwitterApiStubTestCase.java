@@ -0,0 +1,696 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.extension.siddhi.io.twitter.source;
+
+import io.siddhi.annotation.Extension;
+import io.siddhi.core.config.SiddhiAppContext;
+import io.siddhi.core.exception.ConnectionUnavailableException;
+import io.siddhi.core.util.snapshot.state.StateFactory;
+import io.siddhi.core.util.transport.OptionHolder;
+import io.siddhi.query.api.definition.Attribute;
+import io.siddhi.query.api.definition.StreamDefinition;
+import io.siddhi.query.api.exception.SiddhiAppValidationException;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import org.wso2.extension.siddhi.io.twitter.stub.TwitterApiStub;
+import org.wso2.extension.siddhi.io.twitter.util.QueryBuilder;
+import org.wso2.extension.siddhi.io.twitter.util.StatusMapper;
+import org.wso2.extension.siddhi.io.twitter.util.TweetIdHashSet;
+import org.wso2.extension.siddhi.io.twitter.util.TwitterConstants;
+import twitter4j.HttpParameter;
+import twitter4j.Query;
+import twitter4j.TwitterFactory;
+import twitter4j.TwitterStream;
+import twitter4j.TwitterStreamFactory;
+import twitter4j.conf.Configuration;
+import twitter4j.conf.ConfigurationBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Runs the streaming and polling paths of the source against a local stand-in of the Twitter API.
+ */
+public class TwitterApiStubTestCase {
+    private static final int TWEET_COUNT = 250;
+    private static final long TIMEOUT = 10000;
+    private static final StreamDefinition STREAM_DEFINITION = StreamDefinition.id("inputStream")
+            .attribute("tweetId", Attribute.Type.LONG)
+            .attribute("text", Attribute.Type.STRING);
+    private TwitterApiStub twitterApiStub;
+
+    @BeforeMethod
+    public void startStub() throws IOException {
+        twitterApiStub = new TwitterApiStub(TwitterApiStub.createTweets(TWEET_COUNT));
+        twitterApiStub.start();
+    }
+
+    @AfterMethod
+    public void stopStub() {
+        twitterApiStub.stop();
+    }
+
+    @Test
+    public void testPausedSourceDoesNotHoldUpSharedStream() throws InterruptedException, IOException,
+            ConnectionUnavailableException {
+        Path spillDir = Files.createTempDirectory("twitter-spill");
+        CollectingSourceEventListener pausedListener = new CollectingSourceEventListener(STREAM_DEFINITION);
+        CollectingSourceEventListener sourceEventListener = new CollectingSourceEventListener(
+                StreamDefinition.id("otherStream").attribute("tweetId", Attribute.Type.LONG)
+                        .attribute("text", Attribute.Type.STRING));
+        Map<String, String> options = createOptions(TwitterConstants.MODE_STREAMING);
+        options.put(TwitterConstants.STREAMING_FILTER_TRACK, "siddhi");
+        options.put(TwitterConstants.STREAMING_SHARING, "true");
+        options.put(TwitterConstants.STREAMING_SPILL_DIR, spillDir.toString());
+        TwitterSource pausedSource = createSource(pausedListener, options);
+        pausedSource.pause();
+        TwitterSource twitterSource = createSource(sourceEventListener, options);
+        try {
+            sourceEventListener.waitForEvents(TWEET_COUNT, TIMEOUT);
+            assertReceivedOnce(sourceEventListener.getEvents());
+            Assert.assertEquals(pausedListener.getEvents().size(), 0);
+            Assert.assertEquals(twitterApiStub.getConnectionCount(), 1);
+
+            pausedSource.resume();
+            pausedListener.waitForEvents(TWEET_COUNT, TIMEOUT);
+            assertReceivedOnce(pausedListener.getEvents());
+        } finally {
+            twitterSource.destroy();
+            pausedSource.destroy();
+        }
+        try (Stream<Path> files = Files.list(spillDir)) {
+            files.forEach(file -> file.toFile().delete());
+        }
+        Files.delete(spillDir);
+    }
+
+    @Test(expectedExceptions = SiddhiAppValidationException.class)
+    public void testSharedStreamNeedsBuffering() throws ConnectionUnavailableException {
+        Map<String, String> options = createOptions(TwitterConstants.MODE_STREAMING);
+        options.put(TwitterConstants.STREAMING_FILTER_TRACK, "siddhi");
+        options.put(TwitterConstants.STREAMING_SHARING, "true");
+        options.put(TwitterConstants.STREAMING_SPILL_MAX_MB, "0");
+        createSource(new CollectingSourceEventListener(STREAM_DEFINITION), options);
+    }
+
+    @Test
+    public void testTwitter4jStream() throws InterruptedException {
+        CollectingSourceEventListener sourceEventListener = new CollectingSourceEventListener(STREAM_DEFINITION);
+        TwitterStream twitterStream = new TwitterStreamFactory(createConfiguration()).getInstance();
+        twitterStream.addListener(new TwitterStatusListener(sourceEventListener,
+                new StatusMapper(STREAM_DEFINITION, null), 0, 1, new OverloadPolicy(OverloadPolicy.Type.BLOCK, 1, 1),
+                null, null, null, null, null, createMetrics()));
+        twitterStream.filter(QueryBuilder.createFilterQuery("en", "siddhi", null, "none", null));
+        try {
+            sourceEventListener.waitForEvents(TWEET_COUNT, TIMEOUT);
+        } finally {
+            twitterStream.shutdown();
+        }
+        assertReceivedOnce(sourceEventListener.getEvents());
+        Assert.assertEquals(twitterApiStub.getLastStreamParameters().get("track"), "siddhi");
+    }
+
+    @Test
+    public void testSourceIsReconnectedAfterDisconnect() throws InterruptedException,
+            ConnectionUnavailableException {
+        twitterApiStub.setRepeat(true);
+        twitterApiStub.setTweetsPerSecond(1000);
+        CollectingSourceEventListener sourceEventListener = new CollectingSourceEventListener(STREAM_DEFINITION);
+        Map<String, String> options = createOptions(TwitterConstants.MODE_STREAMING);
+        options.put(TwitterConstants.STREAMING_FILTER_TRACK, "siddhi");
+        options.put(TwitterConstants.STREAMING_SPILL_MAX_MB, "0");
+        TwitterSource twitterSource = createSource(sourceEventListener, options);
+        try {
+            sourceEventListener.waitForEvents(100, TIMEOUT);
+            twitterSource.disconnect();
+            Thread.sleep(500);
+            // the connection is closed rather than left reading without a listener
+            long streamedCount = twitterApiStub.getStreamedCount();
+            int eventCount = sourceEventListener.getEvents().size();
+            Thread.sleep(500);
+            Assert.assertEquals(twitterApiStub.getStreamedCount(), streamedCount);
+            Assert.assertEquals(sourceEventListener.getEvents().size(), eventCount);
+
+            twitterSource.connect(null, null);
+            sourceEventListener.waitForEvents(eventCount + 100, TIMEOUT);
+            Assert.assertTrue(sourceEventListener.getEvents().size() >= eventCount + 100);
+            Assert.assertEquals(twitterApiStub.getConnectionCount(), 2);
+        } finally {
+            twitterSource.destroy();
+        }
+    }
+
+    @Test
+    public void testOversizedMessageIsDropped() throws InterruptedException, IOException {
+        List<String> tweets = TwitterApiStub.createTweets(10);
+        StringBuilder oversizedTweet = new StringBuilder("{\"text\":\"");
+        while (oversizedTweet.length() < 2 * 1024 * 1024) {
+            oversizedTweet.append("siddhi ");
+        }
+        tweets.add(5, oversizedTweet.append("\"}").toString());
+        twitterApiStub.stop();
+        twitterApiStub = new TwitterApiStub(tweets);
+        twitterApiStub.setReconnectOffset(6);
+        twitterApiStub.start();
+        CollectingSourceEventListener sourceEventListener = new CollectingSourceEventListener(STREAM_DEFINITION);
+        TwitterSourceMetrics metrics = createMetrics();
+        TwitterStreamReader twitterStreamReader = new TwitterStreamReader(createConfiguration(),
+                QueryBuilder.createFilterParameters("en", "siddhi", null, "none", null), sourceEventListener,
+                new StatusMapper(STREAM_DEFINITION, null), null, null, null, null, null, metrics);
+        Thread thread = new Thread(twitterStreamReader);
+        thread.start();
+        try {
+            sourceEventListener.waitForEvents(10, TIMEOUT);
+        } finally {
+            twitterStreamReader.shutdown();
+            thread.join(TIMEOUT);
+        }
+        // the stream is reconnected after the oversized message, and continues with the tweet after it
+        List<Object> events = sourceEventListener.getEvents();
+        Assert.assertEquals(events.size(), 10);
+        for (int i = 0; i < events.size(); i++) {
+            Assert.assertEquals(((Object[]) events.get(i))[0], TwitterApiStub.getTweetId(i));
+        }
+        Assert.assertEquals(twitterApiStub.getConnectionCount(), 2);
+        Assert.assertEquals(metrics.getErrorCount(), 1);
+    }
+
+    @Test
+    public void testFailedEmitDoesNotStopStream() throws InterruptedException {
+        CollectingSourceEventListener sourceEventListener = new CollectingSourceEventListener(STREAM_DEFINITION) {
+            private int count;
+
+            @Override
+            public void onEvent(Object event, String[] transportProperties) {
+                if (++count == 5) {
+                    throw new IllegalStateException("rejected");
+                }
+                super.onEvent(event, transportProperties);
+            }
+        };
+        TwitterSourceMetrics metrics = createMetrics();
+        TwitterStreamReader twitterStreamReader = new TwitterStreamReader(createConfiguration(),
+                QueryBuilder.createFilterParameters("en", "siddhi", null, "none", null), sourceEventListener,
+                new StatusMapper(STREAM_DEFINITION, null), null, null, null, null, null, metrics);
+        Thread thread = new Thread(twitterStreamReader);
+        thread.start();
+        try {
+            sourceEventListener.waitForEvents(TWEET_COUNT - 1, TIMEOUT);
+        } finally {
+            twitterStreamReader.shutdown();
+            thread.join(TIMEOUT);
+        }
+        // the failed tweet is dropped, and the stream is read on without reconnecting
+        Assert.assertEquals(sourceEventListener.getEvents().size(), TWEET_COUNT - 1);
+        Assert.assertEquals(metrics.getErrorCount(), 1);
+        Assert.assertEquals(twitterApiStub.getConnectionCount(), 1);
+    }
+
+    @Test
+    public void testLightweightStreamReconnect() throws InterruptedException {
+        twitterApiStub.disconnectAfter(100);
+        twitterApiStub.stallAfter(50, 200);
+        CollectingSourceEventListener sourceEventListener = new CollectingSourceEventListener(STREAM_DEFINITION);
+        TwitterSourceMetrics metrics = createMetrics();
+        TwitterStreamReader twitterStreamReader = new TwitterStreamReader(createConfiguration(),
+                QueryBuilder.createFilterParameters("en", "siddhi", null, "none", null), sourceEventListener,
+                new StatusMapper(STREAM_DEFINITION, null), null, null, null, null, null, metrics);
+        Thread thread = new Thread(twitterStreamReader);
+        thread.start();
+        try {
+            sourceEventListener.waitForEvents(300, TIMEOUT);
+        } finally {
+            twitterStreamReader.shutdown();
+            thread.join(TIMEOUT);
+        }
+        // each connection starts over from the first tweet, as the stub does not keep a cursor
+        Assert.assertTrue(sourceEventListener.getEvents().size() >= 300);
+        Assert.assertTrue(twitterApiStub.getConnectionCount() >= 3);
+        Assert.assertEquals(twitterApiStub.getLastStreamParameters().get("delimited"), "length");
+        Assert.assertTrue(metrics.getReconnectCount() >= 2);
+        Assert.assertEquals(metrics.getEmittedCount(), sourceEventListener.getEvents().size());
+    }
+
+    @Test
+    public void testTweetsAreSpilledWhilePaused() throws InterruptedException, IOException {
+        CollectingSourceEventListener sourceEventListener = new CollectingSourceEventListener(STREAM_DEFINITION);
+        TwitterSourceMetrics metrics = createMetrics();
+        Path spillDir = Files.createTempDirectory("twitter-spill-test");
+        ExecutorService executorService = Executors.newCachedThreadPool();
+        SpillBuffer spillBuffer = new SpillBuffer(spillDir, STREAM_DEFINITION.getId(), 1024 * 1024, executorService,
+                metrics);
+        TwitterStreamReader twitterStreamReader = new TwitterStreamReader(createConfiguration(),
+                QueryBuilder.createFilterParameters("en", "siddhi", null, "none", null), sourceEventListener,
+                new StatusMapper(STREAM_DEFINITION, null), null, null, null, null, spillBuffer, metrics);
+        twitterStreamReader.pause();
+        Thread thread = new Thread(twitterStreamReader);
+        thread.start();
+        try {
+            long deadline = System.currentTimeMillis() + TIMEOUT;
+            while (metrics.getSpilledCount() < TWEET_COUNT && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            // the stream is read to the end while paused, without emitting any tweet
+            Assert.assertEquals(metrics.getSpilledCount(), TWEET_COUNT);
+            Assert.assertTrue(sourceEventListener.getEvents().isEmpty());
+            twitterStreamReader.resume();
+            sourceEventListener.waitForEvents(TWEET_COUNT, TIMEOUT);
+        } finally {
+            twitterStreamReader.shutdown();
+            thread.join(TIMEOUT);
+            executorService.shutdownNow();
+        }
+        List<Object> events = sourceEventListener.getEvents();
+        Assert.assertEquals(events.size(), TWEET_COUNT);
+        for (int i = 0; i < events.size(); i++) {
+            Assert.assertEquals(((Object[]) events.get(i))[0], TwitterApiStub.getTweetId(i));
+        }
+        Assert.assertEquals(metrics.getReconnectCount(), 0);
+        try (Stream<Path> files = Files.list(spillDir)) {
+            Assert.assertEquals(files.count(), 0);
+        }
+        Files.delete(spillDir);
+    }
+
+    @Test
+    public void testShardedStreamsAreDeduplicated() throws InterruptedException {
+        CollectingSourceEventListener sourceEventListener = new CollectingSourceEventListener(STREAM_DEFINITION);
+        TwitterSourceMetrics metrics = createMetrics();
+        TweetIdHashSet deduplicator = new TweetIdHashSet(1000, 0);
+        List<HttpParameter[]> parameterSets = QueryBuilder.createFilterParameterSets("en", "siddhi,twitter", null,
+                "none", null, 2);
+        List<TwitterStreamReader> twitterStreamReaders = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < parameterSets.size(); i++) {
+            TwitterStreamReader twitterStreamReader = new TwitterStreamReader(createConfiguration(),
+                    parameterSets.get(i), sourceEventListener, new StatusMapper(STREAM_DEFINITION, null), null,
+                    null, deduplicator, null, null, metrics.createShardMetrics(String.valueOf(i + 1)));
+            Thread thread = new Thread(twitterStreamReader);
+            thread.start();
+            twitterStreamReaders.add(twitterStreamReader);
+            threads.add(thread);
+        }
+        try {
+            // the stub streams every tweet on both connections, regardless of the filter
+            long deadline = System.currentTimeMillis() + TIMEOUT;
+            while (metrics.getReceivedCount() < 2 * TWEET_COUNT && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+        } finally {
+            for (int i = 0; i < twitterStreamReaders.size(); i++) {
+                twitterStreamReaders.get(i).shutdown();
+                threads.get(i).join(TIMEOUT);
+            }
+        }
+        assertReceivedOnce(sourceEventListener.getEvents());
+        Assert.assertEquals(metrics.getDuplicateCount(), TWEET_COUNT);
+        Assert.assertEquals(metrics.getConnectionCount(), 2);
+    }
+
+    @Test
+    public void testStreamIsSharedBetweenSources() throws InterruptedException {
+        CollectingSourceEventListener trackListener = new CollectingSourceEventListener(STREAM_DEFINITION);
+        CollectingSourceEventListener otherTrackListener = new CollectingSourceEventListener(STREAM_DEFINITION);
+        CollectingSourceEventListener followListener = new CollectingSourceEventListener(STREAM_DEFINITION);
+        List<StreamSubscription> subscriptions = new ArrayList<>();
+        subscriptions.add(createSubscription("siddhi", null, trackListener));
+        subscriptions.add(createSubscription("apache", null, otherTrackListener));
+        subscriptions.add(createSubscription("", new long[]{1003}, followListener));
+        for (StreamSubscription subscription : subscriptions) {
+            TwitterStreamMultiplexer.subscribe("stub", createConfiguration(), "none", subscription);
+        }
+        try {
+            trackListener.waitForEvents(TWEET_COUNT, TIMEOUT);
+            followListener.waitForEvents(TWEET_COUNT / 10, TIMEOUT);
+        } finally {
+            for (StreamSubscription subscription : subscriptions) {
+                TwitterStreamMultiplexer.unsubscribe(subscription);
+            }
+        }
+        assertReceivedOnce(trackListener.getEvents());
+        Assert.assertEquals(followListener.getEvents().size(), TWEET_COUNT / 10);
+        Assert.assertEquals(otherTrackListener.getEvents().size(), 0);
+        Assert.assertEquals(twitterApiStub.getConnectionCount(), 1);
+        Assert.assertEquals(twitterApiStub.getLastStreamParameters().get("track"), "siddhi,apache");
+        Assert.assertEquals(twitterApiStub.getLastStreamParameters().get("follow"), "1003");
+    }
+
+    @Test
+    public void testPagedSearch() {
+        CollectingSourceEventListener sourceEventListener = new CollectingSourceEventListener(STREAM_DEFINITION);
+        Query query = QueryBuilder.createQuery("siddhi", 100, "", -1L, -1, "", "", "mixed", "", 0, 0, 0, null);
+        TwitterSourceMetrics metrics = createMetrics();
+        TwitterCredentialPool credentialPool = new TwitterCredentialPool(metrics);
+        credentialPool.add("user", new TwitterFactory(createConfiguration()).getInstance());
+        TwitterPoller twitterPoller = new TwitterPoller(credentialPool, query, 0, sourceEventListener,
+                new StatusMapper(STREAM_DEFINITION, null), null, null, null, metrics);
+        twitterPoller.run();
+        assertReceivedOnce(sourceEventListener.getEvents());
+        Assert.assertEquals(twitterApiStub.getSearchCount(), 3);
+        Assert.assertEquals(metrics.getReceivedCount(), TWEET_COUNT);
+        Assert.assertEquals(metrics.getPollCount(), 1);
+        Assert.assertTrue(metrics.getRateLimitRemaining().containsKey("/search/tweets"));
+    }
+
+    @Test
+    public void testRawJsonPollIsCarriedOnFromOtherThread() throws InterruptedException {
+        TwitterSourceMetrics metrics = createMetrics();
+        TwitterCredentialPool credentialPool = new TwitterCredentialPool(metrics);
+        credentialPool.add("user", new TwitterFactory(createConfiguration()).getInstance());
+        TwitterPoller[] twitterPoller = new TwitterPoller[1];
+        CollectingSourceEventListener sourceEventListener = new CollectingSourceEventListener(STREAM_DEFINITION) {
+            @Override
+            public void onEvent(Object event, String[] transportProperties) {
+                super.onEvent(event, transportProperties);
+                if (getEvents().size() == 50) {
+                    twitterPoller[0].pause();
+                }
+            }
+        };
+        twitterPoller[0] = new TwitterPoller(credentialPool,
+                QueryBuilder.createQuery("siddhi", 100, "", -1L, -1, "", "", "mixed", "", 0, 0, 0, null), 0,
+                sourceEventListener, StatusMapper.createRawJsonMapper(), null, null, null, metrics);
+        twitterPoller[0].run();
+        Assert.assertEquals(sourceEventListener.getEvents().size(), 50);
+
+        // the rest of the page is emitted by a thread which has not searched it
+        twitterPoller[0].resume();
+        Thread thread = new Thread(twitterPoller[0]);
+        thread.start();
+        thread.join(TIMEOUT);
+        List<Object> events = sourceEventListener.getEvents();
+        Assert.assertEquals(events.size(), TWEET_COUNT);
+        Assert.assertEquals(new HashSet<>(events).size(), TWEET_COUNT);
+        for (Object event : events) {
+            Assert.assertTrue(event instanceof String && ((String) event).startsWith("{"), String.valueOf(event));
+        }
+        Assert.assertEquals(metrics.getErrorCount(), 0);
+    }
+
+    @Test
+    public void testTweetsAreTaggedWithTheirQuery() throws InterruptedException, ConnectionUnavailableException {
+        StreamDefinition streamDefinition = StreamDefinition.id("queryStream")
+                .attribute("tweetId", Attribute.Type.LONG)
+                .attribute("polling_query", Attribute.Type.STRING);
+        CollectingSourceEventListener sourceEventListener = new CollectingSourceEventListener(streamDefinition);
+        Map<String, String> options = createOptions(TwitterConstants.MODE_POLLING);
+        options.put(TwitterConstants.POLLING_SEARCH_QUERY, "siddhi; apache");
+        options.put(TwitterConstants.POLLING_SEARCH_COUNT, "100");
+        TwitterSource twitterSource = createSource(sourceEventListener, options);
+        try {
+            // the stub finds every tweet for either query
+            sourceEventListener.waitForEvents(2 * TWEET_COUNT, TIMEOUT);
+        } finally {
+            twitterSource.destroy();
+        }
+        Map<Object, Integer> queryCounts = new HashMap<>();
+        for (Object event : sourceEventListener.getEvents()) {
+            queryCounts.merge(((Object[]) event)[1], 1, Integer::sum);
+        }
+        Assert.assertEquals(queryCounts.get("siddhi"), Integer.valueOf(TWEET_COUNT));
+        Assert.assertEquals(queryCounts.get("apache"), Integer.valueOf(TWEET_COUNT));
+        Assert.assertEquals(queryCounts.size(), 2);
+    }
+
+    @Test
+    public void testPollingIntervalMinIsDerivedFromMax() throws InterruptedException, ConnectionUnavailableException {
+        CollectingSourceEventListener sourceEventListener = new CollectingSourceEventListener(STREAM_DEFINITION);
+        Map<String, String> options = createOptions(TwitterConstants.MODE_POLLING);
+        options.put(TwitterConstants.POLLING_SEARCH_QUERY, "siddhi");
+        options.put(TwitterConstants.POLLING_SEARCH_COUNT, "100");
+        // shorter than the default polling.interval, which the minimum would otherwise default to
+        options.put(TwitterConstants.POLLING_INTERVAL_MAX, "600");
+        TwitterSource twitterSource = createSource(sourceEventListener, options);
+        try {
+            sourceEventListener.waitForEvents(TWEET_COUNT, TIMEOUT);
+        } finally {
+            twitterSource.destroy();
+        }
+    }
+
+    @Test(expectedExceptions = SiddhiAppValidationException.class)
+    public void testConflictingPollingIntervalsAreRejected() throws ConnectionUnavailableException {
+        Map<String, String> options = createOptions(TwitterConstants.MODE_POLLING);
+        options.put(TwitterConstants.POLLING_SEARCH_QUERY, "siddhi");
+        options.put(TwitterConstants.POLLING_INTERVAL_MIN, "600");
+        options.put(TwitterConstants.POLLING_INTERVAL_MAX, "300");
+        createSource(new CollectingSourceEventListener(STREAM_DEFINITION), options);
+    }
+
+    @Test
+    public void testRateLimitedCredentialsAreSkipped() {
+        CollectingSourceEventListener sourceEventListener = new CollectingSourceEventListener(STREAM_DEFINITION);
+        Query query = QueryBuilder.createQuery("siddhi", 100, "", -1L, -1, "", "", "mixed", "", 0, 0, 0, null);
+        TwitterSourceMetrics metrics = createMetrics();
+        TwitterCredentialPool credentialPool = new TwitterCredentialPool(metrics);
+        credentialPool.add("user1", new TwitterFactory(createConfiguration()).getInstance());
+        credentialPool.add("user2", new TwitterFactory(createConfiguration()).getInstance());
+        TwitterPoller twitterPoller = new TwitterPoller(credentialPool, query, 0, sourceEventListener,
+                new StatusMapper(STREAM_DEFINITION, null), null, null, null, metrics);
+        twitterApiStub.rejectSearches(1);
+        twitterPoller.run();
+        assertReceivedOnce(sourceEventListener.getEvents());
+        Assert.assertEquals(twitterApiStub.getSearchCount(), 4);
+        Assert.assertEquals(metrics.getRateLimitRemaining().get("/search/tweets@user1"), Integer.valueOf(0));
+        Assert.assertTrue(metrics.getRateLimitRemaining().get("/search/tweets@user2") > 0);
+        Assert.assertEquals(credentialPool.getMillisUntilAvailable(), 0);
+
+        // the second credentials are used up as well, hence the next poll is skipped
+        twitterApiStub.rejectSearches(1);
+        twitterPoller.run();
+        Assert.assertEquals(twitterApiStub.getSearchCount(), 5);
+        Assert.assertNull(credentialPool.acquire());
+        Assert.assertTrue(credentialPool.getMillisUntilAvailable() > 0);
+    }
+
+    @Test
+    public void testPollingIntervalIsAdapted() {
+        CollectingSourceEventListener sourceEventListener = new CollectingSourceEventListener(STREAM_DEFINITION);
+        Query query = QueryBuilder.createQuery("siddhi", 100, "", -1L, -1, "", "", "mixed", "", 0, 0, 0, null);
+        TwitterSourceMetrics metrics = createMetrics();
+        TwitterCredentialPool credentialPool = new TwitterCredentialPool(metrics);
+        credentialPool.add("user", new TwitterFactory(createConfiguration()).getInstance());
+        TwitterPoller twitterPoller = new TwitterPoller(credentialPool, query, 0, sourceEventListener,
+                new StatusMapper(STREAM_DEFINITION, null), null, null, null, metrics);
+        ScheduledExecutorService scheduledExecutorService = Executors.newSingleThreadScheduledExecutor();
+        AdaptivePollingScheduler pollingScheduler = new AdaptivePollingScheduler(twitterPoller, credentialPool,
+                scheduledExecutorService, metrics, 100, 1, 60000, 1000, 3600000);
+        try {
+            // all tweets are new and take three pages, hence the interval is halved
+            pollingScheduler.run();
+            Assert.assertEquals(sourceEventListener.getEvents().size(), TWEET_COUNT);
+            Assert.assertEquals(pollingScheduler.getIntervalMillis(), 30000);
+            Assert.assertEquals(metrics.getPollingIntervalMillis(), 30000);
+
+            // no tweets are new, hence the interval is doubled
+            pollingScheduler.run();
+            Assert.assertEquals(sourceEventListener.getEvents().size(), TWEET_COUNT);
+            Assert.assertEquals(pollingScheduler.getIntervalMillis(), 60000);
+        } finally {
+            pollingScheduler.stop();
+            scheduledExecutorService.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testSearchesArePacedByTokenBucket() {
+        CollectingSourceEventListener sourceEventListener = new CollectingSourceEventListener(STREAM_DEFINITION);
+        Query query = QueryBuilder.createQuery("siddhi", 1, "", -1L, -1, "", "", "mixed", "", 0, 0, 0, null);
+        TwitterSourceMetrics metrics = createMetrics();
+        TwitterCredentialPool credentialPool = new TwitterCredentialPool(metrics);
+        credentialPool.add("user", new TwitterFactory(createConfiguration()).getInstance());
+        TwitterPoller twitterPoller = new TwitterPoller(credentialPool, query, 0, sourceEventListener,
+                new StatusMapper(STREAM_DEFINITION, null), null, null, null, metrics);
+        twitterPoller.run();
+        // a burst of ten pages, after which the remaining requests are spread over the window
+        Assert.assertEquals(twitterApiStub.getSearchCount(), 10);
+        Assert.assertEquals(sourceEventListener.getEvents().size(), 10);
+        Assert.assertTrue(twitterPoller.isRateLimited());
+        Assert.assertTrue(twitterPoller.isPollInProgress());
+        long millisUntilAvailable = credentialPool.getMillisUntilAvailable();
+        Assert.assertTrue(millisUntilAvailable > 1000 && millisUntilAvailable < 6000,
+                String.valueOf(millisUntilAvailable));
+
+        // pausing leaves the rest of the page to be emitted once resumed
+        twitterPoller.pause();
+        twitterPoller.run();
+        Assert.assertEquals(twitterApiStub.getSearchCount(), 10);
+        Assert.assertFalse(twitterPoller.isRateLimited());
+    }
+
+    @Test
+    public void testPollIsCarriedOnFromCursor() {
+        CollectingSourceEventListener sourceEventListener = new CollectingSourceEventListener(STREAM_DEFINITION);
+        StatusMapper statusMapper = new StatusMapper(STREAM_DEFINITION, null);
+        TwitterSourceMetrics metrics = createMetrics();
+        TwitterCredentialPool credentialPool = new TwitterCredentialPool(metrics);
+        credentialPool.add("user", new TwitterFactory(createConfiguration()).getInstance());
+        TwitterPoller twitterPoller = new TwitterPoller(credentialPool,
+                QueryBuilder.createQuery("siddhi", 100, "", -1L, -1, "", "", "mixed", "", 0, 0, 0, null), 1,
+                sourceEventListener, statusMapper, null, null, null, metrics);
+        twitterPoller.run();
+        Assert.assertEquals(sourceEventListener.getEvents().size(), 100);
+        Assert.assertTrue(twitterPoller.isPollInProgress());
+
+        // a poller restored from the cursor searches the pages left by the first one
+        TwitterPoller restoredPoller = new TwitterPoller(credentialPool,
+                QueryBuilder.createQuery("siddhi", 100, "", -1L, -1, "", "", "mixed", "", 0, 0, 0, null), 1,
+                sourceEventListener, statusMapper, null, null, null, metrics);
+        long[] cursor = twitterPoller.getCursor();
+        restoredPoller.restoreCursor(cursor);
+        while (restoredPoller.isPollInProgress()) {
+            restoredPoller.run();
+        }
+        assertReceivedOnce(sourceEventListener.getEvents());
+        Assert.assertEquals(restoredPoller.getCursor()[0], cursor[2]);
+        Assert.assertEquals(restoredPoller.getCursor()[1], -1);
+    }
+
+    @Test
+    public void testStreamGapIsBackfilled() throws InterruptedException, ConnectionUnavailableException {
+        twitterApiStub.disconnectAfter(10);
+        twitterApiStub.setReconnectOffset(200);
+        CollectingSourceEventListener sourceEventListener = new CollectingSourceEventListener(STREAM_DEFINITION);
+        Map<String, String> options = createOptions(TwitterConstants.MODE_STREAMING);
+        options.put(TwitterConstants.STREAMING_FILTER_TRACK, "siddhi");
+        options.put(TwitterConstants.STREAMING_BACKFILL, "true");
+        options.put(TwitterConstants.POLLING_BASE_URL, twitterApiStub.getRestBaseUrl());
+        options.put(TwitterConstants.DEDUP_CACHE_SIZE, "1000");
+        TwitterSource twitterSource = createSource(sourceEventListener, options);
+        try {
+            // the stream is reconnected at tweet 200, the last one received before being tweet 9
+            sourceEventListener.waitForEvents(210, TIMEOUT);
+        } finally {
+            twitterSource.destroy();
+        }
+        Set<Object> ids = new HashSet<>();
+        for (Object event : sourceEventListener.getEvents()) {
+            ids.add(((Object[]) event)[0]);
+        }
+        Assert.assertEquals(ids.size(), 210);
+        for (int i = 0; i < 210; i++) {
+            Assert.assertTrue(ids.contains(TwitterApiStub.getTweetId(i)), String.valueOf(i));
+        }
+        Assert.assertTrue(twitterApiStub.getSearchCount() >= 2);
+    }
+
+    @Test
+    public void testRawJsonStreamGapIsBackfilled() throws InterruptedException {
+        CollectingSourceEventListener sourceEventListener = new CollectingSourceEventListener(STREAM_DEFINITION);
+        TwitterSourceMetrics metrics = createMetrics();
+        TwitterCredentialPool credentialPool = new TwitterCredentialPool(metrics);
+        credentialPool.add("user", new TwitterFactory(createConfiguration()).getInstance());
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        StreamGapBackfiller backfiller = new StreamGapBackfiller(credentialPool,
+                QueryBuilder.createBackfillQueries("siddhi"), Collections.emptySet(), 1000, executorService,
+                sourceEventListener, StatusMapper.createRawJsonMapper(), null, null, null, metrics);
+        backfiller.connected();
+        backfiller.received(TwitterApiStub.getTweetId(10));
+        backfiller.connected();
+        backfiller.received(TwitterApiStub.getTweetId(200));
+        executorService.shutdown();
+        Assert.assertTrue(executorService.awaitTermination(TIMEOUT, TimeUnit.MILLISECONDS));
+
+        // the gap spans two pages, of which the first one is read before the second is searched
+        List<Object> events = sourceEventListener.getEvents();
+        Assert.assertEquals(events.size(), 189);
+        Assert.assertTrue(((String) events.get(0)).contains(String.valueOf(TwitterApiStub.getTweetId(11))));
+        Assert.assertEquals(metrics.getErrorCount(), 0);
+    }
+
+    private static StreamSubscription createSubscription(String trackParam, long[] follow,
+                                                         CollectingSourceEventListener sourceEventListener) {
+        return new StreamSubscription(trackParam, follow, null, "", new TwitterStatusListener(sourceEventListener,
+                new StatusMapper(STREAM_DEFINITION, null), 0, 1, new OverloadPolicy(OverloadPolicy.Type.BLOCK, 1, 1),
+                null, null, null, null, null, createMetrics()));
+    }
+
+    private Map<String, String> createOptions(String mode) {
+        Map<String, String> options = new HashMap<>();
+        options.put(TwitterConstants.MODE, mode);
+        options.put(TwitterConstants.CONSUMER_KEY, "consumerKey");
+        options.put(TwitterConstants.CONSUMER_SECRET, "consumerSecret");
+        options.put(TwitterConstants.ACCESS_TOKEN, "accessToken");
+        options.put(TwitterConstants.ACCESS_SECRET, "accessTokenSecret");
+        if (mode.equals(TwitterConstants.MODE_STREAMING)) {
+            options.put(TwitterConstants.STREAMING_BASE_URL, twitterApiStub.getStreamBaseUrl());
+        } else {
+            options.put(TwitterConstants.POLLING_BASE_URL, twitterApiStub.getRestBaseUrl());
+        }
+        return options;
+    }
+
+    /**
+     * Initializes and connects a source as done by Siddhi for a stream without a mapping annotation.
+     */
+    private static TwitterSource createSource(CollectingSourceEventListener sourceEventListener,
+                                              Map<String, String> options) throws ConnectionUnavailableException {
+        SiddhiAppContext siddhiAppContext = new SiddhiAppContext();
+        siddhiAppContext.setName("TwitterApiStubTestCase");
+        siddhiAppContext.setScheduledExecutorService(Executors.newSingleThreadScheduledExecutor());
+        TwitterSource twitterSource = new TwitterSource();
+        StateFactory<TwitterSource.TwitterSourceExtensionState> stateFactory = twitterSource.init(
+                sourceEventListener, new OptionHolder(sourceEventListener.getStreamDefinition(), options,
+                        Collections.emptyMap(), TwitterSource.class.getAnnotation(Extension.class)),
+                new String[0], null, siddhiAppContext);
+        twitterSource.connect(null, stateFactory.createNewState());
+        return twitterSource;
+    }
+
+    private static TwitterSourceMetrics createMetrics() {
+        return new TwitterSourceMetrics(null, STREAM_DEFINITION.getId());
+    }
+
+    private Configuration createConfiguration() {
+        return new ConfigurationBuilder()
+                .setOAuthConsumerKey("consumerKey")
+                .setOAuthConsumerSecret("consumerSecret")
+                .setOAuthAccessToken("accessToken")
+                .setOAuthAccessTokenSecret("accessTokenSecret")
+                .setStreamBaseURL(twitterApiStub.getStreamBaseUrl())
+                .setRestBaseURL(twitterApiStub.getRestBaseUrl())
+                .setJSONStoreEnabled(true)
+                .build();
+    }
+
+    private static void assertReceivedOnce(List<Object> events) {
+        Set<Object> ids = new HashSet<>();
+        for (Object event : events) {
+            ids.add(((Object[]) event)[0]);
+        }
+        Assert.assertEquals(events.size(), TWEET_COUNT, Arrays.toString(events.toArray()));
+        Assert.assertEquals(ids.size(), TWEET_COUNT);
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.extension.siddhi.io.twitter.source;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class TwitterEventDispatcherTestCase {
+    private static final int BUFFER_SIZE = 10;
+    private static final int TWEET_COUNT = 30;
+    private static final long TIMEOUT = 10000;
+
+    @Test
+    public void testTweetsWithSameKeyAreEmittedInOrder() throws InterruptedException {
+        int keyCount = 10;
+        int tweetsPerKey = 200;
+        Map<Long, List<Integer>> emitted = new HashMap<>();
+        CountDownLatch done = new CountDownLatch(keyCount * tweetsPerKey);
+        TwitterEventDispatcher<long[]> dispatcher = new TwitterEventDispatcher<>("test", 4, BUFFER_SIZE,
+                new OverloadPolicy(OverloadPolicy.Type.BLOCK, 1, 0.5), tweet -> {
+            synchronized (emitted) {
+                emitted.computeIfAbsent(tweet[0], key -> new ArrayList<>()).add((int) tweet[1]);
+            }
+            done.countDown();
+        }, new TwitterSourceMetrics(null, "inputStream"));
+        dispatcher.start();
+        try {
+            for (int i = 0; i < tweetsPerKey; i++) {
+                for (long key = 0; key < keyCount; key++) {
+                    dispatcher.dispatch(key, new long[]{key, i});
+                }
+            }
+            Assert.assertTrue(done.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        } finally {
+            dispatcher.shutdown();
+        }
+        Assert.assertEquals(emitted.size(), keyCount);
+        for (List<Integer> tweets : emitted.values()) {
+            Assert.assertEquals(tweets, range(0, tweetsPerKey));
+        }
+    }
+
+    @Test
+    public void testConcurrentDispatchCountsOverloadOnce() throws InterruptedException {
+        TwitterSourceMetrics metrics = new TwitterSourceMetrics(null, "inputStream");
+        CountDownLatch stalled = new CountDownLatch(1);
+        CountDownLatch released = new CountDownLatch(1);
+        TwitterEventDispatcher<Integer> dispatcher = new TwitterEventDispatcher<>("test", 1, BUFFER_SIZE,
+                new OverloadPolicy(OverloadPolicy.Type.DROP_NEWEST, 0.5, 0.2), tweet -> {
+            stalled.countDown();
+            try {
+                released.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, metrics);
+        dispatcher.start();
+        try {
+            dispatcher.dispatch(1, -1);
+            Assert.assertTrue(stalled.await(TIMEOUT, TimeUnit.MILLISECONDS));
+            Thread[] threads = new Thread[4];
+            for (int i = 0; i < threads.length; i++) {
+                threads[i] = new Thread(() -> {
+                    for (int j = 0; j < TWEET_COUNT; j++) {
+                        dispatcher.dispatch(1, j);
+                    }
+                });
+                threads[i].start();
+            }
+            for (Thread thread : threads) {
+                thread.join(TIMEOUT);
+            }
+            // the stalled worker holds a tweet, and the buffer holds tweets until it reaches the high watermark
+            Assert.assertEquals(metrics.getOverloadCount(), 1);
+            Assert.assertEquals(metrics.getShedCount() + dispatcher.getBufferedCount(), threads.length * TWEET_COUNT);
+        } finally {
+            released.countDown();
+            dispatcher.shutdown();
+        }
+    }
+
+    @Test
+    public void testDropNewestShedsDispatchedTweets() throws InterruptedException {
+        TwitterSourceMetrics metrics = new TwitterSourceMetrics(null, "inputStream");
+        List<Integer> emitted = dispatchToStalledWorker(
+                new OverloadPolicy(OverloadPolicy.Type.DROP_NEWEST, 1, 0.5), metrics);
+        // the stalled worker holds the first tweet, and the buffer holds the next ones until it is full
+        Assert.assertEquals(emitted, range(0, BUFFER_SIZE + 1));
+        Assert.assertEquals(metrics.getShedCount(), TWEET_COUNT - BUFFER_SIZE - 1);
+        Assert.assertEquals(metrics.getOverloadCount(), 1);
+    }
+
+    @Test
+    public void testDropOldestShedsBufferedTweets() throws InterruptedException {
+        TwitterSourceMetrics metrics = new TwitterSourceMetrics(null, "inputStream");
+        List<Integer> emitted = dispatchToStalledWorker(
+                new OverloadPolicy(OverloadPolicy.Type.DROP_OLDEST, 1, 0.5), metrics);
+        List<Integer> expected = range(TWEET_COUNT - BUFFER_SIZE, TWEET_COUNT);
+        expected.add(0, 0);
+        Assert.assertEquals(emitted, expected);
+        Assert.assertEquals(metrics.getShedCount(), TWEET_COUNT - BUFFER_SIZE - 1);
+    }
+
+    @Test
+    public void testSampleKeepsTweetsUntilHighWatermark() throws InterruptedException {
+        TwitterSourceMetrics metrics = new TwitterSourceMetrics(null, "inputStream");
+        List<Integer> emitted = dispatchToStalledWorker(
+                new OverloadPolicy(OverloadPolicy.Type.SAMPLE, 0.9, 0.5), metrics);
+        // tweets are only sampled once the buffer is overloaded at 9 tweets, and none is kept once it is full
+        Assert.assertEquals(emitted.subList(0, BUFFER_SIZE), range(0, BUFFER_SIZE));
+        Assert.assertTrue(emitted.size() <= BUFFER_SIZE + 1);
+        Assert.assertEquals(metrics.getShedCount(), TWEET_COUNT - emitted.size());
+    }
+
+    /**
+     * Dispatches tweets to a single worker which does not emit any tweet after the first one until all of them
+     * are dispatched, and collects the emitted tweets once the buffer is drained.
+     */
+    private static List<Integer> dispatchToStalledWorker(OverloadPolicy overloadPolicy,
+                                                         TwitterSourceMetrics metrics) throws InterruptedException {
+        List<Integer> emitted = new ArrayList<>();
+        CountDownLatch stalled = new CountDownLatch(1);
+        CountDownLatch released = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        TwitterEventDispatcher<Integer> dispatcher = new TwitterEventDispatcher<>("test", 1, BUFFER_SIZE,
+                overloadPolicy, tweet -> {
+            stalled.countDown();
+            try {
+                released.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (tweet < 0) {
+                done.countDown();
+                return;
+            }
+            synchronized (emitted) {
+                emitted.add(tweet);
+            }
+        }, metrics);
+        dispatcher.start();
+        try {
+            dispatcher.dispatch(1, 0);
+            Assert.assertTrue(stalled.await(TIMEOUT, TimeUnit.MILLISECONDS));
+            for (int i = 1; i < TWEET_COUNT; i++) {
+                dispatcher.dispatch(1, i);
+            }
+            released.countDown();
+            long deadline = System.currentTimeMillis() + TIMEOUT;
+            while (dispatcher.getBufferedCount() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            // the drained buffer is no longer overloaded, hence the marker is emitted after all the other tweets
+            dispatcher.dispatch(1, -1);
+            Assert.assertTrue(done.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        } finally {
+            dispatcher.shutdown();
+        }
+        synchronized (emitted) {
+            return new ArrayList<>(emitted);
+        }
+    }
+
+    private static List<Integer> range(int from, int to) {
+        List<Integer> range = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            range.add(i);
+        }
+        return range;
+    }
+}
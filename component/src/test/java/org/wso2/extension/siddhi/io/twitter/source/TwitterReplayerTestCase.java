@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.extension.siddhi.io.twitter.source;
+
+import io.siddhi.query.api.definition.Attribute;
+import io.siddhi.query.api.definition.StreamDefinition;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.wso2.extension.siddhi.io.twitter.util.StatusMapper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+public class TwitterReplayerTestCase {
+    private static final String RECORDING = "" +
+            "{\"id\":1050118621198921728,\"text\":\"first\",\"user\":{\"id\":1,\"screen_name\":\"a\"}}\n" +
+            "{\"delete\":{\"status\":{\"id\":1234,\"user_id\":3}}}\n" +
+            "{\"id\":1050118621198921729,\"text\":\"second\",\"user\":{\"id\":2,\"screen_name\":\"b\"}}\r\n" +
+            "{\"id\":1050118621198921730,\"text\":\"third\",\"user\":{\"id\":3,\"screen_name\":\"c\"}}";
+    private static final StreamDefinition STREAM_DEFINITION = StreamDefinition.id("inputStream")
+            .attribute("tweetId", Attribute.Type.LONG)
+            .attribute("text", Attribute.Type.STRING);
+
+    @Test
+    public void testReplayMappedFile() throws IOException {
+        Path file = Files.createTempFile("tweets", ".jsonl");
+        Files.write(file, RECORDING.getBytes(StandardCharsets.UTF_8));
+        assertReplayed(file);
+    }
+
+    @Test
+    public void testReplayCompressedFile() throws IOException {
+        Path file = Files.createTempFile("tweets", ".jsonl.gz");
+        try (OutputStream outputStream = new GZIPOutputStream(Files.newOutputStream(file))) {
+            outputStream.write(RECORDING.getBytes(StandardCharsets.UTF_8));
+        }
+        assertReplayed(file);
+    }
+
+    @Test
+    public void testReplayFromOffset() throws IOException {
+        Path file = Files.createTempFile("tweets", ".jsonl");
+        Files.write(file, RECORDING.getBytes(StandardCharsets.UTF_8));
+        long offset = RECORDING.indexOf("{\"id\":1050118621198921729");
+        CollectingSourceEventListener sourceEventListener = new CollectingSourceEventListener(STREAM_DEFINITION);
+        new TwitterReplayer(file, 0, offset, sourceEventListener, new StatusMapper(STREAM_DEFINITION, null),
+                null, null, null, new TwitterSourceMetrics(null, STREAM_DEFINITION.getId())).run();
+        List<Object> events = sourceEventListener.getEvents();
+        Assert.assertEquals(events.size(), 2);
+        Assert.assertEquals(((Object[]) events.get(0))[1], "second");
+        Files.delete(file);
+    }
+
+    @Test
+    public void testStoppedReplayDoesNotEmitWaitingTweet() throws IOException, InterruptedException {
+        // the second tweet is due ten seconds after the first one
+        long secondId = 1050118621198921728L + (10000L << 22);
+        String recording = "{\"id\":1050118621198921728,\"text\":\"first\"}\n{\"id\":" + secondId +
+                ",\"text\":\"second\"}\n";
+        Path file = Files.createTempFile("tweets", ".jsonl");
+        Files.write(file, recording.getBytes(StandardCharsets.UTF_8));
+        CollectingSourceEventListener sourceEventListener = new CollectingSourceEventListener(STREAM_DEFINITION);
+        TwitterReplayer twitterReplayer = new TwitterReplayer(file, 1, 0, sourceEventListener,
+                new StatusMapper(STREAM_DEFINITION, null), null, null, null,
+                new TwitterSourceMetrics(null, STREAM_DEFINITION.getId()));
+        Thread thread = new Thread(twitterReplayer);
+        thread.start();
+        sourceEventListener.waitForEvents(1, 10000);
+        twitterReplayer.shutdown();
+        thread.interrupt();
+        thread.join(10000);
+        Assert.assertEquals(sourceEventListener.getEvents().size(), 1);
+        // the tweet which was waited for is replayed again by a later replay
+        Assert.assertEquals(twitterReplayer.getOffset(), recording.indexOf("{\"id\":" + secondId));
+
+        sourceEventListener = new CollectingSourceEventListener(STREAM_DEFINITION);
+        twitterReplayer = new TwitterReplayer(file, 1, 0, sourceEventListener,
+                new StatusMapper(STREAM_DEFINITION, null), null, null, null,
+                new TwitterSourceMetrics(null, STREAM_DEFINITION.getId()));
+        twitterReplayer.pause();
+        thread = new Thread(twitterReplayer);
+        thread.start();
+        Thread.sleep(100);
+        twitterReplayer.shutdown();
+        thread.join(10000);
+        Assert.assertEquals(sourceEventListener.getEvents().size(), 0);
+        Assert.assertEquals(twitterReplayer.getOffset(), 0);
+        Files.delete(file);
+    }
+
+    private void assertReplayed(Path file) throws IOException {
+        CollectingSourceEventListener sourceEventListener = new CollectingSourceEventListener(STREAM_DEFINITION);
+        TwitterSourceMetrics metrics = new TwitterSourceMetrics(null, STREAM_DEFINITION.getId());
+        TwitterReplayer twitterReplayer = new TwitterReplayer(file, 0, 0, sourceEventListener,
+                new StatusMapper(STREAM_DEFINITION, null), null, null, null, metrics);
+        twitterReplayer.run();
+        List<Object> events = sourceEventListener.getEvents();
+        Assert.assertEquals(events.size(), 3);
+        Assert.assertEquals((Object[]) events.get(0), new Object[]{1050118621198921728L, "first"});
+        Assert.assertEquals((Object[]) events.get(1), new Object[]{1050118621198921729L, "second"});
+        Assert.assertEquals((Object[]) events.get(2), new Object[]{1050118621198921730L, "third"});
+        Assert.assertEquals(twitterReplayer.getOffset(), RECORDING.length());
+        Assert.assertEquals(metrics.getReceivedCount(), 3);
+        Assert.assertEquals(metrics.getEmittedCount(), 3);
+        Files.delete(file);
+    }
+}
@@ -0,0 +1,416 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.extension.siddhi.io.twitter.stub;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.log4j.Logger;
+import org.wso2.extension.siddhi.io.twitter.util.TweetAttribute;
+import org.wso2.extension.siddhi.io.twitter.util.TweetJsonDecoder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A local stand-in for the Twitter streaming and search APIs, used to test the source end to end without
+ * credentials or network access. Streams emit the given tweets at a configurable rate, and stalls, disconnects and
+ * rate limit responses can be injected. Searches are served in pages from the same tweets, newest first.
+ */
+public class TwitterApiStub {
+    private static final Logger log = Logger.getLogger(TwitterApiStub.class);
+    private static final String API_VERSION_PATH = "/1.1/";
+    private static final byte[] NEW_LINE = "\r\n".getBytes(StandardCharsets.UTF_8);
+    private static final int SEARCH_RATE_LIMIT = 180;
+    private static final int DEFAULT_SEARCH_COUNT = 15;
+    private static final long KEEP_ALIVE_INTERVAL_MILLIS = 1000;
+    private static final long FIRST_TWEET_ID = 1050118621198921728L;
+    private final List<byte[]> tweets;
+    private final List<Long> tweetIds;
+    private final AtomicInteger connectionCount = new AtomicInteger();
+    private final AtomicInteger searchCount = new AtomicInteger();
+    private final AtomicLong streamedCount = new AtomicLong();
+    private final AtomicInteger rejectedConnections = new AtomicInteger();
+    private final AtomicInteger rejectedSearches = new AtomicInteger();
+    private volatile int rejectionStatusCode = 420;
+    private volatile int tweetsPerSecond;
+    private volatile boolean repeat;
+    private volatile int disconnectAfter = -1;
+    private volatile int reconnectOffset;
+    private volatile int stallAfter = -1;
+    private volatile long stallMillis;
+    private volatile Map<String, String> lastStreamParameters = Collections.emptyMap();
+    private volatile boolean running;
+    private HttpServer server;
+    private ExecutorService executorService;
+
+    /**
+     * Creates a stub serving the given tweets.
+     *
+     * @param tweets - JSON of the tweets, each of which needs an id
+     */
+    public TwitterApiStub(List<String> tweets) {
+        this.tweets = new ArrayList<>(tweets.size());
+        this.tweetIds = new ArrayList<>(tweets.size());
+        TweetJsonDecoder decoder = new TweetJsonDecoder(EnumSet.noneOf(TweetAttribute.class));
+        for (String tweet : tweets) {
+            byte[] json = tweet.getBytes(StandardCharsets.UTF_8);
+            decoder.decode(json, 0, json.length);
+            this.tweets.add(json);
+            this.tweetIds.add(decoder.getFields().getId());
+        }
+    }
+
+    /**
+     * Creates synthetic tweets with increasing ids, posted by a few users.
+     *
+     * @param count - number of tweets
+     * @return JSON of the tweets
+     */
+    public static List<String> createTweets(int count) {
+        List<String> tweets = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            long id = FIRST_TWEET_ID + i;
+            tweets.add("{\"created_at\":\"Wed Oct 10 20:19:24 +0000 2018\",\"id\":" + id + ",\"id_str\":\"" + id +
+                    "\",\"text\":\"Tweet " + i + " about #siddhi\",\"lang\":\"en\",\"retweet_count\":" + (i % 7) +
+                    ",\"favorite_count\":" + (i % 11) + ",\"user\":{\"id\":" + (1000 + i % 10) +
+                    ",\"screen_name\":\"user" + (i % 10) + "\",\"name\":\"User " + (i % 10) + "\"}," +
+                    "\"entities\":{\"hashtags\":[{\"text\":\"siddhi\",\"indices\":[0,1]}],\"urls\":[]," +
+                    "\"user_mentions\":[]}}");
+        }
+        return tweets;
+    }
+
+    /**
+     * Returns the id of a tweet created by {@link #createTweets(int)}.
+     *
+     * @param index - position of the tweet
+     * @return id of the tweet
+     */
+    public static long getTweetId(int index) {
+        return FIRST_TWEET_ID + index;
+    }
+
+    /**
+     * Reads tweets recorded as one JSON per line, as captured from the streaming API.
+     *
+     * @param file - recorded file
+     * @return JSON of the tweets
+     * @throws IOException if the file cannot be read
+     */
+    public static List<String> readTweets(Path file) throws IOException {
+        List<String> tweets = new ArrayList<>();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            if (line.contains("\"text\"")) {
+                tweets.add(line.trim());
+            }
+        }
+        return tweets;
+    }
+
+    public void start() throws IOException {
+        running = true;
+        executorService = Executors.newCachedThreadPool();
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(executorService);
+        server.createContext(API_VERSION_PATH + "statuses/filter.json", this::stream);
+        server.createContext(API_VERSION_PATH + "statuses/sample.json", this::stream);
+        server.createContext(API_VERSION_PATH + "search/tweets.json", this::search);
+        server.start();
+    }
+
+    public void stop() {
+        running = false;
+        if (server != null) {
+            server.stop(0);
+        }
+        if (executorService != null) {
+            executorService.shutdownNow();
+        }
+    }
+
+    public String getStreamBaseUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() +
+                API_VERSION_PATH;
+    }
+
+    public String getRestBaseUrl() {
+        return getStreamBaseUrl();
+    }
+
+    /**
+     * Sets the rate at which each stream emits tweets.
+     *
+     * @param tweetsPerSecond - tweets per second, or 0 to emit as fast as the client reads
+     */
+    public void setTweetsPerSecond(int tweetsPerSecond) {
+        this.tweetsPerSecond = tweetsPerSecond;
+    }
+
+    /**
+     * Sets whether streams start over from the first tweet once all tweets are sent, instead of only sending
+     * keep-alive new lines.
+     *
+     * @param repeat - whether to repeat the tweets
+     */
+    public void setRepeat(boolean repeat) {
+        this.repeat = repeat;
+    }
+
+    /**
+     * Closes each stream after the given number of tweets.
+     *
+     * @param tweetCount - number of tweets sent before disconnecting, or -1 to keep streams open
+     */
+    public void disconnectAfter(int tweetCount) {
+        this.disconnectAfter = tweetCount;
+    }
+
+    /**
+     * Starts the streams opened after the first one from the given tweet, so that the tweets before it are missed
+     * by a client reconnecting.
+     *
+     * @param tweetIndex - position of the first tweet sent on reconnects
+     */
+    public void setReconnectOffset(int tweetIndex) {
+        this.reconnectOffset = tweetIndex;
+    }
+
+    /**
+     * Stops writing to each stream for the given time after the given number of tweets.
+     *
+     * @param tweetCount - number of tweets sent before stalling, or -1 to not stall
+     * @param millis     - duration of the stall
+     */
+    public void stallAfter(int tweetCount, long millis) {
+        this.stallAfter = tweetCount;
+        this.stallMillis = millis;
+    }
+
+    /**
+     * Rejects the next connection attempts to the streaming API, e.g., with 420 or 429 to simulate rate limiting.
+     *
+     * @param count      - number of connection attempts to reject
+     * @param statusCode - HTTP status of the rejection
+     */
+    public void rejectConnections(int count, int statusCode) {
+        this.rejectionStatusCode = statusCode;
+        this.rejectedConnections.set(count);
+    }
+
+    /**
+     * Rejects the next searches with 429, as done when the rate limit of the search API is exceeded.
+     *
+     * @param count - number of searches to reject
+     */
+    public void rejectSearches(int count) {
+        this.rejectedSearches.set(count);
+    }
+
+    public int getConnectionCount() {
+        return connectionCount.get();
+    }
+
+    public long getStreamedCount() {
+        return streamedCount.get();
+    }
+
+    public int getSearchCount() {
+        return searchCount.get();
+    }
+
+    public Map<String, String> getLastStreamParameters() {
+        return lastStreamParameters;
+    }
+
+    private void stream(HttpExchange exchange) throws IOException {
+        int offset = (connectionCount.getAndIncrement() > 0) ? reconnectOffset : 0;
+        try {
+            Map<String, String> parameters = readParameters(exchange);
+            lastStreamParameters = parameters;
+            if (rejectedConnections.getAndDecrement() > 0) {
+                exchange.sendResponseHeaders(rejectionStatusCode, -1);
+                return;
+            }
+            boolean lengthDelimited = "length".equals(parameters.get("delimited"));
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, 0);
+            OutputStream outputStream = exchange.getResponseBody();
+            long intervalNanos = tweetsPerSecond > 0 ? TimeUnit.SECONDS.toNanos(1) / tweetsPerSecond : 0;
+            long nextSendTime = System.nanoTime();
+            int sent = 0;
+            while (running) {
+                if (sent == disconnectAfter) {
+                    return;
+                }
+                if (sent == stallAfter) {
+                    outputStream.flush();
+                    Thread.sleep(stallMillis);
+                }
+                if (offset + sent >= tweets.size() && !repeat) {
+                    outputStream.write(NEW_LINE);
+                    outputStream.flush();
+                    Thread.sleep(KEEP_ALIVE_INTERVAL_MILLIS);
+                    continue;
+                }
+                if (intervalNanos > 0) {
+                    nextSendTime += intervalNanos;
+                    long delay = nextSendTime - System.nanoTime();
+                    if (delay > 0) {
+                        outputStream.flush();
+                        LockSupport.parkNanos(delay);
+                    }
+                }
+                byte[] tweet = tweets.get((offset + sent) % tweets.size());
+                if (lengthDelimited) {
+                    outputStream.write(Integer.toString(tweet.length + NEW_LINE.length)
+                            .getBytes(StandardCharsets.UTF_8));
+                    outputStream.write(NEW_LINE);
+                }
+                outputStream.write(tweet);
+                outputStream.write(NEW_LINE);
+                if (intervalNanos > 0) {
+                    outputStream.flush();
+                }
+                sent++;
+                streamedCount.incrementAndGet();
+            }
+        } catch (IOException e) {
+            log.debug("Stream client disconnected: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void search(HttpExchange exchange) throws IOException {
+        searchCount.incrementAndGet();
+        try {
+            long resetTime = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()) + 900;
+            exchange.getResponseHeaders().add("x-rate-limit-limit", String.valueOf(SEARCH_RATE_LIMIT));
+            exchange.getResponseHeaders().add("x-rate-limit-reset", String.valueOf(resetTime));
+            if (rejectedSearches.getAndDecrement() > 0) {
+                exchange.getResponseHeaders().add("x-rate-limit-remaining", "0");
+                writeJson(exchange, 429, "{\"errors\":[{\"code\":88,\"message\":\"Rate limit exceeded\"}]}");
+                return;
+            }
+            exchange.getResponseHeaders().add("x-rate-limit-remaining",
+                    String.valueOf(Math.max(0, SEARCH_RATE_LIMIT - searchCount.get())));
+            Map<String, String> parameters = readParameters(exchange);
+            String query = parameters.getOrDefault("q", "");
+            int count = Integer.parseInt(parameters.getOrDefault("count", String.valueOf(DEFAULT_SEARCH_COUNT)));
+            long maxId = Long.parseLong(parameters.getOrDefault("max_id", String.valueOf(Long.MAX_VALUE)));
+            long sinceId = Long.parseLong(parameters.getOrDefault("since_id", "-1"));
+            StringBuilder response = new StringBuilder("{\"statuses\":[");
+            int pageSize = 0;
+            long lastId = -1;
+            boolean hasMore = false;
+            for (int i = tweets.size() - 1; i >= 0; i--) {
+                long id = tweetIds.get(i);
+                if (id > maxId || id <= sinceId) {
+                    continue;
+                }
+                if (pageSize == count) {
+                    hasMore = true;
+                    break;
+                }
+                if (pageSize > 0) {
+                    response.append(',');
+                }
+                response.append(new String(tweets.get(i), StandardCharsets.UTF_8));
+                pageSize++;
+                lastId = id;
+            }
+            String encodedQuery = URLEncoder.encode(query, "UTF-8");
+            response.append("],\"search_metadata\":{\"completed_in\":0.01,\"max_id\":").append(maxId)
+                    .append(",\"since_id\":").append(Math.max(sinceId, 0))
+                    .append(",\"refresh_url\":\"?since_id=").append(Math.max(sinceId, 0)).append("&q=")
+                    .append(encodedQuery).append("\",\"count\":").append(count)
+                    .append(",\"query\":\"").append(encodedQuery).append('"');
+            if (hasMore) {
+                response.append(",\"next_results\":\"?max_id=").append(lastId - 1).append("&q=")
+                        .append(encodedQuery).append("&count=").append(count).append('"');
+            }
+            response.append("}}");
+            writeJson(exchange, 200, response.toString());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static void writeJson(HttpExchange exchange, int statusCode, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(statusCode, body.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(body);
+        }
+    }
+
+    private static Map<String, String> readParameters(HttpExchange exchange) throws IOException {
+        Map<String, String> parameters = new HashMap<>();
+        addParameters(parameters, exchange.getRequestURI().getRawQuery());
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (InputStream inputStream = exchange.getRequestBody()) {
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = inputStream.read(buffer)) > 0) {
+                body.write(buffer, 0, read);
+            }
+        }
+        addParameters(parameters, new String(body.toByteArray(), StandardCharsets.UTF_8));
+        return parameters;
+    }
+
+    private static void addParameters(Map<String, String> parameters, String encoded)
+            throws UnsupportedEncodingException {
+        if (encoded == null || encoded.isEmpty()) {
+            return;
+        }
+        for (String parameter : encoded.split("&")) {
+            int separator = parameter.indexOf('=');
+            if (separator > 0) {
+                parameters.put(URLDecoder.decode(parameter.substring(0, separator), "UTF-8"),
+                        URLDecoder.decode(parameter.substring(separator + 1), "UTF-8"));
+            }
+        }
+    }
+}
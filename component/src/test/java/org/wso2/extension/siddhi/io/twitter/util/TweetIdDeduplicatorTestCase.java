@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.extension.siddhi.io.twitter.util;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+public class TweetIdDeduplicatorTestCase {
+    // 2018-10-10T20:19:24Z, shifted into the timestamp bits of a tweet ID
+    private static final long BASE_ID = 1050118621198921728L;
+    private static final long MILLISECOND = 1L << 22;
+
+    @Test
+    public void testHashSetMatchesReferenceSet() {
+        int capacity = 1000;
+        TweetIdHashSet tweetIdHashSet = new TweetIdHashSet(capacity, 0);
+        Set<Long> remembered = new HashSet<>();
+        Deque<Long> order = new ArrayDeque<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 100000; i++) {
+            // a narrow range of IDs makes repeats and long probe sequences frequent
+            long tweetId = BASE_ID + random.nextInt(4 * capacity);
+            boolean duplicate = remembered.contains(tweetId);
+            Assert.assertEquals(tweetIdHashSet.isDuplicate(tweetId), duplicate, "tweet " + tweetId);
+            if (!duplicate) {
+                if (order.size() == capacity) {
+                    remembered.remove(order.removeFirst());
+                }
+                remembered.add(tweetId);
+                order.addLast(tweetId);
+            }
+        }
+        Assert.assertEquals(tweetIdHashSet.size(), capacity);
+    }
+
+    @Test
+    public void testHashSetForgetsTweetsBeyondHorizon() {
+        TweetIdHashSet tweetIdHashSet = new TweetIdHashSet(100, 1000);
+        Assert.assertFalse(tweetIdHashSet.isDuplicate(BASE_ID));
+        Assert.assertFalse(tweetIdHashSet.isDuplicate(BASE_ID + 500 * MILLISECOND));
+        Assert.assertTrue(tweetIdHashSet.isDuplicate(BASE_ID));
+        Assert.assertFalse(tweetIdHashSet.isDuplicate(BASE_ID + 1500 * MILLISECOND));
+        Assert.assertFalse(tweetIdHashSet.isDuplicate(BASE_ID));
+        Assert.assertTrue(tweetIdHashSet.isDuplicate(BASE_ID + 500 * MILLISECOND));
+    }
+
+    @Test
+    public void testHashSetRestore() {
+        TweetIdHashSet tweetIdHashSet = new TweetIdHashSet(10, 0);
+        for (int i = 0; i < 15; i++) {
+            tweetIdHashSet.isDuplicate(BASE_ID + i);
+        }
+        TweetIdHashSet restored = new TweetIdHashSet(10, 0);
+        restored.restore(tweetIdHashSet.snapshot());
+        Assert.assertEquals(restored.size(), 10);
+        Assert.assertFalse(restored.isDuplicate(BASE_ID + 4));
+        Assert.assertTrue(restored.isDuplicate(BASE_ID + 14));
+    }
+
+    @Test
+    public void testBloomFilterRemembersCapacity() {
+        int capacity = 10000;
+        TweetIdBloomFilter tweetIdBloomFilter = new TweetIdBloomFilter(capacity, 0);
+        int falsePositives = 0;
+        for (int i = 0; i < 5 * capacity; i++) {
+            if (tweetIdBloomFilter.isDuplicate(BASE_ID + i * MILLISECOND)) {
+                falsePositives++;
+            }
+            Assert.assertTrue(tweetIdBloomFilter.isDuplicate(BASE_ID + (i / capacity) * capacity * MILLISECOND));
+        }
+        Assert.assertTrue(falsePositives < 20, falsePositives + " false positives");
+        TweetIdBloomFilter restored = new TweetIdBloomFilter(capacity, 0);
+        restored.restore(tweetIdBloomFilter.snapshot());
+        for (int i = 4 * capacity; i < 5 * capacity; i++) {
+            Assert.assertTrue(restored.isDuplicate(BASE_ID + i * MILLISECOND));
+        }
+    }
+
+    @Test
+    public void testSnapshotOfOtherCacheTypeIsDropped() {
+        TweetIdHashSet tweetIdHashSet = new TweetIdHashSet(10, 0);
+        TweetIdBloomFilter tweetIdBloomFilter = new TweetIdBloomFilter(10, 0);
+        tweetIdHashSet.isDuplicate(BASE_ID);
+        tweetIdBloomFilter.isDuplicate(BASE_ID);
+        // the IDs remembered before the mismatched restore are kept
+        tweetIdHashSet.restore(tweetIdBloomFilter.snapshot());
+        tweetIdBloomFilter.restore(tweetIdHashSet.snapshot());
+        Assert.assertTrue(tweetIdHashSet.isDuplicate(BASE_ID));
+        Assert.assertTrue(tweetIdBloomFilter.isDuplicate(BASE_ID));
+        Assert.assertFalse(tweetIdHashSet.isDuplicate(BASE_ID + 1));
+    }
+}
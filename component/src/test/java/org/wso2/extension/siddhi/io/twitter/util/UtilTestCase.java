@@ -0,0 +1,478 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.extension.siddhi.io.twitter.util;
+
+import io.siddhi.annotation.Extension;
+import io.siddhi.core.util.transport.OptionHolder;
+import io.siddhi.query.api.annotation.Annotation;
+import io.siddhi.query.api.annotation.Element;
+import io.siddhi.query.api.definition.Attribute;
+import io.siddhi.query.api.definition.StreamDefinition;
+import io.siddhi.query.api.exception.SiddhiAppValidationException;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.wso2.extension.siddhi.io.twitter.source.TwitterSource;
+import twitter4j.HttpParameter;
+import twitter4j.Status;
+import twitter4j.TwitterException;
+import twitter4j.TwitterObjectFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class UtilTestCase {
+    private static final String TWEET = "{\"created_at\":\"Wed Oct 10 20:19:24 +0000 2018\"," +
+            "\"id\":1050118621198921728,\"text\":\"Hello #siddhi\",\"retweet_count\":3," +
+            "\"user\":{\"id\":6253282,\"screen_name\":\"siddhi_io\"}," +
+            "\"entities\":{\"hashtags\":[{\"text\":\"siddhi\",\"indices\":[6,13]}]}}";
+
+    @Test
+    public void testRequestedAttributesFromAttributeMapping() {
+        StreamDefinition streamDefinition = StreamDefinition.id("inputStream")
+                .attribute("id", Attribute.Type.LONG)
+                .attribute("text", Attribute.Type.STRING)
+                .annotation(Annotation.annotation("source").element("type", "twitter")
+                        .annotation(Annotation.annotation("map").element("type", "keyvalue")
+                                .annotation(Annotation.annotation("attributes")
+                                        .element("id", "tweetId")
+                                        .element("text", "text"))));
+        Set<TweetAttribute> attributes = Util.getRequestedAttributes(streamDefinition,
+                new String[]{"user.screenName"});
+        Assert.assertEquals(attributes, EnumSet.of(TweetAttribute.TWEET_ID, TweetAttribute.TEXT,
+                TweetAttribute.USER_SCREEN_NAME));
+    }
+
+    @Test
+    public void testRequestedAttributesFromStreamDefinition() {
+        StreamDefinition streamDefinition = StreamDefinition.id("inputStream")
+                .attribute("tweetId", Attribute.Type.LONG)
+                .attribute("hashtags", Attribute.Type.STRING)
+                .annotation(Annotation.annotation("source").element("type", "twitter")
+                        .annotation(Annotation.annotation("map").element("type", "keyvalue")));
+        Set<TweetAttribute> attributes = Util.getRequestedAttributes(streamDefinition, new String[0]);
+        Assert.assertEquals(attributes, EnumSet.of(TweetAttribute.TWEET_ID, TweetAttribute.HASHTAGS));
+    }
+
+    @Test
+    public void testMappingOfInitializedSource() {
+        Annotation keyValueSource = Annotation.annotation("source").element("type", "twitter")
+                .element("track", "siddhi")
+                .annotation(Annotation.annotation("map").element("type", "keyvalue")
+                        .annotation(Annotation.annotation("attributes")
+                                .element("tweetId", "tweetId")
+                                .element("text", "text")));
+        Annotation passThroughSource = Annotation.annotation("source").element("type", "twitter")
+                .element("track", "wso2")
+                .annotation(Annotation.annotation("map").element("type", "passThrough"));
+        StreamDefinition streamDefinition = StreamDefinition.id("inputStream")
+                .attribute("tweetId", Attribute.Type.LONG)
+                .attribute("text", Attribute.Type.STRING)
+                .annotation(keyValueSource)
+                .annotation(passThroughSource);
+        Annotation sourceAnnotation = Util.getSourceAnnotation(streamDefinition,
+                createOptionHolder(streamDefinition, passThroughSource));
+        Assert.assertSame(sourceAnnotation, passThroughSource);
+        Assert.assertEquals(Util.getMapType(sourceAnnotation), "passThrough");
+        Assert.assertTrue(Util.createStatusMapper(streamDefinition, sourceAnnotation, null, false).isPositional());
+
+        sourceAnnotation = Util.getSourceAnnotation(streamDefinition,
+                createOptionHolder(streamDefinition, keyValueSource));
+        Assert.assertSame(sourceAnnotation, keyValueSource);
+        Assert.assertFalse(Util.createStatusMapper(streamDefinition, sourceAnnotation, null, false).isPositional());
+        Assert.assertEquals(Util.getRequestedAttributes(streamDefinition, sourceAnnotation, null),
+                EnumSet.of(TweetAttribute.TWEET_ID, TweetAttribute.TEXT));
+    }
+
+    @Test
+    public void testRequestedAttributesWithoutSourceAnnotation() {
+        StreamDefinition streamDefinition = StreamDefinition.id("inputStream")
+                .attribute("id", Attribute.Type.LONG);
+        Set<TweetAttribute> attributes = Util.getRequestedAttributes(streamDefinition, null);
+        Assert.assertEquals(attributes, EnumSet.allOf(TweetAttribute.class));
+    }
+
+    @Test
+    public void testPositionalStatusMapper() throws TwitterException {
+        StreamDefinition streamDefinition = StreamDefinition.id("inputStream")
+                .attribute("tweetId", Attribute.Type.LONG)
+                .attribute("user_screenName", Attribute.Type.STRING)
+                .attribute("retweetCount", Attribute.Type.LONG)
+                .attribute("hashtags", Attribute.Type.STRING)
+                .annotation(Annotation.annotation("source").element("type", "twitter")
+                        .annotation(Annotation.annotation("map").element("type", "passThrough")));
+        StatusMapper statusMapper = Util.createStatusMapper(streamDefinition, null);
+        Status status = TwitterObjectFactory.createStatus(TWEET);
+        Assert.assertEquals((Object[]) statusMapper.createEvent(status),
+                new Object[]{1050118621198921728L, "siddhi_io", 3L, "siddhi"});
+    }
+
+    @Test(expectedExceptions = SiddhiAppValidationException.class)
+    public void testPositionalStatusMapperWithIncompatibleType() {
+        StreamDefinition streamDefinition = StreamDefinition.id("inputStream")
+                .attribute("text", Attribute.Type.LONG);
+        new StatusMapper(streamDefinition, null);
+    }
+
+    @Test
+    public void testFilterSplitAcrossShards() {
+        long[] follow = {1, 2, 3};
+        double[][] locations = {{-122.75, 36.8}, {-121.75, 37.8}};
+        Assert.assertEquals(QueryBuilder.getRequiredShardCount("a,b", follow, locations), 1);
+        Assert.assertEquals(QueryBuilder.getPredicateCount("a,b", follow, locations), 6);
+        List<HttpParameter[]> parameterSets = QueryBuilder.createFilterParameterSets("en", "a, b", follow, "none",
+                locations, 4);
+        Assert.assertEquals(parameterSets.size(), 4);
+        Assert.assertEquals(toMap(parameterSets.get(0)).get("track"), "a");
+        Assert.assertEquals(toMap(parameterSets.get(0)).get("follow"), "3");
+        Assert.assertEquals(toMap(parameterSets.get(1)).get("track"), "b");
+        Assert.assertEquals(toMap(parameterSets.get(2)).get("follow"), "1");
+        Assert.assertEquals(toMap(parameterSets.get(3)).get("follow"), "2");
+        Assert.assertEquals(toMap(parameterSets.get(1)).get("locations"), "-122.75,36.8,-121.75,37.8");
+        for (HttpParameter[] parameters : parameterSets) {
+            Assert.assertEquals(toMap(parameters).get("language"), "en");
+        }
+        StringBuilder keywords = new StringBuilder("k0");
+        for (int i = 1; i < 401; i++) {
+            keywords.append(",k").append(i);
+        }
+        Assert.assertEquals(QueryBuilder.getRequiredShardCount(keywords.toString(), null, null), 2);
+    }
+
+    @Test
+    public void testBackfillQueriesStayWithinLengthLimit() {
+        Assert.assertEquals(QueryBuilder.createBackfillQueries("siddhi, stream processing"),
+                Arrays.asList("siddhi OR (stream processing)"));
+        StringBuilder trackParam = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            trackParam.append("keyword").append(i).append(',');
+        }
+        List<String> queries = QueryBuilder.createBackfillQueries(trackParam.toString());
+        Assert.assertEquals(queries.size(), 3);
+        for (String query : queries) {
+            Assert.assertTrue(query.length() <= TwitterConstants.SEARCH_QUERY_LIMIT);
+        }
+        Assert.assertTrue(queries.get(2).endsWith("keyword99"));
+    }
+
+    @Test
+    public void testDecodedTweetMatchesStatus() throws TwitterException {
+        StatusMapper statusMapper = new StatusMapper(EnumSet.allOf(TweetAttribute.class), null);
+        TweetJsonDecoder decoder = new TweetJsonDecoder(statusMapper.getRequiredAttributes());
+        byte[] tweet = TWEET.getBytes(StandardCharsets.UTF_8);
+        Assert.assertEquals(decoder.decode(tweet, 0, tweet.length), TweetJsonDecoder.MessageType.STATUS);
+        Map<String, Object> decoded = statusMapper.createMap(decoder.getFields());
+        Map<String, Object> mapped = statusMapper.createMap(TwitterObjectFactory.createStatus(TWEET));
+        Assert.assertEquals(decoded.keySet(), mapped.keySet());
+        for (String key : mapped.keySet()) {
+            Assert.assertEquals(decoded.get(key), mapped.get(key), key);
+        }
+        StatusMapper legacyMapper = new StatusMapper(EnumSet.allOf(TweetAttribute.class), null, true);
+        Assert.assertEquals(legacyMapper.createMap(decoder.getFields()),
+                legacyMapper.createMap(TwitterObjectFactory.createStatus(TWEET)));
+    }
+
+    @Test
+    public void testTruncatedStringIsNotDecoded() {
+        TweetJsonDecoder decoder = new TweetJsonDecoder(EnumSet.of(TweetAttribute.TEXT));
+        byte[] escaped = "{\"id\":1,\"text\":\"caf\\u00e9\"}".getBytes(StandardCharsets.UTF_8);
+        byte[] multibyte = "{\"id\":1,\"text\":\"caf\u00e9 \ud83d\ude00\"}".getBytes(StandardCharsets.UTF_8);
+        int escapeStart = indexOf(escaped, (byte) '\\');
+        int characterStart = indexOf(multibyte, (byte) 0xC3);
+        int emojiStart = indexOf(multibyte, (byte) 0xF0);
+        // each message is cut inside an escape or a multibyte character, at the end of the buffer or followed by
+        // the bytes of the next message
+        assertTruncated(decoder, escaped, escapeStart + 1);
+        assertTruncated(decoder, escaped, escapeStart + 4);
+        assertTruncated(decoder, multibyte, characterStart + 1);
+        assertTruncated(decoder, multibyte, emojiStart + 2);
+    }
+
+    @Test
+    public void testTypedAndLegacyAttributes() throws TwitterException {
+        String json = TWEET.replace("\"entities\"", "\"coordinates\":{\"type\":\"Point\"," +
+                "\"coordinates\":[10.40744,57.64911]},\"entities\"");
+        Status status = TwitterObjectFactory.createStatus(json);
+        StatusMapper statusMapper = new StatusMapper(EnumSet.allOf(TweetAttribute.class), null);
+        Map<String, Object> event = statusMapper.createMap(status);
+        // the creation time is taken from the tweet ID, to the millisecond
+        Assert.assertEquals(event.get("createdAt"), 1539202764211L);
+        Assert.assertEquals(event.get("hashtags"), new String[]{"siddhi"});
+        Assert.assertEquals(event.get("urls"), new String[0]);
+        Assert.assertEquals(event.get("geoLocation"), new double[]{57.64911, 10.40744});
+        Assert.assertEquals(event.get("latitude"), 57.64911);
+        Assert.assertEquals(event.get("longitude"), 10.40744);
+        Assert.assertTrue(((String) event.get("geohash")).startsWith("u4pruydqqvj"));
+
+        Map<String, Object> legacyEvent = new StatusMapper(EnumSet.allOf(TweetAttribute.class), null, true)
+                .createMap(status);
+        Assert.assertEquals(legacyEvent.get("createdAt"), status.getCreatedAt().toString());
+        Assert.assertEquals(legacyEvent.get("hashtags"), "siddhi");
+        Assert.assertEquals(legacyEvent.get("urls"), "null");
+        Assert.assertEquals(legacyEvent.get("geoLocation"), "57.64911,10.40744");
+
+        // string attributes of a passThrough stream are given in the legacy format
+        StreamDefinition streamDefinition = StreamDefinition.id("inputStream")
+                .attribute("createdAt", Attribute.Type.STRING)
+                .attribute("hashtags", Attribute.Type.STRING)
+                .attribute("geoLocation", Attribute.Type.STRING);
+        Assert.assertEquals((Object[]) new StatusMapper(streamDefinition, null).createEvent(status),
+                new Object[]{status.getCreatedAt().toString(), "siddhi", "57.64911,10.40744"});
+
+        // and so are the attributes a keyvalue mapping maps onto string attributes
+        StreamDefinition keyValueStreamDefinition = StreamDefinition.id("inputStream")
+                .attribute("created", Attribute.Type.STRING)
+                .attribute("hashtags", Attribute.Type.STRING)
+                .attribute("urls", Attribute.Type.OBJECT)
+                .annotation(Annotation.annotation("source").element("type", "twitter")
+                        .annotation(Annotation.annotation("map").element("type", "keyvalue")
+                                .annotation(Annotation.annotation("attributes")
+                                        .element("created", "createdAt")
+                                        .element("hashtags", "hashtags")
+                                        .element("urls", "urls"))));
+        Map<String, Object> keyValueEvent = Util.createStatusMapper(keyValueStreamDefinition, null).createMap(status);
+        Assert.assertEquals(keyValueEvent.get("createdAt"), status.getCreatedAt().toString());
+        Assert.assertEquals(keyValueEvent.get("hashtags"), "siddhi");
+        Assert.assertEquals(keyValueEvent.get("urls"), new String[0]);
+    }
+
+    @Test
+    public void testDecodeDeleteNotice() {
+        TweetJsonDecoder decoder = new TweetJsonDecoder(EnumSet.of(TweetAttribute.TEXT));
+        byte[] notice = "{\"delete\":{\"status\":{\"id\":1234,\"user_id\":3}}}".getBytes(StandardCharsets.UTF_8);
+        Assert.assertEquals(decoder.decode(notice, 0, notice.length), TweetJsonDecoder.MessageType.DELETE);
+    }
+
+    @Test
+    public void testKeywordMatcherMatchesWholeWords() {
+        KeywordMatcher matcher = new KeywordMatcher(Arrays.asList("he", "she", "hers", "Stream  Processing", " "));
+        Assert.assertTrue(matcher.matches("Is it hers?"));
+        Assert.assertTrue(matcher.matches("SHE said"));
+        Assert.assertTrue(matcher.matches("he"));
+        Assert.assertTrue(matcher.matches("fast stream\tprocessing"));
+        Assert.assertFalse(matcher.matches("ushers their herself"));
+        Assert.assertFalse(matcher.matches("stream processing_engine"));
+        Assert.assertFalse(matcher.matches("stream  processing"));
+        Assert.assertFalse(matcher.matches((CharSequence) null));
+    }
+
+    @Test
+    public void testKeywordMatcherMatchesHashtags() throws TwitterException {
+        KeywordMatcher matcher = new KeywordMatcher(Arrays.asList("siddhi", "cep"));
+        TweetJsonDecoder decoder = new TweetJsonDecoder(EnumSet.of(TweetAttribute.TEXT, TweetAttribute.HASHTAGS));
+        String json = TWEET.replace("Hello #siddhi", "Hello");
+        byte[] tweet = json.getBytes(StandardCharsets.UTF_8);
+        decoder.decode(tweet, 0, tweet.length);
+        Assert.assertTrue(matcher.matches(decoder.getFields()));
+        Assert.assertTrue(matcher.matches(TwitterObjectFactory.createStatus(json)));
+        Assert.assertFalse(new KeywordMatcher(Arrays.asList("hello world", "sid")).matches(decoder.getFields()));
+    }
+
+    @Test
+    public void testGeoRegionIndexFindsRegion() {
+        GeoRegionIndex index = GeoRegionIndex.parse(Arrays.asList(
+                "# id, then longitude and latitude of each vertex",
+                "triangle, 0, 0, 10, 0, 0, 10",
+                "",
+                "box, -10, -10, 10, 10"));
+        Assert.assertEquals(index.getRegionCount(), 2);
+        // regions listed first take precedence where they overlap
+        Assert.assertEquals(index.findRegion(2, 2), "triangle");
+        Assert.assertEquals(index.findRegion(8, 8), "box");
+        Assert.assertEquals(index.findRegion(-5, -5), "box");
+        Assert.assertNull(index.findRegion(20, 0));
+        Assert.assertNull(index.findRegion(0, -11));
+    }
+
+    @Test
+    public void testGeoRegionIndexOverManyRegions() {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            for (int j = 0; j < 100; j++) {
+                lines.add(i + ":" + j + "," + (i * 0.01) + "," + (j * 0.01) + "," + (i * 0.01 + 0.005) + "," +
+                        (j * 0.01 + 0.005));
+            }
+        }
+        GeoRegionIndex index = GeoRegionIndex.parse(lines);
+        Assert.assertEquals(index.findRegion(0.3725, 1.2525), "125:37");
+        Assert.assertEquals(index.findRegion(0.99, 1.99), "199:99");
+        Assert.assertNull(index.findRegion(0.3775, 1.2525));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testGeoRegionIndexWithInvalidRegion() {
+        GeoRegionIndex.parse(Collections.singletonList("region, 0, 0, 1, 1, 2"));
+    }
+
+    @Test
+    public void testGeoRegionOfDecodedTweet() throws TwitterException {
+        GeoRegionIndex index = GeoRegionIndex.parse(Arrays.asList("colombo, 79.8, 6.85, 79.9, 6.95",
+                "kandy, 80.6, 7.25, 80.7, 7.35"));
+        String json = TWEET.replace("\"entities\"", "\"place\":{\"id\":\"1\",\"bounding_box\":{\"type\":" +
+                "\"Polygon\",\"coordinates\":[[[79.82,6.88],[79.88,6.88],[79.88,6.92],[79.82,6.92]]]}}," +
+                "\"entities\"");
+        TweetJsonDecoder decoder = new TweetJsonDecoder(EnumSet.of(TweetAttribute.GEO_REGION));
+        byte[] tweet = json.getBytes(StandardCharsets.UTF_8);
+        decoder.decode(tweet, 0, tweet.length);
+        Assert.assertEquals(index.findRegion(decoder.getFields()), "colombo");
+        Status status = TwitterObjectFactory.createStatus(json);
+        Assert.assertEquals(index.findRegion(status), "colombo");
+        StatusMapper statusMapper = new StatusMapper(EnumSet.of(TweetAttribute.GEO_REGION), null);
+        statusMapper.setGeoRegionIndex(index);
+        Assert.assertEquals(statusMapper.createMap(status).get("geoRegion"), "colombo");
+        // exact coordinates take precedence over the place
+        String located = json.replace("\"place\"", "\"coordinates\":{\"type\":\"Point\"," +
+                "\"coordinates\":[80.65,7.3]},\"place\"");
+        tweet = located.getBytes(StandardCharsets.UTF_8);
+        decoder.decode(tweet, 0, tweet.length);
+        Assert.assertEquals(statusMapper.createMap(decoder.getFields()).get("geoRegion"), "kandy");
+        Assert.assertEquals(statusMapper.createMap(TwitterObjectFactory.createStatus(located)).get("geoRegion"),
+                "kandy");
+        decoder.decode(TWEET.getBytes(StandardCharsets.UTF_8), 0, TWEET.length());
+        Assert.assertFalse(new TweetFilter(null, null, index).accept(decoder.getFields()));
+    }
+
+    @Test
+    public void testGeoRegionIsHandedFromFilterToMapper() throws TwitterException {
+        GeoRegionIndex index = GeoRegionIndex.parse(Collections.singletonList("colombo, 79.8, 6.85, 79.9, 6.95"));
+        String json = TWEET.replace("\"entities\"", "\"coordinates\":{\"type\":\"Point\"," +
+                "\"coordinates\":[79.85,6.9]},\"entities\"");
+        StatusMapper statusMapper = new StatusMapper(EnumSet.of(TweetAttribute.GEO_REGION), null);
+        statusMapper.setGeoRegionIndex(index);
+        TweetFilter tweetFilter = new TweetFilter(null, null, index);
+
+        Status status = TwitterObjectFactory.createStatus(json);
+        Assert.assertEquals(tweetFilter.filter(status), "colombo");
+        // the region given by the filter is mapped without being looked up again
+        Assert.assertEquals(statusMapper.createMap(status, "kandy").get("geoRegion"), "kandy");
+        // a filter which does not filter by region leaves the region to be looked up
+        Assert.assertEquals(new TweetFilter(null, null, null).filter(status), "");
+        Assert.assertEquals(statusMapper.createMap(status, "").get("geoRegion"), "colombo");
+
+        TweetJsonDecoder decoder = new TweetJsonDecoder(EnumSet.of(TweetAttribute.GEO_REGION));
+        byte[] tweet = json.getBytes(StandardCharsets.UTF_8);
+        decoder.decode(tweet, 0, tweet.length);
+        Assert.assertTrue(tweetFilter.accept(decoder.getFields()));
+        Assert.assertEquals(decoder.getFields().geoRegion, "colombo");
+        decoder.getFields().geoRegion = "kandy";
+        Assert.assertEquals(statusMapper.createMap(decoder.getFields()).get("geoRegion"), "kandy");
+        // the region found for a tweet is not kept for the next one decoded into the same fields
+        decoder.decode(tweet, 0, tweet.length);
+        Assert.assertEquals(statusMapper.createMap(decoder.getFields()).get("geoRegion"), "colombo");
+    }
+
+    @Test
+    public void testSampledTweetsAreStableAcrossRates() throws TwitterException {
+        TweetSampler tenPercent = new TweetSampler(0.1, false);
+        TweetSampler fivePercent = new TweetSampler(0.05, false);
+        int sampled = 0;
+        // IDs of tweets created in the same second, which only differ in their lower bits
+        long firstId = 1050118621198921728L;
+        for (long id = firstId; id < firstId + 100000; id++) {
+            if (tenPercent.isSampled(id)) {
+                sampled++;
+            } else {
+                Assert.assertFalse(fivePercent.isSampled(id));
+            }
+        }
+        Assert.assertTrue(sampled > 9500 && sampled < 10500, "Sampled " + sampled + " tweets.");
+        Assert.assertTrue(new TweetSampler(1, false).isSampled(firstId));
+        Assert.assertFalse(new TweetSampler(0, false).isSampled(firstId));
+        // the hash does not depend on the JVM, hence it can be compared across nodes
+        Assert.assertEquals(TweetSampler.hash(firstId), 0x4f995e92ba0515eeL);
+        TweetSampler byUser = new TweetSampler(0.5, true);
+        Status status = TwitterObjectFactory.createStatus(TWEET);
+        TweetJsonDecoder decoder = new TweetJsonDecoder(EnumSet.noneOf(TweetAttribute.class));
+        byte[] tweet = TWEET.getBytes(StandardCharsets.UTF_8);
+        decoder.decode(tweet, 0, tweet.length);
+        Assert.assertEquals(byUser.isSampled(status), byUser.isSampled(6253282L));
+        Assert.assertEquals(byUser.isSampled(decoder.getFields()), byUser.isSampled(6253282L));
+    }
+
+    @Test
+    public void testInternCacheSharesRepeatedValues() throws TwitterException {
+        StringInternCache internCache = new StringInternCache(100);
+        Assert.assertEquals(internCache.getCapacity(), 128);
+        String value = internCache.intern(new String("siddhi_io"));
+        Assert.assertSame(internCache.intern(new String("siddhi_io")), value);
+        String longValue = new String(new char[300]);
+        Assert.assertNotSame(internCache.intern(new String(longValue)), internCache.intern(longValue));
+        Assert.assertNull(internCache.intern(null));
+        Assert.assertEquals(internCache.getHitCount(), 1);
+        Assert.assertEquals(internCache.getMissCount(), 1);
+
+        StreamDefinition streamDefinition = StreamDefinition.id("inputStream")
+                .attribute("tweetId", Attribute.Type.LONG)
+                .attribute("user_screenName", Attribute.Type.STRING)
+                .annotation(Annotation.annotation("source").element("type", "twitter")
+                        .annotation(Annotation.annotation("map").element("type", "passThrough")));
+        StatusMapper statusMapper = Util.createStatusMapper(streamDefinition, null);
+        statusMapper.setInternCache(internCache);
+        Object[] first = (Object[]) statusMapper.createEvent(TwitterObjectFactory.createStatus(TWEET));
+        Object[] second = (Object[]) statusMapper.createEvent(TwitterObjectFactory.createStatus(TWEET));
+        Assert.assertSame(first[1], value);
+        Assert.assertSame(second[1], value);
+    }
+
+    /**
+     * Creates the options of a source as done by Siddhi, from the elements of its annotation.
+     */
+    private static OptionHolder createOptionHolder(StreamDefinition streamDefinition, Annotation sourceAnnotation) {
+        Map<String, String> options = new HashMap<>();
+        for (Element element : sourceAnnotation.getElements()) {
+            options.put(element.getKey(), element.getValue());
+        }
+        return new OptionHolder(streamDefinition, options, Collections.emptyMap(),
+                TwitterSource.class.getAnnotation(Extension.class));
+    }
+
+    private static void assertTruncated(TweetJsonDecoder decoder, byte[] message, int length) {
+        for (byte[] buffer : new byte[][]{Arrays.copyOf(message, length), message}) {
+            try {
+                decoder.decode(buffer, 0, length);
+                Assert.fail("Decoded a message cut at " + length + " bytes.");
+            } catch (IllegalArgumentException e) {
+                Assert.assertEquals(e.getMessage(), "Unterminated string in tweet.");
+            }
+        }
+    }
+
+    private static int indexOf(byte[] bytes, byte value) {
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static Map<String, String> toMap(HttpParameter[] parameters) {
+        Map<String, String> map = new HashMap<>();
+        for (HttpParameter parameter : parameters) {
+            map.put(parameter.getName(), parameter.getValue());
+        }
+        return map;
+    }
+}